@@ -0,0 +1,31 @@
+package top.kangyaocoding.chatgpt.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * @Author K·Herbert
+ * @Description 基准测试入口，参数与 JMH 命令行一致；未指定 -prof 时默认启用 gc 分析器，报告每次操作的分配字节数（gc.alloc.rate.norm）。
+ * @Date 2024-06-22 09:30
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("-h") || Arrays.asList(args).contains("-l") || Arrays.asList(args).contains("-lp")) {
+            Main.main(args);
+            return;
+        }
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(commandLineOptions);
+        if (commandLineOptions.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,49 @@
+package top.kangyaocoding.chatgpt.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.*;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description EmbeddingResponse 解析基准，分别覆盖数字数组与 base64 两种 encoding_format。
+ * @Date 2024-06-22 09:30
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddingParsingBenchmark {
+
+    private static final ObjectReader READER = OpenAiJson.reader(EmbeddingResponse.class);
+
+    /* 响应中的向量数 */
+    @Param({"1", "100", "2048"})
+    public int vectors;
+
+    /* 向量维度，对应 text-embedding-3-small */
+    @Param({"1536"})
+    public int dimensions;
+
+    /* float 或 base64 */
+    @Param({"float", "base64"})
+    public String encodingFormat;
+
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        response = Fixtures.embeddingResponse(vectors, dimensions, "base64".equals(encodingFormat));
+    }
+
+    @Benchmark
+    public EmbeddingResponse parse() throws IOException {
+        return READER.readValue(response);
+    }
+}
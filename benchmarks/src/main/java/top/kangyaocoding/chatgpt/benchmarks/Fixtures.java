@@ -0,0 +1,117 @@
+package top.kangyaocoding.chatgpt.benchmarks;
+
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * @Author K·Herbert
+ * @Description 基准测试使用的请求与响应样本，内容由固定种子生成，保证多次运行可比。
+ * @Date 2024-06-22 09:30
+ */
+final class Fixtures {
+
+    private static final String WORDS = "the quick brown fox jumps over a lazy dog while 模型 正在 生成 回答 and \"quotes\" need escaping\n";
+
+    private Fixtures() {
+    }
+
+    /**
+     * 生成指定字符数的文本，包含中文、引号与换行，覆盖 JSON 转义路径。
+     */
+    static String text(int chars) {
+        StringBuilder builder = new StringBuilder(chars + WORDS.length());
+        while (builder.length() < chars) {
+            builder.append(WORDS);
+        }
+        builder.setLength(chars);
+        return builder.toString();
+    }
+
+    static ChatCompletionRequest chatRequest(int promptChars, boolean stream) {
+        return ChatCompletionRequest.builder()
+                .model(ChatCompletionRequest.Model.GPT_4O_MINI.getCode())
+                .messages(Arrays.asList(
+                        Message.builder().role(Constants.Role.SYSTEM).content("You are a helpful assistant.").build(),
+                        Message.builder().role(Constants.Role.USER).content(text(promptChars)).build()))
+                .temperature(0)
+                .topP(1d)
+                .n(1)
+                .maxTokens(1024)
+                .stream(stream)
+                .build();
+    }
+
+    static byte[] chatResponse(int contentChars) {
+        String content = escape(text(contentChars));
+        return ("{\"id\":\"chatcmpl-9abc\",\"object\":\"chat.completion\",\"created\":1718000000,\"model\":\"gpt-4o-mini\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"},"
+                + "\"logprobs\":null,\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":120,\"completion_tokens\":" + contentChars / 4 + ",\"total_tokens\":" + (120 + contentChars / 4) + "},"
+                + "\"system_fingerprint\":\"fp_abc123\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 单个流式数据块的 data 字段。
+     */
+    static String streamChunk(int index) {
+        return "{\"id\":\"chatcmpl-9abc\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,\"model\":\"gpt-4o-mini\","
+                + "\"system_fingerprint\":\"fp_abc123\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\" token" + index + "\"},"
+                + "\"logprobs\":null,\"finish_reason\":null}]}";
+    }
+
+    /**
+     * 完整的 SSE 响应体，以 [DONE] 结尾。
+     */
+    static byte[] streamBody(int chunks) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < chunks; i++) {
+            builder.append("data: ").append(streamChunk(i)).append("\n\n");
+        }
+        builder.append("data: [DONE]\n\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] embeddingResponse(int vectors, int dimensions, boolean base64) {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(vectors * dimensions * (base64 ? 6 : 12));
+        builder.append("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < vectors; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":");
+            if (base64) {
+                ByteBuffer buffer = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int d = 0; d < dimensions; d++) {
+                    buffer.putFloat(random.nextFloat() * 0.2f - 0.1f);
+                }
+                builder.append('"').append(Base64.getEncoder().encodeToString(buffer.array())).append('"');
+            } else {
+                builder.append('[');
+                for (int d = 0; d < dimensions; d++) {
+                    if (d > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(random.nextFloat() * 0.2f - 0.1f);
+                }
+                builder.append(']');
+            }
+            builder.append('}');
+        }
+        builder.append("],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":").append(vectors * 8)
+                .append(",\"total_tokens\":").append(vectors * 8).append("}}");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,146 @@
+package top.kangyaocoding.chatgpt.benchmarks;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.common.NoDelaySocketFactory;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.interceptor.OpenAiInterceptor;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description 拦截器开销基准，对进程内 MockWebServer 发起完整的非流式聊天请求。
+ * none 为不加拦截器的对照组，auth 加入 OpenAiInterceptor，auth_logging 再加入 HEADERS 级别的日志拦截器；
+ * 日志输出到空的 Logger，只统计格式化头部的开销，不包含终端 I/O。各组之差即为拦截器的单次请求开销。
+ * 客户端与 MockWebServer 两端都关闭 Nagle，否则结果会被约 40ms 的延迟确认主导。
+ * @Date 2024-06-22 09:30
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterceptorBenchmark {
+
+    @Param({"none", "auth", "auth_logging"})
+    public String chain;
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private Request request;
+
+    @Setup
+    public void setup() throws IOException {
+        String body = new String(Fixtures.chatResponse(200), StandardCharsets.UTF_8);
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest recordedRequest) {
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+            }
+        });
+        server.start();
+        OkHttpClient.Builder builder = new OkHttpClient.Builder().socketFactory(new NoDelaySocketFactory());
+        if (chain.startsWith("auth")) {
+            builder.addInterceptor(new OpenAiInterceptor("sk-benchmark"));
+        }
+        if (chain.endsWith("logging")) {
+            HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor(message -> {
+            });
+            httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+            builder.addInterceptor(httpLoggingInterceptor);
+        }
+        client = builder.build();
+        ChatCompletionRequest chatCompletionRequest = Fixtures.chatRequest(1000, false);
+        request = new Request.Builder()
+                .url(server.url("/").resolve(IOpenAiApi.V_1_CHAT_COMPLETIONS))
+                .post(OpenAiJson.requestBody(chatCompletionRequest))
+                .build();
+    }
+
+    /**
+     * MockWebServer 会保存每个收到的请求，每轮结束后清空，避免内存增长影响结果。
+     */
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        while (server.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+            // 丢弃已记录的请求
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        server.shutdown();
+    }
+
+    @Benchmark
+    public long chatCompletion() throws IOException {
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            return body == null ? 0 : body.source().readByteString().size();
+        }
+    }
+
+    /**
+     * 为 MockWebServer 接受的连接关闭 Nagle。
+     */
+    private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            ServerSocket serverSocket = createServerSocket();
+            serverSocket.bind(new InetSocketAddress(port));
+            return serverSocket;
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            ServerSocket serverSocket = createServerSocket();
+            serverSocket.bind(new InetSocketAddress(port), backlog);
+            return serverSocket;
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            ServerSocket serverSocket = createServerSocket();
+            serverSocket.bind(new InetSocketAddress(address, port), backlog);
+            return serverSocket;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package top.kangyaocoding.chatgpt.benchmarks;
+
+import okio.Buffer;
+import org.openjdk.jmh.annotations.*;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description ChatCompletionRequest 序列化基准。
+ * requestBody 为实际发送路径（JsonRequestBody 直接写入 okio 缓冲区），string 为先序列化为 String 的对照组。
+ * @Date 2024-06-22 09:30
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestSerializationBenchmark {
+
+    /* 用户提示词的字符数 */
+    @Param({"1000", "100000", "1000000"})
+    public int promptChars;
+
+    private ChatCompletionRequest request;
+    private final Buffer buffer = new Buffer();
+
+    @Setup
+    public void setup() {
+        request = Fixtures.chatRequest(promptChars, false);
+    }
+
+    @Benchmark
+    public long requestBody() throws IOException {
+        OpenAiJson.requestBody(request).writeTo(buffer);
+        long size = buffer.size();
+        buffer.clear();
+        return size;
+    }
+
+    @Benchmark
+    public String string() throws IOException {
+        return OpenAiJson.objectMapper().writeValueAsString(request);
+    }
+}
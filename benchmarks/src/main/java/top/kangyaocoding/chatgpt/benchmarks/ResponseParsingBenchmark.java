@@ -0,0 +1,80 @@
+package top.kangyaocoding.chatgpt.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatChoice;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+import top.kangyaocoding.chatgpt.stream.ChatCompletionStreamReader;
+import top.kangyaocoding.chatgpt.stream.ChatDelta;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description ChatCompletionResponse 与流式数据块的反序列化基准。
+ * streamChunksObjectMapping 对应事件源路径（每个数据块解析为完整对象），streamReader 对应 ChatCompletionStreamReader 的增量解析路径，
+ * 两者处理同一份包含 chunks 个数据块的响应体。
+ * @Date 2024-06-22 09:30
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final ObjectReader READER = OpenAiJson.reader(ChatCompletionResponse.class);
+
+    /* 非流式响应的内容字符数 */
+    @Param({"200", "8000"})
+    public int contentChars;
+
+    /* 流式响应的数据块数 */
+    @Param({"256"})
+    public int chunks;
+
+    private byte[] response;
+    private String[] chunkData;
+    private byte[] streamBody;
+
+    @Setup
+    public void setup() {
+        response = Fixtures.chatResponse(contentChars);
+        chunkData = new String[chunks];
+        for (int i = 0; i < chunks; i++) {
+            chunkData[i] = Fixtures.streamChunk(i);
+        }
+        streamBody = Fixtures.streamBody(chunks);
+    }
+
+    @Benchmark
+    public ChatCompletionResponse completion() throws IOException {
+        return READER.readValue(response);
+    }
+
+    @Benchmark
+    public void streamChunksObjectMapping(Blackhole blackhole) throws IOException {
+        for (String data : chunkData) {
+            ChatCompletionResponse chunk = READER.readValue(data);
+            for (ChatChoice chatChoice : chunk.getChoices()) {
+                blackhole.consume(chatChoice.getDelta().getContent());
+            }
+        }
+    }
+
+    @Benchmark
+    public void streamReader(Blackhole blackhole) throws IOException {
+        new ChatCompletionStreamReader(new Buffer().write(streamBody), new ChatDeltaHandler() {
+            @Override
+            public void onDelta(ChatDelta delta) {
+                blackhole.consume(delta.content().length());
+            }
+        }).read();
+    }
+}
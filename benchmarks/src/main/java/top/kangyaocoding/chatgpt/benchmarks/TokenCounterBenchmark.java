@@ -0,0 +1,55 @@
+package top.kangyaocoding.chatgpt.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.token.TokenCounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description TokenCounter 计数基准，提示词约 8K token。
+ * gpt-4 使用 cl100k_base，gpt-4o 使用 o200k_base；clampMaxTokens 为开启 Configuration.clampMaxTokens 后每次请求的额外开销。
+ * @Date 2024-06-22 09:30
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenCounterBenchmark {
+
+    /* 模型名称，决定使用的编码 */
+    @Param({"gpt-4", "gpt-4o"})
+    public String model;
+
+    /* 提示词的目标 token 数 */
+    @Param({"8192"})
+    public int promptTokens;
+
+    private String prompt;
+    private ChatCompletionRequest request;
+
+    @Setup
+    public void setup() {
+        int chars = promptTokens;
+        while (TokenCounter.countTokens(model, Fixtures.text(chars)) < promptTokens) {
+            chars += 256;
+        }
+        prompt = Fixtures.text(chars);
+        request = Fixtures.chatRequest(chars, false);
+        request.setModel(model);
+    }
+
+    @Benchmark
+    public int countTokens() {
+        return TokenCounter.countTokens(model, prompt);
+    }
+
+    @Benchmark
+    public int clampMaxTokens() {
+        request.setMaxTokens(null);
+        return TokenCounter.clampMaxTokens(request);
+    }
+}
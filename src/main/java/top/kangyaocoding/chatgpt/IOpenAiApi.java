@@ -4,6 +4,7 @@ import io.reactivex.Single;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import retrofit2.Response;
 import retrofit2.http.*;
 import top.kangyaocoding.chatgpt.domain.billing.BillingUsage;
 import top.kangyaocoding.chatgpt.domain.billing.Subscription;
@@ -15,12 +16,12 @@ import top.kangyaocoding.chatgpt.domain.edits.EditResponse;
 import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
 import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
 import top.kangyaocoding.chatgpt.domain.files.DeleteFileResponse;
+import top.kangyaocoding.chatgpt.domain.files.File;
 import top.kangyaocoding.chatgpt.domain.files.UploadFileResponse;
 import top.kangyaocoding.chatgpt.domain.images.ImageRequest;
 import top.kangyaocoding.chatgpt.domain.images.ImageResponse;
 import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
 
-import java.io.File;
 import java.time.LocalDate;
 import java.util.Map;
 
@@ -35,6 +36,7 @@ public interface IOpenAiApi {
 
     // 定义API
     String V_1_CHAT_COMPLETIONS = "v1/chat/completions";
+    String V_1_EMBEDDINGS = "v1/embeddings";
 
     /**
      * 聊天接口。
@@ -66,6 +68,16 @@ public interface IOpenAiApi {
     @POST("v1/images/generations")
     Single<ImageResponse> genImage(@Body ImageRequest request);
 
+    /**
+     * 以原始响应体返回的图像生成接口，用于流式解析 b64_json，不把图片内容转换为字符串。
+     *
+     * @param request 包含图像请求详情的ImageRequest对象。
+     * @return 返回未解析的响应体，调用方负责关闭。
+     */
+    @Streaming
+    @POST("v1/images/generations")
+    Single<ResponseBody> genImageStream(@Body ImageRequest request);
+
     /**
      * 图像编辑接口。
      * 编辑或修改已存在的图像。
@@ -86,7 +98,7 @@ public interface IOpenAiApi {
      * @param request 包含嵌入请求详情的EmbeddingRequest对象。
      * @return 返回EmbeddingResponse对象，包含嵌入向量结果。
      */
-    @POST("v1/embeddings")
+    @POST(V_1_EMBEDDINGS)
     Single<EmbeddingResponse> embeddings(@Body EmbeddingRequest request);
 
     /**
@@ -108,6 +120,16 @@ public interface IOpenAiApi {
     @POST("v1/files")
     Single<UploadFileResponse> uploadFile(@Part MultipartBody.Part file, @Part("purpose") RequestBody purpose);
 
+    /**
+     * 上传文件接口。
+     * 请求体为已编码好的 multipart/form-data，用于流式上传大文件。
+     *
+     * @param multipartBody 包含 purpose 与 file 字段的完整请求体。
+     * @return 返回UploadFileResponse对象，包含上传文件的结果。
+     */
+    @POST("v1/files")
+    Single<UploadFileResponse> uploadFile(@Body RequestBody multipartBody);
+
     /**
      * 删除文件接口。
      * 删除指定ID的文件。
@@ -139,6 +161,17 @@ public interface IOpenAiApi {
     @GET("v1/files/{file_id}/content")
     Single<ResponseBody> retrieveFileContent(@Path("file_id") String fileId);
 
+    /**
+     * 按字节范围检索文件内容接口，用于断点续传与分段并行下载。
+     *
+     * @param fileId 要检索内容的文件的ID。
+     * @param range  Range 请求头，例如 bytes=1024-，为 null 时请求完整内容。
+     * @return 返回完整的响应，调用方根据 206 或 200 判断服务端是否按范围返回。
+     */
+    @Streaming
+    @GET("v1/files/{file_id}/content")
+    Single<Response<ResponseBody>> retrieveFileContent(@Path("file_id") String fileId, @Header("Range") String range);
+
     /**
      * 语音转文字接口。
      *
@@ -0,0 +1,27 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 长音频切分出的一个片段，以样本数据内的字节范围表示。
+ * @Date 2024-06-27 09:35
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class AudioSegment {
+
+    /* 片段序号，从 0 开始 */
+    private final int index;
+    /* 片段在样本数据中的起始字节 */
+    private final long offset;
+    /* 片段的字节数 */
+    private final long length;
+    /* 片段在整段音频中的开始时间（秒） */
+    private final double startSeconds;
+    /* 片段在整段音频中的结束时间（秒） */
+    private final double endSeconds;
+}
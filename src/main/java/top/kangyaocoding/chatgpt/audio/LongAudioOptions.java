@@ -0,0 +1,47 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * @Author K·Herbert
+ * @Description 长音频分段转写的配置项。
+ * 音频按 maxSegmentBytes 与 maxSegmentDuration 中较小的限制切分，切点在每段末尾 silenceSearch 范围内寻找静音；
+ * 片段越短并行度越高，但上下文更少，边界处的识别质量可能下降。
+ * @Date 2024-06-27 09:30
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LongAudioOptions {
+
+    /* 单个片段上传的最大字节数（含 WAV 文件头），接口限制为 25MB，预留 multipart 开销 */
+    @Builder.Default
+    private long maxSegmentBytes = 24L * 1024 * 1024;
+    /* 单个片段的最大时长 */
+    @Builder.Default
+    private Duration maxSegmentDuration = Duration.ofMinutes(10);
+    /* 在片段末尾向前寻找静音切点的范围，最多为片段时长的一半 */
+    @Builder.Default
+    private Duration silenceSearch = Duration.ofSeconds(30);
+    /* 计算音量的分析窗口长度 */
+    @Builder.Default
+    private Duration analysisWindow = Duration.ofMillis(20);
+    /* 静音阈值，窗口均方根相对满幅的比例，0.01 约为 -40 dBFS */
+    @Builder.Default
+    private double silenceThreshold = 0.01;
+    /* 同时转写的最大片段数 */
+    @Builder.Default
+    private int parallelism = 4;
+    /* 作为下一片段 prompt 的上一片段末尾字符数 */
+    @Builder.Default
+    private int promptTailChars = 200;
+    /* 读取音频文件的缓冲区大小 */
+    @Builder.Default
+    private int bufferSize = 64 * 1024;
+}
@@ -0,0 +1,151 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.MultipartBody;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @Author K·Herbert
+ * @Description 长音频分段并行转写。
+ * 音频按静音切分为不超过接口限制的片段，以有界并发逐段上传，结果按片段顺序流式输出，总耗时随并行度而非音频时长增长。
+ * 片段开始请求时若上一片段已完成，则以其末尾文本作为 prompt 保持上下文连贯，否则使用调用方的 prompt；
+ * 因此 parallelism 为 1 时每个片段都能拿到上一段的文本，并行度越高，拿到的比例越低。
+ * @Date 2024-06-27 10:00
+ */
+public class LongAudioTranscriber {
+
+    private final LongAudioOptions options;
+
+    public LongAudioTranscriber(LongAudioOptions options) {
+        if (options.getParallelism() < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.options = options;
+    }
+
+    /**
+     * 分段转写音频。切分在 IO 线程上进行，订阅时开始。
+     *
+     * @param audio  音频数据。
+     * @param prompt 调用方的 prompt，用于第一个片段及拿不到上一片段文本的片段，可以为 null。
+     * @param call   转写单个片段的函数，参数为 WAV 文件部分与本片段的 prompt；需请求 verbose_json 才能得到分段时间戳。
+     * @return 返回按片段顺序输出的转写结果。
+     */
+    public Flowable<SegmentTranscription> transcribe(PcmAudio audio, String prompt, BiFunction<MultipartBody.Part, String, Single<WhisperResponse>> call) {
+        String name = audio.getPath().getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        return Flowable.defer(() -> {
+            List<AudioSegment> segments = SilenceSplitter.split(audio, options);
+            AtomicReferenceArray<String> texts = new AtomicReferenceArray<>(segments.size());
+            return Flowable.fromIterable(segments).concatMapEager(segment -> Single.defer(() -> {
+                int index = segment.getIndex();
+                String previous = index == 0 ? null : texts.get(index - 1);
+                String segmentPrompt = previous == null ? prompt : tail(previous, options.getPromptTailChars());
+                MultipartBody.Part file = MultipartBody.Part.createFormData("file", name + "-" + index + ".wav",
+                        new WavSegmentBody(audio, segment, options.getBufferSize()));
+                return call.apply(file, segmentPrompt).map(response -> {
+                    texts.set(index, response.getText());
+                    return new SegmentTranscription(segment, segmentPrompt, offset(response, segment));
+                });
+            }).toFlowable(), options.getParallelism(), 1);
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * 按顺序拼接各片段的结果，分段重新编号。
+     *
+     * @param transcriptions  按片段顺序排列的转写结果。
+     * @param durationSeconds 整段音频的时长。
+     * @return 返回整段音频的转写结果。
+     */
+    public static WhisperResponse stitch(List<SegmentTranscription> transcriptions, double durationSeconds) {
+        StringBuilder text = new StringBuilder();
+        List<WhisperSegment> segments = new ArrayList<>();
+        WhisperResponse stitched = new WhisperResponse();
+        for (SegmentTranscription transcription : transcriptions) {
+            WhisperResponse response = transcription.getResponse();
+            append(text, response.getText());
+            if (stitched.getLanguage() == null) {
+                stitched.setLanguage(response.getLanguage());
+            }
+            for (WhisperSegment segment : response.getSegments()) {
+                segment.setId(segments.size());
+                segments.add(segment);
+            }
+        }
+        stitched.setText(text.toString());
+        stitched.setDuration(durationSeconds);
+        stitched.setSegments(segments);
+        return stitched;
+    }
+
+    /**
+     * 将片段内的时间戳换算为整段音频的时间；响应不含分段时以整个片段作为一个分段。
+     */
+    private static WhisperResponse offset(WhisperResponse response, AudioSegment segment) {
+        List<WhisperSegment> segments = new ArrayList<>();
+        if (response.getSegments() == null || response.getSegments().isEmpty()) {
+            WhisperSegment whole = new WhisperSegment();
+            whole.setId(0);
+            whole.setStart(segment.getStartSeconds());
+            whole.setEnd(segment.getEndSeconds());
+            whole.setText(response.getText());
+            segments.add(whole);
+        } else {
+            for (WhisperSegment source : response.getSegments()) {
+                WhisperSegment shifted = new WhisperSegment();
+                shifted.setId(source.getId());
+                shifted.setStart(source.getStart() == null ? null : source.getStart() + segment.getStartSeconds());
+                shifted.setEnd(source.getEnd() == null ? null : source.getEnd() + segment.getStartSeconds());
+                shifted.setText(source.getText());
+                segments.add(shifted);
+            }
+        }
+        WhisperResponse shifted = new WhisperResponse();
+        shifted.setText(response.getText());
+        shifted.setLanguage(response.getLanguage());
+        shifted.setDuration(segment.getEndSeconds() - segment.getStartSeconds());
+        shifted.setSegments(segments);
+        return shifted;
+    }
+
+    /**
+     * 拼接片段文本，拉丁文字的单词或句末标点之后紧跟单词时补一个空格；中日韩等文字直接相连。
+     */
+    private static void append(StringBuilder text, String next) {
+        if (next == null || next.isEmpty()) {
+            return;
+        }
+        if (text.length() > 0 && isWordEnd(text.charAt(text.length() - 1)) && isLatinWordChar(next.charAt(0))) {
+            text.append(' ');
+        }
+        text.append(next);
+    }
+
+    private static boolean isWordEnd(char c) {
+        return isLatinWordChar(c) || c == '.' || c == ',' || c == '!' || c == '?' || c == ';' || c == ':';
+    }
+
+    private static boolean isLatinWordChar(char c) {
+        return c < 0x2E80 && Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * 取文本末尾不超过 maxChars 个字符，尽量从单词边界开始。
+     */
+    private static String tail(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int start = text.length() - maxChars;
+        int space = text.indexOf(' ', start);
+        return space == -1 || space == text.length() - 1 ? text.substring(start) : text.substring(space + 1);
+    }
+}
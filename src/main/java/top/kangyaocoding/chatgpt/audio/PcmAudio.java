@@ -0,0 +1,151 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @Author K·Herbert
+ * @Description 本地文件中的 PCM 音频数据，记录格式与样本数据在文件中的字节范围。
+ * 分段上传时按字节范围直接从文件读取，不把音频载入内存；流式输入需先写入本地文件。
+ * @Date 2024-06-27 09:25
+ */
+@Getter
+@ToString
+public class PcmAudio {
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /* 音频文件 */
+    private final Path path;
+    /* 样本格式 */
+    private final PcmFormat format;
+    /* 样本数据在文件中的起始位置 */
+    private final long dataOffset;
+    /* 样本数据的字节数，已按帧对齐 */
+    private final long dataLength;
+
+    private PcmAudio(Path path, PcmFormat format, long dataOffset, long dataLength) {
+        if (format.getChannels() < 1 || format.getSampleRate() < 1) {
+            throw new IllegalArgumentException("Unsupported PCM format " + format);
+        }
+        int bits = format.getBitsPerSample();
+        if (format.isFloatingPoint() ? bits != 32 : bits != 8 && bits != 16 && bits != 24 && bits != 32) {
+            throw new IllegalArgumentException("Unsupported PCM format " + format);
+        }
+        this.path = path;
+        this.format = format;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength - dataLength % format.frameSize();
+    }
+
+    /**
+     * 解析 WAV 文件头，支持 PCM、IEEE 浮点与 WAVE_FORMAT_EXTENSIBLE 封装的这两种格式。
+     *
+     * @param path WAV 文件路径。
+     * @return 返回音频数据描述。
+     * @throws IOException 文件不是受支持的 WAV 文件时抛出。
+     */
+    public static PcmAudio wav(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = read(channel, 0, 12);
+            if (header.getInt(0) != fourCc("RIFF") || header.getInt(8) != fourCc("WAVE")) {
+                throw new IOException(path + " is not a RIFF/WAVE file");
+            }
+            PcmFormat format = null;
+            long position = 12;
+            while (position + 8 <= size) {
+                ByteBuffer chunk = read(channel, position, 8);
+                int id = chunk.getInt(0);
+                long length = Integer.toUnsignedLong(chunk.getInt(4));
+                long body = position + 8;
+                if (id == fourCc("fmt ")) {
+                    format = parseFormat(read(channel, body, (int) Math.min(length, 40)), path);
+                } else if (id == fourCc("data")) {
+                    if (format == null) {
+                        throw new IOException(path + " has no fmt chunk before the data chunk");
+                    }
+                    // 流式写出的 WAV 常把长度写成 0 或 0xFFFFFFFF，此时以文件实际长度为准
+                    long available = size - body;
+                    return new PcmAudio(path, format, body, length == 0 || length > available ? available : length);
+                }
+                position = body + length + (length & 1);
+            }
+            throw new IOException(path + " has no data chunk");
+        }
+    }
+
+    /**
+     * 以无文件头的原始 PCM 文件作为音频数据。
+     *
+     * @param path   PCM 文件路径。
+     * @param format 样本格式。
+     * @return 返回音频数据描述。
+     * @throws IOException 读取文件大小失败时抛出。
+     */
+    public static PcmAudio raw(Path path, PcmFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new PcmAudio(path, format, 0, channel.size());
+        }
+    }
+
+    /**
+     * @return 返回音频的总帧数。
+     */
+    public long frames() {
+        return dataLength / format.frameSize();
+    }
+
+    /**
+     * @return 返回音频时长（秒）。
+     */
+    public double durationSeconds() {
+        return (double) frames() / format.getSampleRate();
+    }
+
+    private static PcmFormat parseFormat(ByteBuffer fmt, Path path) throws IOException {
+        if (fmt.limit() < 16) {
+            throw new IOException(path + " has a truncated fmt chunk");
+        }
+        int tag = fmt.getShort(0) & 0xFFFF;
+        if (tag == WAVE_FORMAT_EXTENSIBLE && fmt.limit() >= 26) {
+            // SubFormat GUID 的前两个字节即实际的格式标签
+            tag = fmt.getShort(24) & 0xFFFF;
+        }
+        if (tag != WAVE_FORMAT_PCM && tag != WAVE_FORMAT_IEEE_FLOAT) {
+            throw new IOException(path + " uses unsupported WAV format tag " + tag + ", only linear PCM and IEEE float are supported");
+        }
+        int channels = fmt.getShort(2) & 0xFFFF;
+        int sampleRate = fmt.getInt(4);
+        int bitsPerSample = fmt.getShort(14) & 0xFFFF;
+        return new PcmFormat(sampleRate, channels, bitsPerSample, tag == WAVE_FORMAT_IEEE_FLOAT);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Unexpected end of WAV header");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 按小端序读取时四字符标识对应的整数。
+     */
+    private static int fourCc(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+}
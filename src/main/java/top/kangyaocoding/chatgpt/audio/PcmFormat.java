@@ -0,0 +1,47 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 线性 PCM 音频格式，样本按小端序交错存储；整数样本 8 位为无符号，其余为有符号。
+ * @Date 2024-06-27 09:20
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class PcmFormat {
+
+    /* 采样率 */
+    private final int sampleRate;
+    /* 声道数 */
+    private final int channels;
+    /* 每个样本的位数：8、16、24 或 32 */
+    private final int bitsPerSample;
+    /* 是否为 32 位浮点样本 */
+    private final boolean floatingPoint;
+
+    /**
+     * 16 位有符号整数样本，语音识别最常用的格式。
+     */
+    public static PcmFormat pcm16(int sampleRate, int channels) {
+        return new PcmFormat(sampleRate, channels, 16, false);
+    }
+
+    public int bytesPerSample() {
+        return bitsPerSample / 8;
+    }
+
+    /**
+     * @return 返回一帧（所有声道各一个样本）的字节数。
+     */
+    public int frameSize() {
+        return bytesPerSample() * channels;
+    }
+
+    public long bytesPerSecond() {
+        return (long) frameSize() * sampleRate;
+    }
+}
@@ -0,0 +1,24 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+
+/**
+ * @Author K·Herbert
+ * @Description 单个片段的转写结果，response 中的分段时间戳已换算为整段音频的时间。
+ * @Date 2024-06-27 09:40
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class SegmentTranscription {
+
+    /* 对应的音频片段 */
+    private final AudioSegment segment;
+    /* 本片段请求使用的 prompt，可能为 null */
+    private final String prompt;
+    /* 转写结果 */
+    private final WhisperResponse response;
+}
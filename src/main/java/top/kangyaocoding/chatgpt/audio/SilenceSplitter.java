@@ -0,0 +1,136 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author K·Herbert
+ * @Description 按静音边界切分 PCM 音频。
+ * 先顺序读取一遍样本，按分析窗口计算均方根音量；每个片段在达到长度上限前的搜索范围内，
+ * 选择最靠后的低于静音阈值的窗口中点作为切点，没有静音时选择音量最低的窗口，避免切断词语。
+ * @Date 2024-06-27 09:50
+ */
+public final class SilenceSplitter {
+
+    private SilenceSplitter() {
+    }
+
+    /**
+     * 切分音频。
+     *
+     * @param audio   音频数据。
+     * @param options 切分配置。
+     * @return 返回按时间顺序排列、首尾相接的片段。
+     * @throws IOException 读取音频失败时抛出。
+     */
+    public static List<AudioSegment> split(PcmAudio audio, LongAudioOptions options) throws IOException {
+        PcmFormat format = audio.getFormat();
+        int rate = format.getSampleRate();
+        long totalFrames = audio.frames();
+        long maxFrames = Math.min(options.getMaxSegmentDuration().toMillis() * rate / 1000,
+                (options.getMaxSegmentBytes() - WavSegmentBody.HEADER_SIZE) / format.frameSize());
+        if (maxFrames < 1) {
+            throw new IllegalArgumentException("maxSegmentBytes and maxSegmentDuration must allow at least one frame per segment");
+        }
+        List<AudioSegment> segments = new ArrayList<>();
+        if (totalFrames <= maxFrames) {
+            segments.add(segment(0, 0, totalFrames, format));
+            return segments;
+        }
+        int windowFrames = (int) Math.max(1, options.getAnalysisWindow().toNanos() * rate / 1_000_000_000L);
+        float[] energy = energy(audio, windowFrames, options.getBufferSize());
+        long searchFrames = Math.min(options.getSilenceSearch().toMillis() * rate / 1000, maxFrames / 2);
+        long start = 0;
+        while (totalFrames - start > maxFrames) {
+            long limit = start + maxFrames;
+            int first = (int) ((limit - searchFrames + windowFrames - 1) / windowFrames);
+            int last = (int) (limit / windowFrames) - 1;
+            int best = -1;
+            for (int window = last; window >= first; window--) {
+                if (energy[window] < options.getSilenceThreshold()) {
+                    best = window;
+                    break;
+                }
+                if (best == -1 || energy[window] < energy[best]) {
+                    best = window;
+                }
+            }
+            long cut = best == -1 ? limit : (long) best * windowFrames + windowFrames / 2;
+            if (cut <= start) {
+                cut = limit;
+            }
+            segments.add(segment(segments.size(), start, cut, format));
+            start = cut;
+        }
+        segments.add(segment(segments.size(), start, totalFrames, format));
+        return segments;
+    }
+
+    private static AudioSegment segment(int index, long startFrame, long endFrame, PcmFormat format) {
+        return new AudioSegment(index, startFrame * format.frameSize(), (endFrame - startFrame) * format.frameSize(),
+                (double) startFrame / format.getSampleRate(), (double) endFrame / format.getSampleRate());
+    }
+
+    /**
+     * 计算每个分析窗口内所有声道样本的均方根，取值为相对满幅的比例。
+     */
+    private static float[] energy(PcmAudio audio, int windowFrames, int bufferSize) throws IOException {
+        PcmFormat format = audio.getFormat();
+        int bytesPerSample = format.bytesPerSample();
+        long samplesPerWindow = (long) windowFrames * format.getChannels();
+        float[] energy = new float[(int) ((audio.frames() + windowFrames - 1) / windowFrames)];
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(bufferSize, bytesPerSample)).order(ByteOrder.LITTLE_ENDIAN);
+        long position = audio.getDataOffset();
+        long end = position + audio.getDataLength();
+        double sum = 0;
+        long count = 0;
+        int window = 0;
+        try (FileChannel channel = FileChannel.open(audio.getPath(), StandardOpenOption.READ)) {
+            while (position < end) {
+                buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + end - position));
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new EOFException(audio.getPath() + " is shorter than its declared data length");
+                }
+                position += read;
+                buffer.flip();
+                while (buffer.remaining() >= bytesPerSample) {
+                    double sample = sample(buffer, format);
+                    sum += sample * sample;
+                    if (++count == samplesPerWindow) {
+                        energy[window++] = (float) Math.sqrt(sum / count);
+                        sum = 0;
+                        count = 0;
+                    }
+                }
+                buffer.compact();
+            }
+        }
+        if (count > 0) {
+            energy[window] = (float) Math.sqrt(sum / count);
+        }
+        return energy;
+    }
+
+    private static double sample(ByteBuffer buffer, PcmFormat format) {
+        if (format.isFloatingPoint()) {
+            return buffer.getFloat();
+        }
+        switch (format.getBitsPerSample()) {
+            case 8:
+                return ((buffer.get() & 0xFF) - 128) / 128.0;
+            case 16:
+                return buffer.getShort() / 32768.0;
+            case 24:
+                return ((buffer.get() & 0xFF) | (buffer.get() & 0xFF) << 8 | buffer.get() << 16) / 8388608.0;
+            default:
+                return buffer.getInt() / 2147483648.0;
+        }
+    }
+}
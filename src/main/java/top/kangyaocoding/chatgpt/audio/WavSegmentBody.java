@@ -0,0 +1,88 @@
+package top.kangyaocoding.chatgpt.audio;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @Author K·Herbert
+ * @Description 以 WAV 文件形式上传音频片段的请求体：先写 44 字节的文件头，再按字节范围从源文件读取样本数据。
+ * 每次写出都重新打开文件，请求体可以重发。
+ * @Date 2024-06-27 09:45
+ */
+class WavSegmentBody extends RequestBody {
+
+    /* 标准 WAV 文件头长度 */
+    static final int HEADER_SIZE = 44;
+    private static final MediaType AUDIO_WAV = MediaType.get("audio/wav");
+
+    private final PcmAudio audio;
+    private final AudioSegment segment;
+    private final int bufferSize;
+
+    WavSegmentBody(PcmAudio audio, AudioSegment segment, int bufferSize) {
+        this.audio = audio;
+        this.segment = segment;
+        this.bufferSize = bufferSize;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return AUDIO_WAV;
+    }
+
+    @Override
+    public long contentLength() {
+        return HEADER_SIZE + segment.getLength();
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        sink.write(header());
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        long position = audio.getDataOffset() + segment.getOffset();
+        long end = position + segment.getLength();
+        try (FileChannel channel = FileChannel.open(audio.getPath(), StandardOpenOption.READ)) {
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new EOFException(audio.getPath() + " ended before segment " + segment.getIndex() + " was fully read");
+                }
+                position += read;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer header() {
+        PcmFormat format = audio.getFormat();
+        int dataLength = (int) segment.getLength();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F').putInt(36 + dataLength)
+                .put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E')
+                .put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ').putInt(16)
+                .putShort((short) (format.isFloatingPoint() ? 3 : 1))
+                .putShort((short) format.getChannels())
+                .putInt(format.getSampleRate())
+                .putInt((int) format.bytesPerSecond())
+                .putShort((short) format.frameSize())
+                .putShort((short) format.getBitsPerSample())
+                .put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a').putInt(dataLength);
+        header.flip();
+        return header;
+    }
+}
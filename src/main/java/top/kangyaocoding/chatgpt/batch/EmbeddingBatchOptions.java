@@ -0,0 +1,44 @@
+package top.kangyaocoding.chatgpt.batch;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+
+import java.time.Duration;
+import java.util.function.ToIntFunction;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量微批处理的配置项。
+ * 批次在达到最大输入数、预估 token 上限或最长等待时间三者之一时发送。
+ * @Date 2024-06-11 10:00
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingBatchOptions {
+
+    /* 使用的模型 */
+    @Builder.Default
+    private String model = EmbeddingRequest.Model.TEXT_EMBEDDING_ADA_002.getCode();
+    /* 输出向量的维度，可以为空 */
+    private Integer dimensions;
+    /* 用户标识，可以为空 */
+    private String user;
+    /* 单个批次的最大输入数（去重后） */
+    @Builder.Default
+    private int maxBatchSize = 256;
+    /* 单个批次的预估 token 上限 */
+    @Builder.Default
+    private int maxBatchTokens = 100_000;
+    /* 批次中第一个输入的最长等待时间 */
+    @Builder.Default
+    private Duration maxLinger = Duration.ofMillis(5);
+    /* token 预估函数，默认按每 4 个字符 1 个 token 估算 */
+    @Builder.Default
+    private ToIntFunction<String> tokenEstimator = input -> input.length() / 4 + 1;
+
+}
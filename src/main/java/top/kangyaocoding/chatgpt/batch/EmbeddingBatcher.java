@@ -0,0 +1,234 @@
+package top.kangyaocoding.chatgpt.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+import top.kangyaocoding.chatgpt.domain.embeddings.Item;
+import top.kangyaocoding.chatgpt.session.AsyncOpenAiSession;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量请求的微批处理器。
+ * 多个线程并发提交的单条输入会被合并为一个 EmbeddingRequest，批次内相同的输入只发送一次，
+ * 响应中的 Item 按 index 分发回各调用方的 CompletableFuture。
+ * 批次在达到最大输入数或预估 token 上限时立即发送，否则在第一个输入等待 maxLinger 后发送。
+ * 请求通过异步会话发送，等待响应期间不占用调用线程。
+ * @Date 2024-06-11 10:00
+ */
+@Slf4j
+public class EmbeddingBatcher implements AutoCloseable {
+
+    /* 异步会话 */
+    private final AsyncOpenAiSession asyncOpenAiSession;
+    /* 批处理配置 */
+    private final EmbeddingBatchOptions options;
+    /* 负责 linger 定时发送的调度线程 */
+    private final ScheduledExecutorService scheduler;
+    /* 保护当前批次的锁，不使用 synchronized，避免在虚拟线程上固定载体线程 */
+    private final ReentrantLock lock = new ReentrantLock();
+    /* 正在收集的批次 */
+    private Batch current;
+    /* 是否已关闭 */
+    private boolean closed;
+
+    /**
+     * 创建微批处理器。
+     *
+     * @param asyncOpenAiSession 异步会话，用于发送合并后的请求。
+     * @param options            批处理配置。
+     */
+    public EmbeddingBatcher(AsyncOpenAiSession asyncOpenAiSession, EmbeddingBatchOptions options) {
+        this.asyncOpenAiSession = asyncOpenAiSession;
+        this.options = options;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交单条输入，返回的向量由同批次中相同输入的调用方共享，请勿修改。
+     *
+     * @param input 需要向量化的文本。
+     * @return 返回在批次响应到达后完成的向量。
+     */
+    public CompletableFuture<float[]> embed(String input) {
+        Objects.requireNonNull(input, "input");
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        int tokens = options.getTokenEstimator().applyAsInt(input);
+        Batch ready = null;
+        Batch overflow = null;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("EmbeddingBatcher is closed");
+            }
+            if (current != null && !current.contains(input) && current.tokens + tokens > options.getMaxBatchTokens()) {
+                // 加入后会超过 token 上限，先发送当前批次
+                overflow = detach();
+            }
+            if (current == null) {
+                current = new Batch();
+                Batch batch = current;
+                batch.timer = scheduler.schedule(() -> flush(batch), options.getMaxLinger().toNanos(), TimeUnit.NANOSECONDS);
+            }
+            current.add(input, tokens, future);
+            if (current.size() >= options.getMaxBatchSize() || current.tokens >= options.getMaxBatchTokens()) {
+                ready = detach();
+            }
+        } finally {
+            lock.unlock();
+        }
+        send(overflow);
+        send(ready);
+        return future;
+    }
+
+    /**
+     * 立即发送正在收集的批次。
+     */
+    public void flush() {
+        Batch batch;
+        lock.lock();
+        try {
+            batch = detach();
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+    }
+
+    /**
+     * 发送剩余的批次并停止调度线程，之后提交的输入将被拒绝。
+     */
+    @Override
+    public void close() {
+        Batch batch;
+        lock.lock();
+        try {
+            closed = true;
+            batch = detach();
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+        scheduler.shutdown();
+    }
+
+    /**
+     * 定时任务触发时，仅当批次仍在收集中才发送。
+     */
+    private void flush(Batch batch) {
+        lock.lock();
+        try {
+            if (current != batch) {
+                return;
+            }
+            current = null;
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+    }
+
+    /**
+     * 取出当前批次，需在持有锁时调用。
+     */
+    private Batch detach() {
+        Batch batch = current;
+        current = null;
+        if (batch != null) {
+            batch.timer.cancel(false);
+        }
+        return batch;
+    }
+
+    private void send(Batch batch) {
+        if (batch == null) {
+            return;
+        }
+        List<String> inputs = new ArrayList<>(batch.waiters.keySet());
+        EmbeddingRequest embeddingRequest = EmbeddingRequest.builder()
+                .model(options.getModel())
+                .input(inputs)
+                .dimensions(options.getDimensions())
+                .build();
+        embeddingRequest.setUser(options.getUser());
+        CompletableFuture<EmbeddingResponse> response;
+        try {
+            response = asyncOpenAiSession.embeddings(embeddingRequest);
+        } catch (Exception e) {
+            batch.fail(e);
+            return;
+        }
+        response.whenComplete((embeddingResponse, throwable) -> {
+            if (throwable != null) {
+                batch.fail(throwable);
+                return;
+            }
+            batch.complete(inputs, embeddingResponse);
+        });
+    }
+
+    /**
+     * 正在收集的批次，按输入文本去重并保持提交顺序。
+     */
+    private static class Batch {
+        /* 输入文本与等待该结果的调用方 */
+        private final Map<String, List<CompletableFuture<float[]>>> waiters = new LinkedHashMap<>();
+        /* 批次的预估 token 数 */
+        private int tokens;
+        /* linger 定时任务 */
+        private ScheduledFuture<?> timer;
+
+        boolean contains(String input) {
+            return waiters.containsKey(input);
+        }
+
+        int size() {
+            return waiters.size();
+        }
+
+        void add(String input, int inputTokens, CompletableFuture<float[]> future) {
+            List<CompletableFuture<float[]>> futures = waiters.get(input);
+            if (futures == null) {
+                futures = new ArrayList<>(1);
+                waiters.put(input, futures);
+                tokens += inputTokens;
+            }
+            futures.add(future);
+        }
+
+        void complete(List<String> inputs, EmbeddingResponse embeddingResponse) {
+            float[][] embeddings = new float[inputs.size()][];
+            if (embeddingResponse != null && embeddingResponse.getData() != null) {
+                for (Item item : embeddingResponse.getData()) {
+                    Integer index = item.getIndex();
+                    if (index != null && index >= 0 && index < embeddings.length) {
+                        embeddings[index] = item.getEmbedding();
+                    }
+                }
+            }
+            for (int i = 0; i < embeddings.length; i++) {
+                List<CompletableFuture<float[]>> futures = waiters.get(inputs.get(i));
+                if (embeddings[i] == null) {
+                    IllegalStateException e = new IllegalStateException("Embedding response is missing index " + i);
+                    futures.forEach(future -> future.completeExceptionally(e));
+                } else {
+                    float[] embedding = embeddings[i];
+                    futures.forEach(future -> future.complete(embedding));
+                }
+            }
+        }
+
+        void fail(Throwable throwable) {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            waiters.values().forEach(futures -> futures.forEach(future -> future.completeExceptionally(cause)));
+        }
+    }
+}
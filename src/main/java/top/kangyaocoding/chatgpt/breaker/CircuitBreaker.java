@@ -0,0 +1,175 @@
+package top.kangyaocoding.chatgpt.breaker;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 单个主机（或接口）的熔断器。
+ * 关闭状态下在最近 windowSize 次调用的环形窗口内统计失败率与慢调用率，任一达到阈值即打开；
+ * 打开 openDuration 后进入半开状态，只放行 halfOpenProbes 个探测请求，探测结果未超过阈值时关闭，否则重新打开。
+ * @Date 2024-06-18 10:00
+ */
+public class CircuitBreaker {
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String key;
+    private final CircuitBreakerPolicy policy;
+    private final CircuitBreakerListener listener;
+    private final long slowCallNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    /* 调用结果的环形窗口 */
+    private final byte[] outcomes;
+    private int size;
+    private int next;
+    private int failures;
+    private int slowCalls;
+    private volatile CircuitState state = CircuitState.CLOSED;
+    private long openUntil;
+    /* 半开状态已放行的探测数与已完成的探测数 */
+    private int probesIssued;
+    private int probesCompleted;
+    private int probeFailures;
+    private int probeSlowCalls;
+
+    CircuitBreaker(String key, CircuitBreakerPolicy policy, CircuitBreakerListener listener) {
+        this.key = key;
+        this.policy = policy;
+        this.listener = listener;
+        this.slowCallNanos = policy.getSlowCallDuration().toNanos();
+        this.outcomes = new byte[policy.getWindowSize()];
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * 请求发送前检查是否放行。
+     *
+     * @return 放行时返回 true。
+     */
+    public boolean tryAcquire() {
+        if (state == CircuitState.CLOSED) {
+            return true;
+        }
+        CircuitState from = null;
+        boolean permitted;
+        lock.lock();
+        try {
+            if (state == CircuitState.OPEN && System.nanoTime() - openUntil >= 0) {
+                from = transition(CircuitState.HALF_OPEN);
+            }
+            permitted = state == CircuitState.CLOSED
+                    || (state == CircuitState.HALF_OPEN && probesIssued < policy.getHalfOpenProbes());
+            if (permitted && state == CircuitState.HALF_OPEN) {
+                probesIssued++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        notify(from, CircuitState.HALF_OPEN);
+        return permitted;
+    }
+
+    /**
+     * 记录调用结果。
+     *
+     * @param success       是否成功。
+     * @param durationNanos 从发送到收到响应头的耗时。
+     */
+    public void record(boolean success, long durationNanos) {
+        byte outcome = (byte) ((success ? 0 : FAILURE) | (durationNanos >= slowCallNanos ? SLOW : 0));
+        CircuitState from = null;
+        CircuitState to = null;
+        lock.lock();
+        try {
+            if (state == CircuitState.HALF_OPEN) {
+                probesCompleted++;
+                probeFailures += outcome & FAILURE;
+                probeSlowCalls += (outcome & SLOW) >> 1;
+                if (probesCompleted >= policy.getHalfOpenProbes()) {
+                    to = exceeds(probeFailures, probeSlowCalls, probesCompleted) ? CircuitState.OPEN : CircuitState.CLOSED;
+                    from = transition(to);
+                }
+            } else if (state == CircuitState.CLOSED) {
+                if (size == outcomes.length) {
+                    byte evicted = outcomes[next];
+                    failures -= evicted & FAILURE;
+                    slowCalls -= (evicted & SLOW) >> 1;
+                } else {
+                    size++;
+                }
+                outcomes[next] = outcome;
+                next = (next + 1) % outcomes.length;
+                failures += outcome & FAILURE;
+                slowCalls += (outcome & SLOW) >> 1;
+                if (size >= policy.getMinCalls() && exceeds(failures, slowCalls, size)) {
+                    to = CircuitState.OPEN;
+                    from = transition(to);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        notify(from, to);
+    }
+
+    /**
+     * 放弃一次已放行但未得到结果的调用，例如被调用方取消的请求，不计入统计。
+     * 半开状态下归还该调用占用的探测名额，使其它请求可以继续探测。
+     */
+    public void release() {
+        if (state != CircuitState.HALF_OPEN) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == CircuitState.HALF_OPEN && probesIssued > probesCompleted) {
+                probesIssued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean exceeds(int failureCount, int slowCount, int total) {
+        return failureCount >= policy.getFailureRateThreshold() * total
+                || slowCount >= policy.getSlowCallRateThreshold() * total;
+    }
+
+    /**
+     * 切换状态并重置对应的统计，需在持有锁时调用。
+     *
+     * @return 返回切换前的状态。
+     */
+    private CircuitState transition(CircuitState to) {
+        CircuitState from = state;
+        state = to;
+        if (to == CircuitState.OPEN) {
+            openUntil = System.nanoTime() + policy.getOpenDuration().toNanos();
+        } else if (to == CircuitState.HALF_OPEN) {
+            probesIssued = 0;
+            probesCompleted = 0;
+            probeFailures = 0;
+            probeSlowCalls = 0;
+        } else {
+            size = 0;
+            next = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+        return from;
+    }
+
+    private void notify(CircuitState from, CircuitState to) {
+        if (from != null && listener != null && from != to) {
+            listener.onStateChange(key, from, to);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package top.kangyaocoding.chatgpt.breaker;
+
+/**
+ * @Author K·Herbert
+ * @Description 熔断器状态变化监听器，在触发状态变化的线程上回调，实现应尽量轻量。
+ * @Date 2024-06-18 10:00
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * 状态变化时回调。
+     *
+     * @param key  熔断器的键，为主机或主机与接口路径。
+     * @param from 变化前的状态。
+     * @param to   变化后的状态。
+     */
+    void onStateChange(String key, CircuitState from, CircuitState to);
+
+}
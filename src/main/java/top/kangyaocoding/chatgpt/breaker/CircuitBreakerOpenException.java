@@ -0,0 +1,17 @@
+package top.kangyaocoding.chatgpt.breaker;
+
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 熔断器处于打开状态、请求被直接拒绝时抛出的异常。
+ * @Date 2024-06-18 10:00
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String key) {
+        super("Circuit breaker is open for " + key);
+    }
+}
@@ -0,0 +1,45 @@
+package top.kangyaocoding.chatgpt.breaker;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * @Author K·Herbert
+ * @Description 熔断策略配置，统计窗口为最近 windowSize 次调用。
+ * @Date 2024-06-18 10:00
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CircuitBreakerPolicy {
+
+    /* 滑动窗口的调用次数 */
+    @Builder.Default
+    private int windowSize = 100;
+    /* 开始计算比例所需的最少调用次数 */
+    @Builder.Default
+    private int minCalls = 20;
+    /* 失败率阈值，达到时熔断 */
+    @Builder.Default
+    private double failureRateThreshold = 0.5;
+    /* 慢调用率阈值，达到时熔断 */
+    @Builder.Default
+    private double slowCallRateThreshold = 0.8;
+    /* 超过该时长才收到响应头的调用记为慢调用 */
+    @Builder.Default
+    private Duration slowCallDuration = Duration.ofSeconds(30);
+    /* 熔断持续时间，结束后进入半开状态 */
+    @Builder.Default
+    private Duration openDuration = Duration.ofSeconds(30);
+    /* 半开状态放行的探测请求数 */
+    @Builder.Default
+    private int halfOpenProbes = 5;
+    /* 是否按主机与接口路径分别熔断，默认只按主机 */
+    private boolean perEndpoint;
+
+}
@@ -0,0 +1,68 @@
+package top.kangyaocoding.chatgpt.breaker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @Author K·Herbert
+ * @Description 熔断器注册表，按主机（或主机与接口路径）创建熔断器，并向监听器广播状态变化。
+ * @Date 2024-06-18 10:00
+ */
+@Slf4j
+public class CircuitBreakerRegistry {
+
+    private final CircuitBreakerPolicy policy;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+    /* 分发给全部监听器，并记录日志 */
+    private final CircuitBreakerListener dispatcher = (key, from, to) -> {
+        log.warn("熔断器 {} 状态变化: {} -> {}", key, from, to);
+        for (CircuitBreakerListener listener : listeners) {
+            listener.onStateChange(key, from, to);
+        }
+    };
+
+    public CircuitBreakerRegistry(CircuitBreakerPolicy policy) {
+        this.policy = policy;
+    }
+
+    public CircuitBreakerPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * 添加状态变化监听器。
+     *
+     * @param listener 监听器。
+     */
+    public void addListener(CircuitBreakerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 获取或创建熔断器。
+     *
+     * @param key 主机或主机与接口路径。
+     * @return 返回对应的熔断器。
+     */
+    public CircuitBreaker circuitBreaker(String key) {
+        return breakers.computeIfAbsent(key, k -> new CircuitBreaker(k, policy, dispatcher));
+    }
+
+    /**
+     * 获取全部熔断器的当前状态。
+     *
+     * @return 返回键到状态的快照。
+     */
+    public Map<String, CircuitState> states() {
+        Map<String, CircuitState> states = new LinkedHashMap<>();
+        breakers.forEach((key, breaker) -> states.put(key, breaker.getState()));
+        return states;
+    }
+}
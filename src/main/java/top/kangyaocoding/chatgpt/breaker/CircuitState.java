@@ -0,0 +1,16 @@
+package top.kangyaocoding.chatgpt.breaker;
+
+/**
+ * @Author K·Herbert
+ * @Description 熔断器状态。
+ * @Date 2024-06-18 10:00
+ */
+public enum CircuitState {
+    /* 正常放行，统计失败率与慢调用率 */
+    CLOSED,
+    /* 熔断中，请求直接失败 */
+    OPEN,
+    /* 半开，只放行有限的探测请求 */
+    HALF_OPEN,
+    ;
+}
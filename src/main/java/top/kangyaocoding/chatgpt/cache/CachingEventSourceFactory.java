@@ -0,0 +1,263 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.*;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.kangyaocoding.chatgpt.converter.JsonRequestBody;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatChoice;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * @Author K·Herbert
+ * @Description 带聊天响应缓存的事件源工厂。
+ * 命中时在执行器上把缓存的响应拆分为合成的 chat.completion.chunk 事件依次回调，最后发送 [DONE]；
+ * 未命中时照常发起请求，并在收到 [DONE] 后把拼接的完整响应写入缓存。非聊天请求直接交给原工厂。
+ * @Date 2024-06-19 09:30
+ */
+class CachingEventSourceFactory implements EventSource.Factory {
+
+    /* 流式响应的结束数据 */
+    private static final String DONE_DATA = "[DONE]";
+    private static final ObjectReader READER = OpenAiJson.reader(ChatCompletionResponse.class);
+
+    private final ChatCompletionCache cache;
+    private final EventSource.Factory delegate;
+    private final Executor executor;
+
+    CachingEventSourceFactory(ChatCompletionCache cache, EventSource.Factory delegate, Executor executor) {
+        this.cache = cache;
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @NotNull
+    @Override
+    public EventSource newEventSource(@NotNull Request request, @NotNull EventSourceListener listener) {
+        RequestBody body = request.body();
+        if (!(body instanceof JsonRequestBody) || !(((JsonRequestBody) body).value() instanceof ChatCompletionRequest)) {
+            return delegate.newEventSource(request, listener);
+        }
+        String key = cache.key(request.url(), request.header("apiKey"), (ChatCompletionRequest) ((JsonRequestBody) body).value());
+        if (key == null) {
+            return delegate.newEventSource(request, listener);
+        }
+        ChatCompletionResponse cached = cache.get(key);
+        if (cached == null) {
+            return delegate.newEventSource(request, new RecordingListener(key, listener));
+        }
+        ReplayEventSource eventSource = new ReplayEventSource(request, listener, chunks(cached));
+        executor.execute(eventSource);
+        return eventSource;
+    }
+
+    /**
+     * 将完整响应拆分为增量数据：首个数据块携带角色，内容按 replayChunkChars 切分，最后一个数据块携带结束原因。
+     */
+    private List<String> chunks(ChatCompletionResponse response) {
+        int chunkChars = Math.max(1, cache.getOptions().getReplayChunkChars());
+        List<String> chunks = new ArrayList<>();
+        for (ChatChoice chatChoice : response.getChoices()) {
+            Message message = chatChoice.getMessage();
+            String content = message.getContent() == null ? "" : message.getContent();
+            int start = 0;
+            do {
+                int end = Math.min(content.length(), start + chunkChars);
+                // 不拆分代理对
+                if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+                    end--;
+                }
+                ObjectNode delta = OpenAiJson.objectMapper().createObjectNode();
+                if (start == 0) {
+                    delta.put("role", message.getRole());
+                }
+                delta.put("content", content.substring(start, end));
+                chunks.add(chunk(response, chatChoice.getIndex(), delta, null));
+                start = end;
+            } while (start < content.length());
+            chunks.add(chunk(response, chatChoice.getIndex(), OpenAiJson.objectMapper().createObjectNode(), chatChoice.getFinishReason()));
+        }
+        return chunks;
+    }
+
+    private static String chunk(ChatCompletionResponse response, long index, ObjectNode delta, String finishReason) {
+        ObjectNode chunk = OpenAiJson.objectMapper().createObjectNode();
+        chunk.put("id", response.getId());
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", response.getCreated());
+        chunk.put("model", response.getModel());
+        chunk.put("system_fingerprint", response.getSystemFingerprint());
+        ArrayNode choices = chunk.putArray("choices");
+        ObjectNode choice = choices.addObject();
+        choice.put("index", index);
+        choice.set("delta", delta);
+        choice.put("finish_reason", finishReason);
+        return chunk.toString();
+    }
+
+    /**
+     * 回放缓存响应的合成事件源。
+     */
+    private static final class ReplayEventSource implements EventSource, Runnable {
+
+        private final Request request;
+        private final EventSourceListener listener;
+        private final List<String> chunks;
+        private volatile boolean canceled;
+
+        private ReplayEventSource(Request request, EventSourceListener listener, List<String> chunks) {
+            this.request = request;
+            this.listener = listener;
+            this.chunks = chunks;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public void run() {
+            Response response = new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .header("Content-Type", "text/event-stream")
+                    .body(ResponseBody.create("", MediaType.get("text/event-stream")))
+                    .build();
+            try {
+                listener.onOpen(this, response);
+                for (String chunk : chunks) {
+                    if (canceled) {
+                        return;
+                    }
+                    listener.onEvent(this, null, null, chunk);
+                }
+                if (!canceled) {
+                    listener.onEvent(this, null, null, DONE_DATA);
+                    listener.onClosed(this);
+                }
+            } catch (RuntimeException e) {
+                listener.onFailure(this, e, response);
+            }
+        }
+    }
+
+    /**
+     * 记录流式结果的监听器，事件原样转发给调用方。
+     */
+    private class RecordingListener extends EventSourceListener {
+
+        private final String key;
+        private final EventSourceListener listener;
+        private final Map<Long, ChatChoice> choices = new TreeMap<>();
+        private final Map<Long, StringBuilder> contents = new TreeMap<>();
+        private ChatCompletionResponse first;
+        /* 某个数据块无法解析时放弃记录 */
+        private boolean broken;
+
+        private RecordingListener(String key, EventSourceListener listener) {
+            this.key = key;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+            listener.onOpen(eventSource, response);
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            if (DONE_DATA.equals(data)) {
+                record();
+            } else if (!broken) {
+                accumulate(data);
+            }
+            listener.onEvent(eventSource, id, type, data);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            listener.onClosed(eventSource);
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            listener.onFailure(eventSource, t, response);
+        }
+
+        private void accumulate(String data) {
+            ChatCompletionResponse chunk;
+            try {
+                chunk = READER.readValue(data);
+            } catch (Exception e) {
+                broken = true;
+                return;
+            }
+            if (first == null) {
+                first = chunk;
+            }
+            if (chunk.getChoices() == null) {
+                return;
+            }
+            for (ChatChoice delta : chunk.getChoices()) {
+                ChatChoice choice = choices.computeIfAbsent(delta.getIndex(), index -> {
+                    ChatChoice chatChoice = new ChatChoice();
+                    chatChoice.setIndex(index);
+                    chatChoice.setMessage(new Message());
+                    contents.put(index, new StringBuilder());
+                    return chatChoice;
+                });
+                Message message = choice.getMessage();
+                if (delta.getDelta() != null) {
+                    if (delta.getDelta().getRole() != null) {
+                        message.setRole(delta.getDelta().getRole());
+                    }
+                    if (delta.getDelta().getContent() != null) {
+                        contents.get(delta.getIndex()).append(delta.getDelta().getContent());
+                    }
+                }
+                if (delta.getFinishReason() != null) {
+                    choice.setFinishReason(delta.getFinishReason());
+                }
+            }
+        }
+
+        private void record() {
+            if (broken || first == null || choices.isEmpty()) {
+                return;
+            }
+            ChatCompletionResponse response = new ChatCompletionResponse();
+            response.setId(first.getId());
+            response.setObject("chat.completion");
+            response.setCreated(first.getCreated());
+            response.setModel(first.getModel());
+            response.setSystemFingerprint(first.getSystemFingerprint());
+            for (ChatChoice choice : choices.values()) {
+                choice.getMessage().setContent(contents.get(choice.getIndex()).toString());
+            }
+            response.setChoices(new ArrayList<>(choices.values()));
+            cache.put(key, response);
+        }
+    }
+}
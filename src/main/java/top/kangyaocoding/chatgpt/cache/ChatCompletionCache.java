@@ -0,0 +1,307 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.sse.EventSource;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatChoice;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 聊天响应缓存。
+ * 缓存键为请求规范化后的 SHA-256：API 主机与端口、API 密钥、模型、消息、采样参数、stop、max_tokens、惩罚参数与按键排序的 logit_bias，
+ * 不包含 stream 与 user，因此同一主机与密钥下的流式与非流式请求共享同一条目，不同主机或密钥之间互不可见。
+ * 内存层为按字节数限制容量的 LRU，条目以序列化字节保存，每次命中都返回新的响应对象；第二层存储可插拔。
+ * 通过 eventSourceFactory 包装后，命中的流式请求以合成的 SSE 增量数据回放，未命中的流式请求在结束后写入缓存。
+ * @Date 2024-06-19 09:30
+ */
+@Slf4j
+public class ChatCompletionCache {
+
+    /* 每个内存条目的固定开销估算：键字符串、条目对象与链表节点 */
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ObjectReader READER = OpenAiJson.reader(ChatCompletionResponse.class);
+    private static final ObjectWriter WRITER = OpenAiJson.writer(ChatCompletionResponse.class);
+
+    private final ChatCompletionCacheOptions options;
+    private final long ttlMillis;
+    /* 按访问顺序排列的内存层 */
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(256, 0.75f, true);
+    /* 保护内存层的锁 */
+    private final ReentrantLock lock = new ReentrantLock();
+    private long memoryBytes;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder bypassCount = new LongAdder();
+
+    public ChatCompletionCache(ChatCompletionCacheOptions options) {
+        this.options = options;
+        this.ttlMillis = options.getTtl().toMillis();
+    }
+
+    public ChatCompletionCacheOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 计算请求的缓存键。
+     *
+     * @param url                   请求地址，只取主机与端口。
+     * @param apiKey                API 密钥，可以为 null。
+     * @param chatCompletionRequest 聊天请求。
+     * @return 返回缓存键，请求不可缓存时返回 null。
+     */
+    public String key(HttpUrl url, String apiKey, ChatCompletionRequest chatCompletionRequest) {
+        if (options.isDeterministicOnly() && chatCompletionRequest.getTemperature() != 0) {
+            bypassCount.increment();
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (JsonGenerator generator = OpenAiJson.objectMapper().getFactory()
+                .createGenerator(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            writeCanonical(generator, url.host() + ':' + url.port(), apiKey, chatCompletionRequest);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to hash chat completion request", e);
+        }
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 读取缓存条目。
+     *
+     * @param key 缓存键。
+     * @return 返回新的响应对象，未命中时返回 null。
+     */
+    public ChatCompletionResponse get(String key) {
+        byte[] value = getBytes(key);
+        if (value != null) {
+            try {
+                ChatCompletionResponse response = READER.readValue(value);
+                hitCount.increment();
+                return response;
+            } catch (IOException e) {
+                log.warn("聊天响应缓存条目 {} 解析失败，按未命中处理", key, e);
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * 读取缓存条目，不计入命中与未命中统计，用于同一请求在等待配额后的再次查找。
+     *
+     * @param key 缓存键。
+     * @return 返回新的响应对象，未命中时返回 null。
+     */
+    public ChatCompletionResponse peek(String key) {
+        byte[] value = getBytes(key);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return READER.readValue(value);
+        } catch (IOException e) {
+            log.warn("聊天响应缓存条目 {} 解析失败，按未命中处理", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存条目，只缓存所有选项都已正常结束的响应。
+     *
+     * @param key                    缓存键。
+     * @param chatCompletionResponse 聊天响应。
+     */
+    public void put(String key, ChatCompletionResponse chatCompletionResponse) {
+        if (!isComplete(chatCompletionResponse)) {
+            return;
+        }
+        byte[] value;
+        try {
+            value = WRITER.writeValueAsBytes(chatCompletionResponse);
+        } catch (IOException e) {
+            log.warn("聊天响应序列化失败，跳过缓存", e);
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        putMemory(key, new Entry(value, expiresAt));
+        ChatCompletionCacheStore secondTier = options.getSecondTier();
+        if (secondTier != null) {
+            try {
+                secondTier.put(key, value, expiresAt);
+            } catch (IOException e) {
+                log.warn("聊天响应缓存第二层写入失败", e);
+            }
+        }
+    }
+
+    /**
+     * 包装事件源工厂，使流式聊天请求同样经过缓存。
+     *
+     * @param delegate 实际发起请求的事件源工厂。
+     * @param executor 回放合成事件的执行器。
+     * @return 返回带缓存的事件源工厂。
+     */
+    public EventSource.Factory eventSourceFactory(EventSource.Factory delegate, Executor executor) {
+        return new CachingEventSourceFactory(this, delegate, executor);
+    }
+
+    /**
+     * 获取统计信息快照。
+     *
+     * @return 返回命中率与容量统计。
+     */
+    public ChatCompletionCacheStats stats() {
+        lock.lock();
+        try {
+            return new ChatCompletionCacheStats(hitCount.sum(), missCount.sum(), bypassCount.sum(), memory.size(), memoryBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private byte[] getBytes(String key) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    return entry.value;
+                }
+                memory.remove(key);
+                memoryBytes -= entry.bytes();
+            }
+        } finally {
+            lock.unlock();
+        }
+        ChatCompletionCacheStore secondTier = options.getSecondTier();
+        if (secondTier == null) {
+            return null;
+        }
+        try {
+            ChatCompletionCacheStore.Entry entry = secondTier.get(key);
+            if (entry == null || entry.getExpiresAtMillis() <= now) {
+                return null;
+            }
+            // 提升到内存层时沿用第二层的过期时间，不重新计算 TTL
+            putMemory(key, new Entry(entry.getValue(), entry.getExpiresAtMillis()));
+            return entry.getValue();
+        } catch (IOException e) {
+            log.warn("聊天响应缓存第二层读取失败", e);
+            return null;
+        }
+    }
+
+    private void putMemory(String key, Entry entry) {
+        lock.lock();
+        try {
+            Entry previous = memory.put(key, entry);
+            if (previous != null) {
+                memoryBytes -= previous.bytes();
+            }
+            memoryBytes += entry.bytes();
+            Iterator<Entry> iterator = memory.values().iterator();
+            while (memoryBytes > options.getMaxMemoryBytes() && iterator.hasNext()) {
+                memoryBytes -= iterator.next().bytes();
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isComplete(ChatCompletionResponse chatCompletionResponse) {
+        if (chatCompletionResponse == null || chatCompletionResponse.getChoices() == null || chatCompletionResponse.getChoices().isEmpty()) {
+            return false;
+        }
+        for (ChatChoice chatChoice : chatCompletionResponse.getChoices()) {
+            if (chatChoice.getFinishReason() == null || chatChoice.getMessage() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按固定字段顺序写出请求的规范形式。
+     */
+    private static void writeCanonical(JsonGenerator generator, String host, String apiKey, ChatCompletionRequest request) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("host", host);
+        if (apiKey != null) {
+            generator.writeStringField("api_key", apiKey);
+        }
+        generator.writeStringField("model", request.getModel());
+        generator.writeArrayFieldStart("messages");
+        if (request.getMessages() != null) {
+            for (Message message : request.getMessages()) {
+                generator.writeStartObject();
+                generator.writeStringField("role", message.getRole());
+                generator.writeStringField("name", message.getName());
+                generator.writeStringField("content", message.getContent());
+                generator.writeEndObject();
+            }
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("temperature", request.getTemperature());
+        generator.writeObjectField("top_p", request.getTopP());
+        generator.writeObjectField("n", request.getN());
+        generator.writeObjectField("stop", request.getStop());
+        generator.writeObjectField("max_tokens", request.getMaxTokens());
+        if (request.getMaxCompletionTokens() != null) {
+            // 仅在设置时写出，未使用该字段的请求保持原有的缓存键
+            generator.writeNumberField("max_completion_tokens", request.getMaxCompletionTokens());
+        }
+        generator.writeNumberField("frequency_penalty", request.getFrequencyPenalty());
+        generator.writeNumberField("presence_penalty", request.getPresencePenalty());
+        generator.writeObjectField("logit_bias", request.getLogitBias() == null ? null : new TreeMap<>(request.getLogitBias()));
+        generator.writeEndObject();
+    }
+
+    /**
+     * 内存层条目。
+     */
+    private static final class Entry {
+
+        private final byte[] value;
+        private final long expiresAt;
+
+        private Entry(byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private long bytes() {
+            return ENTRY_OVERHEAD_BYTES + value.length;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * @Author K·Herbert
+ * @Description 聊天响应缓存的配置项。
+ * 默认只缓存 temperature 为 0 的确定性请求；配置第二层存储后，内存层未命中时继续查找第二层。
+ * @Date 2024-06-19 09:30
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatCompletionCacheOptions {
+
+    /* 内存层的最大字节数 */
+    @Builder.Default
+    private long maxMemoryBytes = 32L * 1024 * 1024;
+    /* 缓存条目的存活时间 */
+    @Builder.Default
+    private Duration ttl = Duration.ofHours(1);
+    /* 是否只缓存确定性的请求，关闭后所有请求都参与缓存 */
+    @Builder.Default
+    private boolean deterministicOnly = true;
+    /* 第二层存储，为空时仅使用内存层 */
+    private ChatCompletionCacheStore secondTier;
+    /* 流式回放时每个增量数据包含的最大字符数 */
+    @Builder.Default
+    private int replayChunkChars = 64;
+
+}
@@ -0,0 +1,38 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 聊天响应缓存的统计信息快照。
+ * @Date 2024-06-19 09:30
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ChatCompletionCacheStats {
+
+    /* 命中次数 */
+    private final long hitCount;
+    /* 未命中次数 */
+    private final long missCount;
+    /* 因参数不确定而跳过缓存的次数 */
+    private final long bypassCount;
+    /* 内存层条目数 */
+    private final int memoryEntries;
+    /* 内存层占用的字节数 */
+    private final long memoryBytes;
+
+    /**
+     * 计算命中率，不含跳过缓存的请求。
+     *
+     * @return 返回 0 到 1 之间的命中率，尚无请求时返回 0。
+     */
+    public double hitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+}
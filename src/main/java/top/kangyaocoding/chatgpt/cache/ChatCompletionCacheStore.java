@@ -0,0 +1,49 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 聊天响应缓存的第二层存储。
+ * 值为序列化后的响应字节，实现需要自行处理过期；读写失败只会被记录，不会影响请求。
+ * @Date 2024-06-19 09:30
+ */
+public interface ChatCompletionCacheStore {
+
+    /**
+     * 读取缓存条目。
+     *
+     * @param key 缓存键，由十六进制字符组成，可以直接作为文件名。
+     * @return 返回响应字节与写入时的过期时间，不存在或已过期时返回 null。
+     * @throws IOException 读取失败时抛出。
+     */
+    Entry get(String key) throws IOException;
+
+    /**
+     * 写入缓存条目。
+     *
+     * @param key             缓存键。
+     * @param value           响应字节。
+     * @param expiresAtMillis 过期时间的毫秒时间戳。
+     * @throws IOException 写入失败时抛出。
+     */
+    void put(String key, byte[] value, long expiresAtMillis) throws IOException;
+
+    /**
+     * 第二层存储的缓存条目。
+     */
+    @Getter
+    @AllArgsConstructor
+    class Entry {
+
+        /* 响应字节 */
+        private final byte[] value;
+        /* 过期时间的毫秒时间戳 */
+        private final long expiresAtMillis;
+
+    }
+
+}
@@ -0,0 +1,264 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import top.kangyaocoding.chatgpt.domain.common.Usage;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+import top.kangyaocoding.chatgpt.domain.embeddings.Item;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 按内容寻址的向量缓存。
+ * 缓存键由模型、维度和规范化输入（Unicode NFC、去除首尾空白）的 SHA-256 组成。
+ * 内存层为按字节数限制容量的 LRU；配置持久化文件后，未命中内存的键会继续查找内存映射文件，命中后提升到内存层。
+ * 混合批次只把未命中的输入发往上游，结果按原始顺序与命中项合并。
+ * 返回的向量在调用方之间共享，请勿修改。
+ * @Date 2024-06-12 09:40
+ */
+public class EmbeddingCache implements Closeable {
+
+    /* 每个内存条目的固定开销估算：键字符串、数组头与链表节点 */
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxMemoryBytes;
+    /* 按访问顺序排列的内存层 */
+    private final LinkedHashMap<String, float[]> memory = new LinkedHashMap<>(256, 0.75f, true);
+    /* 保护内存层的锁 */
+    private final ReentrantLock lock = new ReentrantLock();
+    /* 持久化层，可以为空 */
+    private final MappedEmbeddingStore store;
+    private long memoryBytes;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 创建向量缓存。
+     *
+     * @param options 缓存配置。
+     * @throws IOException 打开持久化文件失败时抛出。
+     */
+    public EmbeddingCache(EmbeddingCacheOptions options) throws IOException {
+        this.maxMemoryBytes = options.getMaxMemoryBytes();
+        this.store = options.getPersistentFile() == null ? null : new MappedEmbeddingStore(options.getPersistentFile(), options.getMaxPersistentBytes());
+    }
+
+    /**
+     * 在缓存中查找请求的全部输入。
+     *
+     * @param embeddingRequest 原始请求。
+     * @return 返回查找结果，通过 missRequest 获取需要发往上游的请求，再通过 merge 合并结果。
+     */
+    public Lookup lookup(EmbeddingRequest embeddingRequest) {
+        List<String> inputs = embeddingRequest.getInput();
+        String model = modelOf(embeddingRequest);
+        String[] keys = new String[inputs.size()];
+        float[][] embeddings = new float[inputs.size()][];
+        // 未命中的键及其在上游请求中的位置，相同输入只发送一次
+        Map<String, Integer> missIndex = new LinkedHashMap<>();
+        List<String> missInputs = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(model, embeddingRequest.getDimensions(), inputs.get(i));
+            embeddings[i] = get(keys[i]);
+            if (embeddings[i] != null) {
+                hitCount.increment();
+            } else {
+                missCount.increment();
+                if (!missIndex.containsKey(keys[i])) {
+                    missIndex.put(keys[i], missInputs.size());
+                    missInputs.add(inputs.get(i));
+                }
+            }
+        }
+        EmbeddingRequest missRequest = null;
+        if (!missInputs.isEmpty()) {
+            missRequest = EmbeddingRequest.builder()
+                    .model(model)
+                    .input(missInputs)
+                    .encodingFormat(embeddingRequest.getEncodingFormat())
+                    .dimensions(embeddingRequest.getDimensions())
+                    .build();
+            missRequest.setUser(embeddingRequest.getUser());
+        }
+        return new Lookup(model, keys, embeddings, missIndex, missRequest);
+    }
+
+    /**
+     * 获取统计信息快照。
+     *
+     * @return 返回命中率与容量统计。
+     */
+    public EmbeddingCacheStats stats() {
+        int memoryEntries;
+        long bytes;
+        lock.lock();
+        try {
+            memoryEntries = memory.size();
+            bytes = memoryBytes;
+        } finally {
+            lock.unlock();
+        }
+        return new EmbeddingCacheStats(hitCount.sum(), missCount.sum(), memoryEntries, bytes,
+                store == null ? 0 : store.size(), store == null ? 0 : store.usedBytes());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private float[] get(String key) {
+        lock.lock();
+        try {
+            float[] embedding = memory.get(key);
+            if (embedding != null) {
+                return embedding;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (store == null) {
+            return null;
+        }
+        float[] embedding = store.get(key);
+        if (embedding != null) {
+            putMemory(key, embedding);
+        }
+        return embedding;
+    }
+
+    private void put(String key, float[] embedding) {
+        putMemory(key, embedding);
+        if (store != null) {
+            store.put(key, embedding);
+        }
+    }
+
+    private void putMemory(String key, float[] embedding) {
+        lock.lock();
+        try {
+            float[] previous = memory.put(key, embedding);
+            if (previous != null) {
+                memoryBytes -= entryBytes(previous);
+            }
+            memoryBytes += entryBytes(embedding);
+            Iterator<float[]> iterator = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+                memoryBytes -= entryBytes(iterator.next());
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long entryBytes(float[] embedding) {
+        return ENTRY_OVERHEAD_BYTES + (long) embedding.length * Float.BYTES;
+    }
+
+    /**
+     * 获取请求的模型，未指定时与 EmbeddingRequest 的默认值一致。
+     */
+    private static String modelOf(EmbeddingRequest embeddingRequest) {
+        String model = embeddingRequest.getModel();
+        return model == null ? EmbeddingRequest.Model.TEXT_EMBEDDING_ADA_002.getCode() : model;
+    }
+
+    /**
+     * 计算缓存键。
+     */
+    static String key(String model, Integer dimensions, String input) {
+        String normalized = Normalizer.normalize(input, Normalizer.Form.NFC).trim();
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder key = new StringBuilder(model.length() + 12 + digest.length * 2)
+                .append(model).append(':').append(dimensions == null ? 0 : dimensions).append(':');
+        for (byte b : digest) {
+            key.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 一次查找的结果。
+     */
+    public class Lookup {
+
+        private final String model;
+        private final String[] keys;
+        private final float[][] embeddings;
+        private final Map<String, Integer> missIndex;
+        private final EmbeddingRequest missRequest;
+
+        private Lookup(String model, String[] keys, float[][] embeddings, Map<String, Integer> missIndex, EmbeddingRequest missRequest) {
+            this.model = model;
+            this.keys = keys;
+            this.embeddings = embeddings;
+            this.missIndex = missIndex;
+            this.missRequest = missRequest;
+        }
+
+        /**
+         * 获取只包含未命中输入的上游请求。
+         *
+         * @return 全部命中时返回 null。
+         */
+        public EmbeddingRequest missRequest() {
+            return missRequest;
+        }
+
+        /**
+         * 写入上游结果并按原始顺序合并。
+         *
+         * @param missResponse 上游对 missRequest 的响应，全部命中时传入 null。
+         * @return 返回与原始请求顺序一致的响应，usage 仅统计上游实际消耗。
+         */
+        public EmbeddingResponse merge(EmbeddingResponse missResponse) {
+            float[][] fetched = new float[missIndex.size()][];
+            if (missResponse != null && missResponse.getData() != null) {
+                for (Item item : missResponse.getData()) {
+                    Integer index = item.getIndex();
+                    if (index != null && index >= 0 && index < fetched.length && item.getEmbedding() != null) {
+                        fetched[index] = item.getEmbedding();
+                    }
+                }
+            }
+            for (Map.Entry<String, Integer> entry : missIndex.entrySet()) {
+                float[] embedding = fetched[entry.getValue()];
+                if (embedding == null) {
+                    throw new IllegalStateException("Embedding response is missing index " + entry.getValue());
+                }
+                put(entry.getKey(), embedding);
+            }
+            List<Item> data = new ArrayList<>(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                Item item = new Item();
+                item.setObject("embedding");
+                item.setIndex(i);
+                item.setEmbedding(embeddings[i] != null ? embeddings[i] : fetched[missIndex.get(keys[i])]);
+                data.add(item);
+            }
+            EmbeddingResponse embeddingResponse = new EmbeddingResponse();
+            embeddingResponse.setObject("list");
+            embeddingResponse.setData(data);
+            embeddingResponse.setModel(missResponse != null ? missResponse.getModel() : model);
+            embeddingResponse.setUsage(missResponse != null && missResponse.getUsage() != null ? missResponse.getUsage() : new Usage());
+            return embeddingResponse;
+        }
+    }
+}
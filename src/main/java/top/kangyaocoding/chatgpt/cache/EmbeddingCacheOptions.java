@@ -0,0 +1,31 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量缓存的配置项。
+ * 内存层按字节数限制容量；配置持久化文件后，向量同时写入内存映射文件，重启后仍可命中。
+ * @Date 2024-06-12 09:40
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingCacheOptions {
+
+    /* 内存层的最大字节数 */
+    @Builder.Default
+    private long maxMemoryBytes = 64L * 1024 * 1024;
+    /* 持久化文件路径，为空时仅使用内存层 */
+    private Path persistentFile;
+    /* 持久化文件的最大字节数，不能超过 2GB；文件不淘汰旧记录，写满后新向量只保留在内存层，删除文件后重新写入 */
+    @Builder.Default
+    private long maxPersistentBytes = 256L * 1024 * 1024;
+
+}
@@ -0,0 +1,40 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量缓存的统计信息快照。
+ * @Date 2024-06-12 09:40
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class EmbeddingCacheStats {
+
+    /* 命中次数（按输入计） */
+    private final long hitCount;
+    /* 未命中次数（按输入计） */
+    private final long missCount;
+    /* 内存层条目数 */
+    private final int memoryEntries;
+    /* 内存层占用的估算字节数 */
+    private final long memoryBytes;
+    /* 持久化层条目数 */
+    private final int persistentEntries;
+    /* 持久化文件已使用的字节数 */
+    private final long persistentBytes;
+
+    /**
+     * 计算命中率。
+     *
+     * @return 返回 0 到 1 之间的命中率，尚无请求时返回 0。
+     */
+    public double hitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+}
@@ -0,0 +1,58 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+
+/**
+ * @Author K·Herbert
+ * @Description 基于本地目录的第二层存储，每个条目一个文件，文件头 8 字节为过期时间。
+ * 写入时先写临时文件再原子重命名，读到已过期的条目时顺便删除。
+ * @Date 2024-06-19 09:30
+ */
+public class FileChatCompletionCacheStore implements ChatCompletionCacheStore {
+
+    private final Path directory;
+
+    /**
+     * 创建文件存储。
+     *
+     * @param directory 缓存目录，不存在时自动创建。
+     * @throws IOException 创建目录失败时抛出。
+     */
+    public FileChatCompletionCacheStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public Entry get(String key) throws IOException {
+        Path file = directory.resolve(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long expiresAtMillis = bytes.length < Long.BYTES ? 0 : buffer.getLong();
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            Files.deleteIfExists(file);
+            return null;
+        }
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return new Entry(value, expiresAtMillis);
+    }
+
+    @Override
+    public void put(String key, byte[] value, long expiresAtMillis) throws IOException {
+        byte[] bytes = ByteBuffer.allocate(Long.BYTES + value.length).putLong(expiresAtMillis).put(value).array();
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package top.kangyaocoding.chatgpt.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 基于内存映射文件的向量存储，只追加写入。
+ * 文件头为魔数、版本号和已提交的数据末尾位置；每条记录依次为键长度、键、维度和小端 float32 向量。
+ * 记录写完后才更新文件头中的末尾位置，进程异常退出时未提交的记录会被忽略。
+ * 打开时扫描已提交的记录重建索引，读取直接从映射区复制到 float 数组。
+ * 文件头中的末尾位置超出文件大小时重新初始化文件；扫描到越界的记录时只保留其之前的记录。
+ * 文件大小以 maxBytes 为上限且不淘汰旧记录，写满后新向量只保留在内存层，需要删除文件才能重新写入。
+ * @Date 2024-06-12 09:40
+ */
+@Slf4j
+class MappedEmbeddingStore implements Closeable {
+
+    private static final int MAGIC = 0x4F414543;
+    private static final int VERSION = 1;
+    /* 文件头长度：魔数、版本号、末尾位置 */
+    private static final int HEADER_BYTES = 16;
+    private static final int END_OFFSET = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    /* 键到记录位置的索引 */
+    private final ConcurrentMap<String, Integer> index = new ConcurrentHashMap<>();
+    /* 串行化写入 */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /* 已提交的数据末尾位置 */
+    private volatile int end;
+    /* 是否已写满 */
+    private boolean full;
+
+    MappedEmbeddingStore(Path file, long maxBytes) throws IOException {
+        if (maxBytes > Integer.MAX_VALUE || maxBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("maxPersistentBytes must be between " + HEADER_BYTES + " and " + Integer.MAX_VALUE);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // 映射会把文件扩展到 capacity，先记录原始大小用于校验文件头
+        long fileSize = channel.size();
+        boolean created = fileSize == 0;
+        long capacity = Math.max(maxBytes, fileSize);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        boolean valid = !created;
+        if (valid && (fileSize < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)) {
+            log.warn("向量缓存文件格式不匹配，已重新初始化: {}", file);
+            valid = false;
+        }
+        if (valid) {
+            long committed = buffer.getLong(END_OFFSET);
+            if (committed < HEADER_BYTES || committed > Math.min(fileSize, buffer.capacity())) {
+                log.warn("向量缓存文件的末尾位置 {} 超出文件大小 {}，文件可能被截断，已重新初始化: {}", committed, fileSize, file);
+                valid = false;
+            }
+        }
+        if (!valid) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(END_OFFSET, HEADER_BYTES);
+        }
+        this.end = (int) buffer.getLong(END_OFFSET);
+        load(file);
+    }
+
+    /**
+     * 扫描已提交的记录重建索引，遇到越界的记录时把末尾位置截断到其之前。
+     */
+    private void load(Path file) {
+        int position = HEADER_BYTES;
+        while (position < end) {
+            int keyLength = position + 4 <= end ? buffer.getInt(position) : -1;
+            int dimensions = keyLength >= 0 && (long) position + 8 + keyLength <= end ? buffer.getInt(position + 4 + keyLength) : -1;
+            if (dimensions < 0 || (long) position + 8 + keyLength + (long) dimensions * Float.BYTES > end) {
+                log.warn("向量缓存文件在位置 {} 的记录已损坏，丢弃之后的 {} 字节: {}", position, end - position, file);
+                buffer.putLong(END_OFFSET, position);
+                end = position;
+                return;
+            }
+            byte[] key = new byte[keyLength];
+            buffer.get(position + 4, key);
+            index.put(new String(key, StandardCharsets.US_ASCII), position);
+            position += recordBytes(keyLength, dimensions);
+        }
+    }
+
+    float[] get(String key) {
+        Integer position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        int dataOffset = position + 4 + buffer.getInt(position);
+        float[] embedding = new float[buffer.getInt(dataOffset)];
+        ByteBuffer view = buffer.slice(dataOffset + 4, embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        view.asFloatBuffer().get(embedding);
+        return embedding;
+    }
+
+    void put(String key, float[] embedding) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+        int recordBytes = recordBytes(keyBytes.length, embedding.length);
+        writeLock.lock();
+        try {
+            if (full || index.containsKey(key)) {
+                return;
+            }
+            int position = end;
+            if ((long) position + recordBytes > buffer.capacity()) {
+                full = true;
+                log.warn("向量缓存文件已写满，新向量仅保留在内存中");
+                return;
+            }
+            buffer.putInt(position, keyBytes.length);
+            buffer.put(position + 4, keyBytes);
+            int dataOffset = position + 4 + keyBytes.length;
+            buffer.putInt(dataOffset, embedding.length);
+            buffer.slice(dataOffset + 4, embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(embedding);
+            // 记录写完后再提交末尾位置
+            buffer.putLong(END_OFFSET, position + recordBytes);
+            end = position + recordBytes;
+            index.put(key, position);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    long usedBytes() {
+        return end;
+    }
+
+    private static int recordBytes(int keyLength, int dimensions) {
+        return 4 + keyLength + 4 + dimensions * Float.BYTES;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package top.kangyaocoding.chatgpt.common;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * @Author K·Herbert
+ * @Description 关闭 Nagle 算法（TCP_NODELAY）的套接字工厂。
+ * 超过缓冲阈值的 JSON 请求体以分块传输编码发送，请求头、分块头与数据会分多次写入 socket；开启 Nagle 时后续写入要等待前一段的 ACK，
+ * 遇到延迟确认的服务端每个请求会多出约 40ms。TLS 连接建立在该套接字之上，同样生效。
+ * @Date 2024-06-22 09:30
+ */
+public class NoDelaySocketFactory extends SocketFactory {
+
+    private final SocketFactory delegate;
+
+    public NoDelaySocketFactory() {
+        this(SocketFactory.getDefault());
+    }
+
+    public NoDelaySocketFactory(SocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return noDelay(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return noDelay(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return noDelay(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return noDelay(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return noDelay(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private static Socket noDelay(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+}
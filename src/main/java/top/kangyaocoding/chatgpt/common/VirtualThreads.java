@@ -0,0 +1,54 @@
+package top.kangyaocoding.chatgpt.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @Author K·Herbert
+ * @Description 虚拟线程工具类。
+ * SDK 以 JDK 17 为编译目标，因此通过反射调用 JDK 21 的 Executors.newVirtualThreadPerTaskExecutor。
+ * @Date 2024-06-05 14:10
+ */
+public final class VirtualThreads {
+
+    /* JDK 21 及以上版本提供的工厂方法，不支持时为 null */
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookup();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 判断当前运行时是否支持虚拟线程。
+     *
+     * @return 运行在 JDK 21 及以上版本时返回 true。
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * 创建一个每个任务一个虚拟线程的执行器。
+     *
+     * @return 返回虚拟线程执行器。
+     * @throws UnsupportedOperationException 当前运行时不支持虚拟线程时抛出。
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or later, current: " + System.getProperty("java.version"));
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package top.kangyaocoding.chatgpt.converter;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式 JSON 请求体。
+ * 序列化结果不超过 bufferThreshold 字节时在首次查询内容长度时缓冲下来，以 Content-Length 一次写出；
+ * 超过时放弃缓冲，发送时由 ObjectWriter 直接写入 okio sink 的输出流并以分块传输编码发送，
+ * 大型提示词和批量嵌入请求不会先序列化为 String 或 byte[]。请求体可重复写入，支持重试。
+ * Jackson 无法从中断处继续序列化，超过阈值的请求体在测量时已序列化的前缀（约 bufferThreshold 字节）会在发送时重新序列化，
+ * 额外开销只发生一次且不超过阈值加上生成器的内部缓冲区。
+ * @Date 2024-06-10 09:45
+ */
+public class JsonRequestBody extends RequestBody {
+
+    /* JSON 媒体类型 */
+    public static final MediaType MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
+    /* 默认的缓冲阈值 */
+    public static final int DEFAULT_BUFFER_THRESHOLD = 64 * 1024;
+
+    private final ObjectWriter writer;
+    private final Object value;
+    private final int bufferThreshold;
+    /* 保护首次测量，使用 ReentrantLock 而非 synchronized，序列化期间不会固定虚拟线程的载体线程 */
+    private final ReentrantLock lock = new ReentrantLock();
+    /* 是否已尝试缓冲 */
+    private volatile boolean measured;
+    /* 缓冲的序列化结果，超过阈值时为 null */
+    private volatile ByteString buffered;
+
+    public JsonRequestBody(ObjectWriter writer, Object value) {
+        this(writer, value, DEFAULT_BUFFER_THRESHOLD);
+    }
+
+    public JsonRequestBody(ObjectWriter writer, Object value, int bufferThreshold) {
+        this.writer = writer;
+        this.value = value;
+        this.bufferThreshold = bufferThreshold;
+    }
+
+    /**
+     * 获取请求对象。
+     *
+     * @return 返回待序列化的请求对象。
+     */
+    public Object value() {
+        return value;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        ByteString bytes = buffered();
+        return bytes == null ? -1 : bytes.size();
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        ByteString bytes = buffered();
+        if (bytes != null) {
+            sink.write(bytes);
+        } else {
+            writer.writeValue(sink.outputStream(), value);
+        }
+    }
+
+    /**
+     * 序列化到不超过阈值的缓冲区，只尝试一次。
+     *
+     * @return 返回序列化结果，超过阈值时返回 null。
+     */
+    private ByteString buffered() throws IOException {
+        if (!measured) {
+            lock.lock();
+            try {
+                if (!measured) {
+                    Buffer buffer = new Buffer();
+                    try {
+                        writer.writeValue(new BoundedOutputStream(buffer, bufferThreshold), value);
+                        buffered = buffer.readByteString();
+                    } catch (ThresholdExceededException e) {
+                        buffered = null;
+                    }
+                    measured = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return buffered;
+    }
+
+    /**
+     * 写入 okio 缓冲区，总字节数超过上限时抛出异常。
+     */
+    private static final class BoundedOutputStream extends OutputStream {
+
+        private final Buffer buffer;
+        private final long limit;
+
+        private BoundedOutputStream(Buffer buffer, long limit) {
+            this.buffer = buffer;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            check(1);
+            buffer.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            check(len);
+            buffer.write(b, off, len);
+        }
+
+        private void check(long length) throws ThresholdExceededException {
+            if (buffer.size() + length > limit) {
+                throw new ThresholdExceededException();
+            }
+        }
+    }
+
+    private static final class ThresholdExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
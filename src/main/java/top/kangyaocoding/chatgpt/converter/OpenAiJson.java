@@ -0,0 +1,85 @@
+package top.kangyaocoding.chatgpt.converter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.RequestBody;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @Author K·Herbert
+ * @Description SDK 统一的 JSON 序列化层。
+ * 所有 domain 类型共用一个集中配置的 ObjectMapper，并按类型缓存预先解析好的 ObjectWriter/ObjectReader，
+ * 避免每次调用重复创建 ObjectMapper 或查找序列化器。
+ * @Date 2024-06-10 09:30
+ */
+public final class OpenAiJson {
+
+    /* 集中配置的 JSON 映射器：忽略未知字段，写入时不关闭目标流以便直接写入 okio sink，浮点数使用快速解析 */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper(JsonFactory.builder()
+            .enable(StreamReadFeature.USE_FAST_DOUBLE_PARSER)
+            .build())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    /* 按类型缓存的写入器 */
+    private static final ConcurrentMap<Type, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+    /* 按类型缓存的读取器 */
+    private static final ConcurrentMap<Type, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private OpenAiJson() {
+    }
+
+    /**
+     * 获取集中配置的 ObjectMapper，仅用于需要直接使用映射器的场景，请勿修改其配置。
+     *
+     * @return 返回共享的 ObjectMapper。
+     */
+    public static ObjectMapper objectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * 获取指定类型的写入器。
+     *
+     * @param type 需要序列化的类型。
+     * @return 返回缓存的 ObjectWriter。
+     */
+    public static ObjectWriter writer(Type type) {
+        return WRITERS.computeIfAbsent(type, key -> {
+            JavaType javaType = OBJECT_MAPPER.getTypeFactory().constructType(key);
+            return OBJECT_MAPPER.writerFor(javaType);
+        });
+    }
+
+    /**
+     * 获取指定类型的读取器。
+     *
+     * @param type 需要反序列化的类型。
+     * @return 返回缓存的 ObjectReader。
+     */
+    public static ObjectReader reader(Type type) {
+        return READERS.computeIfAbsent(type, key -> {
+            JavaType javaType = OBJECT_MAPPER.getTypeFactory().constructType(key);
+            return OBJECT_MAPPER.readerFor(javaType);
+        });
+    }
+
+    /**
+     * 创建直接写入 okio sink 的 JSON 请求体。
+     *
+     * @param value 请求对象。
+     * @return 返回请求体，发送时才序列化，不产生中间字符串或字节数组。
+     */
+    public static RequestBody requestBody(Object value) {
+        return new JsonRequestBody(writer(value.getClass()), value);
+    }
+}
@@ -0,0 +1,44 @@
+package top.kangyaocoding.chatgpt.converter;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * @Author K·Herbert
+ * @Description 基于 OpenAiJson 的 Retrofit 转换器工厂。
+ * 请求体直接写入 okio sink，响应体直接从字节流反序列化，均使用按类型缓存的 ObjectWriter/ObjectReader。
+ * @Date 2024-06-10 10:00
+ */
+public final class OpenAiJsonConverterFactory extends Converter.Factory {
+
+    private OpenAiJsonConverterFactory() {
+    }
+
+    public static OpenAiJsonConverterFactory create() {
+        return new OpenAiJsonConverterFactory();
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(@NotNull Type type, Annotation @NotNull [] annotations, @NotNull Retrofit retrofit) {
+        ObjectReader reader = OpenAiJson.reader(type);
+        return body -> {
+            try (ResponseBody responseBody = body) {
+                return reader.readValue(responseBody.byteStream());
+            }
+        };
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(@NotNull Type type, Annotation @NotNull [] parameterAnnotations, Annotation @NotNull [] methodAnnotations, @NotNull Retrofit retrofit) {
+        ObjectWriter writer = OpenAiJson.writer(type);
+        return value -> new JsonRequestBody(writer, value);
+    }
+}
@@ -63,6 +63,12 @@ public class ChatCompletionRequest implements Serializable {
      */
     @JsonProperty("max_tokens")
     private Integer maxTokens = 2048;
+    /**
+     * 输出上限，包含推理 token。
+     * o1 系列模型不接受 max_tokens，需使用此字段。
+     */
+    @JsonProperty("max_completion_tokens")
+    private Integer maxCompletionTokens;
     /**
      * 频率惩罚参数。
      * 用于降低模型重复同一行的可能性。
@@ -0,0 +1,61 @@
+package top.kangyaocoding.chatgpt.domain.embeddings;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量反序列化器，将 embedding 字段直接读取为 float 数组。
+ * 数值数组逐个读取为 float，不经过 BigDecimal 和装箱列表；
+ * base64 字符串按小端 float32 字节解码，不经过文本数值解析。
+ * @Date 2024-06-08 09:20
+ */
+public class EmbeddingDeserializer extends JsonDeserializer<float[]> {
+
+    /* 数值数组的初始容量，覆盖 text-embedding-ada-002 的 1536 维 */
+    private static final int INITIAL_CAPACITY = 1536;
+
+    @Override
+    public float[] deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return decodeBase64(parser.getBinaryValue());
+        }
+        if (token == JsonToken.START_ARRAY) {
+            return readArray(parser, context);
+        }
+        return (float[]) context.handleUnexpectedToken(float[].class, parser);
+    }
+
+    private float[] readArray(JsonParser parser, DeserializationContext context) throws IOException {
+        float[] values = new float[INITIAL_CAPACITY];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                return (float[]) context.handleUnexpectedToken(float[].class, parser);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = parser.getFloatValue();
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static float[] decodeBase64(byte[] bytes) throws IOException {
+        if (bytes.length % Float.BYTES != 0) {
+            throw new IOException("Illegal base64 embedding length " + bytes.length);
+        }
+        float[] values = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+        return values;
+    }
+}
@@ -1,6 +1,7 @@
 package top.kangyaocoding.chatgpt.domain.embeddings;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,6 +38,20 @@ public class EmbeddingRequest implements Serializable {
     @NonNull
     private List<String> input;
 
+    /**
+     * 向量的返回格式，默认为 base64。
+     * base64 格式以小端 float32 字节传输，体积更小，SDK 会直接解码为 float 数组；也可以指定为 float 返回数值数组。
+     * 两种格式解码后的 float 数组相同，但线上传输的内容不同，通过拦截器或代理读取原始响应 JSON 的调用方需要显式指定 float。
+     */
+    @JsonProperty("encoding_format")
+    @Builder.Default
+    private String encodingFormat = EncodingFormat.BASE64.getCode();
+
+    /**
+     * 输出向量的维度，可选字段，仅 text-embedding-3 及之后的模型支持。
+     */
+    private Integer dimensions;
+
     /**
      * 用户标识，可选字段，用于标识请求的用户。
      */
@@ -51,8 +66,22 @@ public class EmbeddingRequest implements Serializable {
     @AllArgsConstructor
     public enum Model {
         TEXT_EMBEDDING_ADA_002("text-embedding-ada-002"),
+        TEXT_EMBEDDING_3_SMALL("text-embedding-3-small"),
+        TEXT_EMBEDDING_3_LARGE("text-embedding-3-large"),
         ;
         private final String code; // 模型的唯一标识代码
     }
 
+    /**
+     * EncodingFormat 枚举定义了向量的返回格式。
+     */
+    @Getter
+    @AllArgsConstructor
+    public enum EncodingFormat {
+        FLOAT("float"),
+        BASE64("base64"),
+        ;
+        private final String code; // 格式的唯一标识代码
+    }
+
 }
@@ -1,15 +1,16 @@
 package top.kangyaocoding.chatgpt.domain.embeddings;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Data;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
-import java.util.List;
 
 /**
  * @Author K·Herbert
  * @Description Item类实现了Serializable接口，用于定义可以被序列化的项目实体。
+ * 向量以 float 数组保存，兼容数值数组与 base64 两种返回格式。
  * @Date 2024-05-23 18:59
  */
 
@@ -17,6 +18,17 @@ import java.util.List;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Item implements Serializable {
     private String object;
-    private List<BigDecimal> embedding;
+    @JsonDeserialize(using = EmbeddingDeserializer.class)
+    private float[] embedding;
     private Integer index;
+
+    /**
+     * 获取向量维度。
+     *
+     * @return 返回向量长度，向量为空时返回 0。
+     */
+    @JsonIgnore
+    public int getDimensions() {
+        return embedding == null ? 0 : embedding.length;
+    }
 }
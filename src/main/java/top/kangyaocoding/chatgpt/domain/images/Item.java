@@ -17,5 +17,7 @@ public class Item implements Serializable {
     private String url;
     @JsonProperty("b64_json")
     private String b64Json;
+    @JsonProperty("revised_prompt")
+    private String revisedPrompt; // dall-e-3 改写后的提示词
 
 }
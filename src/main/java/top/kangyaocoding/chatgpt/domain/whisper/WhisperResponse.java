@@ -3,14 +3,18 @@ package top.kangyaocoding.chatgpt.domain.whisper;
 import lombok.Data;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * @Author K·Herbert
- * @Description 回复的信息
+ * @Description 回复的信息，response_format 为 verbose_json 时包含语言、时长与分段时间戳
  * @Date 2024-05-23 19:22
  */
 
 @Data
 public class WhisperResponse implements Serializable {
     private String text;
-}
\ No newline at end of file
+    private String language; // 识别出的语言，仅 verbose_json
+    private Double duration; // 音频时长（秒），仅 verbose_json
+    private List<WhisperSegment> segments; // 带时间戳的分段，仅 verbose_json
+}
@@ -0,0 +1,19 @@
+package top.kangyaocoding.chatgpt.domain.whisper;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @Author K·Herbert
+ * @Description verbose_json 响应中带时间戳的文本分段
+ * @Date 2024-06-27 09:10
+ */
+
+@Data
+public class WhisperSegment implements Serializable {
+    private Integer id; // 分段序号
+    private Double start; // 开始时间（秒）
+    private Double end; // 结束时间（秒）
+    private String text; // 分段文本
+}
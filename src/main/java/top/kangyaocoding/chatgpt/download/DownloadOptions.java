@@ -0,0 +1,32 @@
+package top.kangyaocoding.chatgpt.download;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Author K·Herbert
+ * @Description 文件内容下载的配置项。
+ * parallelism 大于 1 且文件不小于两个分段时，按字节范围分段并行下载；服务端不支持范围请求时回退为单连接下载。
+ * @Date 2024-06-26 09:30
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DownloadOptions {
+
+    /* 并行下载的连接数，1 表示单连接顺序下载 */
+    @Builder.Default
+    private int parallelism = 1;
+    /* 并行下载时每个分段的最小字节数 */
+    @Builder.Default
+    private long minPartSize = 16L * 1024 * 1024;
+    /* 单个连接中断后按 Range 续传的最大次数 */
+    @Builder.Default
+    private int maxResumes = 5;
+    /* 从网络读取并写入文件的缓冲区大小 */
+    @Builder.Default
+    private int bufferSize = 64 * 1024;
+}
@@ -0,0 +1,266 @@
+package top.kangyaocoding.chatgpt.download;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.schedulers.Schedulers;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Author K·Herbert
+ * @Description 文件内容下载器。
+ * 响应体从 okio 数据源直接读入固定大小的 ByteBuffer 并写入 FileChannel，不在内存中缓冲完整内容。
+ * 下载先写入同目录下以文件ID命名的 .part 临时文件，完成后原子替换目标文件；同一文件的临时文件已存在时从其末尾按 Range 继续下载，
+ * 连接中途断开时同样按 Range 续传。配置并行下载时按文件元数据中的大小划分字节范围，各分段按位置写入同一个文件。
+ * @Date 2024-06-26 09:40
+ */
+@Slf4j
+public class FileDownloader {
+
+    private final IOpenAiApi openAiApi;
+
+    /**
+     * @param openAiApi 同步调用的 API 接口实例，下载在调用线程上阻塞执行。
+     */
+    public FileDownloader(IOpenAiApi openAiApi) {
+        this.openAiApi = openAiApi;
+    }
+
+    /**
+     * 下载文件内容到指定路径。
+     *
+     * @param fileId  文件ID。
+     * @param target  目标文件路径，已存在时覆盖。
+     * @param options 下载配置。
+     * @return 返回文件的字节数。
+     * @throws IOException 下载或写入失败，且续传次数用尽时抛出。
+     */
+    public long download(String fileId, Path target, DownloadOptions options) throws IOException {
+        // 临时文件名包含文件ID，目标路径相同但文件不同时不会续传到别的文件的内容上
+        Path part = target.resolveSibling(target.getFileName() + "." + fileId.replaceAll("[^A-Za-z0-9_-]", "_") + ".part");
+        long size = -1;
+        if (options.getParallelism() > 1) {
+            Long bytes = openAiApi.retrieveFile(fileId).blockingGet().getBytes();
+            size = bytes == null ? -1 : bytes;
+        }
+        long written;
+        if (size >= 2 * options.getMinPartSize()) {
+            written = downloadRanges(fileId, part, size, options);
+        } else {
+            written = downloadSequential(fileId, part, options);
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * 打开文件内容的输入流，调用方负责关闭。
+     *
+     * @param fileId 文件ID。
+     * @return 返回直接读取响应体的输入流。
+     */
+    public InputStream openStream(String fileId) {
+        return openAiApi.retrieveFileContent(fileId).blockingGet().byteStream();
+    }
+
+    /**
+     * 以背压方式读取文件内容，订阅时发起请求，下游每请求一个元素读取一个缓冲区，取消订阅时关闭连接。
+     *
+     * @param fileId     文件ID。
+     * @param bufferSize 每个 ByteBuffer 的最大字节数。
+     * @return 返回内容分块，每个 ByteBuffer 已切换为读模式且不会被复用。
+     */
+    public Flowable<ByteBuffer> flowable(String fileId, int bufferSize) {
+        return Flowable.generate(() -> openAiApi.retrieveFileContent(fileId).blockingGet(), (ResponseBody body, Emitter<ByteBuffer> emitter) -> {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            if (body.source().read(buffer) == -1) {
+                emitter.onComplete();
+            } else {
+                buffer.flip();
+                emitter.onNext(buffer);
+            }
+            return body;
+        }, ResponseBody::close);
+    }
+
+    /**
+     * 单连接顺序下载，从临时文件末尾开始，中断时按 Range 续传。
+     */
+    private long downloadSequential(String fileId, Path part, DownloadOptions options) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(options.getBufferSize());
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int resumes = 0; ; resumes++) {
+                long position = channel.size();
+                try {
+                    Response<ResponseBody> response = fetch(fileId, position > 0 ? "bytes=" + position + "-" : null);
+                    if (position > 0 && response.code() == 416) {
+                        // 临时文件已包含完整内容
+                        close(response);
+                        return position;
+                    }
+                    if (!response.isSuccessful()) {
+                        close(response);
+                        throw new HttpException(response);
+                    }
+                    if (position > 0 && response.code() != 206) {
+                        // 服务端忽略了 Range，从头写入
+                        channel.truncate(0);
+                        position = 0;
+                    }
+                    try (ResponseBody body = response.body()) {
+                        long expected = body.contentLength();
+                        long copied = copy(body.source(), channel, position, expected < 0 ? Long.MAX_VALUE : expected, buffer);
+                        if (expected >= 0 && copied < expected) {
+                            throw new EOFException("Download of " + fileId + " ended after " + copied + " of " + expected + " bytes");
+                        }
+                        return position + copied;
+                    }
+                } catch (IOException e) {
+                    if (resumes >= options.getMaxResumes()) {
+                        throw e;
+                    }
+                    log.warn("文件 {} 下载在 {} 字节处中断，第 {} 次续传：{}", fileId, channel.size(), resumes + 1, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 分段并行下载，每个分段独立续传；服务端不支持范围请求时回退为单连接下载。
+     */
+    private long downloadRanges(String fileId, Path part, long size, DownloadOptions options) throws IOException {
+        int parts = (int) Math.min(options.getParallelism(), size / options.getMinPartSize());
+        long partSize = (size + parts - 1) / parts;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Flowable.range(0, parts)
+                    .flatMap(index -> Flowable.fromCallable(() -> {
+                        long start = index * partSize;
+                        downloadRange(fileId, channel, start, Math.min(size, start + partSize) - 1, options);
+                        return index;
+                    }).subscribeOn(Schedulers.io()), true, parts)
+                    .ignoreElements()
+                    .blockingAwait();
+        } catch (RuntimeException e) {
+            // 等待所有分段结束后再汇总错误，避免取消仍在写入的分段时中断线程导致共享的 FileChannel 被关闭
+            List<Throwable> errors = e instanceof CompositeException ? ((CompositeException) e).getExceptions()
+                    : Collections.singletonList(e.getCause() != null ? e.getCause() : e);
+            if (errors.stream().anyMatch(RangeNotSupportedException.class::isInstance)) {
+                log.warn("文件 {} 的下载地址不支持范围请求，改为单连接下载", fileId);
+                Files.deleteIfExists(part);
+                return downloadSequential(fileId, part, options);
+            }
+            Throwable cause = errors.get(0);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw e;
+        }
+        return size;
+    }
+
+    /**
+     * 下载 [start, end] 范围内的字节并写入文件的对应位置。
+     */
+    private void downloadRange(String fileId, FileChannel channel, long start, long end, DownloadOptions options) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(options.getBufferSize());
+        long position = start;
+        for (int resumes = 0; position <= end; resumes++) {
+            try {
+                Response<ResponseBody> response = fetch(fileId, "bytes=" + position + "-" + end);
+                if (response.code() != 206) {
+                    close(response);
+                    if (response.isSuccessful()) {
+                        throw new RangeNotSupportedException();
+                    }
+                    throw new HttpException(response);
+                }
+                try (ResponseBody body = response.body()) {
+                    BufferedSource source = body.source();
+                    while (position <= end) {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position + 1));
+                        if (source.read(buffer) == -1) {
+                            break;
+                        }
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            position += channel.write(buffer, position);
+                        }
+                    }
+                }
+                if (position <= end) {
+                    throw new EOFException("Range " + start + "-" + end + " of " + fileId + " ended at " + position);
+                }
+            } catch (RangeNotSupportedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (resumes >= options.getMaxResumes()) {
+                    throw e;
+                }
+                log.warn("文件 {} 的分段 {}-{} 在 {} 处中断，第 {} 次续传：{}", fileId, start, end, position, resumes + 1, e.getMessage());
+            }
+        }
+    }
+
+    private Response<ResponseBody> fetch(String fileId, String range) throws IOException {
+        try {
+            return openAiApi.retrieveFileContent(fileId, range).blockingGet();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void close(Response<ResponseBody> response) {
+        if (response.body() != null) {
+            response.body().close();
+        }
+        if (response.errorBody() != null) {
+            response.errorBody().close();
+        }
+    }
+
+    /**
+     * 将数据源中最多 limit 个字节写入文件的 position 处。
+     *
+     * @return 返回写入的字节数，数据源提前结束时小于 limit。
+     */
+    private static long copy(BufferedSource source, FileChannel channel, long position, long limit, ByteBuffer buffer) throws IOException {
+        long copied = 0;
+        while (copied < limit) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), limit - copied));
+            if (source.read(buffer) == -1) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                copied += channel.write(buffer, position + copied);
+            }
+        }
+        return copied;
+    }
+
+    private static final class RangeNotSupportedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+}
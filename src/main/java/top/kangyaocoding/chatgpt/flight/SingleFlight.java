@@ -0,0 +1,142 @@
+package top.kangyaocoding.chatgpt.flight;
+
+import io.reactivex.Single;
+import okhttp3.RequestBody;
+import okhttp3.sse.EventSource;
+import okio.Buffer;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * @Author K·Herbert
+ * @Description 在途请求合并（single-flight）。
+ * 序列化结果逐字节相同的并发请求共享同一个在途的 Single，只向上游发送一次；请求结束即从表中移除，不缓存结果。
+ * 全部调用方都释放订阅后取消上游请求。流式请求通过 eventSourceFactory 合并，后加入者先收到已到达的增量数据，再接收后续数据。
+ * @Date 2024-06-20 09:30
+ */
+public class SingleFlight {
+
+    private final SingleFlightOptions options;
+    private final ConcurrentMap<String, Flight<?>> flights = new ConcurrentHashMap<>();
+    /* 流式请求的在途表，由 SingleFlightEventSourceFactory 维护 */
+    final ConcurrentMap<String, StreamFlight> streams = new ConcurrentHashMap<>();
+    final LongAdder leaders = new LongAdder();
+    final LongAdder joined = new LongAdder();
+    final LongAdder overflowed = new LongAdder();
+
+    public SingleFlight(SingleFlightOptions options) {
+        this.options = options;
+    }
+
+    public SingleFlightOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 以合并方式执行非流式请求。
+     *
+     * @param endpoint 接口路径，未在配置中启用时直接执行。
+     * @param request  请求对象，按序列化后的字节判断是否相同。
+     * @param call     创建上游请求的函数。
+     * @return 返回可能与其他调用方共享的结果。
+     */
+    public <T> Single<T> execute(String endpoint, Object request, Supplier<Single<T>> call) {
+        return execute(endpoint, request, call, () -> {
+        });
+    }
+
+    /**
+     * 以合并方式执行非流式请求。
+     *
+     * @param endpoint 接口路径，未在配置中启用时直接执行。
+     * @param request  请求对象，按序列化后的字节判断是否相同。
+     * @param call     创建上游请求的函数。
+     * @param onJoin   加入他人在途请求、自身不会发出请求时的回调，例如退还为该请求预留的限流许可。
+     * @return 返回可能与其他调用方共享的结果。
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Single<T> execute(String endpoint, Object request, Supplier<Single<T>> call, Runnable onJoin) {
+        if (!options.getEndpoints().contains(endpoint)) {
+            return call.get();
+        }
+        return Single.defer(() -> {
+            String key = endpoint + ':' + hash(OpenAiJson.requestBody(request));
+            while (true) {
+                Flight<T> flight = (Flight<T>) flights.get(key);
+                if (flight == null) {
+                    Flight<T> created = new Flight<>();
+                    created.shared = call.get()
+                            .doOnEvent((value, error) -> flights.remove(key, created))
+                            .doOnDispose(() -> flights.remove(key, created))
+                            .toObservable()
+                            .replay(1)
+                            .refCount()
+                            .singleOrError();
+                    if (flights.putIfAbsent(key, created) != null) {
+                        continue;
+                    }
+                    leaders.increment();
+                    return created.shared;
+                }
+                if (flight.waiters.incrementAndGet() > options.getMaxWaiters()) {
+                    overflowed.increment();
+                    return call.get();
+                }
+                joined.increment();
+                onJoin.run();
+                return flight.shared;
+            }
+        });
+    }
+
+    /**
+     * 包装事件源工厂，使相同的流式请求共享同一个上游连接。
+     *
+     * @param delegate 实际发起请求的事件源工厂。
+     * @param executor 向后加入者回放已到达数据的执行器。
+     * @return 返回带合并功能的事件源工厂。
+     */
+    public EventSource.Factory eventSourceFactory(EventSource.Factory delegate, Executor executor) {
+        return new SingleFlightEventSourceFactory(this, delegate, executor);
+    }
+
+    /**
+     * 获取统计信息快照。
+     *
+     * @return 返回合并统计。
+     */
+    public SingleFlightStats stats() {
+        return new SingleFlightStats(leaders.sum(), joined.sum(), overflowed.sum(), flights.size() + streams.size());
+    }
+
+    /**
+     * 计算请求体的哈希，与实际发送的字节一致。
+     */
+    static String hash(RequestBody body) {
+        Buffer buffer = new Buffer();
+        try {
+            body.writeTo(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.sha256().hex();
+    }
+
+    /**
+     * 一个在途的非流式请求。
+     */
+    private static final class Flight<T> {
+
+        /* 包含发起者在内的调用方数量 */
+        private final AtomicInteger waiters = new AtomicInteger(1);
+        private Single<T> shared;
+    }
+}
@@ -0,0 +1,72 @@
+package top.kangyaocoding.chatgpt.flight;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @Author K·Herbert
+ * @Description 带在途合并的事件源工厂。
+ * 请求地址、用户密钥与请求体字节均相同的流式请求共享一个上游事件源；后加入者在执行器上补发已到达的数据，之后与其他调用方同步接收。
+ * @Date 2024-06-20 09:30
+ */
+class SingleFlightEventSourceFactory implements EventSource.Factory {
+
+    private final SingleFlight singleFlight;
+    private final EventSource.Factory delegate;
+    private final Executor executor;
+
+    SingleFlightEventSourceFactory(SingleFlight singleFlight, EventSource.Factory delegate, Executor executor) {
+        this.singleFlight = singleFlight;
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @NotNull
+    @Override
+    public EventSource newEventSource(@NotNull Request request, @NotNull EventSourceListener listener) {
+        RequestBody body = request.body();
+        if (body == null || !isEnabled(request)) {
+            return delegate.newEventSource(request, listener);
+        }
+        String key = request.url() + "|" + request.header("apiKey") + "|" + SingleFlight.hash(body);
+        while (true) {
+            StreamFlight flight = singleFlight.streams.get(key);
+            if (flight == null) {
+                StreamFlight created = new StreamFlight(singleFlight.streams, key);
+                if (singleFlight.streams.putIfAbsent(key, created) != null) {
+                    continue;
+                }
+                singleFlight.leaders.increment();
+                EventSource joiner = created.join(request, listener, Integer.MAX_VALUE);
+                created.start(delegate, request);
+                return joiner;
+            }
+            EventSource joiner = flight.join(request, listener, singleFlight.getOptions().getMaxWaiters());
+            if (joiner != null) {
+                singleFlight.joined.increment();
+                executor.execute(() -> flight.drain(joiner));
+                return joiner;
+            }
+            if (!flight.isTerminated()) {
+                singleFlight.overflowed.increment();
+                return delegate.newEventSource(request, listener);
+            }
+            singleFlight.streams.remove(key, flight);
+        }
+    }
+
+    private boolean isEnabled(Request request) {
+        String path = request.url().encodedPath();
+        for (String endpoint : singleFlight.getOptions().getEndpoints()) {
+            if (path.endsWith(endpoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package top.kangyaocoding.chatgpt.flight;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+
+import java.util.Set;
+
+/**
+ * @Author K·Herbert
+ * @Description 在途请求合并的配置项。
+ * @Date 2024-06-20 09:30
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SingleFlightOptions {
+
+    /* 参与合并的接口路径 */
+    @Builder.Default
+    private Set<String> endpoints = Set.of(IOpenAiApi.V_1_CHAT_COMPLETIONS, IOpenAiApi.V_1_EMBEDDINGS);
+    /* 每个在途请求最多合并的调用方数量（含发起者），超过后新的调用方单独发起请求 */
+    @Builder.Default
+    private int maxWaiters = 64;
+
+}
@@ -0,0 +1,26 @@
+package top.kangyaocoding.chatgpt.flight;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 在途请求合并的统计信息快照。
+ * @Date 2024-06-20 09:30
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class SingleFlightStats {
+
+    /* 实际发往上游的请求数 */
+    private final long leaders;
+    /* 加入已有在途请求的调用方数 */
+    private final long joined;
+    /* 因达到等待者上限而单独发起的请求数 */
+    private final long overflowed;
+    /* 当前在途的请求数 */
+    private final int inFlight;
+
+}
@@ -0,0 +1,250 @@
+package top.kangyaocoding.chatgpt.flight;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 一个在途的流式请求。
+ * 上游事件按到达顺序追加到列表，每个调用方记录自己已收到的位置，由上游线程或补发线程推进，同一调用方的回调不会并发。
+ * 上游线程依次向各调用方投递，消费最慢的调用方会同时减慢其他调用方与 socket 读取。
+ * 所有调用方取消后取消上游事件源。
+ * @Date 2024-06-20 09:30
+ */
+class StreamFlight {
+
+    private final Map<String, StreamFlight> streams;
+    private final String key;
+    private final ReentrantLock lock = new ReentrantLock();
+    /* 已到达的事件，依次为 id、type、data */
+    private final List<String[]> events = new ArrayList<>();
+    private final List<Joiner> joiners = new ArrayList<>();
+    private EventSource upstream;
+    private Response openResponse;
+    private boolean terminated;
+    private Throwable failure;
+    private Response failureResponse;
+
+    StreamFlight(Map<String, StreamFlight> streams, String key) {
+        this.streams = streams;
+        this.key = key;
+    }
+
+    void start(EventSource.Factory delegate, Request request) {
+        EventSource eventSource = delegate.newEventSource(request, new UpstreamListener());
+        lock.lock();
+        try {
+            upstream = eventSource;
+            if (joiners.isEmpty()) {
+                // 发起者在上游创建前已经取消
+                eventSource.cancel();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isTerminated() {
+        lock.lock();
+        try {
+            return terminated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 加入在途请求。
+     *
+     * @return 返回调用方对应的事件源，已结束或达到等待者上限时返回 null。
+     */
+    EventSource join(Request request, EventSourceListener listener, int maxWaiters) {
+        lock.lock();
+        try {
+            if (terminated || joiners.size() >= maxWaiters) {
+                return null;
+            }
+            Joiner joiner = new Joiner(request, listener);
+            joiners.add(joiner);
+            return joiner;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把尚未投递的数据依次投递给调用方。
+     */
+    void drain(EventSource eventSource) {
+        Joiner joiner = (Joiner) eventSource;
+        joiner.deliverLock.lock();
+        try {
+            while (!joiner.finished && !joiner.canceled) {
+                Response open;
+                String[] event = null;
+                boolean done;
+                lock.lock();
+                try {
+                    open = joiner.opened ? null : openResponse;
+                    if (joiner.delivered < events.size()) {
+                        event = events.get(joiner.delivered);
+                    }
+                    done = terminated && event == null;
+                } finally {
+                    lock.unlock();
+                }
+                if (open != null) {
+                    joiner.opened = true;
+                    joiner.listener.onOpen(joiner, open);
+                } else if (event != null) {
+                    joiner.delivered++;
+                    joiner.listener.onEvent(joiner, event[0], event[1], event[2]);
+                } else if (done) {
+                    joiner.finished = true;
+                    if (failure == null && failureResponse == null) {
+                        joiner.listener.onClosed(joiner);
+                    } else {
+                        joiner.listener.onFailure(joiner, failure, failureResponse);
+                    }
+                } else {
+                    return;
+                }
+            }
+        } finally {
+            joiner.deliverLock.unlock();
+        }
+    }
+
+    private void drainAll() {
+        List<Joiner> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(joiners);
+        } finally {
+            lock.unlock();
+        }
+        for (Joiner joiner : snapshot) {
+            drain(joiner);
+        }
+    }
+
+    private void leave(Joiner joiner) {
+        boolean abandoned;
+        EventSource cancel;
+        lock.lock();
+        try {
+            joiners.remove(joiner);
+            abandoned = joiners.isEmpty() && !terminated;
+            if (abandoned) {
+                terminated = true;
+            }
+            cancel = upstream;
+        } finally {
+            lock.unlock();
+        }
+        if (abandoned) {
+            streams.remove(key, this);
+            if (cancel != null) {
+                cancel.cancel();
+            }
+        }
+    }
+
+    private void terminate(Throwable t, Response response) {
+        lock.lock();
+        try {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            failure = t;
+            failureResponse = response;
+        } finally {
+            lock.unlock();
+        }
+        streams.remove(key, this);
+        drainAll();
+    }
+
+    /**
+     * 上游事件源的监听器。
+     */
+    private class UpstreamListener extends EventSourceListener {
+
+        @Override
+        public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+            lock.lock();
+            try {
+                openResponse = response;
+            } finally {
+                lock.unlock();
+            }
+            drainAll();
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            lock.lock();
+            try {
+                events.add(new String[]{id, type, data});
+            } finally {
+                lock.unlock();
+            }
+            drainAll();
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            terminate(null, null);
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            // 失败时调用方至少需要一个非空的原因
+            terminate(t == null && response == null ? new IllegalStateException("Upstream event source failed") : t, response);
+        }
+    }
+
+    /**
+     * 调用方持有的事件源视图。
+     */
+    private class Joiner implements EventSource {
+
+        private final Request request;
+        private final EventSourceListener listener;
+        /* 保证同一调用方的回调依次执行 */
+        private final ReentrantLock deliverLock = new ReentrantLock();
+        private boolean opened;
+        private int delivered;
+        private boolean finished;
+        private volatile boolean canceled;
+
+        private Joiner(Request request, EventSourceListener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public void cancel() {
+            if (!canceled) {
+                canceled = true;
+                leave(this);
+            }
+        }
+    }
+}
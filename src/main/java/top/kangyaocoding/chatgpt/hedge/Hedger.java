@@ -0,0 +1,110 @@
+package top.kangyaocoding.chatgpt.hedge;
+
+import io.reactivex.Single;
+import top.kangyaocoding.chatgpt.retry.RetryBudget;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * @Author K·Herbert
+ * @Description 对冲请求执行器。
+ * 主请求超过该模型与接口近期延迟的分位数仍未返回时，在预算与客户端限流允许的情况下发出一个副本，
+ * 两者通过 Single.amb 竞争，先返回者胜出，另一个被释放订阅并取消对应的 Call。
+ * 对冲副本的失败会被忽略，结果以主请求为准。主请求被副本取消时，已等待的时间作为延迟下限计入窗口。
+ * 请求必须基于异步接口（Call.enqueue）创建，否则两个请求会在同一线程上依次执行。
+ * @Date 2024-06-17 10:00
+ */
+public class Hedger {
+
+    private final HedgingPolicy policy;
+    /* 对冲预算，与重试预算采用相同的额度模型 */
+    private final RetryBudget budget;
+    /* 按模型与接口划分的延迟窗口 */
+    private final ConcurrentMap<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedgesFired = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder hedgesSuppressed = new LongAdder();
+
+    public Hedger(HedgingPolicy policy) {
+        this.policy = policy;
+        this.budget = new RetryBudget(policy.getBudgetRatio(), policy.getBudgetMinHedges());
+    }
+
+    /**
+     * 以对冲方式执行请求。
+     *
+     * @param key       延迟统计的分组键，通常为接口与模型。
+     * @param call      创建请求的函数，每次调用发出一个新的请求。
+     * @param admission 对冲副本发出前的准入检查，例如客户端限流的非阻塞预留。
+     * @return 返回先完成的结果。
+     */
+    public <T> Single<T> hedge(String key, Supplier<Single<T>> call, BooleanSupplier admission) {
+        LatencyWindow window = windows.computeIfAbsent(key, k -> new LatencyWindow(policy.getWindowSize()));
+        return Single.defer(() -> {
+            requests.increment();
+            budget.deposit();
+            long start = System.nanoTime();
+            long threshold = thresholdNanos(window);
+            // 只记录主请求的延迟：对冲副本胜出时的耗时包含等待阈值的时间，并不代表单个请求的延迟。
+            // 主请求因副本胜出被取消时记录已等待的时间作为下限，使慢请求仍留在窗口中，阈值不会只由快请求决定；
+            // 未到阈值就被调用方取消的主请求不提供尾部信息，不记录。amb 在胜者完成后也会释放其订阅，每个请求只记录一次
+            AtomicBoolean settled = new AtomicBoolean();
+            Single<T> primary = call.get()
+                    .doOnEvent((value, error) -> {
+                        if (settled.compareAndSet(false, true) && error == null) {
+                            window.record(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnDispose(() -> {
+                        long elapsed = System.nanoTime() - start;
+                        if (elapsed >= threshold && settled.compareAndSet(false, true)) {
+                            window.record(elapsed);
+                        }
+                    });
+            Single<T> hedged = Single.timer(threshold, TimeUnit.NANOSECONDS)
+                    .flatMap(ignored -> {
+                        if (!budget.tryWithdraw() || !admission.getAsBoolean()) {
+                            hedgesSuppressed.increment();
+                            return Single.<T>never();
+                        }
+                        hedgesFired.increment();
+                        return call.get()
+                                .doOnSuccess(value -> hedgesWon.increment())
+                                .onErrorResumeNext(Single.never());
+                    });
+            return Single.amb(Arrays.asList(primary, hedged));
+        });
+    }
+
+    /**
+     * 获取统计信息。
+     *
+     * @return 返回当前时刻的统计快照。
+     */
+    public HedgingStats stats() {
+        return new HedgingStats(requests.sum(), hedgesFired.sum(), hedgesWon.sum(), hedgesSuppressed.sum());
+    }
+
+    /**
+     * 获取分组键对应的延迟窗口，尚未有请求时返回 null。
+     */
+    LatencyWindow window(String key) {
+        return windows.get(key);
+    }
+
+    private long thresholdNanos(LatencyWindow window) {
+        long percentile = window.percentile(policy.getPercentile(), policy.getMinSamples());
+        if (percentile < 0) {
+            return policy.getInitialDelay().toNanos();
+        }
+        return Math.max(policy.getMinDelay().toNanos(), percentile);
+    }
+}
@@ -0,0 +1,44 @@
+package top.kangyaocoding.chatgpt.hedge;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * @Author K·Herbert
+ * @Description 对冲请求策略配置。
+ * 非流式请求在超过动态阈值（同一模型与接口近期延迟的指定分位数）仍未返回时发送一个副本，先返回者胜出，另一个被取消。
+ * @Date 2024-06-17 10:00
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HedgingPolicy {
+
+    /* 触发对冲的延迟分位数 */
+    @Builder.Default
+    private double percentile = 0.95;
+    /* 对冲阈值的下限 */
+    @Builder.Default
+    private Duration minDelay = Duration.ofMillis(200);
+    /* 样本不足时使用的对冲阈值 */
+    @Builder.Default
+    private Duration initialDelay = Duration.ofSeconds(5);
+    /* 计算分位数所需的最少样本数 */
+    @Builder.Default
+    private int minSamples = 20;
+    /* 每个模型与接口保留的最近延迟样本数 */
+    @Builder.Default
+    private int windowSize = 256;
+    /* 对冲预算：对冲请求最多占正常请求的比例 */
+    @Builder.Default
+    private double budgetRatio = 0.05;
+    /* 对冲预算的最低储备 */
+    @Builder.Default
+    private int budgetMinHedges = 5;
+
+}
@@ -0,0 +1,26 @@
+package top.kangyaocoding.chatgpt.hedge;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 对冲请求统计信息快照。
+ * @Date 2024-06-17 10:00
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class HedgingStats {
+
+    /* 经过对冲策略的请求数 */
+    private final long requests;
+    /* 发出的对冲副本数 */
+    private final long hedgesFired;
+    /* 对冲副本先返回的次数 */
+    private final long hedgesWon;
+    /* 因对冲预算或客户端限流而放弃对冲的次数 */
+    private final long hedgesSuppressed;
+
+}
@@ -0,0 +1,72 @@
+package top.kangyaocoding.chatgpt.hedge;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 最近延迟样本的环形窗口，按需计算分位数，每记录 16 个样本才重新排序一次。
+ * @Date 2024-06-17 10:00
+ */
+class LatencyWindow {
+
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final long[] samples;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int count;
+    private int next;
+    private long cachedPercentile = -1;
+    /* 缓存值对应的分位数 */
+    private double cachedFor = -1;
+    private int sinceRecompute;
+
+    LatencyWindow(int size) {
+        this.samples = new long[size];
+    }
+
+    void record(long nanos) {
+        lock.lock();
+        try {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceRecompute++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 计算分位数。
+     *
+     * @return 返回分位数对应的纳秒数，样本不足时返回 -1。
+     */
+    long percentile(double percentile, int minSamples) {
+        lock.lock();
+        try {
+            if (count < minSamples) {
+                return -1;
+            }
+            if (cachedPercentile < 0 || cachedFor != percentile || sinceRecompute >= RECOMPUTE_INTERVAL) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                cachedPercentile = sorted[Math.max(0, Math.min(count - 1, (int) Math.ceil(percentile * count) - 1))];
+                cachedFor = percentile;
+                sinceRecompute = 0;
+            }
+            return cachedPercentile;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
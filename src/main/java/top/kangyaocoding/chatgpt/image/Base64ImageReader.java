@@ -0,0 +1,111 @@
+package top.kangyaocoding.chatgpt.image;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式读取图像生成响应。
+ * 使用 Jackson 的流式解析器逐个读取 data 数组，b64_json 字段通过 readBinaryValue 边解析边解码并写入 ImageOutput，
+ * 不生成字符串也不生成完整的 byte[]，每张图片只占用解析器的输入缓冲、解码缓冲与输出缓冲。
+ * 解码中途失败时删除已写入一部分的文件，避免留下看似完整的图片。
+ * @Date 2024-06-28 14:10
+ */
+final class Base64ImageReader {
+
+    private Base64ImageReader() {
+    }
+
+    /**
+     * 读取响应并把每张图片写入输出。
+     *
+     * @param json            响应体。
+     * @param output          图片输出。
+     * @param indexOffset     本响应中第一张图片的全局序号，拆分请求时使用。
+     * @param generationNanos 生成请求的耗时，记录在每张图片的结果中。
+     * @return 返回本响应中各图片的结果。
+     * @throws IOException 解析或写出失败时抛出。
+     */
+    static List<ImageAsset> read(InputStream json, ImageOutput output, int indexOffset, long generationNanos) throws IOException {
+        List<ImageAsset> assets = new ArrayList<>();
+        try (JsonParser parser = OpenAiJson.objectMapper().getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object in the image response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "data".equals(name)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        assets.add(readItem(parser, output, indexOffset + assets.size(), generationNanos));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return assets;
+    }
+
+    private static ImageAsset readItem(JsonParser parser, ImageOutput output, int index, long generationNanos) throws IOException {
+        long start = System.nanoTime();
+        String url = null;
+        String revisedPrompt = null;
+        long bytes = 0;
+        boolean decoded = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("b64_json".equals(field) && value == JsonToken.VALUE_STRING) {
+                boolean opened = false;
+                try (OutputStream out = output.open(index)) {
+                    opened = true;
+                    bytes = parser.readBinaryValue(Base64Variants.getDefaultVariant(), out);
+                } catch (IOException | RuntimeException e) {
+                    // 打开失败时不删除，单一目标的输出对所有序号返回同一个文件
+                    if (opened) {
+                        discard(output.path(index), e);
+                    }
+                    // Jackson 以 IllegalArgumentException 报告非法的 base64 字符
+                    if (e instanceof IllegalArgumentException) {
+                        throw new IOException("Image " + index + " has invalid b64_json", e);
+                    }
+                    throw e;
+                }
+                decoded = true;
+            } else if ("url".equals(field) && value == JsonToken.VALUE_STRING) {
+                url = parser.getText();
+            } else if ("revised_prompt".equals(field) && value == JsonToken.VALUE_STRING) {
+                revisedPrompt = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        IOException error = decoded ? null : new IOException("Image " + index + " has no b64_json, request response_format=b64_json");
+        return new ImageAsset(index, url, revisedPrompt, decoded ? output.path(index) : null, bytes,
+                generationNanos, System.nanoTime() - start, error);
+    }
+
+    /**
+     * 删除写入失败的文件，删除失败时附加到原异常上。
+     */
+    private static void discard(Path path, Exception cause) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package top.kangyaocoding.chatgpt.image;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.file.Path;
+
+/**
+ * @Author K·Herbert
+ * @Description 流水线中单张图片的结果与耗时，成功时 error 为 null。
+ * @Date 2024-06-28 09:40
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ImageAsset {
+
+    /* 图片序号，从 0 开始 */
+    private final int index;
+    /* 图片地址，b64_json 响应时为 null */
+    private final String url;
+    /* 模型改写后的提示词，仅 dall-e-3 返回 */
+    private final String revisedPrompt;
+    /* 写入的文件，使用回调时为 null */
+    private final Path path;
+    /* 图片字节数 */
+    private final long bytes;
+    /* 生成该图片的请求耗时，未拆分时同一请求的图片耗时相同 */
+    private final long generationNanos;
+    /* 下载并写出图片的耗时 */
+    private final long downloadNanos;
+    /* 失败原因 */
+    private final Throwable error;
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
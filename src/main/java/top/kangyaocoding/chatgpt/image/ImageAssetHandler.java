@@ -0,0 +1,23 @@
+package top.kangyaocoding.chatgpt.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @Author K·Herbert
+ * @Description 接收生成图片内容的回调，在网络线程上调用，各图片并发回调。
+ * @Date 2024-06-28 09:35
+ */
+@FunctionalInterface
+public interface ImageAssetHandler {
+
+    /**
+     * 读取一张图片的内容，方法返回后输入流被关闭。
+     *
+     * @param index       图片在本次请求中的序号，从 0 开始。
+     * @param contentType 图片的内容类型，例如 image/png。
+     * @param content     图片内容，直接读取网络响应体。
+     * @throws IOException 读取或写出失败时抛出，记录为该图片的错误。
+     */
+    void onImage(int index, String contentType, InputStream content) throws IOException;
+}
@@ -0,0 +1,62 @@
+package top.kangyaocoding.chatgpt.image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式解码 b64_json 时接收图片字节的目标，按图片序号打开输出流。
+ * 单一目标（某个文件、输出流或通道）只接受一张图片，多张图片请使用目录或自定义实现。
+ * @Date 2024-06-28 14:00
+ */
+@FunctionalInterface
+public interface ImageOutput {
+
+    /**
+     * 打开第 index 张图片的输出流，写完后由调用方关闭。
+     *
+     * @param index 图片序号，从 0 开始。
+     * @return 返回输出流。
+     * @throws IOException 打开失败时抛出。
+     */
+    OutputStream open(int index) throws IOException;
+
+    /**
+     * @param index 图片序号。
+     * @return 返回写入的文件，不是写入文件时返回 null。
+     */
+    default Path path(int index) {
+        return null;
+    }
+
+    /**
+     * 写入目录，文件名为 前缀-序号.png，已存在时覆盖。
+     */
+    static ImageOutput directory(Path directory, String prefix) {
+        return new ImageOutputs.DirectoryOutput(directory, prefix);
+    }
+
+    /**
+     * 写入单个文件，已存在时覆盖。
+     */
+    static ImageOutput of(Path path) {
+        return new ImageOutputs.PathOutput(path);
+    }
+
+    /**
+     * 写入调用方的输出流，写完后刷新但不关闭。
+     */
+    static ImageOutput of(OutputStream outputStream) {
+        return new ImageOutputs.StreamOutput(outputStream);
+    }
+
+    /**
+     * 写入调用方的字节通道，写完后不关闭。
+     */
+    static ImageOutput of(WritableByteChannel channel) {
+        return new ImageOutputs.StreamOutput(Channels.newOutputStream(channel));
+    }
+}
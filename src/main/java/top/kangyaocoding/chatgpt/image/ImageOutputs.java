@@ -0,0 +1,96 @@
+package top.kangyaocoding.chatgpt.image;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @Author K·Herbert
+ * @Description ImageOutput 的内置实现。解码器每次写出约 2KB，这里统一加一层固定大小的缓冲再写入文件或通道。
+ * @Date 2024-06-28 14:05
+ */
+final class ImageOutputs {
+
+    /* 写入目标前的缓冲区大小 */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private ImageOutputs() {
+    }
+
+    static final class DirectoryOutput implements ImageOutput {
+
+        private final Path directory;
+        private final String prefix;
+
+        DirectoryOutput(Path directory, String prefix) {
+            this.directory = directory;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public OutputStream open(int index) throws IOException {
+            Files.createDirectories(directory);
+            return new BufferedOutputStream(Files.newOutputStream(path(index)), BUFFER_SIZE);
+        }
+
+        @Override
+        public Path path(int index) {
+            return directory.resolve(prefix + "-" + index + ".png");
+        }
+    }
+
+    static final class PathOutput implements ImageOutput {
+
+        private final Path path;
+
+        PathOutput(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public OutputStream open(int index) throws IOException {
+            requireSingle(index);
+            return new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE);
+        }
+
+        @Override
+        public Path path(int index) {
+            return path;
+        }
+    }
+
+    static final class StreamOutput implements ImageOutput {
+
+        private final OutputStream outputStream;
+
+        StreamOutput(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public OutputStream open(int index) throws IOException {
+            requireSingle(index);
+            // 关闭时只刷新缓冲，调用方的流保持打开
+            return new BufferedOutputStream(new FilterOutputStream(outputStream) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            }, BUFFER_SIZE);
+        }
+    }
+
+    private static void requireSingle(int index) throws IOException {
+        if (index > 0) {
+            throw new IOException("A single-target ImageOutput accepts exactly one image, use ImageOutput.directory for n > 1");
+        }
+    }
+}
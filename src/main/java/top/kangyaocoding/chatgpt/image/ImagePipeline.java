@@ -0,0 +1,304 @@
+package top.kangyaocoding.chatgpt.image;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.domain.images.ImageEnum;
+import top.kangyaocoding.chatgpt.domain.images.ImageRequest;
+import top.kangyaocoding.chatgpt.domain.images.ImageResponse;
+import top.kangyaocoding.chatgpt.domain.images.Item;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author K·Herbert
+ * @Description 图像生成流水线：生成 n 张图片并并发下载到目录或回调。
+ * dall-e-3 只接受 n=1，此时把请求拆分为 n 个并发的单图请求；每张图片生成后立即开始下载，不等待其他图片。
+ * 下载复用共享客户端的连接池与分发器，但不经过 API 拦截器，图片所在的存储服务不会收到 API 密钥，也不占用限流配额。
+ * 写入目录或 ImageOutput 且使用 b64_json 时流式解码响应；回调方式仍先解析为字符串再解码。
+ * @Date 2024-06-28 10:00
+ */
+public class ImagePipeline {
+
+    private static final String DEFAULT_CONTENT_TYPE = "image/png";
+
+    private final IOpenAiApi asyncOpenAiApi;
+    private final OkHttpClient assetClient;
+
+    /**
+     * @param asyncOpenAiApi 基于 enqueue 的异步接口实例。
+     * @param okHttpClient   共享的网络客户端，下载使用去掉拦截器后的副本。
+     */
+    public ImagePipeline(IOpenAiApi asyncOpenAiApi, OkHttpClient okHttpClient) {
+        this.asyncOpenAiApi = asyncOpenAiApi;
+        OkHttpClient.Builder builder = okHttpClient.newBuilder();
+        builder.interceptors().clear();
+        builder.networkInterceptors().clear();
+        this.assetClient = builder.build();
+    }
+
+    /**
+     * 生成图片并写入目录，文件名为 前缀-序号.扩展名，已存在时覆盖。
+     *
+     * @param imageRequest 图像请求。
+     * @param directory    目标目录，不存在时创建。
+     * @param options      流水线配置。
+     * @return 返回按序号排列的结果，全部图片写入磁盘后完成。
+     */
+    public Single<List<ImageAsset>> generate(ImageRequest imageRequest, Path directory, ImagePipelineOptions options) {
+        if (ImageEnum.ResponseFormat.B64_JSON.getCode().equals(imageRequest.getResponseFormat())) {
+            return generate(imageRequest, ImageOutput.directory(directory, options.getFilePrefix()), options);
+        }
+        return Single.defer(() -> {
+            Files.createDirectories(directory);
+            return run(imageRequest, options, (index, contentType, content) -> {
+                Path path = directory.resolve(options.getFilePrefix() + "-" + index + "." + extension(contentType));
+                Files.copy(content, path, StandardCopyOption.REPLACE_EXISTING);
+                return path;
+            });
+        });
+    }
+
+    /**
+     * 生成图片并把内容交给回调。
+     *
+     * @param imageRequest 图像请求。
+     * @param handler      图片内容回调。
+     * @param options      流水线配置。
+     * @return 返回按序号排列的结果，全部回调返回后完成。
+     */
+    public Single<List<ImageAsset>> generate(ImageRequest imageRequest, ImageAssetHandler handler, ImagePipelineOptions options) {
+        return run(imageRequest, options, (index, contentType, content) -> {
+            handler.onImage(index, contentType, content);
+            return null;
+        });
+    }
+
+    /**
+     * 以 b64_json 生成图片，流式解析响应并边解码边写入输出，不生成 b64_json 字符串。
+     *
+     * @param imageRequest 图像请求，response_format 固定为 b64_json。
+     * @param output       图片输出。
+     * @param options      流水线配置，下载并发数不适用。
+     * @return 返回按序号排列的结果，全部图片写入输出后完成。
+     */
+    public Single<List<ImageAsset>> generate(ImageRequest imageRequest, ImageOutput output, ImagePipelineOptions options) {
+        if (options.getGenerationConcurrency() < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        int n = imageRequest.getN() == null ? 1 : imageRequest.getN();
+        String b64Json = ImageEnum.ResponseFormat.B64_JSON.getCode();
+        if (!isSplit(imageRequest, n, options)) {
+            return decode(copy(imageRequest, n, b64Json), output, 0);
+        }
+        ImageRequest single = copy(imageRequest, 1, b64Json);
+        return Flowable.range(0, n)
+                .flatMapSingle(index -> decode(single, output, index)
+                        .onErrorReturn(error -> Collections.singletonList(new ImageAsset(index, null, null, null, 0, 0, 0, error))), false, options.getGenerationConcurrency())
+                .flatMapIterable(assets -> assets)
+                .toSortedList(Comparator.comparingInt(ImageAsset::getIndex));
+    }
+
+    private Single<List<ImageAsset>> decode(ImageRequest imageRequest, ImageOutput output, int indexOffset) {
+        return Single.defer(() -> {
+            long start = System.nanoTime();
+            return asyncOpenAiApi.genImageStream(imageRequest).map(body -> {
+                long generationNanos = System.nanoTime() - start;
+                try (ResponseBody responseBody = body) {
+                    return Base64ImageReader.read(responseBody.byteStream(), output, indexOffset, generationNanos);
+                }
+            });
+        });
+    }
+
+    private static boolean isSplit(ImageRequest imageRequest, int n, ImagePipelineOptions options) {
+        return n > 1 && (options.isSplitRequests() || ImageRequest.Model.DALL_E_3.getCode().equals(imageRequest.getModel()));
+    }
+
+    private static ImageRequest copy(ImageRequest imageRequest, int n, String responseFormat) {
+        return ImageRequest.builder()
+                .model(imageRequest.getModel())
+                .prompt(imageRequest.getPrompt())
+                .n(n)
+                .size(imageRequest.getSize())
+                .responseFormat(responseFormat)
+                .user(imageRequest.getUser())
+                .build();
+    }
+
+    private Single<List<ImageAsset>> run(ImageRequest imageRequest, ImagePipelineOptions options, AssetWriter writer) {
+        if (options.getGenerationConcurrency() < 1 || options.getDownloadConcurrency() < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        int n = imageRequest.getN() == null ? 1 : imageRequest.getN();
+        Flowable<Generated> generated;
+        if (isSplit(imageRequest, n, options)) {
+            ImageRequest single = copy(imageRequest, 1, imageRequest.getResponseFormat());
+            generated = Flowable.range(0, n).flatMapSingle(index -> timed(single)
+                    .map(timed -> new Generated(index, timed.response.getData().get(0), timed.nanos, null))
+                    .onErrorReturn(error -> new Generated(index, null, 0, error)), false, options.getGenerationConcurrency());
+        } else {
+            generated = timed(imageRequest).flattenAsFlowable(timed -> {
+                List<Generated> items = new ArrayList<>();
+                for (int index = 0; index < timed.response.getData().size(); index++) {
+                    items.add(new Generated(index, timed.response.getData().get(index), timed.nanos, null));
+                }
+                return items;
+            });
+        }
+        return generated
+                .flatMapSingle(item -> item.error != null
+                        ? Single.just(new ImageAsset(item.index, null, null, null, 0, 0, 0, item.error))
+                        : fetch(item, writer), false, options.getDownloadConcurrency())
+                .toSortedList(Comparator.comparingInt(ImageAsset::getIndex));
+    }
+
+    private Single<TimedResponse> timed(ImageRequest imageRequest) {
+        return Single.defer(() -> {
+            long start = System.nanoTime();
+            return asyncOpenAiApi.genImage(imageRequest).map(response -> new TimedResponse(response, System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * 下载 URL 或解码 b64_json，并交给写出函数；失败记录在结果中，不影响其他图片。
+     */
+    private Single<ImageAsset> fetch(Generated generated, AssetWriter writer) {
+        Item item = generated.item;
+        if (item.getUrl() == null) {
+            return Single.fromCallable(() -> {
+                long start = System.nanoTime();
+                try {
+                    if (item.getB64Json() == null) {
+                        throw new IOException("Image " + generated.index + " has neither url nor b64_json");
+                    }
+                    InputStream decoded = Base64.getDecoder().wrap(new ByteArrayInputStream(item.getB64Json().getBytes(StandardCharsets.ISO_8859_1)));
+                    return write(generated, writer, DEFAULT_CONTENT_TYPE, Okio.source(decoded), start);
+                } catch (IOException | RuntimeException e) {
+                    return failed(generated, start, e);
+                }
+            }).subscribeOn(Schedulers.io());
+        }
+        return Single.create(emitter -> {
+            long start = System.nanoTime();
+            Call call = assetClient.newCall(new Request.Builder().url(item.getUrl()).build());
+            emitter.setCancellable(call::cancel);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    emitter.onSuccess(failed(generated, start, e));
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (ResponseBody body = response.body()) {
+                        if (!response.isSuccessful()) {
+                            throw new IOException("Image " + generated.index + " download failed with HTTP " + response.code());
+                        }
+                        MediaType contentType = body.contentType();
+                        emitter.onSuccess(write(generated, writer, contentType == null ? DEFAULT_CONTENT_TYPE : contentType.type() + "/" + contentType.subtype(), body.source(), start));
+                    } catch (IOException | RuntimeException e) {
+                        emitter.onSuccess(failed(generated, start, e));
+                    }
+                }
+            });
+        });
+    }
+
+    private static ImageAsset write(Generated generated, AssetWriter writer, String contentType, Source source, long start) throws IOException {
+        AtomicLong bytes = new AtomicLong();
+        Source counting = new ForwardingSource(source) {
+            @Override
+            public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    bytes.addAndGet(read);
+                }
+                return read;
+            }
+        };
+        Path path;
+        try (InputStream content = Okio.buffer(counting).inputStream()) {
+            path = writer.write(generated.index, contentType, content);
+        }
+        Item item = generated.item;
+        return new ImageAsset(generated.index, item.getUrl(), item.getRevisedPrompt(), path, bytes.get(),
+                generated.generationNanos, System.nanoTime() - start, null);
+    }
+
+    private static ImageAsset failed(Generated generated, long start, Throwable error) {
+        Item item = generated.item;
+        return new ImageAsset(generated.index, item.getUrl(), item.getRevisedPrompt(), null, 0,
+                generated.generationNanos, System.nanoTime() - start, error);
+    }
+
+    private static String extension(String contentType) {
+        switch (contentType) {
+            case "image/jpeg":
+                return "jpg";
+            case "image/webp":
+                return "webp";
+            case "image/gif":
+                return "gif";
+            default:
+                return "png";
+        }
+    }
+
+    /**
+     * 写出一张图片，返回写入的文件，回调方式返回 null。
+     */
+    @FunctionalInterface
+    private interface AssetWriter {
+        Path write(int index, String contentType, InputStream content) throws IOException;
+    }
+
+    private static final class TimedResponse {
+        private final ImageResponse response;
+        private final long nanos;
+
+        private TimedResponse(ImageResponse response, long nanos) {
+            this.response = response;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final class Generated {
+        private final int index;
+        private final Item item;
+        private final long generationNanos;
+        private final Throwable error;
+
+        private Generated(int index, Item item, long generationNanos, Throwable error) {
+            this.index = index;
+            this.item = item;
+            this.generationNanos = generationNanos;
+            this.error = error;
+        }
+    }
+}
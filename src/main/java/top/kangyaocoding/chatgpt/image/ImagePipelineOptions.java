@@ -0,0 +1,31 @@
+package top.kangyaocoding.chatgpt.image;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Author K·Herbert
+ * @Description 图像生成流水线的配置项。
+ * @Date 2024-06-28 09:30
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImagePipelineOptions {
+
+    /* 拆分为单图请求时同时进行的生成请求数 */
+    @Builder.Default
+    private int generationConcurrency = 4;
+    /* 同时下载的图片数 */
+    @Builder.Default
+    private int downloadConcurrency = 8;
+    /* 为 true 时总是把 n 张图拆分为 n 个单图请求；dall-e-3 只接受 n=1，无论此项如何都会拆分 */
+    @Builder.Default
+    private boolean splitRequests = false;
+    /* 写入目录时的文件名前缀，文件名为 前缀-序号.扩展名 */
+    @Builder.Default
+    private String filePrefix = "image";
+}
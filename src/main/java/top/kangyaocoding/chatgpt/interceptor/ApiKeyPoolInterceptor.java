@@ -0,0 +1,70 @@
+package top.kangyaocoding.chatgpt.interceptor;
+
+import cn.hutool.http.Header;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.limiter.RateLimitExceededException;
+import top.kangyaocoding.chatgpt.pool.ApiEndpoint;
+import top.kangyaocoding.chatgpt.pool.ApiKeyPool;
+
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 多密钥负载均衡拦截器，需添加在 OpenAiInterceptor 之后、RateLimitInterceptor 之前。
+ * 对发往默认 apiHost 的请求，从连接池中选择一组主机与密钥，改写请求地址与认证头，并根据响应状态更新健康度。
+ * Retrofit 调用与 SSE 流共用同一个网络客户端，因此都会经过这里；调用方显式传入其他 apiKey 的请求保持不变。
+ * SSE 请求未指定密钥时会以默认密钥填充 apiKey 请求头，与默认密钥相同的请求头视为未指定，同样使用连接池。
+ * @Date 2024-06-15 10:00
+ */
+public class ApiKeyPoolInterceptor implements Interceptor {
+
+    private final ApiKeyPool apiKeyPool;
+    /* 默认的 API 主机地址，以 / 结尾 */
+    private final String defaultApiHost;
+    /* 默认的 API 密钥 */
+    private final String defaultApiKey;
+
+    public ApiKeyPoolInterceptor(ApiKeyPool apiKeyPool, String defaultApiHost, String defaultApiKey) {
+        this.apiKeyPool = apiKeyPool;
+        this.defaultApiHost = defaultApiHost.endsWith("/") ? defaultApiHost : defaultApiHost + "/";
+        this.defaultApiKey = defaultApiKey;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String apiKeyByUser = request.header("apiKey");
+        String url = request.url().toString();
+        boolean userKey = apiKeyByUser != null && !Constants.NULL.equals(apiKeyByUser) && !apiKeyByUser.isEmpty()
+                && !apiKeyByUser.equals(defaultApiKey);
+        if (userKey || !url.startsWith(defaultApiHost)) {
+            return chain.proceed(request);
+        }
+        ApiEndpoint endpoint = apiKeyPool.select();
+        HttpUrl endpointUrl = HttpUrl.get(endpoint.getApiHost() + url.substring(defaultApiHost.length()));
+        Request routed = request.newBuilder()
+                .url(endpointUrl)
+                .header(Header.AUTHORIZATION.getValue(), "Bearer " + endpoint.getApiKey())
+                // 不把默认密钥带给连接池中的其他主机
+                .removeHeader("apiKey")
+                .build();
+        Response response;
+        try {
+            response = chain.proceed(routed);
+        } catch (RateLimitExceededException e) {
+            // 客户端限流拒绝时请求没有发出，不代表该组主机与密钥不可用
+            throw e;
+        } catch (IOException e) {
+            apiKeyPool.recordFailure(endpoint);
+            throw e;
+        }
+        apiKeyPool.record(endpoint, response);
+        return response;
+    }
+}
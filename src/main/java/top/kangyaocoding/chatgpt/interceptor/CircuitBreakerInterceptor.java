@@ -0,0 +1,62 @@
+package top.kangyaocoding.chatgpt.interceptor;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreaker;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerOpenException;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerRegistry;
+import top.kangyaocoding.chatgpt.limiter.RateLimitExceededException;
+
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 熔断拦截器，需添加在 ApiKeyPoolInterceptor 之后以便按实际请求的主机熔断，
+ * 并添加在 RateLimitInterceptor 之后，使计时从通过客户端限流后开始，排队等待配额的时间不算作慢调用。
+ * 以收到响应头为调用结束：I/O 异常与 5xx 记为失败，耗时超过 slowCallDuration 记为慢调用；
+ * 被取消的调用与客户端限流拒绝不代表主机故障，不计入统计。
+ * SSE 流同样经过共享的网络客户端，熔断打开时流式请求也会立即失败。
+ * @Date 2024-06-18 10:00
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    private final CircuitBreakerRegistry registry;
+
+    public CircuitBreakerInterceptor(CircuitBreakerRegistry registry) {
+        this.registry = registry;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(key(request.url()));
+        if (!circuitBreaker.tryAcquire()) {
+            throw new CircuitBreakerOpenException(circuitBreaker.getKey());
+        }
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled() || e instanceof RateLimitExceededException) {
+                // 调用方主动取消（例如对冲请求落败）或拦截器顺序不同时被客户端限流拒绝，只归还占用的探测名额
+                circuitBreaker.release();
+            } else {
+                // 未完成的探测同样需要记录结果，否则半开状态无法结束
+                circuitBreaker.record(false, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        circuitBreaker.record(response.code() < 500, System.nanoTime() - start);
+        return response;
+    }
+
+    private String key(HttpUrl url) {
+        String host = url.host() + ':' + url.port();
+        return registry.getPolicy().isPerEndpoint() ? host + url.encodedPath() : host;
+    }
+}
@@ -0,0 +1,170 @@
+package top.kangyaocoding.chatgpt.interceptor;
+
+import okhttp3.*;
+import okio.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.kangyaocoding.chatgpt.metrics.MetricsRecorder;
+import top.kangyaocoding.chatgpt.metrics.MetricsTags;
+
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 指标拦截器，需作为最后一个应用拦截器添加，使每次重试都作为一次独立的请求统计，且不影响其他拦截器读取请求对象。
+ * 耗时从发送请求计算到响应体读取完毕或关闭，流式请求即为整条流的时长；请求体与响应体在写入和读取时计数，不会额外缓冲。
+ * @Date 2024-06-21 09:30
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    private final MetricsRecorder recorder;
+
+    public MetricsInterceptor(MetricsRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = MetricsTags.endpoint(request.url());
+        String model = MetricsTags.model(request);
+        CountingRequestBody requestBody = request.body() == null ? null : new CountingRequestBody(request.body());
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(requestBody == null ? request : request.newBuilder().method(request.method(), requestBody).build());
+        } catch (IOException | RuntimeException e) {
+            recorder.recordFailure(endpoint, model, e, System.nanoTime() - start);
+            throw e;
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            recorder.recordRequest(endpoint, model, response.code(), System.nanoTime() - start, requestBody == null ? 0 : requestBody.bytes, 0);
+            return response;
+        }
+        Recording recording = new Recording(endpoint, model, response.code(), start, requestBody);
+        return response.newBuilder().body(new CountingResponseBody(body, recording)).build();
+    }
+
+    /**
+     * 一次请求的记录状态，响应体读完或关闭时提交。
+     */
+    private final class Recording {
+
+        private final String endpoint;
+        private final String model;
+        private final int status;
+        private final long start;
+        private final CountingRequestBody requestBody;
+        private long bytesIn;
+        private boolean recorded;
+
+        private Recording(String endpoint, String model, int status, long start, CountingRequestBody requestBody) {
+            this.endpoint = endpoint;
+            this.model = model;
+            this.status = status;
+            this.start = start;
+            this.requestBody = requestBody;
+        }
+
+        private void commit() {
+            if (!recorded) {
+                recorded = true;
+                recorder.recordRequest(endpoint, model, status, System.nanoTime() - start, requestBody == null ? 0 : requestBody.bytes, bytesIn);
+            }
+        }
+    }
+
+    /**
+     * 写入时计数的请求体，可重复写入时以最后一次为准。
+     */
+    private static final class CountingRequestBody extends RequestBody {
+
+        private final RequestBody delegate;
+        private volatile long bytes;
+
+        private CountingRequestBody(RequestBody delegate) {
+            this.delegate = delegate;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public void writeTo(@NotNull BufferedSink sink) throws IOException {
+            long[] written = new long[1];
+            BufferedSink counting = Okio.buffer(new ForwardingSink(sink) {
+                @Override
+                public void write(@NotNull Buffer source, long byteCount) throws IOException {
+                    super.write(source, byteCount);
+                    written[0] += byteCount;
+                }
+            });
+            delegate.writeTo(counting);
+            counting.emit();
+            bytes = written[0];
+        }
+    }
+
+    /**
+     * 读取时计数的响应体。
+     */
+    private static final class CountingResponseBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        private CountingResponseBody(ResponseBody delegate, Recording recording) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read == -1) {
+                        recording.commit();
+                    } else {
+                        recording.bytesIn += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    recording.commit();
+                    super.close();
+                }
+            });
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @NotNull
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -7,7 +7,9 @@ import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerOpenException;
 import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.limiter.RateLimitExceededException;
 
 import java.io.IOException;
 
@@ -41,6 +43,9 @@ public class OpenAiInterceptor implements Interceptor {
         try {
             // 在请求链中继续处理请求，添加认证信息。
             return chain.proceed(auth(this.apiKeyBySystem, chain.request()));
+        } catch (RateLimitExceededException | CircuitBreakerOpenException e) {
+            // 限流与熔断拒绝保持原异常类型，便于调用方区分处理
+            throw e;
         } catch (IOException e) {
             // 处理异常，并记录相关信息
             throw new IOException("请求处理过程中发生错误: " + e.getMessage(), e);
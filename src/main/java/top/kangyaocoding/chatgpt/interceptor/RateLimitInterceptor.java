@@ -0,0 +1,78 @@
+package top.kangyaocoding.chatgpt.interceptor;
+
+import cn.hutool.http.Header;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerOpenException;
+import top.kangyaocoding.chatgpt.converter.JsonRequestBody;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 客户端限流拦截器，需添加在 OpenAiInterceptor 之后以便读取最终使用的 API 密钥。
+ * 发送前按请求对象获取 RPM/TPM 配额；JSON 与 SSE 响应体被消费时顺带读取 usage.total_tokens 修正 token 余额，不复制响应体。
+ * 异步会话提前获取的许可在这里领取，不会重复扣减。需添加在 CircuitBreakerInterceptor 之前，被熔断拒绝的请求退还许可。
+ * @Date 2024-06-14 09:30
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private static final String BEARER = "Bearer ";
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Object value = request.body() instanceof JsonRequestBody ? ((JsonRequestBody) request.body()).value() : null;
+        RateLimiter.Permit permit = rateLimiter.claim(value);
+        if (permit == null) {
+            permit = rateLimiter.acquire(apiKey(request), RateLimiter.modelOf(value), RateLimiter.estimateTokens(value));
+        }
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (CircuitBreakerOpenException e) {
+            // 请求没有发出，不占用配额
+            permit.release();
+            throw e;
+        }
+        if (response.isSuccessful() && permit.getEstimatedTokens() > 0) {
+            return withUsage(response, permit);
+        }
+        return response;
+    }
+
+    private static String apiKey(Request request) {
+        String authorization = request.header(Header.AUTHORIZATION.getValue());
+        return authorization != null && authorization.startsWith(BEARER) ? authorization.substring(BEARER.length()) : "";
+    }
+
+    /**
+     * 用扫描 total_tokens 的 source 包装 JSON 与 SSE 响应体，响应体被消费到末尾时按实际消耗修正余额。
+     * SSE 响应只有在服务端发送 usage 末块（stream_options.include_usage）时才能修正，否则保留预估值；
+     * 响应体未被读完就关闭且尚未读到 usage 时同样保留预估值。
+     */
+    private static Response withUsage(Response response, RateLimiter.Permit permit) {
+        ResponseBody body = response.body();
+        MediaType contentType = body == null ? null : body.contentType();
+        if (contentType == null || !("json".equals(contentType.subtype()) || "event-stream".equals(contentType.subtype()))) {
+            return response;
+        }
+        TotalTokensSource source = new TotalTokensSource(body.source(), permit::complete);
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(source), contentType, body.contentLength()))
+                .build();
+    }
+}
@@ -0,0 +1,212 @@
+package top.kangyaocoding.chatgpt.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerOpenException;
+import top.kangyaocoding.chatgpt.retry.RetryBudget;
+import top.kangyaocoding.chatgpt.retry.RetryPolicy;
+import top.kangyaocoding.chatgpt.retry.RetryStats;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @Author K·Herbert
+ * @Description 重试拦截器，需添加在 OpenAiInterceptor 之后，使每次重试都重新经过连接池选择与限流。
+ * 退避时间为全抖动指数退避 random(0, min(maxDelay, baseDelay × 2^n))；
+ * 响应携带 Retry-After、retry-after-ms 或已耗尽维度的 x-ratelimit-reset-* 时按服务端要求等待。
+ * 重试受全局预算限制，故障期间重试流量不超过正常流量的 budgetRatio。
+ * 退避期间阻塞当前分发线程，开启虚拟线程模式时开销很小。
+ * @Date 2024-06-16 10:00
+ */
+@Slf4j
+public class RetryInterceptor implements Interceptor {
+
+    /* x-ratelimit-reset-* 的时长格式，例如 1s、6m0s、20ms */
+    private static final Pattern DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final RetryPolicy retryPolicy;
+    private final RetryBudget retryBudget;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder successesAfterRetry = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public RetryInterceptor(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        this.retryBudget = new RetryBudget(retryPolicy.getBudgetRatio(), retryPolicy.getBudgetMinRetries());
+    }
+
+    /**
+     * 获取重试统计信息。
+     *
+     * @return 返回当前时刻的统计快照。
+     */
+    public RetryStats stats() {
+        return new RetryStats(requests.sum(), retries.sum(), successesAfterRetry.sum(), budgetExhausted.sum());
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean idempotent = isIdempotent(request.method());
+        requests.increment();
+        retryBudget.deposit();
+        // 一次性请求体（例如来自输入流的上传）已被读取，无法重发
+        if (request.body() != null && request.body().isOneShot()) {
+            return chain.proceed(request);
+        }
+        for (int attempt = 1; ; attempt++) {
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                failure = e;
+            }
+            boolean last = attempt >= retryPolicy.getMaxAttempts() || chain.call().isCanceled();
+            if (response != null && (last || !retryPolicy.getRetryableStatusCodes().contains(response.code()))) {
+                if (attempt > 1 && response.isSuccessful()) {
+                    successesAfterRetry.increment();
+                }
+                return response;
+            }
+            if (failure != null && (last || failure instanceof CircuitBreakerOpenException || !(idempotent || isConnectFailure(failure)))) {
+                throw failure;
+            }
+            long delayNanos = response != null ? serverDelayNanos(response) : -1;
+            if (delayNanos < 0) {
+                delayNanos = backoffNanos(attempt);
+            } else if (delayNanos > retryPolicy.getMaxDelay().toNanos()) {
+                // 服务端要求的等待时间过长，直接返回原始结果
+                return response;
+            }
+            if (!retryBudget.tryWithdraw()) {
+                budgetExhausted.increment();
+                if (response != null) {
+                    return response;
+                }
+                throw failure;
+            }
+            if (response != null) {
+                response.close();
+            }
+            retries.increment();
+            log.debug("请求 {} {} 第 {} 次重试，等待 {} ms", request.method(), request.url().encodedPath(), attempt, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+            sleep(delayNanos);
+        }
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "DELETE".equals(method);
+    }
+
+    /**
+     * 判断异常是否发生在连接建立阶段，此时请求尚未发送，非幂等请求也可以安全重试。
+     */
+    private static boolean isConnectFailure(IOException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+            if (cause instanceof SocketTimeoutException && "connect timed out".equals(cause.getMessage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long backoffNanos(int attempt) {
+        long cap = retryPolicy.getMaxDelay().toNanos();
+        long exponential = retryPolicy.getBaseDelay().toNanos() << Math.min(attempt - 1, 30);
+        long bound = exponential <= 0 ? cap : Math.min(cap, exponential);
+        return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound);
+    }
+
+    /**
+     * 读取服务端要求的等待时间。
+     *
+     * @return 返回纳秒数，没有相关响应头时返回 -1。
+     */
+    static long serverDelayNanos(Response response) {
+        String retryAfterMs = response.header("retry-after-ms");
+        if (retryAfterMs != null) {
+            try {
+                return TimeUnit.MICROSECONDS.toNanos((long) (Double.parseDouble(retryAfterMs.trim()) * 1000));
+            } catch (NumberFormatException ignored) {
+                // 格式异常时继续读取其它响应头
+            }
+        }
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException ignored) {
+                // HTTP 日期格式不做处理
+            }
+        }
+        long delay = -1;
+        if ("0".equals(response.header("x-ratelimit-remaining-requests"))) {
+            delay = Math.max(delay, parseDuration(response.header("x-ratelimit-reset-requests")));
+        }
+        if ("0".equals(response.header("x-ratelimit-remaining-tokens"))) {
+            delay = Math.max(delay, parseDuration(response.header("x-ratelimit-reset-tokens")));
+        }
+        return delay;
+    }
+
+    /**
+     * 解析 x-ratelimit-reset-* 的时长，例如 1s、6m0s、20ms。
+     *
+     * @return 返回纳秒数，无法解析时返回 -1。
+     */
+    static long parseDuration(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Matcher matcher = DURATION.matcher(value);
+        double nanos = 0;
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "h":
+                    nanos += amount * TimeUnit.HOURS.toNanos(1);
+                    break;
+                case "m":
+                    nanos += amount * TimeUnit.MINUTES.toNanos(1);
+                    break;
+                case "s":
+                    nanos += amount * TimeUnit.SECONDS.toNanos(1);
+                    break;
+                default:
+                    nanos += amount * TimeUnit.MILLISECONDS.toNanos(1);
+                    break;
+            }
+        }
+        return found ? (long) nanos : -1;
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during retry backoff");
+        }
+    }
+}
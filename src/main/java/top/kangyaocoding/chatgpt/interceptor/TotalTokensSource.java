@@ -0,0 +1,143 @@
+package top.kangyaocoding.chatgpt.interceptor;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongConsumer;
+
+/**
+ * @Author K·Herbert
+ * @Description 在响应体被转换器或流读取器消费的同时扫描 "total_tokens": 数值，不复制、不预读响应体。
+ * 记录最后一次完整出现的数值，读到末尾或关闭时交给回调，只回调一次；未出现时不回调。
+ * 非流式 JSON 与带 usage 末块的 SSE 响应都以最后一个 usage 为准。
+ * @Date 2024-06-14 09:30
+ */
+final class TotalTokensSource extends ForwardingSource {
+
+    private static final byte[] FIELD = "\"total_tokens\"".getBytes(StandardCharsets.US_ASCII);
+
+    /* 匹配字段名 */
+    private static final int FIELD_NAME = 0;
+    /* 字段名之后，等待冒号 */
+    private static final int COLON = 1;
+    /* 冒号之后，等待数值 */
+    private static final int VALUE = 2;
+    /* 正在读取数值 */
+    private static final int DIGITS = 3;
+
+    private final LongConsumer callback;
+    private final Buffer.UnsafeCursor cursor = new Buffer.UnsafeCursor();
+    private int state = FIELD_NAME;
+    /* 字段名已匹配的字节数 */
+    private int matched;
+    private long value;
+    /* 最后一次读到的数值，未读到时为 -1 */
+    private long totalTokens = -1;
+    private boolean reported;
+
+    TotalTokensSource(Source delegate, LongConsumer callback) {
+        super(delegate);
+        this.callback = callback;
+    }
+
+    @Override
+    public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if (read == -1) {
+            if (state == DIGITS) {
+                totalTokens = value;
+            }
+            report();
+            return -1;
+        }
+        scan(sink, sink.size() - read);
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            report();
+        }
+    }
+
+    private void scan(Buffer buffer, long offset) {
+        buffer.readUnsafe(cursor);
+        try {
+            cursor.seek(offset);
+            while (cursor.start != -1) {
+                byte[] data = cursor.data;
+                for (int i = cursor.start; i < cursor.end; i++) {
+                    accept(data[i]);
+                }
+                cursor.next();
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void accept(byte b) {
+        switch (state) {
+            case COLON:
+                if (b == ':') {
+                    state = VALUE;
+                } else if (!isWhitespace(b)) {
+                    restart(b);
+                }
+                return;
+            case VALUE:
+                if (b >= '0' && b <= '9') {
+                    value = b - '0';
+                    state = DIGITS;
+                } else if (!isWhitespace(b)) {
+                    restart(b);
+                }
+                return;
+            case DIGITS:
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                } else {
+                    totalTokens = value;
+                    restart(b);
+                }
+                return;
+            default:
+                if (b == FIELD[matched]) {
+                    if (++matched == FIELD.length) {
+                        state = COLON;
+                    }
+                } else {
+                    restart(b);
+                }
+        }
+    }
+
+    /**
+     * 回到字段名匹配状态，字段名中只有首尾的引号可以互相重叠。
+     */
+    private void restart(byte b) {
+        state = FIELD_NAME;
+        matched = b == FIELD[0] ? 1 : 0;
+    }
+
+    private void report() {
+        if (reported) {
+            return;
+        }
+        reported = true;
+        if (totalTokens >= 0) {
+            callback.accept(totalTokens);
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,31 @@
+package top.kangyaocoding.chatgpt.limiter;
+
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 客户端限流拒绝请求时抛出的异常。
+ * 继承 IOException，使其在 OkHttp 拦截器中与网络异常一样传递给调用方。
+ * @Date 2024-06-14 09:30
+ */
+public class RateLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /* 配额恢复所需的等待时间，单位纳秒 */
+    private final long retryAfterNanos;
+
+    public RateLimitExceededException(String message, long retryAfterNanos) {
+        super(message);
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    /**
+     * 获取配额恢复所需的等待时间。
+     *
+     * @return 返回纳秒数。
+     */
+    public long getRetryAfterNanos() {
+        return retryAfterNanos;
+    }
+}
@@ -0,0 +1,16 @@
+package top.kangyaocoding.chatgpt.limiter;
+
+/**
+ * @Author K·Herbert
+ * @Description 限流等待方式。
+ * @Date 2024-06-14 09:30
+ */
+public enum RateLimitMode {
+    /* 阻塞调用线程直到配额可用，等待超过 maxWait 时失败 */
+    BLOCK,
+    /* 配额不足时立即失败 */
+    FAIL_FAST,
+    /* 异步会话通过定时器延迟发送，不占用线程；同步调用仍按 BLOCK 处理 */
+    ASYNC,
+    ;
+}
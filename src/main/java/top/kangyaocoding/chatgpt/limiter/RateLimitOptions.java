@@ -0,0 +1,32 @@
+package top.kangyaocoding.chatgpt.limiter;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * @Author K·Herbert
+ * @Description 客户端限流配置，每个 API 密钥与模型的组合各自拥有一组令牌桶。
+ * @Date 2024-06-14 09:30
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RateLimitOptions {
+
+    /* 每分钟请求数上限，0 表示不限制 */
+    private long requestsPerMinute;
+    /* 每分钟 token 数上限，0 表示不限制 */
+    private long tokensPerMinute;
+    /* 等待方式 */
+    @Builder.Default
+    private RateLimitMode mode = RateLimitMode.BLOCK;
+    /* 单次请求的最长等待时间，超过时直接失败 */
+    @Builder.Default
+    private Duration maxWait = Duration.ofSeconds(60);
+
+}
@@ -0,0 +1,281 @@
+package top.kangyaocoding.chatgpt.limiter;
+
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.token.TokenCounter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Author K·Herbert
+ * @Description 客户端 RPM/TPM 限流器，按 API 密钥与模型分别维护请求数和 token 数两个令牌桶。
+ * 发送前按请求对象预估 token 消耗（提示 token 加上输出上限），响应返回 usage 后按实际消耗修正余额，
+ * 使吞吐保持在配额之下，而不是在 429 与重试之间反复震荡。
+ * @Date 2024-06-14 09:30
+ */
+public class RateLimiter {
+
+    private final RateLimitOptions options;
+    /* 按 API 密钥与模型划分的令牌桶 */
+    private final ConcurrentMap<String, Buckets> buckets = new ConcurrentHashMap<>();
+    /* 异步会话提前获取、尚未被拦截器领取的许可，以请求对象的引用为键 */
+    private final ConcurrentMap<RequestKey, Permit> reserved = new ConcurrentHashMap<>();
+
+    public RateLimiter(RateLimitOptions options) {
+        this.options = options;
+    }
+
+    public RateLimitOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 预估请求的 token 消耗。
+     * 聊天请求未设置输出上限时按模型的最大输出计，并以剩余上下文为上限，宁可高估也不让突发请求越过 TPM 配额。
+     *
+     * @param request 请求对象，支持 ChatCompletionRequest 与 EmbeddingRequest，其它类型按 0 计。
+     * @return 返回预估的 token 数。
+     */
+    public static long estimateTokens(Object request) {
+        if (request instanceof ChatCompletionRequest) {
+            ChatCompletionRequest chatCompletionRequest = (ChatCompletionRequest) request;
+            String model = chatCompletionRequest.getModel();
+            int promptTokens = TokenCounter.countMessages(model, chatCompletionRequest.getMessages());
+            Integer requested = TokenCounter.requestedOutputTokens(chatCompletionRequest);
+            long completionTokens = requested != null ? requested : TokenCounter.maxOutputTokens(model);
+            int contextLength = TokenCounter.contextLength(model);
+            if (contextLength > 0) {
+                completionTokens = Math.max(0, Math.min(completionTokens, contextLength - promptTokens));
+            }
+            long n = chatCompletionRequest.getN() == null ? 1 : chatCompletionRequest.getN();
+            return promptTokens + completionTokens * n;
+        }
+        if (request instanceof EmbeddingRequest) {
+            EmbeddingRequest embeddingRequest = (EmbeddingRequest) request;
+            long tokens = 0;
+            for (String input : embeddingRequest.getInput()) {
+                tokens += TokenCounter.countTokens(embeddingRequest.getModel(), input);
+            }
+            return tokens;
+        }
+        return 0;
+    }
+
+    /**
+     * 获取请求对象对应的模型名称。
+     *
+     * @param request 请求对象。
+     * @return 返回模型名称，无法识别时返回空字符串。
+     */
+    public static String modelOf(Object request) {
+        if (request instanceof ChatCompletionRequest) {
+            return String.valueOf(((ChatCompletionRequest) request).getModel());
+        }
+        if (request instanceof EmbeddingRequest) {
+            return ((EmbeddingRequest) request).getModel();
+        }
+        return "";
+    }
+
+    /**
+     * 按配置的等待方式获取许可，ASYNC 方式在同步调用中按 BLOCK 处理。
+     *
+     * @param apiKey API 密钥。
+     * @param model  模型名称。
+     * @param tokens 预估 token 数。
+     * @return 返回许可，响应到达后通过 complete 修正实际消耗。
+     * @throws IOException 配额不足且不能等待，或等待被中断时抛出。
+     */
+    public Permit acquire(String apiKey, String model, long tokens) throws IOException {
+        Permit permit = reserve(apiKey, model, tokens);
+        long deadline = System.nanoTime() + permit.waitNanos;
+        long remaining = permit.waitNanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                permit.release();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for rate limit");
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        return permit;
+    }
+
+    /**
+     * 异步获取许可，等待期间不占用线程。
+     *
+     * @param apiKey API 密钥。
+     * @param model  模型名称。
+     * @param tokens 预估 token 数。
+     * @return 返回在配额可用时完成的许可；配额不足且不能等待时异常完成。
+     */
+    public CompletableFuture<Permit> acquireAsync(String apiKey, String model, long tokens) {
+        Permit permit;
+        try {
+            permit = reserve(apiKey, model, tokens);
+        } catch (RateLimitExceededException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (permit.waitNanos == 0) {
+            return CompletableFuture.completedFuture(permit);
+        }
+        return CompletableFuture.supplyAsync(() -> permit, CompletableFuture.delayedExecutor(permit.waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 为即将发送的请求对象异步获取许可，许可登记后由拦截器在发送时领取，不会重复扣减。
+     *
+     * @param apiKey  API 密钥。
+     * @param request 请求对象。
+     * @return 返回在配额可用时完成的 future。
+     */
+    public CompletableFuture<Void> reserveFor(String apiKey, Object request) {
+        return acquireAsync(apiKey, modelOf(request), estimateTokens(request))
+                .thenAccept(permit -> reserved.put(new RequestKey(request), permit));
+    }
+
+    /**
+     * 不等待地为请求对象预留配额，成功时登记许可供拦截器领取，用于对冲等可放弃的附加请求。
+     *
+     * @param apiKey  API 密钥。
+     * @param request 请求对象。
+     * @return 配额立即可用时返回 true，否则不扣减并返回 false。
+     */
+    public boolean tryReserveFor(String apiKey, Object request) {
+        Permit permit;
+        try {
+            permit = reserve(apiKey, modelOf(request), estimateTokens(request), 0);
+        } catch (RateLimitExceededException e) {
+            return false;
+        }
+        reserved.put(new RequestKey(request), permit);
+        return true;
+    }
+
+    /**
+     * 领取提前为请求对象获取的许可。
+     *
+     * @param request 请求对象。
+     * @return 返回许可，没有登记时返回 null。
+     */
+    public Permit claim(Object request) {
+        return request == null ? null : reserved.remove(new RequestKey(request));
+    }
+
+    /**
+     * 预留配额，FAIL_FAST 方式的最长等待时间为 0。
+     */
+    private Permit reserve(String apiKey, String model, long tokens) throws RateLimitExceededException {
+        return reserve(apiKey, model, tokens, options.getMode() == RateLimitMode.FAIL_FAST ? 0 : options.getMaxWait().toNanos());
+    }
+
+    private Permit reserve(String apiKey, String model, long tokens, long maxWaitNanos) throws RateLimitExceededException {
+        Buckets bucketPair = buckets.computeIfAbsent(apiKey + '/' + model, key -> new Buckets(options));
+        long requestWait = 0;
+        if (bucketPair.requests != null) {
+            requestWait = bucketPair.requests.reserve(1, maxWaitNanos);
+            if (requestWait < 0) {
+                throw new RateLimitExceededException("Requests per minute limit reached for model " + model, maxWaitNanos);
+            }
+        }
+        long tokenWait = 0;
+        if (bucketPair.tokens != null && tokens > 0) {
+            tokenWait = bucketPair.tokens.reserve(tokens, maxWaitNanos);
+            if (tokenWait < 0) {
+                if (bucketPair.requests != null) {
+                    bucketPair.requests.adjust(1);
+                }
+                throw new RateLimitExceededException("Tokens per minute limit reached for model " + model, maxWaitNanos);
+            }
+        }
+        return new Permit(bucketPair, tokens, Math.max(requestWait, tokenWait));
+    }
+
+    /**
+     * 一次请求占用的配额。
+     */
+    public static class Permit {
+
+        private final Buckets buckets;
+        private final long estimatedTokens;
+        private final long waitNanos;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Permit(Buckets buckets, long estimatedTokens, long waitNanos) {
+            this.buckets = buckets;
+            this.estimatedTokens = estimatedTokens;
+            this.waitNanos = waitNanos;
+        }
+
+        public long getEstimatedTokens() {
+            return estimatedTokens;
+        }
+
+        /**
+         * 按响应中的实际 token 消耗修正余额，只生效一次。
+         *
+         * @param totalTokens 实际消耗的 token 数。
+         */
+        public void complete(long totalTokens) {
+            if (buckets.tokens != null && settled.compareAndSet(false, true)) {
+                buckets.tokens.adjust(estimatedTokens - totalTokens);
+            }
+        }
+
+        /**
+         * 请求未发送时退还全部配额。
+         */
+        public void release() {
+            if (settled.compareAndSet(false, true)) {
+                if (buckets.requests != null) {
+                    buckets.requests.adjust(1);
+                }
+                if (buckets.tokens != null) {
+                    buckets.tokens.adjust(estimatedTokens);
+                }
+            }
+        }
+    }
+
+    /**
+     * 同一 API 密钥与模型的请求数和 token 数令牌桶，未配置的维度为 null。
+     */
+    private static class Buckets {
+        private final TokenBucket requests;
+        private final TokenBucket tokens;
+
+        private Buckets(RateLimitOptions options) {
+            this.requests = options.getRequestsPerMinute() > 0 ? new TokenBucket(options.getRequestsPerMinute()) : null;
+            this.tokens = options.getTokensPerMinute() > 0 ? new TokenBucket(options.getTokensPerMinute()) : null;
+        }
+    }
+
+    /**
+     * 以对象引用判等的键。
+     */
+    private static final class RequestKey {
+        private final Object request;
+
+        private RequestKey(Object request) {
+            this.request = request;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RequestKey && ((RequestKey) o).request == request;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(request);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package top.kangyaocoding.chatgpt.limiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 按分钟匀速补充的令牌桶，容量等于每分钟配额。
+ * 预留允许余额为负：配额不足时先扣减，并返回调用方需要等待的时间，后续请求依次排在其后，
+ * 因此并发请求会被均匀地摊开，而不是同时醒来再次争抢。
+ * @Date 2024-06-14 09:30
+ */
+class TokenBucket {
+
+    private final double capacity;
+    /* 每纳秒补充的令牌数 */
+    private final double refillPerNano;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double available;
+    private long lastRefill;
+
+    TokenBucket(long perMinute) {
+        this.capacity = perMinute;
+        this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.available = perMinute;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 预留令牌。
+     *
+     * @param amount       令牌数，超过容量时按容量计。
+     * @param maxWaitNanos 可接受的最长等待时间。
+     * @return 返回需要等待的纳秒数；超过最长等待时间时返回 -1 且不扣减。
+     */
+    long reserve(long amount, long maxWaitNanos) {
+        lock.lock();
+        try {
+            refill();
+            double tokens = clamp(amount);
+            long wait = waitNanosLocked(tokens);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            available -= tokens;
+            return wait;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 修正余额，正数表示退还，负数表示补扣。
+     */
+    void adjust(long delta) {
+        lock.lock();
+        try {
+            refill();
+            available = Math.min(capacity, available + delta);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double clamp(long amount) {
+        return Math.min(amount, capacity);
+    }
+
+    private long waitNanosLocked(double tokens) {
+        return available >= tokens ? 0 : (long) Math.ceil((tokens - available) / refillPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
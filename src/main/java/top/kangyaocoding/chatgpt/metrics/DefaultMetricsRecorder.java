@@ -0,0 +1,118 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author K·Herbert
+ * @Description 内存中的默认指标记录器，按接口与模型分别统计。
+ * 查找使用两级 ConcurrentHashMap，首次出现的接口与模型之后不再分配对象；耗时以纳秒记录。
+ * @Date 2024-06-21 09:30
+ */
+public class DefaultMetricsRecorder implements MetricsRecorder {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, EndpointMetrics>> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordRequest(String endpoint, String model, int status, long durationNanos, long bytesOut, long bytesIn) {
+        EndpointMetrics endpointMetrics = metrics(endpoint, model);
+        endpointMetrics.latency.record(durationNanos);
+        endpointMetrics.status(status).increment();
+        if (bytesOut > 0) {
+            endpointMetrics.bytesOut.add(bytesOut);
+        }
+        if (bytesIn > 0) {
+            endpointMetrics.bytesIn.add(bytesIn);
+        }
+    }
+
+    @Override
+    public void recordFailure(String endpoint, String model, Throwable error, long durationNanos) {
+        EndpointMetrics endpointMetrics = metrics(endpoint, model);
+        endpointMetrics.latency.record(durationNanos);
+        endpointMetrics.failures.increment();
+    }
+
+    @Override
+    public void recordTimeToFirstToken(String endpoint, String model, long nanos) {
+        metrics(endpoint, model).timeToFirstToken.record(nanos);
+    }
+
+    @Override
+    public void recordInterTokenGap(String endpoint, String model, long nanos) {
+        metrics(endpoint, model).interTokenGap.record(nanos);
+    }
+
+    @Override
+    public void recordStream(String endpoint, String model, long tokens, long generationNanos) {
+        if (tokens > 1 && generationNanos > 0) {
+            metrics(endpoint, model).tokensPerSecond.record(Math.round((tokens - 1) * 1e9 / generationNanos));
+        }
+    }
+
+    /**
+     * 获取全部接口与模型的统计快照。
+     *
+     * @return 返回以“接口 模型”为键的快照。
+     */
+    public Map<String, EndpointMetricsSnapshot> snapshot() {
+        Map<String, EndpointMetricsSnapshot> snapshot = new LinkedHashMap<>();
+        metrics.forEach((endpoint, byModel) -> byModel.forEach((model, endpointMetrics) ->
+                snapshot.put(model.isEmpty() ? endpoint : endpoint + ' ' + model, endpointMetrics.snapshot(endpoint, model))));
+        return snapshot;
+    }
+
+    private EndpointMetrics metrics(String endpoint, String model) {
+        ConcurrentMap<String, EndpointMetrics> byModel = metrics.get(endpoint);
+        if (byModel == null) {
+            byModel = metrics.computeIfAbsent(endpoint, k -> new ConcurrentHashMap<>());
+        }
+        EndpointMetrics endpointMetrics = byModel.get(model);
+        if (endpointMetrics == null) {
+            endpointMetrics = byModel.computeIfAbsent(model, k -> new EndpointMetrics());
+        }
+        return endpointMetrics;
+    }
+
+    /**
+     * 单个接口与模型的指标。
+     */
+    private static final class EndpointMetrics {
+
+        /* 状态码计数，按需创建 */
+        private final AtomicReferenceArray<LongAdder> statusCounts = new AtomicReferenceArray<>(600);
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final Histogram latency = new Histogram();
+        private final Histogram timeToFirstToken = new Histogram();
+        private final Histogram interTokenGap = new Histogram();
+        private final Histogram tokensPerSecond = new Histogram();
+
+        private LongAdder status(int status) {
+            int index = status >= 0 && status < statusCounts.length() ? status : 0;
+            LongAdder counter = statusCounts.get(index);
+            if (counter == null) {
+                statusCounts.compareAndSet(index, null, new LongAdder());
+                counter = statusCounts.get(index);
+            }
+            return counter;
+        }
+
+        private EndpointMetricsSnapshot snapshot(String endpoint, String model) {
+            Map<Integer, Long> statuses = new LinkedHashMap<>();
+            for (int i = 0; i < statusCounts.length(); i++) {
+                LongAdder counter = statusCounts.get(i);
+                if (counter != null) {
+                    statuses.put(i, counter.sum());
+                }
+            }
+            return new EndpointMetricsSnapshot(endpoint, model, statuses, failures.sum(), bytesOut.sum(), bytesIn.sum(),
+                    latency.snapshot(), timeToFirstToken.snapshot(), interTokenGap.snapshot(), tokensPerSecond.snapshot());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * @Author K·Herbert
+ * @Description 单个接口与模型的指标快照，耗时单位为纳秒。
+ * @Date 2024-06-21 09:30
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class EndpointMetricsSnapshot {
+
+    /* 接口路径 */
+    private final String endpoint;
+    /* 模型名称，无法确定时为空字符串 */
+    private final String model;
+    /* 按状态码统计的响应数 */
+    private final Map<Integer, Long> statusCounts;
+    /* 未收到响应的请求数 */
+    private final long failures;
+    /* 请求体字节数 */
+    private final long bytesOut;
+    /* 响应体字节数 */
+    private final long bytesIn;
+    /* 请求耗时 */
+    private final HistogramSnapshot latency;
+    /* 流式首个令牌耗时 */
+    private final HistogramSnapshot timeToFirstToken;
+    /* 流式令牌间隔 */
+    private final HistogramSnapshot interTokenGap;
+    /* 流式生成速度（令牌每秒） */
+    private final HistogramSnapshot tokensPerSecond;
+
+}
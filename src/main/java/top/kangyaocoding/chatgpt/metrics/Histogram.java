@@ -0,0 +1,85 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author K·Herbert
+ * @Description 无锁的对数线性直方图。
+ * 与 HdrHistogram 类似，每个 2 的幂区间再均分为 8 个桶，相对误差不超过 12.5%，每个桶是一个 LongAdder，记录时不分配对象。
+ * 只记录非负值，超过 2^40（以纳秒计约 18 分钟）的值计入最后一个桶，该桶没有上界，分位数落在其中时取记录到的最大值。
+ * @Date 2024-06-21 09:30
+ */
+public class Histogram {
+
+    /* 每个 2 的幂区间的子桶位数 */
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /* 可区分的最大值的位数 */
+    private static final int MAX_BITS = 40;
+    static final int BUCKET_COUNT = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一个值，负值按 0 处理。
+     *
+     * @param value 记录的值。
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets[index(v)].increment();
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * 获取当前的快照，快照期间的并发记录可能只体现一部分。
+     *
+     * @return 返回直方图快照。
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new HistogramSnapshot(counts, count.sum(), sum.sum(), max.get());
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * 计算桶的上界（含），最后一个桶的上界为 Long.MAX_VALUE。
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        if (index == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,68 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+/**
+ * @Author K·Herbert
+ * @Description 直方图快照。
+ * @Date 2024-06-21 09:30
+ */
+public class HistogramSnapshot {
+
+    private final long[] buckets;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] buckets, long count, long sum, long max) {
+        this.buckets = buckets;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * 计算分位数。
+     *
+     * @param quantile 0 到 1 之间的分位点，例如 0.99。
+     * @return 返回所在桶的上界，不超过记录到的最大值，尚无数据时返回 0。
+     */
+    public long percentile(double quantile) {
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(Histogram.upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot(count=" + count + ", mean=" + (long) mean() + ", p50=" + percentile(0.5)
+                + ", p99=" + percentile(0.99) + ", max=" + max + ")";
+    }
+}
@@ -0,0 +1,67 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+/**
+ * @Author K·Herbert
+ * @Description 指标记录接口，不依赖任何指标库。
+ * 每次请求都会在网络线程上同步回调，实现应避免加锁与分配对象；所有方法默认不记录，按需覆盖。
+ * endpoint 为去掉主机与前缀后的接口路径，例如 v1/chat/completions；model 无法确定时为空字符串。
+ * @Date 2024-06-21 09:30
+ */
+public interface MetricsRecorder {
+
+    /**
+     * 记录一次收到响应的 HTTP 请求，在响应体读取完毕或关闭时回调。
+     *
+     * @param endpoint      接口路径。
+     * @param model         模型名称。
+     * @param status        HTTP 状态码。
+     * @param durationNanos 从发送请求到响应体读取完毕的耗时。
+     * @param bytesOut      请求体字节数。
+     * @param bytesIn       已读取的响应体字节数。
+     */
+    default void recordRequest(String endpoint, String model, int status, long durationNanos, long bytesOut, long bytesIn) {
+    }
+
+    /**
+     * 记录一次未收到响应的请求，例如连接失败、超时或熔断拒绝。
+     *
+     * @param endpoint      接口路径。
+     * @param model         模型名称。
+     * @param error         异常信息。
+     * @param durationNanos 从发送请求到失败的耗时。
+     */
+    default void recordFailure(String endpoint, String model, Throwable error, long durationNanos) {
+    }
+
+    /**
+     * 记录流式请求的首个令牌耗时。
+     *
+     * @param endpoint 接口路径。
+     * @param model    模型名称。
+     * @param nanos    从发起请求到收到首个内容增量的耗时。
+     */
+    default void recordTimeToFirstToken(String endpoint, String model, long nanos) {
+    }
+
+    /**
+     * 记录流式请求相邻两个内容增量之间的间隔。
+     *
+     * @param endpoint 接口路径。
+     * @param model    模型名称。
+     * @param nanos    间隔时长。
+     */
+    default void recordInterTokenGap(String endpoint, String model, long nanos) {
+    }
+
+    /**
+     * 记录一次结束的流式请求。
+     *
+     * @param endpoint        接口路径。
+     * @param model           模型名称。
+     * @param tokens          收到的内容增量数，OpenAI 的流式响应通常每个增量一个令牌。
+     * @param generationNanos 从首个到最后一个内容增量的耗时。
+     */
+    default void recordStream(String endpoint, String model, long tokens, long generationNanos) {
+    }
+
+}
@@ -0,0 +1,61 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import top.kangyaocoding.chatgpt.converter.JsonRequestBody;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+
+import java.util.List;
+
+/**
+ * @Author K·Herbert
+ * @Description 从请求中提取指标的接口与模型标签。
+ * @Date 2024-06-21 09:30
+ */
+public final class MetricsTags {
+
+    private static final String FILES = "v1/files/";
+    private static final String FILE = "v1/files/{file_id}";
+    private static final String FILE_CONTENT = "v1/files/{file_id}/content";
+    /* 常用接口，匹配时直接返回常量，避免截取字符串 */
+    private static final List<String> KNOWN_ENDPOINTS = List.of("v1/chat/completions", "v1/embeddings",
+            "v1/images/generations", "v1/images/edits", "v1/audio/transcriptions", "v1/audio/translations", "v1/files");
+
+    private MetricsTags() {
+    }
+
+    /**
+     * 获取接口路径，去掉中转服务的路径前缀，并把文件 ID 替换为占位符以限制标签数量。
+     *
+     * @param url 请求地址。
+     * @return 返回接口路径，例如 v1/chat/completions。
+     */
+    public static String endpoint(HttpUrl url) {
+        String path = url.encodedPath();
+        for (String endpoint : KNOWN_ENDPOINTS) {
+            if (path.endsWith(endpoint)) {
+                return endpoint;
+            }
+        }
+        int start = path.indexOf("/v1/");
+        String endpoint = start >= 0 ? path.substring(start + 1) : path.substring(1);
+        if (endpoint.startsWith(FILES)) {
+            return endpoint.endsWith("/content") ? FILE_CONTENT : FILE;
+        }
+        return endpoint;
+    }
+
+    /**
+     * 获取请求的模型名称。
+     *
+     * @param request 请求。
+     * @return 返回模型名称，非 JSON 请求或请求中没有模型时返回空字符串。
+     */
+    public static String model(Request request) {
+        if (request.body() instanceof JsonRequestBody) {
+            String model = RateLimiter.modelOf(((JsonRequestBody) request.body()).value());
+            return model == null ? "" : model;
+        }
+        return "";
+    }
+}
@@ -0,0 +1,108 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import io.micrometer.core.instrument.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @Author K·Herbert
+ * @Description 基于 Micrometer 的指标记录器，指标以 openai.client 为前缀，标签为 endpoint 与 model。
+ * micrometer-core 为可选依赖，使用本类时需自行引入。各接口与模型的计量器在首次使用时注册并缓存，之后记录不再查找注册表。
+ * @Date 2024-06-21 09:30
+ */
+public class MicrometerMetricsRecorder implements MetricsRecorder {
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, ConcurrentMap<String, Meters>> meters = new ConcurrentHashMap<>();
+
+    public MicrometerMetricsRecorder(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordRequest(String endpoint, String model, int status, long durationNanos, long bytesOut, long bytesIn) {
+        Meters endpointMeters = meters(endpoint, model);
+        endpointMeters.latency.record(durationNanos, TimeUnit.NANOSECONDS);
+        endpointMeters.status(registry, status).increment();
+        endpointMeters.bytesOut.record(bytesOut);
+        endpointMeters.bytesIn.record(bytesIn);
+    }
+
+    @Override
+    public void recordFailure(String endpoint, String model, Throwable error, long durationNanos) {
+        Meters endpointMeters = meters(endpoint, model);
+        endpointMeters.latency.record(durationNanos, TimeUnit.NANOSECONDS);
+        endpointMeters.failures.computeIfAbsent(error.getClass(), type -> Counter.builder("openai.client.failures")
+                .tags(endpointMeters.tags).tag("exception", type.getSimpleName()).register(registry)).increment();
+    }
+
+    @Override
+    public void recordTimeToFirstToken(String endpoint, String model, long nanos) {
+        meters(endpoint, model).timeToFirstToken.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordInterTokenGap(String endpoint, String model, long nanos) {
+        meters(endpoint, model).interTokenGap.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordStream(String endpoint, String model, long tokens, long generationNanos) {
+        if (tokens > 1 && generationNanos > 0) {
+            meters(endpoint, model).tokensPerSecond.record((tokens - 1) * 1e9 / generationNanos);
+        }
+    }
+
+    private Meters meters(String endpoint, String model) {
+        ConcurrentMap<String, Meters> byModel = meters.get(endpoint);
+        if (byModel == null) {
+            byModel = meters.computeIfAbsent(endpoint, k -> new ConcurrentHashMap<>());
+        }
+        Meters endpointMeters = byModel.get(model);
+        if (endpointMeters == null) {
+            endpointMeters = byModel.computeIfAbsent(model, k -> new Meters(registry, Tags.of("endpoint", endpoint, "model", model)));
+        }
+        return endpointMeters;
+    }
+
+    /**
+     * 单个接口与模型的计量器。
+     */
+    private static final class Meters {
+
+        private final Tags tags;
+        private final Timer latency;
+        private final Timer timeToFirstToken;
+        private final Timer interTokenGap;
+        private final DistributionSummary tokensPerSecond;
+        private final DistributionSummary bytesOut;
+        private final DistributionSummary bytesIn;
+        /* 按状态码与异常类型缓存的计数器 */
+        private final AtomicReferenceArray<Counter> statusCounters = new AtomicReferenceArray<>(600);
+        private final ConcurrentMap<Class<?>, Counter> failures = new ConcurrentHashMap<>();
+
+        private Meters(MeterRegistry registry, Tags tags) {
+            this.tags = tags;
+            this.latency = Timer.builder("openai.client.requests").tags(tags).publishPercentileHistogram().register(registry);
+            this.timeToFirstToken = Timer.builder("openai.client.stream.ttft").tags(tags).publishPercentileHistogram().register(registry);
+            this.interTokenGap = Timer.builder("openai.client.stream.inter.token").tags(tags).publishPercentileHistogram().register(registry);
+            this.tokensPerSecond = DistributionSummary.builder("openai.client.stream.tokens.per.second").tags(tags).register(registry);
+            this.bytesOut = DistributionSummary.builder("openai.client.request.bytes").tags(tags).baseUnit("bytes").register(registry);
+            this.bytesIn = DistributionSummary.builder("openai.client.response.bytes").tags(tags).baseUnit("bytes").register(registry);
+        }
+
+        private Counter status(MeterRegistry registry, int status) {
+            int index = status >= 0 && status < statusCounters.length() ? status : 0;
+            Counter counter = statusCounters.get(index);
+            if (counter == null) {
+                // 重复注册返回同一个计数器
+                counter = Counter.builder("openai.client.responses").tags(tags).tag("status", Integer.toString(index)).register(registry);
+                statusCounters.set(index, counter);
+            }
+            return counter;
+        }
+    }
+}
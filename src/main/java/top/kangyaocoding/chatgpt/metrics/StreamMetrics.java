@@ -0,0 +1,169 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.kangyaocoding.chatgpt.domain.common.Usage;
+import top.kangyaocoding.chatgpt.stream.ChatDelta;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式请求的首个令牌耗时、令牌间隔与生成速度统计。
+ * 以包含非空 content 的增量数据作为一个令牌，SSE 事件只做字符串查找，不做 JSON 解析。
+ * @Date 2024-06-21 09:30
+ */
+public final class StreamMetrics {
+
+    /* 流式响应的结束数据 */
+    private static final String DONE_DATA = "[DONE]";
+    private static final String CONTENT_FIELD = "\"content\":";
+
+    private final MetricsRecorder recorder;
+    private final String endpoint;
+    private final String model;
+    private final long start = System.nanoTime();
+    private long firstToken;
+    private long lastToken;
+    private long tokens;
+    private boolean finished;
+
+    private StreamMetrics(MetricsRecorder recorder, String endpoint, String model) {
+        this.recorder = recorder;
+        this.endpoint = endpoint;
+        this.model = model;
+    }
+
+    /**
+     * 包装事件源工厂，统计经过的所有流式请求。
+     *
+     * @param recorder 指标记录器。
+     * @param delegate 实际发起请求的事件源工厂。
+     * @return 返回带统计的事件源工厂。
+     */
+    public static EventSource.Factory eventSourceFactory(MetricsRecorder recorder, EventSource.Factory delegate) {
+        return (request, listener) -> delegate.newEventSource(request,
+                new Listener(new StreamMetrics(recorder, MetricsTags.endpoint(request.url()), MetricsTags.model(request)), listener));
+    }
+
+    /**
+     * 包装增量数据回调。
+     *
+     * @param recorder 指标记录器。
+     * @param request  流式请求。
+     * @param handler  调用方的回调。
+     * @return 返回带统计的回调。
+     */
+    public static ChatDeltaHandler handler(MetricsRecorder recorder, Request request, ChatDeltaHandler handler) {
+        StreamMetrics metrics = new StreamMetrics(recorder, MetricsTags.endpoint(request.url()), MetricsTags.model(request));
+        return new ChatDeltaHandler() {
+            @Override
+            public void onDelta(ChatDelta delta) {
+                if (delta.hasContent() && delta.content().length() > 0) {
+                    metrics.token();
+                }
+                handler.onDelta(delta);
+            }
+
+            @Override
+            public void onUsage(Usage usage) {
+                handler.onUsage(usage);
+            }
+
+            @Override
+            public void onComplete() {
+                metrics.finish();
+                handler.onComplete();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                metrics.finish();
+                handler.onFailure(throwable);
+            }
+        };
+    }
+
+    private void token() {
+        long now = System.nanoTime();
+        if (tokens++ == 0) {
+            firstToken = now;
+            recorder.recordTimeToFirstToken(endpoint, model, now - start);
+        } else {
+            recorder.recordInterTokenGap(endpoint, model, now - lastToken);
+        }
+        lastToken = now;
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            recorder.recordStream(endpoint, model, tokens, tokens == 0 ? 0 : lastToken - firstToken);
+        }
+    }
+
+    /**
+     * 判断 SSE 数据中是否包含非空的 content 字段。
+     */
+    static boolean hasContent(String data) {
+        int from = 0;
+        while (true) {
+            int index = data.indexOf(CONTENT_FIELD, from);
+            if (index < 0) {
+                return false;
+            }
+            int i = index + CONTENT_FIELD.length();
+            while (i < data.length() && data.charAt(i) == ' ') {
+                i++;
+            }
+            if (i + 1 < data.length() && data.charAt(i) == '"' && data.charAt(i + 1) != '"') {
+                return true;
+            }
+            from = i;
+        }
+    }
+
+    /**
+     * 统计后原样转发的监听器。
+     */
+    private static final class Listener extends EventSourceListener {
+
+        private final StreamMetrics metrics;
+        private final EventSourceListener listener;
+
+        private Listener(StreamMetrics metrics, EventSourceListener listener) {
+            this.metrics = metrics;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+            listener.onOpen(eventSource, response);
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            if (DONE_DATA.equals(data)) {
+                metrics.finish();
+            } else if (hasContent(data)) {
+                metrics.token();
+            }
+            listener.onEvent(eventSource, id, type, data);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            metrics.finish();
+            listener.onClosed(eventSource);
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            metrics.finish();
+            listener.onFailure(eventSource, t, response);
+        }
+    }
+}
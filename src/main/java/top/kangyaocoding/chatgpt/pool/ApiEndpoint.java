@@ -0,0 +1,41 @@
+package top.kangyaocoding.chatgpt.pool;
+
+import lombok.Getter;
+
+/**
+ * @Author K·Herbert
+ * @Description 一组 API 主机与密钥，以及它在负载均衡中的静态权重。
+ * @Date 2024-06-15 10:00
+ */
+@Getter
+public class ApiEndpoint {
+
+    /* API 主机地址，以 / 结尾 */
+    private final String apiHost;
+    /* API 密钥 */
+    private final String apiKey;
+    /* 静态权重，通常与该密钥的配额成正比 */
+    private final double weight;
+
+    public ApiEndpoint(String apiHost, String apiKey) {
+        this(apiHost, apiKey, 1);
+    }
+
+    public ApiEndpoint(String apiHost, String apiKey, double weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        this.apiHost = apiHost.endsWith("/") ? apiHost : apiHost + "/";
+        this.apiKey = apiKey;
+        this.weight = weight;
+    }
+
+    /**
+     * 用于日志输出的脱敏名称。
+     */
+    @Override
+    public String toString() {
+        String suffix = apiKey.length() > 4 ? apiKey.substring(apiKey.length() - 4) : "****";
+        return apiHost + " (..." + suffix + ")";
+    }
+}
@@ -0,0 +1,248 @@
+package top.kangyaocoding.chatgpt.pool;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 多主机、多密钥的连接池。
+ * 每次请求按 静态权重 × 剩余配额比例 × (1 - 近期错误率) 加权随机选择一组主机与密钥；
+ * 剩余配额取自响应中的 x-ratelimit-remaining-* 响应头并随时间线性恢复，错误率为指数滑动平均。
+ * 收到 401/403、429 或 5xx 时将该组暂时摘除，冷却结束后自动恢复；全部摘除时选择最早恢复的一组。
+ * @Date 2024-06-15 10:00
+ */
+@Slf4j
+public class ApiKeyPool {
+
+    /* 错误率滑动平均的平滑系数 */
+    private static final double ERROR_ALPHA = 0.2;
+    /* 剩余配额按一分钟的窗口线性恢复 */
+    private static final double QUOTA_RECOVERY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /* 权重下限，避免健康度为 0 的密钥永远不被选中后无法恢复 */
+    private static final double MIN_SCORE = 0.01;
+
+    private final List<EndpointState> states;
+    /* 认证失败的冷却时间 */
+    private final long authCooldownNanos;
+    /* 429 未携带 Retry-After 时的冷却时间 */
+    private final long rateLimitCooldownNanos;
+    /* 5xx 或网络异常的冷却时间 */
+    private final long serverErrorCooldownNanos;
+
+    public ApiKeyPool(List<ApiEndpoint> endpoints) {
+        this(endpoints, Duration.ofMinutes(5), Duration.ofSeconds(10), Duration.ofSeconds(5));
+    }
+
+    public ApiKeyPool(List<ApiEndpoint> endpoints, Duration authCooldown, Duration rateLimitCooldown, Duration serverErrorCooldown) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("endpoints must not be empty");
+        }
+        List<EndpointState> list = new ArrayList<>(endpoints.size());
+        for (ApiEndpoint endpoint : endpoints) {
+            list.add(new EndpointState(endpoint));
+        }
+        this.states = Collections.unmodifiableList(list);
+        this.authCooldownNanos = authCooldown.toNanos();
+        this.rateLimitCooldownNanos = rateLimitCooldown.toNanos();
+        this.serverErrorCooldownNanos = serverErrorCooldown.toNanos();
+    }
+
+    /**
+     * 选择一组主机与密钥。
+     *
+     * @return 返回本次请求使用的端点。
+     */
+    public ApiEndpoint select() {
+        long now = System.nanoTime();
+        double[] scores = new double[states.size()];
+        double total = 0;
+        EndpointState earliest = null;
+        for (int i = 0; i < scores.length; i++) {
+            EndpointState state = states.get(i);
+            if (state.isEjected(now)) {
+                if (earliest == null || state.ejectedUntil < earliest.ejectedUntil) {
+                    earliest = state;
+                }
+                continue;
+            }
+            scores[i] = state.score();
+            total += scores[i];
+        }
+        if (total == 0) {
+            return earliest.endpoint;
+        }
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < scores.length; i++) {
+            pick -= scores[i];
+            if (scores[i] > 0 && pick < 0) {
+                return states.get(i).endpoint;
+            }
+        }
+        // 浮点误差兜底
+        for (int i = scores.length - 1; i >= 0; i--) {
+            if (scores[i] > 0) {
+                return states.get(i).endpoint;
+            }
+        }
+        return earliest.endpoint;
+    }
+
+    /**
+     * 根据响应更新端点的健康度与剩余配额。
+     *
+     * @param endpoint 发送请求的端点。
+     * @param response 响应。
+     */
+    public void record(ApiEndpoint endpoint, Response response) {
+        EndpointState state = stateOf(endpoint);
+        if (state == null) {
+            return;
+        }
+        int code = response.code();
+        if (code == 401 || code == 403) {
+            state.failure(authCooldownNanos);
+            log.warn("API 密钥认证失败，暂时摘除: {}", endpoint);
+        } else if (code == 429) {
+            state.failure(retryAfterNanos(response));
+            log.warn("API 密钥触发限流，暂时摘除: {}", endpoint);
+        } else if (code >= 500) {
+            state.failure(serverErrorCooldownNanos);
+            log.warn("API 主机返回 {}，暂时摘除: {}", code, endpoint);
+        } else {
+            state.success(quota(response));
+        }
+    }
+
+    /**
+     * 记录网络异常。
+     *
+     * @param endpoint 发送请求的端点。
+     */
+    public void recordFailure(ApiEndpoint endpoint) {
+        EndpointState state = stateOf(endpoint);
+        if (state != null) {
+            state.failure(serverErrorCooldownNanos);
+        }
+    }
+
+    /**
+     * 当前未被摘除的端点数。
+     */
+    public int availableCount() {
+        long now = System.nanoTime();
+        int count = 0;
+        for (EndpointState state : states) {
+            if (!state.isEjected(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private EndpointState stateOf(ApiEndpoint endpoint) {
+        for (EndpointState state : states) {
+            if (state.endpoint == endpoint) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private long retryAfterNanos(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException ignored) {
+                // HTTP 日期格式按默认冷却时间处理
+            }
+        }
+        return rateLimitCooldownNanos;
+    }
+
+    /**
+     * 计算剩余配额比例，取请求数与 token 数中较紧的一个，缺少响应头时返回 -1。
+     */
+    private static double quota(Response response) {
+        double requests = ratio(response, "x-ratelimit-remaining-requests", "x-ratelimit-limit-requests");
+        double tokens = ratio(response, "x-ratelimit-remaining-tokens", "x-ratelimit-limit-tokens");
+        if (requests < 0) {
+            return tokens;
+        }
+        return tokens < 0 ? requests : Math.min(requests, tokens);
+    }
+
+    private static double ratio(Response response, String remainingHeader, String limitHeader) {
+        String remaining = response.header(remainingHeader);
+        String limit = response.header(limitHeader);
+        if (remaining == null || limit == null) {
+            return -1;
+        }
+        try {
+            double limitValue = Double.parseDouble(limit);
+            return limitValue <= 0 ? -1 : Math.max(0, Math.min(1, Double.parseDouble(remaining) / limitValue));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 端点的运行时状态。
+     */
+    private static final class EndpointState {
+        private final ApiEndpoint endpoint;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile double errorRate;
+        private volatile double quota = 1;
+        private volatile long quotaUpdatedAt = System.nanoTime();
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        private EndpointState(ApiEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        double score() {
+            // 响应头中的剩余配额会随时间恢复，两次响应之间按线性恢复估算
+            double recovered = Math.min(1, quota + (System.nanoTime() - quotaUpdatedAt) / QUOTA_RECOVERY_NANOS);
+            return Math.max(MIN_SCORE, endpoint.getWeight() * recovered * (1 - errorRate));
+        }
+
+        void success(double remainingQuota) {
+            lock.lock();
+            try {
+                errorRate = errorRate * (1 - ERROR_ALPHA);
+                if (remainingQuota >= 0) {
+                    quota = remainingQuota;
+                    quotaUpdatedAt = System.nanoTime();
+                }
+                ejected = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void failure(long cooldownNanos) {
+            lock.lock();
+            try {
+                errorRate = errorRate * (1 - ERROR_ALPHA) + ERROR_ALPHA;
+                ejectedUntil = System.nanoTime() + cooldownNanos;
+                ejected = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package top.kangyaocoding.chatgpt.retry;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 全局重试预算。
+ * 每个原始请求存入 budgetRatio 个额度，每次重试取出 1 个额度，额度上限为最低储备 budgetMinRetries。
+ * 服务端整体故障时额度很快耗尽，重试流量被限制在正常流量的固定比例内，不会放大故障。
+ * @Date 2024-06-16 10:00
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double maxBalance;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double balance;
+
+    public RetryBudget(double ratio, int minRetries) {
+        this.ratio = ratio;
+        this.maxBalance = Math.max(minRetries, 1);
+        this.balance = this.maxBalance;
+    }
+
+    public void deposit() {
+        lock.lock();
+        try {
+            balance = Math.min(maxBalance, balance + ratio);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean tryWithdraw() {
+        lock.lock();
+        try {
+            if (balance < 1) {
+                return false;
+            }
+            balance -= 1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package top.kangyaocoding.chatgpt.retry;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * @Author K·Herbert
+ * @Description 重试策略配置。
+ * 幂等请求（GET、HEAD、DELETE）在网络异常和可重试状态码时重试；
+ * POST 等非幂等请求只在连接建立失败或服务端明确返回可重试状态码时重试，避免重复执行已被处理的请求。
+ * @Date 2024-06-16 10:00
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetryPolicy {
+
+    /* 最大尝试次数，包含第一次请求 */
+    @Builder.Default
+    private int maxAttempts = 3;
+    /* 退避基准时间 */
+    @Builder.Default
+    private Duration baseDelay = Duration.ofMillis(500);
+    /* 单次退避的最长时间，服务端要求的等待时间超过该值时不再重试 */
+    @Builder.Default
+    private Duration maxDelay = Duration.ofSeconds(30);
+    /* 可重试的状态码 */
+    @Builder.Default
+    private Set<Integer> retryableStatusCodes = Set.of(429, 500, 502, 503, 504);
+    /* 重试预算：重试请求最多占正常请求的比例 */
+    @Builder.Default
+    private double budgetRatio = 0.1;
+    /* 重试预算的最低储备，保证低流量时仍可重试 */
+    @Builder.Default
+    private int budgetMinRetries = 10;
+
+}
@@ -0,0 +1,26 @@
+package top.kangyaocoding.chatgpt.retry;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 重试统计信息快照。
+ * @Date 2024-06-16 10:00
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class RetryStats {
+
+    /* 原始请求数 */
+    private final long requests;
+    /* 重试次数 */
+    private final long retries;
+    /* 重试后成功的请求数 */
+    private final long successesAfterRetry;
+    /* 因重试预算耗尽而放弃的次数 */
+    private final long budgetExhausted;
+
+}
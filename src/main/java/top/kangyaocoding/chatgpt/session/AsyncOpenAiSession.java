@@ -0,0 +1,392 @@
+package top.kangyaocoding.chatgpt.session;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.reactivex.Flowable;
+import okhttp3.Call;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.audio.LongAudioOptions;
+import top.kangyaocoding.chatgpt.audio.PcmAudio;
+import top.kangyaocoding.chatgpt.audio.SegmentTranscription;
+import top.kangyaocoding.chatgpt.domain.billing.BillingUsage;
+import top.kangyaocoding.chatgpt.domain.billing.Subscription;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+import top.kangyaocoding.chatgpt.domain.common.OpenAiResponse;
+import top.kangyaocoding.chatgpt.domain.edits.EditRequest;
+import top.kangyaocoding.chatgpt.domain.edits.EditResponse;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+import top.kangyaocoding.chatgpt.domain.files.DeleteFileResponse;
+import top.kangyaocoding.chatgpt.domain.files.UploadFileResponse;
+import top.kangyaocoding.chatgpt.domain.images.ImageEditRequest;
+import top.kangyaocoding.chatgpt.domain.images.ImageRequest;
+import top.kangyaocoding.chatgpt.domain.images.ImageResponse;
+import top.kangyaocoding.chatgpt.domain.whisper.TranscriptionsRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.TranslationsRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+import top.kangyaocoding.chatgpt.image.ImageAsset;
+import top.kangyaocoding.chatgpt.image.ImageAssetHandler;
+import top.kangyaocoding.chatgpt.image.ImageOutput;
+import top.kangyaocoding.chatgpt.image.ImagePipelineOptions;
+import top.kangyaocoding.chatgpt.download.DownloadOptions;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+import top.kangyaocoding.chatgpt.upload.UploadProgressListener;
+import top.kangyaocoding.chatgpt.upload.UploadResult;
+import top.kangyaocoding.chatgpt.upload.UploadSource;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Author K·Herbert
+ * @Description OpenAi 异步会话接口，与 OpenAiSession 提供相同的操作，但不阻塞调用线程。
+ * 每个方法返回的 CompletableFuture 直接由底层 OkHttp Call 驱动完成，取消 Future 即取消对应的 Call。
+ * @Date 2024-06-03 10:30
+ */
+public interface AsyncOpenAiSession {
+    /**
+     * 使用默认的 GPT-3.5 问答模型进行问答。
+     *
+     * @param chatCompletionRequest 包含问答请求的详细信息的对象。
+     * @return 返回异步结果，完成时包含问答结果的响应对象。
+     */
+    CompletableFuture<ChatCompletionResponse> completions(ChatCompletionRequest chatCompletionRequest);
+
+    /**
+     * 使用流式问答模型进行问答，以 Stream 模式处理。
+     *
+     * @param chatCompletionRequest 聊天完成请求对象，包含请求的详细信息。
+     * @param eventSourceListener   用于监听和处理事件源产生的事件的监听器。
+     * @return 返回一个配置好的事件源对象，用于监听聊天完成的事件，流式接口本身即为异步回调。
+     * @throws JsonProcessingException 当处理 JSON 数据发生错误时抛出。
+     */
+    EventSource chatCompletions(ChatCompletionRequest chatCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException;
+
+    /**
+     * 用户可以配置自己的API主机和密钥。
+     *
+     * @param apiHostByUser         用户提供的API主机地址
+     * @param apiKeyByUser          用户的API密钥
+     * @param chatCompletionRequest 聊天完成请求对象，包含具体的聊天上下文和请求参数。
+     * @param eventSourceListener   事件监听器，用于处理服务器推送的聊天完成事件。
+     * @return 返回一个EventSource实例，已配置好相关参数并开始监听事件。
+     * @throws JsonProcessingException 如果处理聊天完成请求或响应时发生JSON序列化或反序列化错误。
+     */
+    EventSource chatCompletions(String apiHostByUser, String apiKeyByUser, ChatCompletionRequest chatCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException;
+
+    /**
+     * 以支持背压的 Flowable 消费流式问答结果，增量数据由 SDK 解析为 ChatCompletionResponse。
+     * 下游通过 request(n) 控制拉取速度，取消订阅即取消事件源。
+     *
+     * @param chatCompletionRequest 聊天完成请求对象，stream 必须为 true。
+     * @return 返回流式结果的 Flowable，每次订阅发起一次新的请求。
+     * @throws JsonProcessingException 当处理 JSON 数据发生错误时抛出。
+     */
+    Flowable<ChatCompletionResponse> chatCompletionsFlowable(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException;
+
+    /**
+     * 以低分配的方式消费流式问答结果，SDK 直接从网络缓冲区解析增量内容，并通过复用的 ChatDelta 回调。
+     *
+     * @param chatCompletionRequest 聊天完成请求对象，stream 必须为 true。
+     * @param chatDeltaHandler      增量数据回调，在网络线程上执行。
+     * @return 返回对应的 Call，调用 cancel 即可中断流。
+     * @throws JsonProcessingException 当处理 JSON 数据发生错误时抛出。
+     */
+    Call chatCompletionsDeltas(ChatCompletionRequest chatCompletionRequest, ChatDeltaHandler chatDeltaHandler) throws JsonProcessingException;
+
+    /**
+     * 进行文本编辑操作。
+     *
+     * @param editRequest 编辑请求对象，包含编辑请求的详细信息。
+     * @return 返回异步结果，完成时包含编辑操作的结果响应对象。
+     */
+    CompletableFuture<EditResponse> edit(EditRequest editRequest);
+
+    /**
+     * 根据提示生成图像。
+     *
+     * @param prompt 提示文本，用于指导图像生成。
+     * @return 返回异步结果，完成时包含图像生成的结果响应对象。
+     */
+    CompletableFuture<ImageResponse> genImage(String prompt);
+
+    /**
+     * 根据图像请求生成图像。
+     *
+     * @param imageRequest 图像生成请求对象，包含生成请求的详细信息。
+     * @return 返回异步结果，完成时包含图像生成的结果响应对象。
+     */
+    CompletableFuture<ImageResponse> genImage(ImageRequest imageRequest);
+
+    /**
+     * 生成图片并并发下载到目录，dall-e-3 等只接受 n=1 的模型会拆分为并发的单图请求。
+     *
+     * @param imageRequest 图像请求对象。
+     * @param directory    目标目录，不存在时创建。
+     * @param options      流水线配置。
+     * @return 返回异步结果，全部图片写入磁盘后完成，包含每张图片的文件与耗时。
+     */
+    CompletableFuture<List<ImageAsset>> genImages(ImageRequest imageRequest, Path directory, ImagePipelineOptions options);
+
+    /**
+     * 生成图片并并发下载，内容交给回调。
+     *
+     * @param imageRequest 图像请求对象。
+     * @param handler      图片内容回调，各图片并发调用。
+     * @param options      流水线配置。
+     * @return 返回异步结果，全部回调返回后完成，包含每张图片的结果与耗时。
+     */
+    CompletableFuture<List<ImageAsset>> genImages(ImageRequest imageRequest, ImageAssetHandler handler, ImagePipelineOptions options);
+
+    /**
+     * 以 b64_json 生成图片，流式解析响应并边解码边写入输出，堆内存占用与图片大小无关。
+     *
+     * @param imageRequest 图像请求对象，response_format 固定为 b64_json。
+     * @param output       图片输出，例如 ImageOutput.directory 或 ImageOutput.of(Path)。
+     * @param options      流水线配置。
+     * @return 返回异步结果，全部写入后完成，包含每张图片的结果与耗时。
+     */
+    CompletableFuture<List<ImageAsset>> genImages(ImageRequest imageRequest, ImageOutput output, ImagePipelineOptions options);
+
+    /**
+     * 对给定图像进行编辑。
+     *
+     * @param image  要编辑的图像文件。
+     * @param prompt 提示文本，用于指导图像编辑。
+     * @return 返回异步结果，完成时包含图像编辑的结果响应对象。
+     */
+    CompletableFuture<ImageResponse> editImage(File image, String prompt);
+
+    /**
+     * 对给定图像进行编辑。
+     *
+     * @param image            要编辑的图像文件。
+     * @param imageEditRequest 图像编辑请求对象，包含编辑请求的详细信息。
+     * @return 返回异步结果，完成时包含图像编辑的结果响应对象。
+     */
+    CompletableFuture<ImageResponse> editImage(File image, ImageEditRequest imageEditRequest);
+
+    /**
+     * 对给定图像进行编辑。
+     *
+     * @param image            要编辑的图像文件。
+     * @param mask             标记文件，用于指导图像编辑。
+     * @param imageEditRequest 图像编辑请求对象，包含编辑请求的详细信息。
+     * @return 返回异步结果，完成时包含图像编辑的结果响应对象。
+     */
+    CompletableFuture<ImageResponse> editImage(File image, File mask, ImageEditRequest imageEditRequest);
+
+    /**
+     * 生成嵌入向量。
+     *
+     * @param input 输入文本，用于生成嵌入向量。
+     * @return 返回异步结果，完成时包含嵌入向量的结果响应对象。
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(String input);
+
+    /**
+     * 生成嵌入向量。
+     *
+     * @param inputs 输入文本数组，用于生成嵌入向量。
+     * @return 返回异步结果，完成时包含嵌入向量的结果响应对象。
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(String... inputs);
+
+    /**
+     * 生成嵌入向量。
+     *
+     * @param inputs 输入文本列表，用于生成嵌入向量。
+     * @return 返回异步结果，完成时包含嵌入向量的结果响应对象。
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(List<String> inputs);
+
+    /**
+     * 生成嵌入向量。
+     *
+     * @param embeddingRequest 嵌入请求对象，包含嵌入请求的详细信息。
+     * @return 返回异步结果，完成时包含嵌入向量的结果响应对象。
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(EmbeddingRequest embeddingRequest);
+
+    /**
+     * 获取文件信息。
+     *
+     * @return 返回异步结果，完成时包含文件信息的结果响应对象。
+     */
+    CompletableFuture<OpenAiResponse<top.kangyaocoding.chatgpt.domain.files.File>> files();
+
+    /**
+     * 上传文件。
+     *
+     * @param file 要上传的文件。
+     * @return 返回异步结果，完成时包含上传文件的结果响应对象。
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(File file);
+
+    /**
+     * 上传文件，并指定文件用途。
+     *
+     * @param file    要上传的文件。
+     * @param purpose 文件用途描述。
+     * @return 返回异步结果，完成时包含上传文件的结果响应对象。
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(File file, String purpose);
+
+    /**
+     * 流式上传本地文件，堆内存占用与文件大小无关，网络失败时可以重发。
+     *
+     * @param path    要上传的文件路径。
+     * @param purpose 文件用途，例如 fine-tune、batch 或 assistants。
+     * @return 返回异步结果，完成时包含上传文件的结果响应对象。
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(Path path, String purpose);
+
+    /**
+     * 流式上传输入流中的内容，输入流只读取一次，上传结束后关闭。
+     *
+     * @param inputStream   输入流，例如对象存储的下载流。
+     * @param contentLength 内容长度，未知时传 -1，此时使用分块传输。
+     * @param filename      上传时使用的文件名。
+     * @param purpose       文件用途。
+     * @return 返回异步结果，完成时包含上传文件的结果响应对象。
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(InputStream inputStream, long contentLength, String filename, String purpose);
+
+    /**
+     * 流式上传字节通道中的内容，通道只读取一次，上传结束后关闭。
+     *
+     * @param channel       字节通道。
+     * @param contentLength 内容长度，未知时传 -1，此时使用分块传输。
+     * @param filename      上传时使用的文件名。
+     * @param purpose       文件用途。
+     * @return 返回异步结果，完成时包含上传文件的结果响应对象。
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(ReadableByteChannel channel, long contentLength, String filename, String purpose);
+
+    /**
+     * 流式上传文件并回调上传进度。
+     *
+     * @param source   待上传的内容。
+     * @param purpose  文件用途。
+     * @param listener 进度回调，可以为 null。
+     * @return 返回异步结果，完成时包含上传文件的结果响应对象。
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(UploadSource source, String purpose, UploadProgressListener listener);
+
+    /**
+     * 批量上传文件，最多 concurrency 个文件同时上传，单个文件失败不影响其他文件。
+     *
+     * @param sources     待上传的内容列表。
+     * @param purpose     文件用途。
+     * @param concurrency 最大并发上传数。
+     * @param listener    进度回调，可以为 null。
+     * @return 返回异步结果，完成时包含与 sources 顺序一致的上传结果。
+     */
+    CompletableFuture<List<UploadResult>> uploadFiles(List<UploadSource> sources, String purpose, int concurrency, UploadProgressListener listener);
+
+    /**
+     * 删除文件。
+     *
+     * @param fileId 要删除的文件ID。
+     * @return 返回异步结果，完成时包含删除文件的结果响应对象。
+     */
+    CompletableFuture<DeleteFileResponse> deleteFile(String fileId);
+
+    /**
+     * 获取单个文件的信息。
+     *
+     * @param fileId 文件ID。
+     * @return 返回异步结果，完成时包含文件信息。
+     */
+    CompletableFuture<top.kangyaocoding.chatgpt.domain.files.File> retrieveFile(String fileId);
+
+    /**
+     * 在 IO 线程上下载文件内容到本地路径。
+     *
+     * @param fileId  文件ID。
+     * @param target  目标文件路径，已存在时覆盖。
+     * @param options 下载配置。
+     * @return 返回异步结果，完成时包含下载的字节数。
+     */
+    CompletableFuture<Long> downloadFileContent(String fileId, Path target, DownloadOptions options);
+
+    /**
+     * 以背压方式读取文件内容，取消订阅时关闭连接。
+     *
+     * @param fileId 文件ID。
+     * @return 返回文件内容的分块流，订阅时发起请求。
+     */
+    Flowable<ByteBuffer> fileContentFlowable(String fileId);
+
+    /**
+     * 语音转文字。
+     *
+     * @param file                  包含语音数据的文件。
+     * @param transcriptionsRequest 转写请求对象，包含转写请求的详细信息。
+     * @return 返回异步结果，完成时包含语音转文字的结果响应对象。
+     */
+    CompletableFuture<WhisperResponse> speed2TextTranscriptions(File file, TranscriptionsRequest transcriptionsRequest);
+
+    /**
+     * 语音翻译。
+     *
+     * @param file                包含语音数据的文件。
+     * @param translationsRequest 翻译请求对象，包含翻译请求的详细信息。
+     * @return 返回异步结果，完成时包含语音翻译的结果响应对象。
+     */
+    CompletableFuture<WhisperResponse> speed2TextTranslations(File file, TranslationsRequest translationsRequest);
+
+    /**
+     * 长音频语音转文字：按静音切分为不超过接口限制的片段并行转写，拼接后返回整段结果。
+     *
+     * @param audio                 WAV 或原始 PCM 音频。
+     * @param transcriptionsRequest 转写请求对象，响应格式固定为 verbose_json。
+     * @param options               分段配置。
+     * @return 返回异步结果，完成时包含整段音频的转写结果。
+     */
+    CompletableFuture<WhisperResponse> speed2TextTranscriptions(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options);
+
+    /**
+     * 长音频语音转文字，按片段顺序流式输出每个片段的结果。
+     *
+     * @param audio                 WAV 或原始 PCM 音频。
+     * @param transcriptionsRequest 转写请求对象，响应格式固定为 verbose_json。
+     * @param options               分段配置。
+     * @return 返回各片段的转写结果，订阅时开始转写。
+     */
+    Flowable<SegmentTranscription> speed2TextTranscriptionsStream(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options);
+
+    /**
+     * 长音频语音翻译：按静音切分后并行翻译，拼接后返回整段结果。
+     *
+     * @param audio               WAV 或原始 PCM 音频。
+     * @param translationsRequest 翻译请求对象，响应格式固定为 verbose_json。
+     * @param options             分段配置。
+     * @return 返回异步结果，完成时包含整段音频的翻译结果。
+     */
+    CompletableFuture<WhisperResponse> speed2TextTranslations(PcmAudio audio, TranslationsRequest translationsRequest, LongAudioOptions options);
+
+    /**
+     * 查询账单信息。
+     *
+     * @return 返回异步结果，完成时包含账单信息的结果响应对象。
+     */
+    CompletableFuture<Subscription> subscription();
+
+    /**
+     * 查询消耗信息。
+     *
+     * @param starDate 开始日期。
+     * @param endDate  结束日期。
+     * @return 返回异步结果，完成时包含消耗信息的结果响应对象。
+     */
+    CompletableFuture<BillingUsage> billingUsage(@NotNull LocalDate starDate, @NotNull LocalDate endDate);
+}
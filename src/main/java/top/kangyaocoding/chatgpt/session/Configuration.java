@@ -5,10 +5,23 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSources;
 import org.jetbrains.annotations.NotNull;
 import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerRegistry;
+import top.kangyaocoding.chatgpt.cache.ChatCompletionCache;
+import top.kangyaocoding.chatgpt.cache.EmbeddingCache;
+import top.kangyaocoding.chatgpt.flight.SingleFlight;
+import top.kangyaocoding.chatgpt.hedge.Hedger;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+import top.kangyaocoding.chatgpt.metrics.MetricsRecorder;
+import top.kangyaocoding.chatgpt.metrics.StreamMetrics;
+import top.kangyaocoding.chatgpt.pool.ApiKeyPool;
+import top.kangyaocoding.chatgpt.retry.RetryPolicy;
+
+import java.util.concurrent.ExecutorService;
 
 /**
  * @Author K·Herbert
@@ -25,6 +38,9 @@ public class Configuration {
     /* OpenAI API的接口实例 */
     private IOpenAiApi openAiApi;
 
+    /* OpenAI API的异步接口实例，基于 OkHttp Call.enqueue 发起请求 */
+    private IOpenAiApi asyncOpenAiApi;
+
     /* 用于API请求的HTTP客户端 */
     private OkHttpClient okHttpClient;
 
@@ -41,12 +57,120 @@ public class Configuration {
      */
     private String apiHost;
 
+    /**
+     * 连接池中保留的最大空闲连接数。
+     * 工厂创建的所有会话共享同一个连接池，空闲连接可被后续请求复用，避免重复 TLS 握手。
+     */
+    private int maxIdleConnections = 32;
+
+    /**
+     * 空闲连接的保活时长，单位为秒。
+     */
+    private long keepAliveDuration = 300;
+
+    /**
+     * 分发器允许同时执行的最大请求数。
+     */
+    private int maxRequests = 128;
+
+    /**
+     * 分发器对同一主机允许同时执行的最大请求数。
+     * OkHttp 默认值为 5，所有请求都发往同一个 apiHost 时会限制异步并发，因此默认调高。
+     */
+    private int maxRequestsPerHost = 64;
+
+    /**
+     * 是否启用虚拟线程执行模式，需要 JDK 21 及以上版本。
+     * 启用后 OkHttp 分发器与同步会话 blockingGet 背后的 RxJava 调度均运行在每任务一个虚拟线程的执行器上。
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * 流式结果的缓冲区大小，缓冲区满时暂停读取 socket。
+     */
+    private int streamBufferSize = 128;
+
+    /**
+     * 是否在发送聊天请求前统计提示 token 数，并按模型剩余上下文与最大输出收紧 maxTokens（o1 系列为 maxCompletionTokens）。
+     * 提示超过上下文长度时直接抛出异常，不再发起请求。
+     */
+    private boolean clampMaxTokens = false;
+
+    /**
+     * 向量缓存，可以为空。
+     * 设置后 embeddings 请求先查询缓存，只把未命中的输入发往上游。
+     */
+    private EmbeddingCache embeddingCache;
+
+    /**
+     * 客户端 RPM/TPM 限流器，可以为空。
+     * 需在创建会话工厂之前设置，工厂会把对应的拦截器加入共享的网络客户端。
+     */
+    private RateLimiter rateLimiter;
+
+    /**
+     * 多主机、多密钥连接池，可以为空。
+     * 设置后发往默认 apiHost 的请求会在池中的主机与密钥之间负载均衡，需在创建会话工厂之前设置。
+     */
+    private ApiKeyPool apiKeyPool;
+
+    /**
+     * 重试策略，可以为空。
+     * 设置后同步、异步与流式请求在可重试的失败时按指数退避自动重试，需在创建会话工厂之前设置。
+     */
+    private RetryPolicy retryPolicy;
+
+    /**
+     * 对冲请求执行器，可以为空。
+     * 设置后非流式的 completions 与 embeddings 请求在超过近期延迟分位数时发送副本，先返回者胜出。
+     */
+    private Hedger hedger;
+
+    /**
+     * 熔断器注册表，可以为空。
+     * 设置后按主机（或主机与接口路径）统计失败率与慢调用率，熔断期间请求立即失败，需在创建会话工厂之前设置。
+     */
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    /**
+     * 聊天响应缓存，可以为空。
+     * 设置后 completions 与基于事件源的流式请求按规范化请求哈希缓存结果，命中的流式请求以合成增量数据回放。
+     */
+    private ChatCompletionCache chatCompletionCache;
+
+    /**
+     * 在途请求合并，可以为空。
+     * 设置后内容相同的并发 completions、embeddings 与流式请求只向上游发送一次，结果由所有调用方共享。
+     */
+    private SingleFlight singleFlight;
+
+    /**
+     * 指标记录器，可以为空。
+     * 设置后记录每个接口与模型的请求耗时、状态码、字节数，以及流式请求的首个令牌耗时、令牌间隔与生成速度，需在创建会话工厂之前设置。
+     */
+    private MetricsRecorder metricsRecorder;
+
+    /**
+     * HTTP 日志级别，默认打印请求与响应头。
+     * 高并发场景下建议配合指标记录器设置为 NONE。
+     */
+    private HttpLoggingInterceptor.Level httpLoggingLevel = HttpLoggingInterceptor.Level.HEADERS;
+
     /**
      * 创建一个事件源工厂。
      *
-     * @return 返回一个配置好的事件源工厂实例。
+     * @return 返回一个配置好的事件源工厂实例，配置了聊天响应缓存或在途请求合并时，回放与补发在分发器的执行器上进行。
      */
     public EventSource.Factory createEventSourceFactory() {
-        return EventSources.createFactory(okHttpClient);
+        EventSource.Factory eventSourceFactory = EventSources.createFactory(okHttpClient);
+        ExecutorService executorService = okHttpClient.dispatcher().executorService();
+        if (metricsRecorder != null) {
+            eventSourceFactory = StreamMetrics.eventSourceFactory(metricsRecorder, eventSourceFactory);
+        }
+        if (singleFlight != null) {
+            eventSourceFactory = singleFlight.eventSourceFactory(eventSourceFactory, executorService);
+        }
+        return chatCompletionCache == null ? eventSourceFactory
+                : chatCompletionCache.eventSourceFactory(eventSourceFactory, executorService);
     }
 }
@@ -0,0 +1,31 @@
+package top.kangyaocoding.chatgpt.session;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 共享连接池与分发器的运行时统计信息快照。
+ * @Date 2024-06-04 09:20
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ConnectionPoolStats {
+
+    /* 连接池中的连接总数 */
+    private final int connectionCount;
+
+    /* 空闲连接数 */
+    private final int idleConnections;
+
+    /* 正在使用的连接数 */
+    private final int activeConnections;
+
+    /* 正在执行的请求数，包括同步和异步请求 */
+    private final int runningCalls;
+
+    /* 在分发器中排队等待执行的异步请求数 */
+    private final int queuedCalls;
+}
@@ -1,9 +1,14 @@
 package top.kangyaocoding.chatgpt.session;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import io.reactivex.Flowable;
+import okhttp3.Call;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
 import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.audio.LongAudioOptions;
+import top.kangyaocoding.chatgpt.audio.PcmAudio;
+import top.kangyaocoding.chatgpt.audio.SegmentTranscription;
 import top.kangyaocoding.chatgpt.domain.billing.BillingUsage;
 import top.kangyaocoding.chatgpt.domain.billing.Subscription;
 import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
@@ -21,8 +26,23 @@ import top.kangyaocoding.chatgpt.domain.images.ImageResponse;
 import top.kangyaocoding.chatgpt.domain.whisper.TranscriptionsRequest;
 import top.kangyaocoding.chatgpt.domain.whisper.TranslationsRequest;
 import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+import top.kangyaocoding.chatgpt.image.ImageAsset;
+import top.kangyaocoding.chatgpt.image.ImageAssetHandler;
+import top.kangyaocoding.chatgpt.image.ImageOutput;
+import top.kangyaocoding.chatgpt.image.ImagePipelineOptions;
+import top.kangyaocoding.chatgpt.download.DownloadOptions;
+import top.kangyaocoding.chatgpt.stream.ChatChoiceIterator;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+import top.kangyaocoding.chatgpt.upload.UploadProgressListener;
+import top.kangyaocoding.chatgpt.upload.UploadResult;
+import top.kangyaocoding.chatgpt.upload.UploadSource;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -62,6 +82,35 @@ public interface OpenAiSession {
      */
     EventSource chatCompletions(String apiHostByUser, String apiKeyByUser, ChatCompletionRequest chatCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException;
 
+    /**
+     * 以支持背压的 Flowable 消费流式问答结果，增量数据由 SDK 解析为 ChatCompletionResponse。
+     * 下游通过 request(n) 控制拉取速度，取消订阅即取消事件源。
+     *
+     * @param chatCompletionRequest 聊天完成请求对象，stream 必须为 true。
+     * @return 返回流式结果的 Flowable，每次订阅发起一次新的请求。
+     * @throws JsonProcessingException 当处理 JSON 数据发生错误时抛出。
+     */
+    Flowable<ChatCompletionResponse> chatCompletionsFlowable(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException;
+
+    /**
+     * 以低分配的方式消费流式问答结果，SDK 直接从网络缓冲区解析增量内容，并通过复用的 ChatDelta 回调。
+     *
+     * @param chatCompletionRequest 聊天完成请求对象，stream 必须为 true。
+     * @param chatDeltaHandler      增量数据回调，在网络线程上执行。
+     * @return 返回对应的 Call，调用 cancel 即可中断流。
+     * @throws JsonProcessingException 当处理 JSON 数据发生错误时抛出。
+     */
+    Call chatCompletionsDeltas(ChatCompletionRequest chatCompletionRequest, ChatDeltaHandler chatDeltaHandler) throws JsonProcessingException;
+
+    /**
+     * 以阻塞迭代器的方式消费流式问答结果，适合在虚拟线程上逐条处理增量消息。
+     *
+     * @param chatCompletionRequest 聊天完成请求对象，stream 必须为 true。
+     * @return 返回流式结果的迭代器，使用完毕后需关闭以取消事件源。
+     * @throws JsonProcessingException 当处理 JSON 数据发生错误时抛出。
+     */
+    ChatChoiceIterator chatCompletionsIterator(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException;
+
     /**
      * 进行文本编辑操作。
      *
@@ -86,6 +135,36 @@ public interface OpenAiSession {
      */
     ImageResponse genImage(ImageRequest imageRequest);
 
+    /**
+     * 生成图片并并发下载到目录，dall-e-3 等只接受 n=1 的模型会拆分为并发的单图请求。
+     *
+     * @param imageRequest 图像请求对象。
+     * @param directory    目标目录，不存在时创建。
+     * @param options      流水线配置。
+     * @return 返回按序号排列的每张图片的文件与耗时，全部写入磁盘后返回。
+     */
+    List<ImageAsset> genImages(ImageRequest imageRequest, Path directory, ImagePipelineOptions options);
+
+    /**
+     * 生成图片并并发下载，内容交给回调。
+     *
+     * @param imageRequest 图像请求对象。
+     * @param handler      图片内容回调，各图片并发调用。
+     * @param options      流水线配置。
+     * @return 返回按序号排列的每张图片的结果与耗时，全部回调返回后返回。
+     */
+    List<ImageAsset> genImages(ImageRequest imageRequest, ImageAssetHandler handler, ImagePipelineOptions options);
+
+    /**
+     * 以 b64_json 生成图片，流式解析响应并边解码边写入输出，堆内存占用与图片大小无关。
+     *
+     * @param imageRequest 图像请求对象，response_format 固定为 b64_json。
+     * @param output       图片输出，例如 ImageOutput.directory 或 ImageOutput.of(Path)。
+     * @param options      流水线配置。
+     * @return 返回按序号排列的每张图片的结果与耗时，全部写入后返回。
+     */
+    List<ImageAsset> genImages(ImageRequest imageRequest, ImageOutput output, ImagePipelineOptions options);
+
     /**
      * 对给定图像进行编辑。
      *
@@ -151,7 +230,7 @@ public interface OpenAiSession {
      *
      * @return 返回文件信息的结果响应对象。
      */
-    OpenAiResponse<File> files();
+    OpenAiResponse<top.kangyaocoding.chatgpt.domain.files.File> files();
 
     /**
      * 上传文件。
@@ -170,6 +249,59 @@ public interface OpenAiSession {
      */
     UploadFileResponse uploadFile(File file, String purpose);
 
+    /**
+     * 流式上传本地文件，堆内存占用与文件大小无关，网络失败时可以重发。
+     *
+     * @param path    要上传的文件路径。
+     * @param purpose 文件用途，例如 fine-tune、batch 或 assistants。
+     * @return 返回上传文件的结果响应对象。
+     * @throws IOException 读取文件大小失败时抛出。
+     */
+    UploadFileResponse uploadFile(Path path, String purpose) throws IOException;
+
+    /**
+     * 流式上传输入流中的内容，输入流只读取一次，上传结束后关闭。
+     *
+     * @param inputStream   输入流，例如对象存储的下载流。
+     * @param contentLength 内容长度，未知时传 -1，此时使用分块传输。
+     * @param filename      上传时使用的文件名。
+     * @param purpose       文件用途。
+     * @return 返回上传文件的结果响应对象。
+     */
+    UploadFileResponse uploadFile(InputStream inputStream, long contentLength, String filename, String purpose);
+
+    /**
+     * 流式上传字节通道中的内容，通道只读取一次，上传结束后关闭。
+     *
+     * @param channel       字节通道。
+     * @param contentLength 内容长度，未知时传 -1，此时使用分块传输。
+     * @param filename      上传时使用的文件名。
+     * @param purpose       文件用途。
+     * @return 返回上传文件的结果响应对象。
+     */
+    UploadFileResponse uploadFile(ReadableByteChannel channel, long contentLength, String filename, String purpose);
+
+    /**
+     * 流式上传文件并回调上传进度。
+     *
+     * @param source   待上传的内容。
+     * @param purpose  文件用途。
+     * @param listener 进度回调，可以为 null。
+     * @return 返回上传文件的结果响应对象。
+     */
+    UploadFileResponse uploadFile(UploadSource source, String purpose, UploadProgressListener listener);
+
+    /**
+     * 批量上传文件，最多 concurrency 个文件同时上传，单个文件失败不影响其他文件。
+     *
+     * @param sources     待上传的内容列表。
+     * @param purpose     文件用途。
+     * @param concurrency 最大并发上传数。
+     * @param listener    进度回调，可以为 null。
+     * @return 返回与 sources 顺序一致的上传结果。
+     */
+    List<UploadResult> uploadFiles(List<UploadSource> sources, String purpose, int concurrency, UploadProgressListener listener);
+
     /**
      * 删除文件。
      *
@@ -178,6 +310,51 @@ public interface OpenAiSession {
      */
     DeleteFileResponse deleteFile(String fileId);
 
+    /**
+     * 获取单个文件的信息。
+     *
+     * @param fileId 文件ID。
+     * @return 返回文件信息。
+     */
+    top.kangyaocoding.chatgpt.domain.files.File retrieveFile(String fileId);
+
+    /**
+     * 下载文件内容到本地路径，内容以固定大小的缓冲区直接写入磁盘，中断时按 Range 续传。
+     *
+     * @param fileId 文件ID。
+     * @param target 目标文件路径，已存在时覆盖。
+     * @return 返回下载的字节数。
+     * @throws IOException 下载或写入失败时抛出。
+     */
+    long downloadFileContent(String fileId, Path target) throws IOException;
+
+    /**
+     * 按配置下载文件内容到本地路径，可以按字节范围分段并行下载。
+     *
+     * @param fileId  文件ID。
+     * @param target  目标文件路径，已存在时覆盖。
+     * @param options 下载配置。
+     * @return 返回下载的字节数。
+     * @throws IOException 下载或写入失败时抛出。
+     */
+    long downloadFileContent(String fileId, Path target, DownloadOptions options) throws IOException;
+
+    /**
+     * 打开文件内容的输入流，直接读取响应体，调用方负责关闭。
+     *
+     * @param fileId 文件ID。
+     * @return 返回文件内容的输入流。
+     */
+    InputStream fileContentStream(String fileId);
+
+    /**
+     * 以背压方式读取文件内容，取消订阅时关闭连接。
+     *
+     * @param fileId 文件ID。
+     * @return 返回文件内容的分块流。
+     */
+    Flowable<ByteBuffer> fileContentFlowable(String fileId);
+
     /**
      * 语音转文字。
      *
@@ -196,6 +373,36 @@ public interface OpenAiSession {
      */
     WhisperResponse speed2TextTranslations(File file, TranslationsRequest translationsRequest);
 
+    /**
+     * 长音频语音转文字：按静音切分为不超过接口限制的片段并行转写，拼接后返回整段结果。
+     *
+     * @param audio                 WAV 或原始 PCM 音频。
+     * @param transcriptionsRequest 转写请求对象，响应格式固定为 verbose_json。
+     * @param options               分段配置。
+     * @return 返回整段音频的转写结果，分段时间戳已换算为整段音频的时间。
+     */
+    WhisperResponse speed2TextTranscriptions(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options);
+
+    /**
+     * 长音频语音转文字，按片段顺序流式输出每个片段的结果。
+     *
+     * @param audio                 WAV 或原始 PCM 音频。
+     * @param transcriptionsRequest 转写请求对象，响应格式固定为 verbose_json。
+     * @param options               分段配置。
+     * @return 返回各片段的转写结果，订阅时开始转写。
+     */
+    Flowable<SegmentTranscription> speed2TextTranscriptionsStream(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options);
+
+    /**
+     * 长音频语音翻译：按静音切分后并行翻译，拼接后返回整段结果。
+     *
+     * @param audio               WAV 或原始 PCM 音频。
+     * @param translationsRequest 翻译请求对象，响应格式固定为 verbose_json。
+     * @param options             分段配置。
+     * @return 返回整段音频的翻译结果。
+     */
+    WhisperResponse speed2TextTranslations(PcmAudio audio, TranslationsRequest translationsRequest, LongAudioOptions options);
+
     /**
      * 查询账单信息。
      *
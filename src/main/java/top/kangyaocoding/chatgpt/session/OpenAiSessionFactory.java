@@ -8,4 +8,6 @@ package top.kangyaocoding.chatgpt.session;
 
 public interface OpenAiSessionFactory {
     OpenAiSession openAiSession();
+
+    AsyncOpenAiSession asyncOpenAiSession();
 }
@@ -0,0 +1,532 @@
+package top.kangyaocoding.chatgpt.session.defaults;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.cache.ChatCompletionCache;
+import top.kangyaocoding.chatgpt.cache.EmbeddingCache;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.audio.LongAudioOptions;
+import top.kangyaocoding.chatgpt.audio.PcmAudio;
+import top.kangyaocoding.chatgpt.audio.SegmentTranscription;
+import top.kangyaocoding.chatgpt.domain.billing.BillingUsage;
+import top.kangyaocoding.chatgpt.domain.billing.Subscription;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+import top.kangyaocoding.chatgpt.domain.common.OpenAiResponse;
+import top.kangyaocoding.chatgpt.domain.edits.EditRequest;
+import top.kangyaocoding.chatgpt.domain.edits.EditResponse;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+import top.kangyaocoding.chatgpt.domain.files.DeleteFileResponse;
+import top.kangyaocoding.chatgpt.domain.files.UploadFileResponse;
+import top.kangyaocoding.chatgpt.domain.images.ImageEditRequest;
+import top.kangyaocoding.chatgpt.domain.images.ImageRequest;
+import top.kangyaocoding.chatgpt.domain.images.ImageResponse;
+import top.kangyaocoding.chatgpt.domain.whisper.TranscriptionsRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.TranslationsRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+import top.kangyaocoding.chatgpt.image.ImageAsset;
+import top.kangyaocoding.chatgpt.image.ImageAssetHandler;
+import top.kangyaocoding.chatgpt.image.ImageOutput;
+import top.kangyaocoding.chatgpt.image.ImagePipeline;
+import top.kangyaocoding.chatgpt.image.ImagePipelineOptions;
+import top.kangyaocoding.chatgpt.download.DownloadOptions;
+import top.kangyaocoding.chatgpt.download.FileDownloader;
+import top.kangyaocoding.chatgpt.limiter.RateLimitMode;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+import top.kangyaocoding.chatgpt.session.AsyncOpenAiSession;
+import top.kangyaocoding.chatgpt.metrics.StreamMetrics;
+import top.kangyaocoding.chatgpt.session.Configuration;
+import top.kangyaocoding.chatgpt.stream.ChatCompletionFlowable;
+import top.kangyaocoding.chatgpt.stream.ChatCompletionStreamReader;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+import top.kangyaocoding.chatgpt.upload.MultipartUploadBody;
+import top.kangyaocoding.chatgpt.upload.UploadProgressListener;
+import top.kangyaocoding.chatgpt.upload.UploadResult;
+import top.kangyaocoding.chatgpt.upload.UploadSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * @Author K·Herbert
+ * @Description OpenAi异步会话实现类。
+ * 底层的 IOpenAiApi 使用 RxJava2CallAdapterFactory.createAsync() 创建，订阅时通过 OkHttp Call.enqueue 发起请求，
+ * 因此等待响应期间不占用任何调用线程；取消返回的 CompletableFuture 会释放订阅并取消对应的 Call。
+ * @Date 2024-06-03 10:45
+ */
+public class DefaultAsyncOpenAiSession implements AsyncOpenAiSession {
+    /* 配置信息 */
+    private final Configuration configuration;
+    /* OpenAi 异步接口 */
+    private final IOpenAiApi openAiApi;
+    /* 事件源工厂 */
+    private final EventSource.Factory eventSourceFactory;
+    /* 文件内容下载器，使用同步接口在 IO 线程上阻塞读写 */
+    private final FileDownloader fileDownloader;
+    /* 图像生成流水线 */
+    private final ImagePipeline imagePipeline;
+
+    /**
+     * 构造函数，用于初始化DefaultAsyncOpenAiSession对象。
+     *
+     * @param configuration 配置对象，需由工厂设置好基于 enqueue 的异步接口实例。
+     */
+    public DefaultAsyncOpenAiSession(Configuration configuration) {
+        this.configuration = configuration;
+        this.openAiApi = configuration.getAsyncOpenAiApi();
+        this.eventSourceFactory = configuration.createEventSourceFactory();
+        this.fileDownloader = new FileDownloader(configuration.getOpenAiApi());
+        this.imagePipeline = new ImagePipeline(openAiApi, configuration.getOkHttpClient());
+    }
+
+    /**
+     * 异步发起聊天完成（completions）请求。
+     */
+    @Override
+    public CompletableFuture<ChatCompletionResponse> completions(ChatCompletionRequest chatCompletionRequest) {
+        try {
+            OpenAiRequestSupport.preflight(configuration, chatCompletionRequest);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        ChatCompletionCache chatCompletionCache = configuration.getChatCompletionCache();
+        String cacheKey = chatCompletionCache == null ? null : chatCompletionCache.key(HttpUrl.get(configuration.getApiHost()), configuration.getApiKey(), chatCompletionRequest);
+        ChatCompletionResponse cached = cacheKey == null ? null : chatCompletionCache.get(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return rateLimited(chatCompletionRequest, () -> {
+            // 等待配额期间相同的请求可能已写入缓存，命中时不再发送
+            ChatCompletionResponse filled = cacheKey == null ? null : chatCompletionCache.peek(cacheKey);
+            if (filled != null) {
+                return CompletableFuture.completedFuture(filled);
+            }
+            return toFuture(OpenAiRequestSupport.hedgeable(configuration, openAiApi,
+                            IOpenAiApi.V_1_CHAT_COMPLETIONS, chatCompletionRequest, api -> api.chatCompletion(chatCompletionRequest))
+                    .doOnSuccess(response -> {
+                        if (cacheKey != null) {
+                            chatCompletionCache.put(cacheKey, response);
+                        }
+                    }));
+        });
+    }
+
+    /**
+     * 使用默认的API主机和密钥发起流式聊天请求。
+     */
+    @Override
+    public EventSource chatCompletions(ChatCompletionRequest chatCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException {
+        return chatCompletions(Constants.NULL, Constants.NULL, chatCompletionRequest, eventSourceListener);
+    }
+
+    /**
+     * 使用用户指定的API主机和密钥发起流式聊天请求，未指定时使用默认配置。
+     */
+    @Override
+    public EventSource chatCompletions(String apiHostByUser, String apiKeyByUser, ChatCompletionRequest chatCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException {
+        Request request = OpenAiRequestSupport.chatCompletionsRequest(configuration, apiHostByUser, apiKeyByUser, chatCompletionRequest);
+        return eventSourceFactory.newEventSource(request, eventSourceListener);
+    }
+
+    /**
+     * 以支持背压的 Flowable 消费流式问答结果。
+     * 上游最多预取 streamBufferSize 条增量数据，下游无请求量时暂停读取 socket。
+     *
+     * @param chatCompletionRequest 聊天完成请求的详细参数，stream 必须为 true。
+     * @return 返回流式结果的 Flowable。
+     * @throws JsonProcessingException 如果无法处理JSON序列化时抛出。
+     */
+    @Override
+    public Flowable<ChatCompletionResponse> chatCompletionsFlowable(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException {
+        Request request = OpenAiRequestSupport.chatCompletionsRequest(configuration, Constants.NULL, Constants.NULL, chatCompletionRequest);
+        return ChatCompletionFlowable.create(eventSourceFactory, request, configuration.getStreamBufferSize());
+    }
+
+    /**
+     * 以低分配的方式消费流式问答结果。
+     * 使用 ChatCompletionStreamReader 直接扫描响应缓冲区，不经过 OkHttp SSE 的字符串解码。
+     *
+     * @param chatCompletionRequest 聊天完成请求的详细参数，stream 必须为 true。
+     * @param chatDeltaHandler      增量数据回调。
+     * @return 返回对应的 Call。
+     * @throws JsonProcessingException 如果无法处理JSON序列化时抛出。
+     */
+    @Override
+    public Call chatCompletionsDeltas(ChatCompletionRequest chatCompletionRequest, ChatDeltaHandler chatDeltaHandler) throws JsonProcessingException {
+        Request request = OpenAiRequestSupport.chatCompletionsRequest(configuration, Constants.NULL, Constants.NULL, chatCompletionRequest);
+        return ChatCompletionStreamReader.enqueue(configuration.getOkHttpClient(), request, configuration.getMetricsRecorder() == null
+                ? chatDeltaHandler : StreamMetrics.handler(configuration.getMetricsRecorder(), request, chatDeltaHandler));
+    }
+
+    /**
+     * 异步处理文本编辑请求。
+     */
+    @Override
+    public CompletableFuture<EditResponse> edit(EditRequest editRequest) {
+        return toFuture(this.openAiApi.edit(editRequest));
+    }
+
+    /**
+     * 根据提供的提示文本异步生成图像。
+     */
+    @Override
+    public CompletableFuture<ImageResponse> genImage(String prompt) {
+        return this.genImage(ImageRequest.builder().prompt(prompt).build());
+    }
+
+    /**
+     * 根据图像请求异步生成图像。
+     */
+    @Override
+    public CompletableFuture<ImageResponse> genImage(ImageRequest imageRequest) {
+        return toFuture(this.openAiApi.genImage(imageRequest));
+    }
+
+    /**
+     * 异步生成图片并写入目录。
+     */
+    @Override
+    public CompletableFuture<List<ImageAsset>> genImages(ImageRequest imageRequest, Path directory, ImagePipelineOptions options) {
+        return toFuture(imagePipeline.generate(imageRequest, directory, options));
+    }
+
+    /**
+     * 异步生成图片并交给回调。
+     */
+    @Override
+    public CompletableFuture<List<ImageAsset>> genImages(ImageRequest imageRequest, ImageAssetHandler handler, ImagePipelineOptions options) {
+        return toFuture(imagePipeline.generate(imageRequest, handler, options));
+    }
+
+    /**
+     * 异步以 b64_json 生成图片并流式解码到输出。
+     */
+    @Override
+    public CompletableFuture<List<ImageAsset>> genImages(ImageRequest imageRequest, ImageOutput output, ImagePipelineOptions options) {
+        return toFuture(imagePipeline.generate(imageRequest, output, options));
+    }
+
+    /**
+     * 根据提供的图像文件和提示异步编辑图像。
+     */
+    @Override
+    public CompletableFuture<ImageResponse> editImage(File image, String prompt) {
+        ImageEditRequest imageEditRequest = ImageEditRequest.builder().prompt(prompt).build();
+        return this.editImage(image, null, imageEditRequest);
+    }
+
+    /**
+     * 根据提供的图像文件和编辑请求异步编辑图像。
+     */
+    @Override
+    public CompletableFuture<ImageResponse> editImage(File image, ImageEditRequest imageEditRequest) {
+        return this.editImage(image, null, imageEditRequest);
+    }
+
+    /**
+     * 异步编辑图片，可选地应用一个掩码。
+     */
+    @Override
+    public CompletableFuture<ImageResponse> editImage(File image, File mask, ImageEditRequest imageEditRequest) {
+        Map<String, RequestBody> requestBodyMap = OpenAiRequestSupport.imageEditParts(image, mask, imageEditRequest);
+        MultipartBody.Part imageMultipartBody = OpenAiRequestSupport.filePart("image", image);
+        MultipartBody.Part maskMultipartBody = Objects.nonNull(mask) ? OpenAiRequestSupport.filePart("mask", mask) : null;
+        return toFuture(this.openAiApi.editImage(imageMultipartBody, maskMultipartBody, requestBodyMap));
+    }
+
+    /**
+     * 以单个字符串作为输入异步生成嵌入向量。
+     */
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(String input) {
+        List<String> inputList = new ArrayList<>();
+        inputList.add(input);
+        return this.embeddings(EmbeddingRequest.builder().input(inputList).build());
+    }
+
+    /**
+     * 以字符串数组作为输入异步生成嵌入向量。
+     */
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(String... inputs) {
+        return this.embeddings(EmbeddingRequest.builder().input(Arrays.asList(inputs)).build());
+    }
+
+    /**
+     * 以字符串列表作为输入异步生成嵌入向量。
+     */
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(List<String> inputs) {
+        return this.embeddings(EmbeddingRequest.builder().input(inputs).build());
+    }
+
+    /**
+     * 以EmbeddingRequest对象作为输入异步生成嵌入向量。
+     */
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(EmbeddingRequest embeddingRequest) {
+        EmbeddingCache embeddingCache = configuration.getEmbeddingCache();
+        if (embeddingCache == null) {
+            return rateLimited(embeddingRequest, () -> toFuture(OpenAiRequestSupport.hedgeable(configuration, openAiApi,
+                    IOpenAiApi.V_1_EMBEDDINGS, embeddingRequest, api -> api.embeddings(embeddingRequest))));
+        }
+        EmbeddingCache.Lookup lookup = embeddingCache.lookup(embeddingRequest);
+        EmbeddingRequest missRequest = lookup.missRequest();
+        if (missRequest == null) {
+            return CompletableFuture.completedFuture(lookup.merge(null));
+        }
+        return rateLimited(missRequest, () -> toFuture(OpenAiRequestSupport.hedgeable(configuration, openAiApi,
+                IOpenAiApi.V_1_EMBEDDINGS, missRequest, api -> api.embeddings(missRequest)))).thenApply(lookup::merge);
+    }
+
+    /**
+     * 异步获取文件信息。
+     */
+    @Override
+    public CompletableFuture<OpenAiResponse<top.kangyaocoding.chatgpt.domain.files.File>> files() {
+        return toFuture(this.openAiApi.files());
+    }
+
+    /**
+     * 异步上传文件到OpenAI，默认用途为 fine-tune。
+     */
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(File file) {
+        return uploadFile(file, "fine-tune");
+    }
+
+    /**
+     * 异步上传文件到OpenAI，并指定文件用途。
+     */
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(File file, String purpose) {
+        MultipartBody.Part multipartBody = OpenAiRequestSupport.filePart("file", file);
+        RequestBody purposeBody = OpenAiRequestSupport.textPart(purpose);
+        return toFuture(this.openAiApi.uploadFile(multipartBody, purposeBody));
+    }
+
+    /**
+     * 异步流式上传本地文件。
+     */
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(Path path, String purpose) {
+        UploadSource source;
+        try {
+            source = UploadSource.of(path);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return uploadFile(source, purpose, null);
+    }
+
+    /**
+     * 异步流式上传输入流中的内容。
+     */
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(InputStream inputStream, long contentLength, String filename, String purpose) {
+        return uploadFile(UploadSource.of(inputStream, contentLength, filename), purpose, null);
+    }
+
+    /**
+     * 异步流式上传字节通道中的内容。
+     */
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(ReadableByteChannel channel, long contentLength, String filename, String purpose) {
+        return uploadFile(UploadSource.of(channel, contentLength, filename), purpose, null);
+    }
+
+    /**
+     * 异步流式上传文件并回调上传进度。
+     */
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(UploadSource source, String purpose, UploadProgressListener listener) {
+        return toFuture(this.openAiApi.uploadFile(OpenAiRequestSupport.uploadFileBody(source, purpose, listener)));
+    }
+
+    /**
+     * 以有界并发异步批量上传文件。
+     */
+    @Override
+    public CompletableFuture<List<UploadResult>> uploadFiles(List<UploadSource> sources, String purpose, int concurrency, UploadProgressListener listener) {
+        return toFuture(OpenAiRequestSupport.uploadFiles(this.openAiApi, sources, purpose, concurrency, listener));
+    }
+
+    /**
+     * 异步删除指定的文件。
+     */
+    @Override
+    public CompletableFuture<DeleteFileResponse> deleteFile(String fileId) {
+        return toFuture(this.openAiApi.deleteFile(fileId));
+    }
+
+    /**
+     * 异步获取单个文件的信息。
+     */
+    @Override
+    public CompletableFuture<top.kangyaocoding.chatgpt.domain.files.File> retrieveFile(String fileId) {
+        return toFuture(this.openAiApi.retrieveFile(fileId));
+    }
+
+    /**
+     * 下载会阻塞读写文件，因此放到 IO 调度器上执行。
+     */
+    @Override
+    public CompletableFuture<Long> downloadFileContent(String fileId, Path target, DownloadOptions options) {
+        return toFuture(Single.fromCallable(() -> fileDownloader.download(fileId, target, options)).subscribeOn(Schedulers.io()));
+    }
+
+    /**
+     * 以背压方式读取文件内容，请求在订阅线程上发起。
+     */
+    @Override
+    public Flowable<ByteBuffer> fileContentFlowable(String fileId) {
+        return fileDownloader.flowable(fileId, MultipartUploadBody.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 异步将语音文件转换为文本转写。
+     */
+    @Override
+    public CompletableFuture<WhisperResponse> speed2TextTranscriptions(File file, TranscriptionsRequest transcriptionsRequest) {
+        MultipartBody.Part multipartBody = OpenAiRequestSupport.filePart("file", file);
+        Map<String, RequestBody> requestBodyMap = OpenAiRequestSupport.transcriptionsParts(transcriptionsRequest);
+        return toFuture(this.openAiApi.speed2TextTranscriptions(multipartBody, requestBodyMap));
+    }
+
+    /**
+     * 异步将语音文件翻译为英文文本。
+     */
+    @Override
+    public CompletableFuture<WhisperResponse> speed2TextTranslations(File file, TranslationsRequest translationsRequest) {
+        MultipartBody.Part multipartBody = OpenAiRequestSupport.filePart("file", file);
+        Map<String, RequestBody> requestBodyMap = OpenAiRequestSupport.translationsParts(translationsRequest);
+        return toFuture(this.openAiApi.speed2TextTranslations(multipartBody, requestBodyMap));
+    }
+
+    /**
+     * 异步分段并行转写长音频。
+     */
+    @Override
+    public CompletableFuture<WhisperResponse> speed2TextTranscriptions(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options) {
+        return toFuture(OpenAiRequestSupport.stitch(speed2TextTranscriptionsStream(audio, transcriptionsRequest, options), audio));
+    }
+
+    /**
+     * 分段并行转写长音频，按片段顺序输出。
+     */
+    @Override
+    public Flowable<SegmentTranscription> speed2TextTranscriptionsStream(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options) {
+        return OpenAiRequestSupport.transcribeLongAudio(this.openAiApi, audio, transcriptionsRequest, options);
+    }
+
+    /**
+     * 异步分段并行翻译长音频。
+     */
+    @Override
+    public CompletableFuture<WhisperResponse> speed2TextTranslations(PcmAudio audio, TranslationsRequest translationsRequest, LongAudioOptions options) {
+        return toFuture(OpenAiRequestSupport.stitch(OpenAiRequestSupport.translateLongAudio(this.openAiApi, audio, translationsRequest, options), audio));
+    }
+
+    /**
+     * 异步查询当前订阅信息。
+     */
+    @Override
+    public CompletableFuture<Subscription> subscription() {
+        return toFuture(this.openAiApi.subscription());
+    }
+
+    /**
+     * 异步查询指定时间范围内的账单使用情况。
+     */
+    @Override
+    public CompletableFuture<BillingUsage> billingUsage(@NotNull LocalDate starDate, @NotNull LocalDate endDate) {
+        return toFuture(this.openAiApi.billingUsage(starDate, endDate));
+    }
+
+    /**
+     * 限流器为 ASYNC 方式时，通过定时器等待配额后再发送，许可由拦截器在发送时领取；其它情况直接发送。
+     * 取消返回的 future 会同时取消已发出的请求；等待配额期间或请求发出前取消时，退还预留的配额。
+     * 请求结束时许可仍未被领取（例如未实际发出请求）同样退还。
+     *
+     * @param request 即将发送的请求对象。
+     * @param call    发送请求的函数。
+     * @return 返回请求结果。
+     */
+    private <T> CompletableFuture<T> rateLimited(Object request, Supplier<CompletableFuture<T>> call) {
+        RateLimiter rateLimiter = configuration.getRateLimiter();
+        if (rateLimiter == null || rateLimiter.getOptions().getMode() != RateLimitMode.ASYNC) {
+            return call.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        rateLimiter.reserveFor(configuration.getApiKey(), request).whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                // 等待配额期间已取消
+                OpenAiRequestSupport.releaseReserved(rateLimiter, request);
+                return;
+            }
+            CompletableFuture<T> future = call.get();
+            future.whenComplete((value, throwable) -> {
+                // 命中缓存、加入他人在途请求等情况不会经过拦截器，许可在这里退还
+                OpenAiRequestSupport.releaseReserved(rateLimiter, request);
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, throwable) -> {
+                if (result.isCancelled()) {
+                    future.cancel(false);
+                    // 请求尚未到达拦截器时许可仍未被领取
+                    OpenAiRequestSupport.releaseReserved(rateLimiter, request);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * 将 Single 转换为 CompletableFuture。
+     * 订阅即调用 Call.enqueue 发起请求，结果在 OkHttp 分发线程上回填到 Future；
+     * Future 被取消时释放订阅，RxJava 适配器会随之取消底层 Call。
+     *
+     * @param single 基于 enqueue 的异步请求。
+     * @param <T>    响应类型。
+     * @return 返回与底层 Call 生命周期绑定的 CompletableFuture。
+     */
+    static <T> CompletableFuture<T> toFuture(Single<T> single) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Disposable disposable = single.subscribe(future::complete, future::completeExceptionally);
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                disposable.dispose();
+            }
+        });
+        return future;
+    }
+}
@@ -1,11 +1,10 @@
 package top.kangyaocoding.chatgpt.session.defaults;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.ContentType;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.Flowable;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.MediaType;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
 import okhttp3.MultipartBody;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -13,7 +12,12 @@ import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
 import org.jetbrains.annotations.NotNull;
 import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.cache.ChatCompletionCache;
+import top.kangyaocoding.chatgpt.cache.EmbeddingCache;
 import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.audio.LongAudioOptions;
+import top.kangyaocoding.chatgpt.audio.PcmAudio;
+import top.kangyaocoding.chatgpt.audio.SegmentTranscription;
 import top.kangyaocoding.chatgpt.domain.billing.BillingUsage;
 import top.kangyaocoding.chatgpt.domain.billing.Subscription;
 import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
@@ -31,10 +35,31 @@ import top.kangyaocoding.chatgpt.domain.images.ImageResponse;
 import top.kangyaocoding.chatgpt.domain.whisper.TranscriptionsRequest;
 import top.kangyaocoding.chatgpt.domain.whisper.TranslationsRequest;
 import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+import top.kangyaocoding.chatgpt.image.ImageAsset;
+import top.kangyaocoding.chatgpt.image.ImageAssetHandler;
+import top.kangyaocoding.chatgpt.image.ImageOutput;
+import top.kangyaocoding.chatgpt.image.ImagePipeline;
+import top.kangyaocoding.chatgpt.image.ImagePipelineOptions;
+import top.kangyaocoding.chatgpt.download.DownloadOptions;
+import top.kangyaocoding.chatgpt.download.FileDownloader;
+import top.kangyaocoding.chatgpt.metrics.StreamMetrics;
 import top.kangyaocoding.chatgpt.session.Configuration;
 import top.kangyaocoding.chatgpt.session.OpenAiSession;
+import top.kangyaocoding.chatgpt.stream.ChatChoiceIterator;
+import top.kangyaocoding.chatgpt.stream.ChatCompletionFlowable;
+import top.kangyaocoding.chatgpt.stream.ChatCompletionStreamReader;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+import top.kangyaocoding.chatgpt.upload.MultipartUploadBody;
+import top.kangyaocoding.chatgpt.upload.UploadProgressListener;
+import top.kangyaocoding.chatgpt.upload.UploadResult;
+import top.kangyaocoding.chatgpt.upload.UploadSource;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
 
@@ -52,6 +77,10 @@ public class DefaultOpenAiSession implements OpenAiSession {
     private final IOpenAiApi openAiApi;
     /* 事件源工厂 */
     private final EventSource.Factory eventSourceFactory;
+    /* 文件内容下载器 */
+    private final FileDownloader fileDownloader;
+    /* 图像生成流水线，使用异步接口并发生成与下载 */
+    private final ImagePipeline imagePipeline;
 
     /**
      * 构造函数，用于初始化DefaultOpenAiSession对象。
@@ -62,6 +91,8 @@ public class DefaultOpenAiSession implements OpenAiSession {
         this.configuration = configuration;
         this.openAiApi = configuration.getOpenAiApi();
         this.eventSourceFactory = configuration.createEventSourceFactory();
+        this.fileDownloader = new FileDownloader(openAiApi);
+        this.imagePipeline = new ImagePipeline(configuration.getAsyncOpenAiApi(), configuration.getOkHttpClient());
     }
 
     /**
@@ -73,7 +104,20 @@ public class DefaultOpenAiSession implements OpenAiSession {
     @Override
     public ChatCompletionResponse completions(ChatCompletionRequest chatCompletionRequest) {
         // 执行聊天完成的API调用，并阻塞直到获取到响应结果。
-        return this.openAiApi.chatCompletion(chatCompletionRequest).blockingGet();
+        OpenAiRequestSupport.preflight(configuration, chatCompletionRequest);
+        // 配置了响应缓存时先按规范化请求哈希查找
+        ChatCompletionCache chatCompletionCache = configuration.getChatCompletionCache();
+        String cacheKey = chatCompletionCache == null ? null : chatCompletionCache.key(HttpUrl.get(configuration.getApiHost()), configuration.getApiKey(), chatCompletionRequest);
+        ChatCompletionResponse cached = cacheKey == null ? null : chatCompletionCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        ChatCompletionResponse chatCompletionResponse = OpenAiRequestSupport.hedgeable(configuration, openAiApi, IOpenAiApi.V_1_CHAT_COMPLETIONS,
+                chatCompletionRequest, api -> api.chatCompletion(chatCompletionRequest)).blockingGet();
+        if (cacheKey != null) {
+            chatCompletionCache.put(cacheKey, chatCompletionResponse);
+        }
+        return chatCompletionResponse;
     }
 
     /**
@@ -103,26 +147,57 @@ public class DefaultOpenAiSession implements OpenAiSession {
      */
     @Override
     public EventSource chatCompletions(String apiHostByUser, String apiKeyByUser, ChatCompletionRequest chatCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException {
-        // 核心参数校验，特别检查stream参数必须为true
-        if (!chatCompletionRequest.isStream()) {
-            throw new RuntimeException("Illegal parameter stream is false.");
-        }
-
-        // 获取用户自定义的API主机和API密钥，如果未指定，则使用默认值
-        String apiHost = (Constants.NULL.equals(apiHostByUser) || apiHostByUser.isEmpty()) ? configuration.getApiHost() : apiHostByUser;
-        String apiKey = (Constants.NULL.equals(apiKeyByUser) || apiKeyByUser.isEmpty()) ? configuration.getApiKey() : apiKeyByUser;
-
         // 构建请求URL和请求体，准备调用OpenAI API。
-        Request request = new Request.Builder()
-                .url(apiHost.concat(IOpenAiApi.V_1_CHAT_COMPLETIONS))
-                .addHeader("apiKey", apiKey)
-                .post(RequestBody.create(MediaType.parse(ContentType.JSON.getValue()), new ObjectMapper().writeValueAsString(chatCompletionRequest)))
-                .build();
+        Request request = OpenAiRequestSupport.chatCompletionsRequest(configuration, apiHostByUser, apiKeyByUser, chatCompletionRequest);
 
         // 根据构建的请求创建并返回一个事件源实例。
         return eventSourceFactory.newEventSource(request, eventSourceListener);
     }
 
+    /**
+     * 以支持背压的 Flowable 消费流式问答结果。
+     * 上游最多预取 streamBufferSize 条增量数据，下游无请求量时暂停读取 socket。
+     *
+     * @param chatCompletionRequest 聊天完成请求的详细参数，stream 必须为 true。
+     * @return 返回流式结果的 Flowable。
+     * @throws JsonProcessingException 如果无法处理JSON序列化时抛出。
+     */
+    @Override
+    public Flowable<ChatCompletionResponse> chatCompletionsFlowable(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException {
+        Request request = OpenAiRequestSupport.chatCompletionsRequest(configuration, Constants.NULL, Constants.NULL, chatCompletionRequest);
+        return ChatCompletionFlowable.create(eventSourceFactory, request, configuration.getStreamBufferSize());
+    }
+
+    /**
+     * 以低分配的方式消费流式问答结果。
+     * 使用 ChatCompletionStreamReader 直接扫描响应缓冲区，不经过 OkHttp SSE 的字符串解码。
+     *
+     * @param chatCompletionRequest 聊天完成请求的详细参数，stream 必须为 true。
+     * @param chatDeltaHandler      增量数据回调。
+     * @return 返回对应的 Call。
+     * @throws JsonProcessingException 如果无法处理JSON序列化时抛出。
+     */
+    @Override
+    public Call chatCompletionsDeltas(ChatCompletionRequest chatCompletionRequest, ChatDeltaHandler chatDeltaHandler) throws JsonProcessingException {
+        Request request = OpenAiRequestSupport.chatCompletionsRequest(configuration, Constants.NULL, Constants.NULL, chatCompletionRequest);
+        return ChatCompletionStreamReader.enqueue(configuration.getOkHttpClient(), request, configuration.getMetricsRecorder() == null
+                ? chatDeltaHandler : StreamMetrics.handler(configuration.getMetricsRecorder(), request, chatDeltaHandler));
+    }
+
+    /**
+     * 以阻塞迭代器的方式消费流式问答结果。
+     * 迭代器内部使用有界队列，消费较慢时暂停读取 socket，等待基于 ReentrantLock，不会固定虚拟线程的载体线程。
+     *
+     * @param chatCompletionRequest 聊天完成请求的详细参数，stream 必须为 true。
+     * @return 返回流式结果的迭代器。
+     * @throws JsonProcessingException 如果无法处理JSON序列化时抛出。
+     */
+    @Override
+    public ChatChoiceIterator chatCompletionsIterator(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException {
+        Request request = OpenAiRequestSupport.chatCompletionsRequest(configuration, Constants.NULL, Constants.NULL, chatCompletionRequest);
+        return ChatChoiceIterator.open(eventSourceFactory, request, configuration.getStreamBufferSize());
+    }
+
 
     /**
      * 对给定的编辑请求进行处理。
@@ -157,6 +232,30 @@ public class DefaultOpenAiSession implements OpenAiSession {
         return this.openAiApi.genImage(imageRequest).blockingGet();
     }
 
+    /**
+     * 生成图片并写入目录，阻塞直到全部图片写入磁盘。
+     */
+    @Override
+    public List<ImageAsset> genImages(ImageRequest imageRequest, Path directory, ImagePipelineOptions options) {
+        return imagePipeline.generate(imageRequest, directory, options).blockingGet();
+    }
+
+    /**
+     * 生成图片并交给回调，阻塞直到全部回调返回。
+     */
+    @Override
+    public List<ImageAsset> genImages(ImageRequest imageRequest, ImageAssetHandler handler, ImagePipelineOptions options) {
+        return imagePipeline.generate(imageRequest, handler, options).blockingGet();
+    }
+
+    /**
+     * 以 b64_json 生成图片并流式解码到输出，阻塞直到全部写入。
+     */
+    @Override
+    public List<ImageAsset> genImages(ImageRequest imageRequest, ImageOutput output, ImagePipelineOptions options) {
+        return imagePipeline.generate(imageRequest, output, options).blockingGet();
+    }
+
     /**
      * 根据提供的图像文件和提示编辑图像。
      *
@@ -194,80 +293,15 @@ public class DefaultOpenAiSession implements OpenAiSession {
      */
     @Override
     public ImageResponse editImage(File image, File mask, ImageEditRequest imageEditRequest) {
-        // 检查原始图像的合法性：存在性、格式和大小
-        checkImage(image);
-        checkImageFormat(image);
-        checkImageSize(image);
-        // 如果提供了掩码，同样检查掩码的格式和大小
-        if (Objects.nonNull(mask)) {
-            checkImageFormat(mask);
-            checkImageSize(mask);
-        }
-        // 创建multipart/form-data类型的图像请求体
-        RequestBody imageBody = RequestBody.create(MediaType.parse("multipart/form-data"), image);
-        MultipartBody.Part imageMultipartBody = MultipartBody.Part.createFormData("image", image.getName(), imageBody);
-        // 如果存在掩码，创建multipart/form-data类型的掩码请求体
-        MultipartBody.Part maskMultipartBody = null;
-        if (Objects.nonNull(mask)) {
-            RequestBody maskBody = RequestBody.create(MediaType.parse("multipart/form-data"), mask);
-            maskMultipartBody = MultipartBody.Part.createFormData("mask", mask.getName(), maskBody);
-        }
-        // 准备请求的参数体，包括编辑的提示文本、数量、大小、响应格式和可选的用户ID
-        Map<String, RequestBody> requestBodyMap = new HashMap<>();
-        requestBodyMap.put("prompt", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getPrompt()));
-        requestBodyMap.put("n", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getN().toString()));
-        requestBodyMap.put("size", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getSize()));
-        requestBodyMap.put("response_format", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getResponseFormat()));
-        // 如果用户ID非空，添加到请求体中
-        if (!(Objects.isNull(imageEditRequest.getUser()) || imageEditRequest.getUser().isEmpty())) {
-            requestBodyMap.put("user", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getUser()));
-        }
+        // 校验图片并准备请求的参数体，包括编辑的提示文本、数量、大小、响应格式和可选的用户ID
+        Map<String, RequestBody> requestBodyMap = OpenAiRequestSupport.imageEditParts(image, mask, imageEditRequest);
+        // 创建multipart/form-data类型的图像请求体，如果存在掩码，同样创建掩码请求体
+        MultipartBody.Part imageMultipartBody = OpenAiRequestSupport.filePart("image", image);
+        MultipartBody.Part maskMultipartBody = Objects.nonNull(mask) ? OpenAiRequestSupport.filePart("mask", mask) : null;
         // 发起编辑图像的API请求，并阻塞直到获取响应
         return this.openAiApi.editImage(imageMultipartBody, maskMultipartBody, requestBodyMap).blockingGet();
     }
 
-    /**
-     * 校验图片不能为空的方法。
-     * 对传入的图片文件进行非空校验，如果图片为空，则记录错误日志并抛出NullPointerException。
-     *
-     * @param image 需要校验的图片文件
-     */
-    private void checkImage(File image) {
-        if (Objects.isNull(image)) {
-            log.error("image不能为空");
-            throw new NullPointerException("image不能为空");
-        }
-    }
-
-    /**
-     * 校验图片格式的方法。
-     * 对传入的图片文件进行格式校验，只支持PNG格式的图片，如果不满足则记录错误日志并抛出IllegalArgumentException。
-     *
-     * @param image 需要校验的图片文件
-     */
-    private void checkImageFormat(File image) {
-        // 校验图片格式是否为PNG
-        if (!(image.getName().endsWith("png") || image.getName().endsWith("PNG"))) {
-            log.error("image格式错误");
-            throw new IllegalArgumentException("image格式错误");
-        }
-    }
-
-    /**
-     * 校验图片大小的方法。
-     * 对传入的图片文件进行大小校验，限制图片大小不得超过4MB，如果超过则记录错误日志并抛出IllegalArgumentException。
-     *
-     * @param image 需要校验的图片文件
-     */
-    private void checkImageSize(File image) {
-        // 校验图片大小是否超过4MB
-        if (image.length() > 4 * 1024 * 1024) {
-            log.error("image最大支持4MB");
-            throw new IllegalArgumentException("image最大支持4MB");
-        }
-    }
-
-
     /**
      * 提供一个字符串作为输入。
      *
@@ -318,18 +352,27 @@ public class DefaultOpenAiSession implements OpenAiSession {
      */
     @Override
     public EmbeddingResponse embeddings(EmbeddingRequest embeddingRequest) {
-        // 直接通过OpenAI API发送嵌入请求，并阻塞直到获取响应
-        return this.openAiApi.embeddings(embeddingRequest).blockingGet();
+        EmbeddingCache embeddingCache = configuration.getEmbeddingCache();
+        if (embeddingCache == null) {
+            // 直接通过OpenAI API发送嵌入请求，并阻塞直到获取响应
+            return OpenAiRequestSupport.hedgeable(configuration, openAiApi, IOpenAiApi.V_1_EMBEDDINGS, embeddingRequest,
+                    api -> api.embeddings(embeddingRequest)).blockingGet();
+        }
+        // 只把未命中缓存的输入发往上游，再按原始顺序合并
+        EmbeddingCache.Lookup lookup = embeddingCache.lookup(embeddingRequest);
+        EmbeddingRequest missRequest = lookup.missRequest();
+        return lookup.merge(missRequest == null ? null : OpenAiRequestSupport.hedgeable(configuration, openAiApi, IOpenAiApi.V_1_EMBEDDINGS, missRequest,
+                api -> api.embeddings(missRequest)).blockingGet());
     }
 
 
     /**
      * 获取文件信息。
      *
-     * @return OpenAiResponse<File> 返回文件信息的响应对象。
+     * @return OpenAiResponse<top.kangyaocoding.chatgpt.domain.files.File> 返回文件信息的响应对象。
      */
     @Override
-    public OpenAiResponse<File> files() {
+    public OpenAiResponse<top.kangyaocoding.chatgpt.domain.files.File> files() {
         return openAiApi.files().blockingGet();
     }
 
@@ -354,16 +397,55 @@ public class DefaultOpenAiSession implements OpenAiSession {
     @Override
     public UploadFileResponse uploadFile(File file, String purpose) {
         // 创建multipart/form-data类型的请求体以上传文件
-        RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
-        MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
+        MultipartBody.Part multipartBody = OpenAiRequestSupport.filePart("file", file);
 
         // 创建用途说明的请求体
-        RequestBody purposeBody = RequestBody.create(MediaType.parse("multipart/form-data"), purpose);
+        RequestBody purposeBody = OpenAiRequestSupport.textPart(purpose);
 
         // 执行文件上传操作
         return this.openAiApi.uploadFile(multipartBody, purposeBody).blockingGet();
     }
 
+    /**
+     * 流式上传本地文件。
+     */
+    @Override
+    public UploadFileResponse uploadFile(Path path, String purpose) throws IOException {
+        return uploadFile(UploadSource.of(path), purpose, null);
+    }
+
+    /**
+     * 流式上传输入流中的内容。
+     */
+    @Override
+    public UploadFileResponse uploadFile(InputStream inputStream, long contentLength, String filename, String purpose) {
+        return uploadFile(UploadSource.of(inputStream, contentLength, filename), purpose, null);
+    }
+
+    /**
+     * 流式上传字节通道中的内容。
+     */
+    @Override
+    public UploadFileResponse uploadFile(ReadableByteChannel channel, long contentLength, String filename, String purpose) {
+        return uploadFile(UploadSource.of(channel, contentLength, filename), purpose, null);
+    }
+
+    /**
+     * 流式上传文件并回调上传进度。
+     */
+    @Override
+    public UploadFileResponse uploadFile(UploadSource source, String purpose, UploadProgressListener listener) {
+        return this.openAiApi.uploadFile(OpenAiRequestSupport.uploadFileBody(source, purpose, listener)).blockingGet();
+    }
+
+    /**
+     * 以有界并发批量上传文件，阻塞直到全部完成。
+     */
+    @Override
+    public List<UploadResult> uploadFiles(List<UploadSource> sources, String purpose, int concurrency, UploadProgressListener listener) {
+        return OpenAiRequestSupport.uploadFiles(configuration.getAsyncOpenAiApi(), sources, purpose, concurrency, listener).blockingGet();
+    }
+
     /**
      * 删除指定的文件。
      *
@@ -375,6 +457,46 @@ public class DefaultOpenAiSession implements OpenAiSession {
         return this.openAiApi.deleteFile(fileId).blockingGet();
     }
 
+    /**
+     * 获取单个文件的信息。
+     */
+    @Override
+    public top.kangyaocoding.chatgpt.domain.files.File retrieveFile(String fileId) {
+        return this.openAiApi.retrieveFile(fileId).blockingGet();
+    }
+
+    /**
+     * 使用默认配置单连接下载文件内容。
+     */
+    @Override
+    public long downloadFileContent(String fileId, Path target) throws IOException {
+        return downloadFileContent(fileId, target, new DownloadOptions());
+    }
+
+    /**
+     * 按配置下载文件内容。
+     */
+    @Override
+    public long downloadFileContent(String fileId, Path target, DownloadOptions options) throws IOException {
+        return fileDownloader.download(fileId, target, options);
+    }
+
+    /**
+     * 打开文件内容的输入流。
+     */
+    @Override
+    public InputStream fileContentStream(String fileId) {
+        return fileDownloader.openStream(fileId);
+    }
+
+    /**
+     * 以背压方式读取文件内容。
+     */
+    @Override
+    public Flowable<ByteBuffer> fileContentFlowable(String fileId) {
+        return fileDownloader.flowable(fileId, MultipartUploadBody.DEFAULT_BUFFER_SIZE);
+    }
+
 
     /**
      * 将语音文件转换为文本转写。
@@ -386,25 +508,10 @@ public class DefaultOpenAiSession implements OpenAiSession {
     @Override
     public WhisperResponse speed2TextTranscriptions(File file, TranscriptionsRequest transcriptionsRequest) {
         // 1. 文件封装为MultipartBody.Part 类型，用于上传
-        RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
-        MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
-
-        // 2. 参数封装
-        Map<String, RequestBody> requestBodyMap = new HashMap<>();
-        // 将请求中的可选参数（如语言、模型、提示语、响应格式和温度）封装到requestBodyMap中
-        if (StrUtil.isNotBlank(transcriptionsRequest.getLanguage())) {
-            requestBodyMap.put(TranscriptionsRequest.Fields.language, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getLanguage()));
-        }
-        if (StrUtil.isNotBlank(transcriptionsRequest.getModel())) {
-            requestBodyMap.put(TranscriptionsRequest.Fields.model, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getModel()));
-        }
-        if (StrUtil.isNotBlank(transcriptionsRequest.getPrompt())) {
-            requestBodyMap.put(TranscriptionsRequest.Fields.prompt, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getPrompt()));
-        }
-        if (StrUtil.isNotBlank(transcriptionsRequest.getResponseFormat())) {
-            requestBodyMap.put(TranscriptionsRequest.Fields.responseFormat, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getResponseFormat()));
-        }
-        requestBodyMap.put(TranscriptionsRequest.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(transcriptionsRequest.getTemperature())));
+        MultipartBody.Part multipartBody = OpenAiRequestSupport.filePart("file", file);
+
+        // 2. 参数封装，将请求中的可选参数（如语言、模型、提示语、响应格式和温度）封装到requestBodyMap中
+        Map<String, RequestBody> requestBodyMap = OpenAiRequestSupport.transcriptionsParts(transcriptionsRequest);
 
         // 调用API进行语音转写，并阻塞当前线程直到转写完成
         return this.openAiApi.speed2TextTranscriptions(multipartBody, requestBodyMap).blockingGet();
@@ -420,26 +527,37 @@ public class DefaultOpenAiSession implements OpenAiSession {
     @Override
     public WhisperResponse speed2TextTranslations(File file, TranslationsRequest translationsRequest) {
         // 1. 上传语音文件
-        RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
-        MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
-
-        // 2. 封装请求参数
-        Map<String, RequestBody> requestBodyMap = new HashMap<>();
-        // 根据请求封装模型、提示语、响应格式和温度参数
-        if (StrUtil.isNotBlank(translationsRequest.getModel())) {
-            requestBodyMap.put(TranslationsRequest.Fields.model, RequestBody.create(MediaType.parse("multipart/form-data"), translationsRequest.getModel()));
-        }
-        if (StrUtil.isNotBlank(translationsRequest.getPrompt())) {
-            requestBodyMap.put(TranslationsRequest.Fields.prompt, RequestBody.create(MediaType.parse("multipart/form-data"), translationsRequest.getPrompt()));
-        }
-        if (StrUtil.isNotBlank(translationsRequest.getResponseFormat())) {
-            requestBodyMap.put(TranslationsRequest.Fields.responseFormat, RequestBody.create(MediaType.parse("multipart/form-data"), translationsRequest.getResponseFormat()));
-        }
-        requestBodyMap.put(TranslationsRequest.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(translationsRequest.getTemperature())));
-        requestBodyMap.put(TranscriptionsRequest.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(translationsRequest.getTemperature())));
+        MultipartBody.Part multipartBody = OpenAiRequestSupport.filePart("file", file);
+
+        // 2. 封装请求参数，根据请求封装模型、提示语、响应格式和温度参数
+        Map<String, RequestBody> requestBodyMap = OpenAiRequestSupport.translationsParts(translationsRequest);
 
         // 发起翻译请求并获取结果
-        return this.openAiApi.speed2TextTranscriptions(multipartBody, requestBodyMap).blockingGet();
+        return this.openAiApi.speed2TextTranslations(multipartBody, requestBodyMap).blockingGet();
+    }
+
+    /**
+     * 长音频分段并行转写，阻塞直到全部片段完成。
+     */
+    @Override
+    public WhisperResponse speed2TextTranscriptions(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options) {
+        return OpenAiRequestSupport.stitch(speed2TextTranscriptionsStream(audio, transcriptionsRequest, options), audio).blockingGet();
+    }
+
+    /**
+     * 长音频分段并行转写，片段请求使用基于 enqueue 的异步接口，不为每个在途片段占用线程。
+     */
+    @Override
+    public Flowable<SegmentTranscription> speed2TextTranscriptionsStream(PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options) {
+        return OpenAiRequestSupport.transcribeLongAudio(configuration.getAsyncOpenAiApi(), audio, transcriptionsRequest, options);
+    }
+
+    /**
+     * 长音频分段并行翻译，阻塞直到全部片段完成。
+     */
+    @Override
+    public WhisperResponse speed2TextTranslations(PcmAudio audio, TranslationsRequest translationsRequest, LongAudioOptions options) {
+        return OpenAiRequestSupport.stitch(OpenAiRequestSupport.translateLongAudio(configuration.getAsyncOpenAiApi(), audio, translationsRequest, options), audio).blockingGet();
     }
 
     /**
@@ -1,38 +1,75 @@
 package top.kangyaocoding.chatgpt.session.defaults;
 
+import io.reactivex.schedulers.Schedulers;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
+import retrofit2.CallAdapter;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
-import retrofit2.converter.jackson.JacksonConverterFactory;
 import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.common.NoDelaySocketFactory;
+import top.kangyaocoding.chatgpt.common.VirtualThreads;
+import top.kangyaocoding.chatgpt.converter.OpenAiJsonConverterFactory;
+import top.kangyaocoding.chatgpt.interceptor.ApiKeyPoolInterceptor;
+import top.kangyaocoding.chatgpt.interceptor.CircuitBreakerInterceptor;
+import top.kangyaocoding.chatgpt.interceptor.MetricsInterceptor;
 import top.kangyaocoding.chatgpt.interceptor.OpenAiInterceptor;
+import top.kangyaocoding.chatgpt.interceptor.RateLimitInterceptor;
+import top.kangyaocoding.chatgpt.interceptor.RetryInterceptor;
+import top.kangyaocoding.chatgpt.retry.RetryStats;
+import top.kangyaocoding.chatgpt.session.AsyncOpenAiSession;
 import top.kangyaocoding.chatgpt.session.Configuration;
+import top.kangyaocoding.chatgpt.session.ConnectionPoolStats;
 import top.kangyaocoding.chatgpt.session.OpenAiSession;
 import top.kangyaocoding.chatgpt.session.OpenAiSessionFactory;
 
 import java.net.Proxy;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @Author K·Herbert
  * @Description OpenAI 会话工厂类，用于创建 OpenAiSession 实例。
+ * 工厂持有所有会话共享的分发器线程、虚拟线程执行器与连接池，不再使用时需调用 close 释放。
  * @Date 2024-05-22 18:02
  */
 
-public class DefaultOpenAiSessionFactory implements OpenAiSessionFactory {
+@Slf4j
+public class DefaultOpenAiSessionFactory implements OpenAiSessionFactory, AutoCloseable {
 
     private final Configuration configuration; // 应用配置信息
     private final Proxy proxy;  // 代理
+    private final ExecutorService executorService; // 虚拟线程执行器，未启用虚拟线程模式时为 null
+    private final OkHttpClient okHttpClient; // 所有会话共享的网络客户端，持有同一个连接池、分发器和 TLS 会话缓存
+    private final IOpenAiApi openAiApi; // 同步调用的 API 接口实例
+    private final IOpenAiApi asyncOpenAiApi; // 基于 enqueue 的异步 API 接口实例
+    private final RetryInterceptor retryInterceptor; // 重试拦截器，未配置重试策略时为 null
 
     /**
      * 构造函数
+     * 在构造时创建共享的网络客户端核心，之后创建的所有会话都复用其中的连接池和分发器。
      *
      * @param configuration 应用的配置信息，包括 API 密钥、认证令牌和 API 主机地址等。
      */
     public DefaultOpenAiSessionFactory(Configuration configuration, Proxy proxy) {
         this.configuration = configuration;
         this.proxy = proxy;
+        this.executorService = createExecutorService();
+        this.retryInterceptor = configuration.getRetryPolicy() == null ? null : new RetryInterceptor(configuration.getRetryPolicy());
+        this.okHttpClient = createOkHttpClient();
+        // 同步调用适配器在订阅线程上直接执行 Call.execute，虚拟线程模式下在虚拟线程上执行
+        this.openAiApi = createOpenAiApi(okHttpClient, executorService == null
+                ? RxJava2CallAdapterFactory.create()
+                : RxJava2CallAdapterFactory.createWithScheduler(Schedulers.from(executorService)));
+        // 异步调用适配器在订阅时执行 Call.enqueue，释放订阅即取消 Call
+        this.asyncOpenAiApi = createOpenAiApi(okHttpClient, RxJava2CallAdapterFactory.createAsync());
+        // 将共享的网络客户端和 API 接口实例设置到 Configuration 中
+        configuration.setOkHttpClient(okHttpClient);
+        configuration.setOpenAiApi(openAiApi);
+        configuration.setAsyncOpenAiApi(asyncOpenAiApi);
     }
 
     /**
@@ -42,37 +79,137 @@ public class DefaultOpenAiSessionFactory implements OpenAiSessionFactory {
      */
     @Override
     public OpenAiSession openAiSession() {
-        // 配置日志拦截器，用于打印 HTTP 请求的头部信息
+        // 返回一个新的 OpenAiSession 实例，内部封装了共享的 OpenAI API 服务接口实例
+        return new DefaultOpenAiSession(configuration);
+    }
+
+    /**
+     * 创建一个新的 AsyncOpenAiSession 实例。
+     *
+     * @return 返回配置好的 AsyncOpenAiSession 实例，所有请求均通过 Call.enqueue 发起，不阻塞调用线程。
+     */
+    @Override
+    public AsyncOpenAiSession asyncOpenAiSession() {
+        return new DefaultAsyncOpenAiSession(configuration);
+    }
+
+    /**
+     * 获取共享连接池与分发器的统计信息。
+     *
+     * @return 返回当前时刻的统计快照，包括空闲连接、活跃连接和排队请求数。
+     */
+    public ConnectionPoolStats connectionPoolStats() {
+        ConnectionPool connectionPool = okHttpClient.connectionPool();
+        Dispatcher dispatcher = okHttpClient.dispatcher();
+        int connectionCount = connectionPool.connectionCount();
+        int idleConnections = connectionPool.idleConnectionCount();
+        return new ConnectionPoolStats(connectionCount, idleConnections, connectionCount - idleConnections,
+                dispatcher.runningCallsCount(), dispatcher.queuedCallsCount());
+    }
+
+    /**
+     * 获取重试统计信息。
+     *
+     * @return 返回当前时刻的统计快照，未配置重试策略时返回 null。
+     */
+    public RetryStats retryStats() {
+        return retryInterceptor == null ? null : retryInterceptor.stats();
+    }
+
+    /**
+     * 关闭工厂，停止分发器的线程（或虚拟线程执行器）并关闭连接池中的连接。
+     * 已在途的请求继续执行完毕，之后通过该工厂创建的会话发起的请求会被拒绝。
+     */
+    @Override
+    public void close() {
+        okHttpClient.dispatcher().executorService().shutdown();
+        okHttpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * 创建虚拟线程执行器，仅在启用虚拟线程模式且运行时支持时生效。
+     *
+     * @return 返回虚拟线程执行器，未启用或不支持时返回 null。
+     */
+    private ExecutorService createExecutorService() {
+        if (!configuration.isVirtualThreads()) {
+            return null;
+        }
+        if (!VirtualThreads.isSupported()) {
+            log.warn("虚拟线程模式需要 JDK 21 及以上版本，当前版本 {}，回退到平台线程", System.getProperty("java.version"));
+            return null;
+        }
+        return VirtualThreads.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * 创建共享的 OkHttpClient。
+     *
+     * @return 返回配置好的 OkHttpClient 实例。
+     */
+    private OkHttpClient createOkHttpClient() {
+        // 配置日志拦截器，默认打印 HTTP 请求的头部信息
         HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor();
-        httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+        httpLoggingInterceptor.setLevel(configuration.getHttpLoggingLevel());
+
+        // 配置连接池与分发器，OkHttp 默认对同一主机只允许 5 个并发请求
+        ConnectionPool connectionPool = new ConnectionPool(configuration.getMaxIdleConnections(), configuration.getKeepAliveDuration(), TimeUnit.SECONDS);
+        Dispatcher dispatcher = executorService == null ? new Dispatcher() : new Dispatcher(executorService);
+        dispatcher.setMaxRequests(configuration.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(configuration.getMaxRequestsPerHost());
 
         // 配置 OkHttpClient，添加拦截器以注入 API 密钥和认证令牌，以及设置连接、写入和读取的超时时间
-        OkHttpClient okHttpClient = new OkHttpClient
+        OkHttpClient.Builder builder = new OkHttpClient
                 .Builder()
+                .connectionPool(connectionPool) // 共享连接池
+                .dispatcher(dispatcher) // 共享分发器
+                .socketFactory(new NoDelaySocketFactory()) // 关闭 Nagle，避免分块请求体等待延迟确认
                 .addInterceptor(httpLoggingInterceptor) // 日志拦截器
                 .addInterceptor(new OpenAiInterceptor(configuration.getApiKey())) // API 密钥和认证令牌拦截器
                 .connectTimeout(450, TimeUnit.SECONDS) // 连接超时时间
                 .writeTimeout(450, TimeUnit.SECONDS) // 写入超时时间
-                .readTimeout(450, TimeUnit.SECONDS) // 读取超时时间
-                .build();
-        // 将配置好的 OkHttpClient 设置到 Configuration 中
-        configuration.setOkHttpClient(okHttpClient);
-        // 如果代理不为空，则创建新的 OkHttpClient 实例，并设置代理
+                .readTimeout(450, TimeUnit.SECONDS); // 读取超时时间
+        // 如果配置了重试策略，每次重试都重新经过连接池选择与限流
+        if (retryInterceptor != null) {
+            builder.addInterceptor(retryInterceptor);
+        }
+        // 如果配置了多密钥连接池，在认证之后改写主机与密钥
+        if (configuration.getApiKeyPool() != null) {
+            builder.addInterceptor(new ApiKeyPoolInterceptor(configuration.getApiKeyPool(), configuration.getApiHost(), configuration.getApiKey()));
+        }
+        // 如果配置了限流器，在认证之后按最终使用的 API 密钥限流
+        if (configuration.getRateLimiter() != null) {
+            builder.addInterceptor(new RateLimitInterceptor(configuration.getRateLimiter()));
+        }
+        // 如果配置了熔断器，按实际请求的主机熔断；位于限流之后，限流拒绝与排队时间不计入主机的失败率与慢调用率，
+        // 熔断拒绝的请求由限流拦截器退还配额
+        if (configuration.getCircuitBreakerRegistry() != null) {
+            builder.addInterceptor(new CircuitBreakerInterceptor(configuration.getCircuitBreakerRegistry()));
+        }
+        // 如果配置了指标记录器，作为最后一个应用拦截器统计每次实际发出的请求
+        if (configuration.getMetricsRecorder() != null) {
+            builder.addInterceptor(new MetricsInterceptor(configuration.getMetricsRecorder()));
+        }
+        // 如果代理不为空，则设置代理
         if (proxy != null) {
-            okHttpClient = okHttpClient.newBuilder().proxy(proxy).build();
+            builder.proxy(proxy);
         }
+        return builder.build();
+    }
 
-        // 创建 OpenAI API 服务接口的实例，配置 Retrofit 使用 OKHttp 作为网络客户端，并指定响应适配器和转换器
-        IOpenAiApi openAiApi = new Retrofit.Builder()
+    /**
+     * 创建 OpenAI API 服务接口的实例，配置 Retrofit 使用 OKHttp 作为网络客户端，并指定响应适配器和转换器。
+     *
+     * @param okHttpClient       网络客户端。
+     * @param callAdapterFactory RxJava 2 调用适配器，决定请求以同步还是异步方式执行。
+     * @return 返回 OpenAI API 服务接口的实例。
+     */
+    private IOpenAiApi createOpenAiApi(OkHttpClient okHttpClient, CallAdapter.Factory callAdapterFactory) {
+        return new Retrofit.Builder()
                 .baseUrl(configuration.getApiHost()) // API 主机地址
                 .client(okHttpClient) // 使用配置好的 OkHttpClient
-                .addCallAdapterFactory(RxJava2CallAdapterFactory.create()) // 支持 RxJava 2 的调用适配器
-                .addConverterFactory(JacksonConverterFactory.create()) // 使用 Jackson 作为数据转换器
+                .addCallAdapterFactory(callAdapterFactory) // 支持 RxJava 2 的调用适配器
+                .addConverterFactory(OpenAiJsonConverterFactory.create()) // 使用统一配置的 Jackson 转换器，请求体直接写入 sink
                 .build().create(IOpenAiApi.class);
-        // 将配置好的 OpenAI API 服务接口实例设置到 Configuration 中
-        configuration.setOpenAiApi(openAiApi);
-
-        // 返回一个新的 OpenAiSession 实例，内部封装了 OpenAI API 的服务接口实例
-        return new DefaultOpenAiSession(configuration);
     }
 }
@@ -0,0 +1,380 @@
+package top.kangyaocoding.chatgpt.session.defaults;
+
+import cn.hutool.core.util.StrUtil;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.audio.LongAudioOptions;
+import top.kangyaocoding.chatgpt.audio.LongAudioTranscriber;
+import top.kangyaocoding.chatgpt.audio.PcmAudio;
+import top.kangyaocoding.chatgpt.audio.SegmentTranscription;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.images.ImageEditRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.TranscriptionsRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.TranslationsRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperEnum;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+import top.kangyaocoding.chatgpt.flight.SingleFlight;
+import top.kangyaocoding.chatgpt.hedge.Hedger;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+import top.kangyaocoding.chatgpt.session.Configuration;
+import top.kangyaocoding.chatgpt.token.TokenCounter;
+import top.kangyaocoding.chatgpt.upload.MultipartUploadBody;
+import top.kangyaocoding.chatgpt.upload.UploadProgressListener;
+import top.kangyaocoding.chatgpt.upload.UploadResult;
+import top.kangyaocoding.chatgpt.upload.UploadSource;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * @Author K·Herbert
+ * @Description 请求参数封装工具类，供同步与异步会话共用请求参数的构建与校验逻辑。
+ * @Date 2024-06-03 10:12
+ */
+@Slf4j
+final class OpenAiRequestSupport {
+
+    private static final MediaType MULTIPART_FORM_DATA = MediaType.parse("multipart/form-data");
+
+    private OpenAiRequestSupport() {
+    }
+
+    /**
+     * 构建流式聊天请求。
+     * 如果用户没有指定API主机和密钥，将使用默认配置。
+     *
+     * @param configuration         配置信息，提供默认的API主机和密钥。
+     * @param apiHostByUser         用户指定的API主机。
+     * @param apiKeyByUser          用户指定的API密钥。
+     * @param chatCompletionRequest 聊天完成请求的详细参数，stream 必须为 true。
+     * @return 返回可用于创建事件源的请求对象，请求体在发送时直接写入网络缓冲区。
+     */
+    static Request chatCompletionsRequest(Configuration configuration, String apiHostByUser, String apiKeyByUser, ChatCompletionRequest chatCompletionRequest) {
+        // 核心参数校验，特别检查stream参数必须为true
+        if (!chatCompletionRequest.isStream()) {
+            throw new RuntimeException("Illegal parameter stream is false.");
+        }
+        preflight(configuration, chatCompletionRequest);
+
+        // 获取用户自定义的API主机和API密钥，如果未指定，则使用默认值
+        String apiHost = (Constants.NULL.equals(apiHostByUser) || apiHostByUser.isEmpty()) ? configuration.getApiHost() : apiHostByUser;
+        String apiKey = (Constants.NULL.equals(apiKeyByUser) || apiKeyByUser.isEmpty()) ? configuration.getApiKey() : apiKeyByUser;
+
+        return new Request.Builder()
+                .url(apiHost.concat(IOpenAiApi.V_1_CHAT_COMPLETIONS))
+                .addHeader("apiKey", apiKey)
+                .post(OpenAiJson.requestBody(chatCompletionRequest))
+                .build();
+    }
+
+    /**
+     * 发送前的聊天请求检查，开启 clampMaxTokens 时按剩余上下文与模型的最大输出收紧输出上限；
+     * o1 系列模型不接受 max_tokens，未开启时也会把 maxTokens 改写为 maxCompletionTokens。
+     *
+     * @param configuration         配置信息。
+     * @param chatCompletionRequest 聊天完成请求的详细参数。
+     * @return 返回同一个请求对象。
+     */
+    static ChatCompletionRequest preflight(Configuration configuration, ChatCompletionRequest chatCompletionRequest) {
+        if (configuration.isClampMaxTokens()) {
+            TokenCounter.clampMaxTokens(chatCompletionRequest);
+        } else if (chatCompletionRequest.getMaxTokens() != null && TokenCounter.usesMaxCompletionTokens(chatCompletionRequest.getModel())) {
+            TokenCounter.setOutputTokens(chatCompletionRequest, TokenCounter.requestedOutputTokens(chatCompletionRequest));
+        }
+        return chatCompletionRequest;
+    }
+
+    /**
+     * 按配置决定是否以对冲方式执行非流式请求。
+     * 未配置对冲时使用传入的接口直接执行；配置后改用基于 enqueue 的异步接口，使主请求与副本能够并发竞争，
+     * 副本发出前需通过客户端限流的非阻塞预留，不会突破配额。
+     * 配置了在途请求合并时，内容相同的并发请求共享同一次（可能对冲的）执行。
+     * 加入他人在途请求的调用方与发出前被取消的副本不会经过限流拦截器，为其预留的许可在加入时或结束后退还。
+     *
+     * @param configuration 配置信息。
+     * @param openAiApi     未对冲时使用的接口实例。
+     * @param endpoint      接口路径，与模型一起作为延迟统计的分组键。
+     * @param request       请求对象。
+     * @param call          基于接口实例创建请求的函数。
+     * @return 返回请求结果。
+     */
+    static <T> Single<T> hedgeable(Configuration configuration, IOpenAiApi openAiApi, String endpoint, Object request, Function<IOpenAiApi, Single<T>> call) {
+        SingleFlight singleFlight = configuration.getSingleFlight();
+        RateLimiter rateLimiter = configuration.getRateLimiter();
+        Single<T> single = singleFlight == null
+                ? hedged(configuration, openAiApi, endpoint, request, call)
+                : singleFlight.execute(endpoint, request, () -> hedged(configuration, openAiApi, endpoint, request, call),
+                () -> releaseReserved(rateLimiter, request));
+        return rateLimiter == null ? single : single.doFinally(() -> releaseReserved(rateLimiter, request));
+    }
+
+    /**
+     * 退还为请求对象预留、但没有被限流拦截器领取的许可。
+     */
+    static void releaseReserved(RateLimiter rateLimiter, Object request) {
+        if (rateLimiter == null) {
+            return;
+        }
+        RateLimiter.Permit permit = rateLimiter.claim(request);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private static <T> Single<T> hedged(Configuration configuration, IOpenAiApi openAiApi, String endpoint, Object request, Function<IOpenAiApi, Single<T>> call) {
+        Hedger hedger = configuration.getHedger();
+        if (hedger == null) {
+            return call.apply(openAiApi);
+        }
+        IOpenAiApi asyncOpenAiApi = configuration.getAsyncOpenAiApi();
+        RateLimiter rateLimiter = configuration.getRateLimiter();
+        return hedger.hedge(endpoint + ':' + RateLimiter.modelOf(request),
+                () -> call.apply(asyncOpenAiApi),
+                () -> rateLimiter == null || rateLimiter.tryReserveFor(configuration.getApiKey(), request));
+    }
+
+    /**
+     * 将文件封装为 multipart 表单中的文件部分。
+     *
+     * @param name 表单字段名称。
+     * @param file 需要上传的文件。
+     * @return 返回封装好的 MultipartBody.Part 对象。
+     */
+    static MultipartBody.Part filePart(String name, File file) {
+        RequestBody fileBody = RequestBody.create(MULTIPART_FORM_DATA, file);
+        return MultipartBody.Part.createFormData(name, file.getName(), fileBody);
+    }
+
+    /**
+     * 构建流式上传文件的请求体。
+     *
+     * @param source   待上传的内容。
+     * @param purpose  文件用途。
+     * @param listener 进度回调，可以为 null。
+     * @return 返回包含 purpose 与 file 字段的 multipart 请求体。
+     */
+    static RequestBody uploadFileBody(UploadSource source, String purpose, UploadProgressListener listener) {
+        return new MultipartUploadBody("file", source, null, Collections.singletonMap("purpose", purpose), listener);
+    }
+
+    /**
+     * 以有界并发批量上传文件。
+     * 使用基于 enqueue 的异步接口，等待响应期间不占用线程；单个文件失败时记录在对应的结果中，不中断其他上传。
+     *
+     * @param asyncOpenAiApi 异步接口实例。
+     * @param sources        待上传的内容列表。
+     * @param purpose        文件用途。
+     * @param concurrency    最大并发上传数。
+     * @param listener       进度回调，可以为 null。
+     * @return 返回与 sources 顺序一致的上传结果。
+     */
+    static Single<List<UploadResult>> uploadFiles(IOpenAiApi asyncOpenAiApi, List<UploadSource> sources, String purpose, int concurrency, UploadProgressListener listener) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        return Flowable.range(0, sources.size())
+                .flatMapSingle(index -> {
+                    UploadSource source = sources.get(index);
+                    return Single.defer(() -> asyncOpenAiApi.uploadFile(uploadFileBody(source, purpose, listener)))
+                            .map(response -> new UploadResult(index, source.filename(), response, null))
+                            .onErrorReturn(error -> new UploadResult(index, source.filename(), null, error));
+                }, false, concurrency)
+                .toSortedList(Comparator.comparingInt(UploadResult::getIndex));
+    }
+
+    /**
+     * 将字符串封装为 multipart 表单中的文本部分。
+     *
+     * @param value 文本值。
+     * @return 返回封装好的 RequestBody 对象。
+     */
+    static RequestBody textPart(String value) {
+        return RequestBody.create(MULTIPART_FORM_DATA, value);
+    }
+
+    /**
+     * 校验图片并构建图片编辑所需的参数。
+     *
+     * @param image            需要编辑的原始图像文件。
+     * @param mask             应用于原始图像的掩码文件，可以为null。
+     * @param imageEditRequest 包含编辑请求详细信息的对象。
+     * @return 返回包含提示文本、数量、大小、响应格式和可选用户ID的参数体。
+     */
+    static Map<String, RequestBody> imageEditParts(File image, File mask, ImageEditRequest imageEditRequest) {
+        // 检查原始图像的合法性：存在性、格式和大小
+        checkImage(image);
+        checkImageFormat(image);
+        checkImageSize(image);
+        // 如果提供了掩码，同样检查掩码的格式和大小
+        if (Objects.nonNull(mask)) {
+            checkImageFormat(mask);
+            checkImageSize(mask);
+        }
+        Map<String, RequestBody> requestBodyMap = new HashMap<>();
+        requestBodyMap.put("prompt", textPart(imageEditRequest.getPrompt()));
+        requestBodyMap.put("n", textPart(imageEditRequest.getN().toString()));
+        requestBodyMap.put("size", textPart(imageEditRequest.getSize()));
+        requestBodyMap.put("response_format", textPart(imageEditRequest.getResponseFormat()));
+        // 如果用户ID非空，添加到请求体中
+        if (!(Objects.isNull(imageEditRequest.getUser()) || imageEditRequest.getUser().isEmpty())) {
+            requestBodyMap.put("user", textPart(imageEditRequest.getUser()));
+        }
+        return requestBodyMap;
+    }
+
+    /**
+     * 构建语音转写的参数。
+     *
+     * @param transcriptionsRequest 包含转写请求的详细参数，如语言、模型、提示语等。
+     * @return 返回封装好的参数体。
+     */
+    static Map<String, RequestBody> transcriptionsParts(TranscriptionsRequest transcriptionsRequest) {
+        Map<String, RequestBody> requestBodyMap = new HashMap<>();
+        // 将请求中的可选参数（如语言、模型、提示语、响应格式和温度）封装到requestBodyMap中
+        if (StrUtil.isNotBlank(transcriptionsRequest.getLanguage())) {
+            requestBodyMap.put(TranscriptionsRequest.Fields.language, textPart(transcriptionsRequest.getLanguage()));
+        }
+        if (StrUtil.isNotBlank(transcriptionsRequest.getModel())) {
+            requestBodyMap.put(TranscriptionsRequest.Fields.model, textPart(transcriptionsRequest.getModel()));
+        }
+        if (StrUtil.isNotBlank(transcriptionsRequest.getPrompt())) {
+            requestBodyMap.put(TranscriptionsRequest.Fields.prompt, textPart(transcriptionsRequest.getPrompt()));
+        }
+        if (StrUtil.isNotBlank(transcriptionsRequest.getResponseFormat())) {
+            requestBodyMap.put("response_format", textPart(transcriptionsRequest.getResponseFormat()));
+        }
+        requestBodyMap.put(TranscriptionsRequest.Fields.temperature, textPart(String.valueOf(transcriptionsRequest.getTemperature())));
+        return requestBodyMap;
+    }
+
+    /**
+     * 构建语音翻译的参数。
+     *
+     * @param translationsRequest 包含翻译请求的详细参数，如模型、提示语、响应格式和温度等。
+     * @return 返回封装好的参数体。
+     */
+    static Map<String, RequestBody> translationsParts(TranslationsRequest translationsRequest) {
+        Map<String, RequestBody> requestBodyMap = new HashMap<>();
+        // 根据请求封装模型、提示语、响应格式和温度参数
+        if (StrUtil.isNotBlank(translationsRequest.getModel())) {
+            requestBodyMap.put(TranslationsRequest.Fields.model, textPart(translationsRequest.getModel()));
+        }
+        if (StrUtil.isNotBlank(translationsRequest.getPrompt())) {
+            requestBodyMap.put(TranslationsRequest.Fields.prompt, textPart(translationsRequest.getPrompt()));
+        }
+        if (StrUtil.isNotBlank(translationsRequest.getResponseFormat())) {
+            requestBodyMap.put("response_format", textPart(translationsRequest.getResponseFormat()));
+        }
+        requestBodyMap.put(TranslationsRequest.Fields.temperature, textPart(String.valueOf(translationsRequest.getTemperature())));
+        return requestBodyMap;
+    }
+
+    /**
+     * 分段并行转写长音频，各片段以 verbose_json 请求以便换算时间戳，其余参数沿用调用方的请求。
+     *
+     * @param asyncOpenAiApi        异步接口实例，等待响应期间不占用线程。
+     * @param audio                 音频数据。
+     * @param transcriptionsRequest 转写请求参数，prompt 用于第一个片段。
+     * @param options               分段配置。
+     * @return 返回按片段顺序输出的转写结果。
+     */
+    static Flowable<SegmentTranscription> transcribeLongAudio(IOpenAiApi asyncOpenAiApi, PcmAudio audio, TranscriptionsRequest transcriptionsRequest, LongAudioOptions options) {
+        return new LongAudioTranscriber(options).transcribe(audio, transcriptionsRequest.getPrompt(), (file, prompt) -> {
+            TranscriptionsRequest segmentRequest = TranscriptionsRequest.builder()
+                    .model(transcriptionsRequest.getModel())
+                    .language(transcriptionsRequest.getLanguage())
+                    .temperature(transcriptionsRequest.getTemperature())
+                    .responseFormat(WhisperEnum.ResponseFormat.VERBOSE_JSON.getCode())
+                    .prompt(prompt)
+                    .build();
+            return asyncOpenAiApi.speed2TextTranscriptions(file, transcriptionsParts(segmentRequest));
+        });
+    }
+
+    /**
+     * 分段并行翻译长音频，各片段以 verbose_json 请求以便换算时间戳。
+     *
+     * @param asyncOpenAiApi      异步接口实例，等待响应期间不占用线程。
+     * @param audio               音频数据。
+     * @param translationsRequest 翻译请求参数，prompt 用于第一个片段。
+     * @param options             分段配置。
+     * @return 返回按片段顺序输出的翻译结果。
+     */
+    static Flowable<SegmentTranscription> translateLongAudio(IOpenAiApi asyncOpenAiApi, PcmAudio audio, TranslationsRequest translationsRequest, LongAudioOptions options) {
+        return new LongAudioTranscriber(options).transcribe(audio, translationsRequest.getPrompt(), (file, prompt) -> {
+            TranslationsRequest segmentRequest = TranslationsRequest.builder()
+                    .model(translationsRequest.getModel())
+                    .temperature(translationsRequest.getTemperature())
+                    .responseFormat(WhisperEnum.ResponseFormat.VERBOSE_JSON.getCode())
+                    .prompt(prompt)
+                    .build();
+            return asyncOpenAiApi.speed2TextTranslations(file, translationsParts(segmentRequest));
+        });
+    }
+
+    /**
+     * 汇总分段结果为整段音频的响应。
+     *
+     * @param transcriptions 按片段顺序输出的结果。
+     * @param audio          音频数据。
+     * @return 返回拼接后的结果。
+     */
+    static Single<WhisperResponse> stitch(Flowable<SegmentTranscription> transcriptions, PcmAudio audio) {
+        return transcriptions.toList().map(list -> LongAudioTranscriber.stitch(list, audio.durationSeconds()));
+    }
+
+    /**
+     * 校验图片不能为空的方法。
+     * 对传入的图片文件进行非空校验，如果图片为空，则记录错误日志并抛出NullPointerException。
+     *
+     * @param image 需要校验的图片文件
+     */
+    private static void checkImage(File image) {
+        if (Objects.isNull(image)) {
+            log.error("image不能为空");
+            throw new NullPointerException("image不能为空");
+        }
+    }
+
+    /**
+     * 校验图片格式的方法。
+     * 对传入的图片文件进行格式校验，只支持PNG格式的图片，如果不满足则记录错误日志并抛出IllegalArgumentException。
+     *
+     * @param image 需要校验的图片文件
+     */
+    private static void checkImageFormat(File image) {
+        // 校验图片格式是否为PNG
+        if (!(image.getName().endsWith("png") || image.getName().endsWith("PNG"))) {
+            log.error("image格式错误");
+            throw new IllegalArgumentException("image格式错误");
+        }
+    }
+
+    /**
+     * 校验图片大小的方法。
+     * 对传入的图片文件进行大小校验，限制图片大小不得超过4MB，如果超过则记录错误日志并抛出IllegalArgumentException。
+     *
+     * @param image 需要校验的图片文件
+     */
+    private static void checkImageSize(File image) {
+        // 校验图片大小是否超过4MB
+        if (image.length() > 4 * 1024 * 1024) {
+            log.error("image最大支持4MB");
+            throw new IllegalArgumentException("image最大支持4MB");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package top.kangyaocoding.chatgpt.stream;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatChoice;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式聊天结果的阻塞迭代器视图。
+ * 事件源线程将解析后的 ChatChoice 放入有界队列，调用方通过 hasNext/next 阻塞等待；
+ * 队列已满时事件源线程同样阻塞，不再读取 socket，从而把背压传递给服务端。
+ * 队列基于 ReentrantLock 实现，在虚拟线程上等待时不会固定载体线程。
+ * 使用完毕或提前退出时应调用 close 取消事件源。
+ * @Date 2024-06-05 14:30
+ */
+public class ChatChoiceIterator implements Iterator<ChatChoice>, AutoCloseable {
+
+    /* 流结束标记 */
+    private static final Object DONE = new Object();
+    /* 流式响应的结束数据 */
+    private static final String DONE_DATA = "[DONE]";
+    /* 解析增量数据的 JSON 读取器 */
+    private static final ObjectReader READER = OpenAiJson.reader(ChatCompletionResponse.class);
+
+    /* 存放 ChatChoice、异常或结束标记的有界队列 */
+    private final BlockingQueue<Object> queue;
+    /* 对应的事件源 */
+    private volatile EventSource eventSource;
+    /* 是否已关闭 */
+    private volatile boolean closed;
+    /* 是否已写入结束标记或异常，仅由事件源线程访问 */
+    private boolean finished;
+    /* 预读的下一个元素 */
+    private Object next;
+
+    private ChatChoiceIterator(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 创建事件源并返回对应的阻塞迭代器。
+     *
+     * @param eventSourceFactory 事件源工厂。
+     * @param request            流式聊天请求。
+     * @param capacity           缓冲队列容量。
+     * @return 返回已开始接收数据的迭代器。
+     */
+    public static ChatChoiceIterator open(EventSource.Factory eventSourceFactory, Request request, int capacity) {
+        ChatChoiceIterator iterator = new ChatChoiceIterator(capacity);
+        iterator.eventSource = eventSourceFactory.newEventSource(request, iterator.new Listener());
+        return iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed && next == null) {
+            return false;
+        }
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("Interrupted while waiting for chat completion stream", e);
+            }
+        }
+        if (next instanceof Throwable) {
+            Throwable throwable = (Throwable) next;
+            next = DONE;
+            throw throwable instanceof RuntimeException ? (RuntimeException) throwable : new RuntimeException(throwable);
+        }
+        return next != DONE;
+    }
+
+    @Override
+    public ChatChoice next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ChatChoice chatChoice = (ChatChoice) next;
+        next = null;
+        return chatChoice;
+    }
+
+    /**
+     * 取消事件源并释放缓冲区，之后 hasNext 返回 false。
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        EventSource source = this.eventSource;
+        if (source != null) {
+            source.cancel();
+        }
+        queue.clear();
+        queue.offer(DONE);
+    }
+
+    /**
+     * 放入队列，队列已满时阻塞等待，关闭后直接丢弃。
+     *
+     * @param element ChatChoice、异常或结束标记。
+     */
+    private void enqueue(Object element) {
+        if (finished) {
+            return;
+        }
+        finished = element == DONE || element instanceof Throwable;
+        try {
+            while (!closed) {
+                if (queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 事件源监听器，负责解析增量数据并写入队列。
+     */
+    private class Listener extends EventSourceListener {
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            if (DONE_DATA.equals(data)) {
+                enqueue(DONE);
+                return;
+            }
+            try {
+                ChatCompletionResponse response = READER.readValue(data);
+                if (response.getChoices() == null) {
+                    return;
+                }
+                for (ChatChoice chatChoice : response.getChoices()) {
+                    enqueue(chatChoice);
+                }
+            } catch (Exception e) {
+                enqueue(e);
+                eventSource.cancel();
+            }
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            enqueue(DONE);
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            if (closed) {
+                return;
+            }
+            String message = "Chat completion stream failed" + (response != null ? ", http status " + response.code() : "");
+            enqueue(new IllegalStateException(message, t));
+        }
+    }
+}
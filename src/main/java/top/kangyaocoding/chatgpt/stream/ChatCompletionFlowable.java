@@ -0,0 +1,158 @@
+package top.kangyaocoding.chatgpt.stream;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author K·Herbert
+ * @Description 支持背压的流式聊天结果 Flowable。
+ * 增量数据在 SDK 内部解析为 ChatCompletionResponse；下游没有请求量时事件源线程暂停读取 socket，
+ * 上游最多预取 bufferSize 条数据，因此慢消费者不会导致内存中无限堆积增量数据。
+ * 取消订阅即取消对应的 EventSource。
+ * @Date 2024-06-06 10:20
+ */
+public final class ChatCompletionFlowable {
+
+    /* 流式响应的结束数据 */
+    private static final String DONE_DATA = "[DONE]";
+    /* 解析增量数据的 JSON 读取器 */
+    private static final ObjectReader READER = OpenAiJson.reader(ChatCompletionResponse.class);
+
+    private ChatCompletionFlowable() {
+    }
+
+    /**
+     * 创建流式聊天结果的 Flowable，每次订阅都会发起一个新的事件源请求。
+     *
+     * @param eventSourceFactory 事件源工厂。
+     * @param request            流式聊天请求。
+     * @param bufferSize         预取缓冲区大小。
+     * @return 返回支持 request(n) 语义的 Flowable。
+     */
+    public static Flowable<ChatCompletionResponse> create(EventSource.Factory eventSourceFactory, Request request, int bufferSize) {
+        return Flowable.defer(() -> {
+            Demand demand = new Demand();
+            return Flowable.<ChatCompletionResponse>create(emitter -> {
+                EventSource eventSource = eventSourceFactory.newEventSource(request, new Listener(emitter, demand));
+                emitter.setCancellable(() -> {
+                    demand.cancel();
+                    eventSource.cancel();
+                });
+            }, BackpressureStrategy.MISSING).doOnRequest(demand::add);
+        }).rebatchRequests(bufferSize);
+    }
+
+    /**
+     * 下游请求量计数器，事件源线程在请求量为 0 时等待。
+     * 使用 ReentrantLock 而非 synchronized，虚拟线程等待时不会固定载体线程。
+     */
+    private static final class Demand {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        private long requested;
+        private boolean cancelled;
+
+        void add(long n) {
+            lock.lock();
+            try {
+                long sum = requested + n;
+                requested = sum < 0 ? Long.MAX_VALUE : sum;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 等待并消耗一个请求量。
+         *
+         * @return 获得请求量时返回 true，已取消时返回 false。
+         */
+        boolean acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                while (requested == 0 && !cancelled) {
+                    available.await();
+                }
+                if (cancelled) {
+                    return false;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    requested--;
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 事件源监听器，解析增量数据并按下游请求量发射。
+     */
+    private static final class Listener extends EventSourceListener {
+
+        private final FlowableEmitter<ChatCompletionResponse> emitter;
+        private final Demand demand;
+
+        Listener(FlowableEmitter<ChatCompletionResponse> emitter, Demand demand) {
+            this.emitter = emitter;
+            this.demand = demand;
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            if (DONE_DATA.equals(data)) {
+                emitter.onComplete();
+                return;
+            }
+            try {
+                ChatCompletionResponse response = READER.readValue(data);
+                if (demand.acquire()) {
+                    emitter.onNext(response);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                eventSource.cancel();
+            } catch (Exception e) {
+                eventSource.cancel();
+                emitter.tryOnError(e);
+            }
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            emitter.onComplete();
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            String message = "Chat completion stream failed" + (response != null ? ", http status " + response.code() : "");
+            emitter.tryOnError(new IllegalStateException(message, t));
+        }
+    }
+}
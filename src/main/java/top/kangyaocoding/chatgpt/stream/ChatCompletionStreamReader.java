@@ -0,0 +1,281 @@
+package top.kangyaocoding.chatgpt.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import okhttp3.*;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.common.Usage;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * @Author K·Herbert
+ * @Description 面向 v1/chat/completions 的增量 SSE 读取器。
+ * 直接在 okio BufferedSource 的缓冲区上扫描事件边界，把 data 字段的字节复制到一个复用的字节数组，
+ * 再交给整条流共用的 Jackson 非阻塞解析器，只提取 choices[].delta.content、finish_reason 和 usage，
+ * 通过复用的 ChatDelta 回调给调用方。每个数据块不会产生 String 或完整的 ChatCompletionResponse 对象图。
+ * @Date 2024-06-07 10:10
+ */
+public final class ChatCompletionStreamReader {
+
+    /* 统一配置的 JSON 工厂，线程安全 */
+    private static final JsonFactory JSON_FACTORY = OpenAiJson.objectMapper().getFactory();
+    /* SSE data 字段前缀 */
+    private static final ByteString DATA = ByteString.encodeUtf8("data:");
+    /* 流式响应的结束数据 */
+    private static final byte[] DONE = {'[', 'D', 'O', 'N', 'E', ']'};
+
+    private final BufferedSource source;
+    private final ChatDeltaHandler handler;
+    /* 整条流共用的非阻塞解析器，每个数据块作为一个根值依次喂入 */
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    /* 复用的增量视图 */
+    private final ChatDelta delta = new ChatDelta();
+    /* 当前事件 data 字段的字节缓冲区，首字节固定为空格用于分隔相邻的根值 */
+    private byte[] data = new byte[1024];
+    private int dataLength;
+
+    /**
+     * 创建读取器。
+     *
+     * @param source  响应体数据源。
+     * @param handler 增量数据回调。
+     * @throws IOException 创建解析器失败时抛出。
+     */
+    public ChatCompletionStreamReader(BufferedSource source, ChatDeltaHandler handler) throws IOException {
+        this.source = source;
+        this.handler = handler;
+        this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.data[0] = ' ';
+        this.dataLength = 1;
+    }
+
+    /**
+     * 使用指定的客户端发起流式请求，并在网络线程上读取增量数据。
+     *
+     * @param okHttpClient 网络客户端。
+     * @param request      流式聊天请求。
+     * @param handler      增量数据回调。
+     * @return 返回对应的 Call，调用 cancel 即可中断流。
+     */
+    public static Call enqueue(OkHttpClient okHttpClient, Request request, ChatDeltaHandler handler) {
+        Call call = okHttpClient.newCall(request.newBuilder().header("Accept", "text/event-stream").build());
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                handler.onFailure(e);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful() || body == null) {
+                        handler.onFailure(new IllegalStateException("Chat completion stream failed, http status " + response.code()));
+                        return;
+                    }
+                    new ChatCompletionStreamReader(body.source(), handler).read();
+                } catch (Exception e) {
+                    handler.onFailure(e);
+                    return;
+                }
+                handler.onComplete();
+            }
+        });
+        return call;
+    }
+
+    /**
+     * 读取整条流，直到收到 [DONE] 或数据源结束。
+     *
+     * @throws IOException 读取或解析失败时抛出。
+     */
+    public void read() throws IOException {
+        try {
+            Buffer buffer = source.getBuffer();
+            while (true) {
+                long lineEnd = source.indexOf((byte) '\n');
+                long lineLength = lineEnd == -1 ? buffer.size() : lineEnd;
+                if (lineEnd == -1 && lineLength == 0) {
+                    // 数据源结束，派发最后一个未以空行结尾的事件
+                    dispatch();
+                    return;
+                }
+                long contentLength = lineLength;
+                if (contentLength > 0 && buffer.getByte(contentLength - 1) == '\r') {
+                    contentLength--;
+                }
+                if (contentLength == 0) {
+                    // 空行表示一个事件结束
+                    if (dispatch()) {
+                        return;
+                    }
+                    source.skip(lineLength);
+                } else if (source.rangeEquals(0, DATA)) {
+                    long valueLength = contentLength - DATA.size();
+                    source.skip(DATA.size());
+                    if (valueLength > 0 && buffer.getByte(0) == ' ') {
+                        source.skip(1);
+                        valueLength--;
+                    }
+                    appendData((int) valueLength);
+                    source.skip(lineLength - contentLength);
+                } else {
+                    // 忽略 event、id、retry 和注释行
+                    source.skip(lineLength);
+                }
+                if (lineEnd != -1) {
+                    source.skip(1);
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * 将当前行的 data 值追加到字节缓冲区，多行 data 以换行符连接。
+     */
+    private void appendData(int length) throws IOException {
+        int required = dataLength + length + 1;
+        if (data.length < required) {
+            byte[] grown = new byte[Math.max(required, data.length * 2)];
+            System.arraycopy(data, 0, grown, 0, dataLength);
+            data = grown;
+        }
+        if (dataLength > 1) {
+            data[dataLength++] = '\n';
+        }
+        while (length > 0) {
+            int read = source.read(data, dataLength, length);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            dataLength += read;
+            length -= read;
+        }
+    }
+
+    /**
+     * 派发当前事件。
+     *
+     * @return 收到 [DONE] 时返回 true。
+     */
+    private boolean dispatch() throws IOException {
+        if (dataLength == 1) {
+            return false;
+        }
+        try {
+            if (isDone()) {
+                return true;
+            }
+            feeder.feedInput(data, 0, dataLength);
+            parseChunk();
+            return false;
+        } finally {
+            dataLength = 1;
+        }
+    }
+
+    private boolean isDone() {
+        if (dataLength - 1 != DONE.length) {
+            return false;
+        }
+        for (int i = 0; i < DONE.length; i++) {
+            if (data[i + 1] != DONE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseChunk() throws IOException {
+        if (next() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected chat completion chunk object");
+        }
+        while (next() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = next();
+            if ("choices".equals(name) && token == JsonToken.START_ARRAY) {
+                parseChoices();
+            } else if ("usage".equals(name) && token == JsonToken.START_OBJECT) {
+                handler.onUsage(parseUsage());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        // 消费根值之后的空白，使解析器等待下一个数据块
+        if (parser.nextToken() != JsonToken.NOT_AVAILABLE) {
+            throw new JsonParseException(parser, "Unexpected trailing content in chat completion chunk");
+        }
+    }
+
+    private void parseChoices() throws IOException {
+        while (next() == JsonToken.START_OBJECT) {
+            delta.reset();
+            while (next() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = next();
+                if ("index".equals(name)) {
+                    delta.index(parser.getIntValue());
+                } else if ("finish_reason".equals(name)) {
+                    delta.finishReason(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                } else if ("delta".equals(name) && token == JsonToken.START_OBJECT) {
+                    parseDelta();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            handler.onDelta(delta);
+        }
+    }
+
+    private void parseDelta() throws IOException {
+        while (next() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = next();
+            if ("content".equals(name) && token == JsonToken.VALUE_STRING) {
+                delta.content(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            } else if ("role".equals(name) && token == JsonToken.VALUE_STRING) {
+                delta.role(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private Usage parseUsage() throws IOException {
+        Usage usage = new Usage();
+        while (next() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = next();
+            if (token != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+            } else if ("prompt_tokens".equals(name)) {
+                usage.setPromptTokens(parser.getLongValue());
+            } else if ("completion_tokens".equals(name)) {
+                usage.setCompletionTokens(parser.getLongValue());
+            } else if ("total_tokens".equals(name)) {
+                usage.setTotalTokens(parser.getLongValue());
+            }
+        }
+        return usage;
+    }
+
+    private JsonToken next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.NOT_AVAILABLE) {
+            throw new JsonParseException(parser, "Truncated chat completion chunk");
+        }
+        return token;
+    }
+}
@@ -0,0 +1,132 @@
+package top.kangyaocoding.chatgpt.stream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式聊天增量数据的可复用视图。
+ * 同一条流的所有回调复用同一个实例，content 直接指向内部字符缓冲区；
+ * 回调返回后内容会被下一条增量覆盖，需要保留时请调用 content().toString() 复制。
+ * @Date 2024-06-07 09:40
+ */
+public final class ChatDelta {
+
+    /* 选项序号 */
+    private int index;
+    /* 消息角色，仅首条增量携带 */
+    private String role;
+    /* 结束原因，仅末条增量携带 */
+    private String finishReason;
+    /* 增量内容字符缓冲区 */
+    private char[] chars = new char[64];
+    /* 增量内容长度，-1 表示本条增量不包含内容 */
+    private int length = -1;
+    /* 指向内容缓冲区的只读视图 */
+    private final Content content = new Content();
+
+    public int index() {
+        return index;
+    }
+
+    public String role() {
+        return role;
+    }
+
+    public String finishReason() {
+        return finishReason;
+    }
+
+    /**
+     * 判断本条增量是否包含内容。
+     *
+     * @return 包含内容时返回 true。
+     */
+    public boolean hasContent() {
+        return length >= 0;
+    }
+
+    /**
+     * 获取增量内容的只读视图，不产生新的字符串。
+     *
+     * @return 返回指向内部缓冲区的 CharSequence，不包含内容时长度为 0。
+     */
+    public CharSequence content() {
+        return content;
+    }
+
+    /**
+     * 将增量内容追加到指定的 StringBuilder。
+     *
+     * @param builder 目标 StringBuilder。
+     * @return 返回传入的 StringBuilder。
+     */
+    public StringBuilder appendContentTo(StringBuilder builder) {
+        if (length > 0) {
+            builder.append(chars, 0, length);
+        }
+        return builder;
+    }
+
+    void reset() {
+        index = 0;
+        role = null;
+        finishReason = null;
+        length = -1;
+    }
+
+    void index(int index) {
+        this.index = index;
+    }
+
+    void role(String role) {
+        this.role = role;
+    }
+
+    void finishReason(String finishReason) {
+        this.finishReason = finishReason;
+    }
+
+    void content(char[] source, int offset, int len) {
+        if (chars.length < len) {
+            chars = new char[Math.max(len, chars.length * 2)];
+        }
+        System.arraycopy(source, offset, chars, 0, len);
+        length = len;
+    }
+
+    @Override
+    public String toString() {
+        return "ChatDelta(index=" + index + ", role=" + role + ", content=" + content + ", finishReason=" + finishReason + ")";
+    }
+
+    /**
+     * 内容缓冲区的只读视图。
+     */
+    private final class Content implements CharSequence {
+
+        @Override
+        public int length() {
+            return Math.max(length, 0);
+        }
+
+        @Override
+        public char charAt(int i) {
+            if (i < 0 || i >= length()) {
+                throw new IndexOutOfBoundsException(String.valueOf(i));
+            }
+            return chars[i];
+        }
+
+        @NotNull
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return new String(chars, 0, length());
+        }
+    }
+}
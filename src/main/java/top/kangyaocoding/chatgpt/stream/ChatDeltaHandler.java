@@ -0,0 +1,41 @@
+package top.kangyaocoding.chatgpt.stream;
+
+import top.kangyaocoding.chatgpt.domain.common.Usage;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式聊天增量数据的回调接口。
+ * 所有回调都在读取响应的网络线程上执行，传入的 ChatDelta 在回调返回后会被复用。
+ * @Date 2024-06-07 09:50
+ */
+public interface ChatDeltaHandler {
+
+    /**
+     * 收到一个选项的增量数据。
+     *
+     * @param delta 可复用的增量视图，仅在回调期间有效。
+     */
+    void onDelta(ChatDelta delta);
+
+    /**
+     * 收到用量信息，通常随最后一个数据块返回。
+     *
+     * @param usage 本次请求的令牌用量。
+     */
+    default void onUsage(Usage usage) {
+    }
+
+    /**
+     * 流正常结束。
+     */
+    default void onComplete() {
+    }
+
+    /**
+     * 流异常结束，包括 HTTP 错误、解析错误和网络中断。
+     *
+     * @param throwable 异常信息。
+     */
+    default void onFailure(Throwable throwable) {
+    }
+}
@@ -0,0 +1,257 @@
+package top.kangyaocoding.chatgpt.token;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.ModelType;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @Author K·Herbert
+ * @Description 基于 jtokkit 的 token 计数服务。
+ * 编码注册表全局只创建一次并按需加载编码，模型对应的编码与上下文长度按模型名缓存，所有方法线程安全。
+ * 聊天消息按 OpenAI 的计数规则累加每条消息的固定开销，可在发送前按剩余上下文与模型的输出上限收紧 maxTokens。
+ * @Date 2024-06-13 10:20
+ */
+public final class TokenCounter {
+
+    /* 每条消息的固定开销 */
+    private static final int TOKENS_PER_MESSAGE = 3;
+    /* 消息带 name 字段时的额外开销 */
+    private static final int TOKENS_PER_NAME = 1;
+    /* 回复起始标记的开销 */
+    private static final int TOKENS_PER_REPLY = 3;
+
+    /* 全局共享的编码注册表，按需加载编码 */
+    private static final EncodingRegistry REGISTRY = Encodings.newLazyEncodingRegistry();
+    /* ChatCompletionRequest.Model 中各模型的上下文长度 */
+    private static final Map<String, Integer> CONTEXT_LENGTHS = new HashMap<>();
+    /* ChatCompletionRequest.Model 中各模型单次回复的最大输出 token 数 */
+    private static final Map<String, Integer> MAX_OUTPUT_TOKENS = new HashMap<>();
+    /* 未知模型的最大输出 token 数 */
+    private static final int DEFAULT_MAX_OUTPUT_TOKENS = 4_096;
+    /* 按模型名缓存的编码信息 */
+    private static final ConcurrentMap<String, ModelEncoding> MODELS = new ConcurrentHashMap<>();
+
+    static {
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode(), 16_385);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.GPT_3_5_TURBO_16K.getCode(), 16_385);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.GPT_4O_MINI.getCode(), 128_000);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.GPT_4O.getCode(), 128_000);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.GPT_4_TURBO.getCode(), 128_000);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.GPT_4.getCode(), 8_192);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.GPT_4_32K.getCode(), 32_768);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.O1_MINI.getCode(), 128_000);
+        CONTEXT_LENGTHS.put(ChatCompletionRequest.Model.O1.getCode(), 200_000);
+
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode(), 4_096);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.GPT_3_5_TURBO_16K.getCode(), 4_096);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.GPT_4O_MINI.getCode(), 16_384);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.GPT_4O.getCode(), 16_384);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.GPT_4_TURBO.getCode(), 4_096);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.GPT_4.getCode(), 8_192);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.GPT_4_32K.getCode(), 8_192);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.O1_MINI.getCode(), 65_536);
+        MAX_OUTPUT_TOKENS.put(ChatCompletionRequest.Model.O1.getCode(), 100_000);
+    }
+
+    private TokenCounter() {
+    }
+
+    /**
+     * 统计文本的 token 数。
+     *
+     * @param model 模型名称。
+     * @param text  需要统计的文本。
+     * @return 返回 token 数。
+     */
+    public static int countTokens(String model, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return modelEncoding(model).encoding.countTokensOrdinary(text);
+    }
+
+    /**
+     * 统计聊天消息的 token 数，包含每条消息的固定开销与回复起始标记。
+     *
+     * @param model    模型名称。
+     * @param messages 聊天消息列表。
+     * @return 返回提示部分的 token 数。
+     */
+    public static int countMessages(String model, List<Message> messages) {
+        Encoding encoding = modelEncoding(model).encoding;
+        int tokens = TOKENS_PER_REPLY;
+        if (messages == null) {
+            return tokens;
+        }
+        for (Message message : messages) {
+            tokens += TOKENS_PER_MESSAGE;
+            tokens += count(encoding, message.getRole());
+            tokens += count(encoding, message.getContent());
+            if (message.getName() != null) {
+                tokens += count(encoding, message.getName()) + TOKENS_PER_NAME;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 获取模型的上下文长度。
+     *
+     * @param model 模型名称。
+     * @return 返回上下文长度，未知模型返回 0。
+     */
+    public static int contextLength(String model) {
+        return modelEncoding(model).contextLength;
+    }
+
+    /**
+     * 获取模型单次回复的最大输出 token 数。
+     *
+     * @param model 模型名称。
+     * @return 返回最大输出 token 数，未收录的模型按名称前缀推断，无法推断时返回 4096。
+     */
+    public static int maxOutputTokens(String model) {
+        return modelEncoding(model).maxOutputTokens;
+    }
+
+    /**
+     * 判断模型是否以 max_completion_tokens 代替 max_tokens，o1 与 o3 系列模型拒绝 max_tokens。
+     *
+     * @param model 模型名称。
+     * @return 需要使用 max_completion_tokens 时返回 true。
+     */
+    public static boolean usesMaxCompletionTokens(String model) {
+        return model != null && (model.startsWith("o1") || model.startsWith("o3"));
+    }
+
+    /**
+     * 获取请求的输出上限，优先使用 maxCompletionTokens。
+     *
+     * @param chatCompletionRequest 聊天请求。
+     * @return 返回请求设置的输出上限，均未设置时返回 null。
+     */
+    public static Integer requestedOutputTokens(ChatCompletionRequest chatCompletionRequest) {
+        return chatCompletionRequest.getMaxCompletionTokens() != null ? chatCompletionRequest.getMaxCompletionTokens() : chatCompletionRequest.getMaxTokens();
+    }
+
+    /**
+     * 按模型要求的字段设置输出上限：o1 系列写入 maxCompletionTokens 并清空 maxTokens，其它模型写入 maxTokens。
+     *
+     * @param chatCompletionRequest 聊天请求。
+     * @param outputTokens          输出上限，可以为 null。
+     */
+    public static void setOutputTokens(ChatCompletionRequest chatCompletionRequest, Integer outputTokens) {
+        if (usesMaxCompletionTokens(chatCompletionRequest.getModel())) {
+            chatCompletionRequest.setMaxCompletionTokens(outputTokens);
+            chatCompletionRequest.setMaxTokens(null);
+        } else {
+            chatCompletionRequest.setMaxTokens(outputTokens);
+        }
+    }
+
+    /**
+     * 按剩余上下文与模型的最大输出收紧请求的输出上限。
+     * 未设置输出上限时设置为两者中的较小值；提示已超过上下文长度时直接抛出异常，不再发起请求。
+     * o1 系列模型的上限写入 maxCompletionTokens。未知模型的上下文长度无法确定，只改写字段，不调整数值。
+     *
+     * @param chatCompletionRequest 聊天请求。
+     * @return 返回提示部分的 token 数。
+     */
+    public static int clampMaxTokens(ChatCompletionRequest chatCompletionRequest) {
+        String model = chatCompletionRequest.getModel();
+        int promptTokens = countMessages(model, chatCompletionRequest.getMessages());
+        Integer requested = requestedOutputTokens(chatCompletionRequest);
+        int contextLength = contextLength(model);
+        if (contextLength == 0) {
+            setOutputTokens(chatCompletionRequest, requested);
+            return promptTokens;
+        }
+        int remaining = contextLength - promptTokens;
+        if (remaining <= 0) {
+            throw new IllegalArgumentException("Prompt of " + promptTokens + " tokens exceeds the " + contextLength + " token context of model " + model);
+        }
+        int limit = Math.min(remaining, maxOutputTokens(model));
+        setOutputTokens(chatCompletionRequest, requested == null || requested > limit ? limit : requested);
+        return promptTokens;
+    }
+
+    private static int count(Encoding encoding, String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokensOrdinary(text);
+    }
+
+    private static ModelEncoding modelEncoding(String model) {
+        String name = model == null ? ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode() : model;
+        return MODELS.computeIfAbsent(name, TokenCounter::resolve);
+    }
+
+    /**
+     * 解析模型的编码、上下文长度与最大输出，jtokkit 未收录的模型按名称前缀推断编码与最大输出。
+     */
+    private static ModelEncoding resolve(String model) {
+        ModelType modelType = ModelType.fromName(model).orElse(null);
+        EncodingType encodingType;
+        if (modelType != null) {
+            encodingType = modelType.getEncodingType();
+        } else if (model.startsWith("gpt-4o") || model.startsWith("o1") || model.startsWith("o3")) {
+            encodingType = EncodingType.O200K_BASE;
+        } else {
+            encodingType = EncodingType.CL100K_BASE;
+        }
+        Integer contextLength = CONTEXT_LENGTHS.get(model);
+        if (contextLength == null) {
+            contextLength = modelType != null ? modelType.getMaxContextLength() : 0;
+        }
+        Integer maxOutputTokens = MAX_OUTPUT_TOKENS.get(model);
+        if (maxOutputTokens == null) {
+            maxOutputTokens = inferMaxOutputTokens(model);
+        }
+        return new ModelEncoding(REGISTRY.getEncoding(encodingType), contextLength, maxOutputTokens);
+    }
+
+    /**
+     * 按名称前缀推断带日期后缀等未收录模型的最大输出。
+     */
+    private static int inferMaxOutputTokens(String model) {
+        if (model.startsWith("gpt-4o")) {
+            return 16_384;
+        }
+        if (model.startsWith("o1-mini")) {
+            return 65_536;
+        }
+        if (model.startsWith("o1") || model.startsWith("o3")) {
+            return 100_000;
+        }
+        if (model.startsWith("gpt-4-turbo") || model.startsWith("gpt-3.5")) {
+            return 4_096;
+        }
+        if (model.startsWith("gpt-4")) {
+            return 8_192;
+        }
+        return DEFAULT_MAX_OUTPUT_TOKENS;
+    }
+
+    /**
+     * 模型对应的编码、上下文长度与最大输出。
+     */
+    private static final class ModelEncoding {
+        private final Encoding encoding;
+        private final int contextLength;
+        private final int maxOutputTokens;
+
+        private ModelEncoding(Encoding encoding, int contextLength, int maxOutputTokens) {
+            this.encoding = encoding;
+            this.contextLength = contextLength;
+            this.maxOutputTokens = maxOutputTokens;
+        }
+    }
+}
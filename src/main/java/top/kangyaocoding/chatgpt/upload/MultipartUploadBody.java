@@ -0,0 +1,132 @@
+package top.kangyaocoding.chatgpt.upload;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式 multipart/form-data 请求体，包含若干文本字段和一个文件字段。
+ * 文件内容通过固定大小的 ByteBuffer 从 UploadSource 读取并直接写入网络缓冲区，堆内存占用与文件大小无关。
+ * 内容长度已知时给出准确的 Content-Length，否则使用分块传输；数据源不可重复读取时请求体为一次性请求体。
+ * @Date 2024-06-25 09:45
+ */
+public class MultipartUploadBody extends RequestBody {
+
+    /* 默认的读取缓冲区大小 */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+    private static final ByteString CRLF = ByteString.encodeUtf8("\r\n");
+
+    private final UploadSource source;
+    private final UploadProgressListener listener;
+    private final int bufferSize;
+    private final MediaType contentType;
+    /* 文件内容之前的全部字节：文本字段与文件字段头部 */
+    private final ByteString prefix;
+    /* 文件内容之后的结束边界 */
+    private final ByteString suffix;
+
+    /**
+     * 创建请求体。
+     *
+     * @param fileField 文件字段名称，例如 file 或 image。
+     * @param source    文件内容。
+     * @param fileType  文件内容类型，可以为 null，默认为 application/octet-stream。
+     * @param fields    文本字段，按迭代顺序写在文件字段之前。
+     * @param listener  进度回调，可以为 null。
+     */
+    public MultipartUploadBody(String fileField, UploadSource source, @Nullable MediaType fileType,
+                               Map<String, String> fields, @Nullable UploadProgressListener listener) {
+        this(fileField, source, fileType, fields, listener, DEFAULT_BUFFER_SIZE);
+    }
+
+    public MultipartUploadBody(String fileField, UploadSource source, @Nullable MediaType fileType,
+                               Map<String, String> fields, @Nullable UploadProgressListener listener, int bufferSize) {
+        this.source = source;
+        this.listener = listener;
+        this.bufferSize = bufferSize;
+        String boundary = UUID.randomUUID().toString();
+        this.contentType = MediaType.get("multipart/form-data; boundary=" + boundary);
+        ByteString dashBoundary = ByteString.encodeUtf8("--" + boundary);
+        Buffer head = new Buffer();
+        for (Map.Entry<String, String> field : new LinkedHashMap<>(fields).entrySet()) {
+            head.write(dashBoundary).write(CRLF)
+                    .writeUtf8("Content-Disposition: form-data; name=\"").writeUtf8(escape(field.getKey())).writeUtf8("\"").write(CRLF)
+                    .write(CRLF)
+                    .writeUtf8(field.getValue()).write(CRLF);
+        }
+        head.write(dashBoundary).write(CRLF)
+                .writeUtf8("Content-Disposition: form-data; name=\"").writeUtf8(escape(fileField))
+                .writeUtf8("\"; filename=\"").writeUtf8(escape(source.filename())).writeUtf8("\"").write(CRLF)
+                .writeUtf8("Content-Type: ").writeUtf8((fileType == null ? OCTET_STREAM : fileType).toString()).write(CRLF)
+                .write(CRLF);
+        this.prefix = head.readByteString();
+        this.suffix = new Buffer().write(CRLF).write(dashBoundary).writeUtf8("--").write(CRLF).readByteString();
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        long length = source.contentLength();
+        return length < 0 ? -1 : prefix.size() + length + suffix.size();
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return !source.isReplayable();
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        sink.write(prefix);
+        long expected = source.contentLength();
+        long written = 0;
+        try (ReadableByteChannel channel = source.open()) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                written += buffer.remaining();
+                // 超出声明长度时在写出之前失败，多出的字节不会发送
+                if (expected >= 0 && written > expected) {
+                    throw new ProtocolException("Upload source " + source.filename() + " is longer than the declared " + expected + " bytes");
+                }
+                while (buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+                buffer.clear();
+                if (listener != null) {
+                    listener.onProgress(source.filename(), written, expected);
+                }
+            }
+        }
+        if (expected >= 0 && written != expected) {
+            throw new ProtocolException("Upload source " + source.filename() + " ended after " + written + " of " + expected + " bytes");
+        }
+        sink.write(suffix);
+    }
+
+    /**
+     * 与 OkHttp 的 MultipartBody 一致，转义字段名与文件名中的引号和换行。
+     */
+    private static String escape(String value) {
+        return value.replace("\n", "%0A").replace("\r", "%0D").replace("\"", "%22");
+    }
+}
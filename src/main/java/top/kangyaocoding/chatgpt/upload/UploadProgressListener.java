@@ -0,0 +1,19 @@
+package top.kangyaocoding.chatgpt.upload;
+
+/**
+ * @Author K·Herbert
+ * @Description 上传进度回调，在网络线程上调用，实现应尽快返回。
+ * @Date 2024-06-25 09:35
+ */
+@FunctionalInterface
+public interface UploadProgressListener {
+
+    /**
+     * 每写出一个缓冲区的数据后回调一次。
+     *
+     * @param filename      上传的文件名。
+     * @param bytesWritten  已写出的字节数。
+     * @param contentLength 内容长度，未知时为 -1。
+     */
+    void onProgress(String filename, long bytesWritten, long contentLength);
+}
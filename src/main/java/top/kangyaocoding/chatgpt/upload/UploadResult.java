@@ -0,0 +1,30 @@
+package top.kangyaocoding.chatgpt.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import top.kangyaocoding.chatgpt.domain.files.UploadFileResponse;
+
+/**
+ * @Author K·Herbert
+ * @Description 批量上传中单个文件的结果，成功时 response 非空，失败时 error 非空。
+ * @Date 2024-06-25 09:40
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class UploadResult {
+
+    /* 在批量上传列表中的位置 */
+    private final int index;
+    /* 上传的文件名 */
+    private final String filename;
+    /* 上传结果 */
+    private final UploadFileResponse response;
+    /* 失败原因 */
+    private final Throwable error;
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
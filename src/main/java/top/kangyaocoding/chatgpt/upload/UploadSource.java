@@ -0,0 +1,133 @@
+package top.kangyaocoding.chatgpt.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author K·Herbert
+ * @Description 待上传的文件内容。
+ * 基于 Path 的数据源可以重复打开，网络失败后可以重发；基于 InputStream 或 ReadableByteChannel 的数据源只能读取一次，
+ * 对应的请求体为一次性请求体，不会被重试。长度未知时以 -1 表示，请求改用分块传输。
+ * @Date 2024-06-25 09:30
+ */
+public abstract class UploadSource {
+
+    private final String filename;
+    private final long contentLength;
+
+    private UploadSource(String filename, long contentLength) {
+        this.filename = Objects.requireNonNull(filename, "filename");
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * 以本地文件作为数据源，通过 FileChannel 读取。
+     *
+     * @param path 文件路径。
+     * @return 返回可重复读取的数据源。
+     * @throws IOException 读取文件大小失败时抛出。
+     */
+    public static UploadSource of(Path path) throws IOException {
+        return new PathSource(path, path.getFileName().toString(), Files.size(path));
+    }
+
+    /**
+     * 以输入流作为数据源，例如对象存储的下载流。
+     *
+     * @param inputStream   输入流，上传结束后关闭。
+     * @param contentLength 内容长度，未知时传 -1。
+     * @param filename      上传时使用的文件名。
+     * @return 返回只能读取一次的数据源。
+     */
+    public static UploadSource of(InputStream inputStream, long contentLength, String filename) {
+        return of(Channels.newChannel(inputStream), contentLength, filename);
+    }
+
+    /**
+     * 以字节通道作为数据源。
+     *
+     * @param channel       字节通道，上传结束后关闭。
+     * @param contentLength 内容长度，未知时传 -1。
+     * @param filename      上传时使用的文件名。
+     * @return 返回只能读取一次的数据源。
+     */
+    public static UploadSource of(ReadableByteChannel channel, long contentLength, String filename) {
+        return new ChannelSource(channel, filename, contentLength);
+    }
+
+    public String filename() {
+        return filename;
+    }
+
+    /**
+     * @return 返回内容长度，未知时返回 -1。
+     */
+    public long contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return 可以重复打开时返回 true。
+     */
+    public abstract boolean isReplayable();
+
+    /**
+     * 打开数据源，调用方负责关闭返回的通道。
+     *
+     * @return 返回从头开始读取的字节通道。
+     * @throws IOException 打开失败，或一次性数据源被重复打开时抛出。
+     */
+    public abstract ReadableByteChannel open() throws IOException;
+
+    private static final class PathSource extends UploadSource {
+
+        private final Path path;
+
+        private PathSource(Path path, String filename, long contentLength) {
+            super(filename, contentLength);
+            this.path = path;
+        }
+
+        @Override
+        public boolean isReplayable() {
+            return true;
+        }
+
+        @Override
+        public ReadableByteChannel open() throws IOException {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+    }
+
+    private static final class ChannelSource extends UploadSource {
+
+        private final ReadableByteChannel channel;
+        private final AtomicBoolean opened = new AtomicBoolean();
+
+        private ChannelSource(ReadableByteChannel channel, String filename, long contentLength) {
+            super(filename, contentLength);
+            this.channel = Objects.requireNonNull(channel, "channel");
+        }
+
+        @Override
+        public boolean isReplayable() {
+            return false;
+        }
+
+        @Override
+        public ReadableByteChannel open() throws IOException {
+            if (!opened.compareAndSet(false, true)) {
+                throw new IOException("Upload source " + filename() + " can only be read once");
+            }
+            return channel;
+        }
+    }
+}
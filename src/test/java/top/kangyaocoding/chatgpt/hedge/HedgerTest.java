@@ -0,0 +1,189 @@
+package top.kangyaocoding.chatgpt.hedge;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @Author K·Herbert
+ * @Description 对冲执行器测试，覆盖延迟窗口的分位数计算、预算与准入对副本的抑制、败者的取消和被取消主请求的延迟下限。
+ * 放在对冲所在的包中以便直接检查包内可见的延迟窗口。各请求由测试手动完成，等待时间都远大于对冲阈值。
+ * @Date 2024-06-17 11:00
+ */
+public class HedgerTest {
+
+    private static final String KEY = "v1/chat/completions:gpt-4o";
+
+    @Test
+    public void test_percentile() {
+        LatencyWindow window = new LatencyWindow(100);
+        Assert.assertEquals(-1, window.percentile(0.95, 1));
+        for (int i = 1; i <= 100; i++) {
+            window.record(i);
+        }
+        Assert.assertEquals(-1, window.percentile(0.95, 101));
+        Assert.assertEquals(95, window.percentile(0.95, 20));
+        // 缓存的值只对应上一次查询的分位数
+        Assert.assertEquals(50, window.percentile(0.5, 1));
+        Assert.assertEquals(1, window.percentile(0, 1));
+        Assert.assertEquals(100, window.percentile(1, 1));
+        Assert.assertEquals(100, window.percentile(0.999, 1));
+    }
+
+    @Test
+    public void test_windowEvictionAndRecompute() {
+        LatencyWindow window = new LatencyWindow(10);
+        for (int i = 1; i <= 20; i++) {
+            window.record(i);
+        }
+        // 只保留最近 10 个样本 11..20
+        Assert.assertEquals(10, window.size());
+        Assert.assertEquals(20, window.percentile(1, 1));
+        for (int i = 0; i < 15; i++) {
+            window.record(1_000);
+        }
+        Assert.assertEquals(20, window.percentile(1, 1));
+        window.record(1_000);
+        Assert.assertEquals(1_000, window.percentile(1, 1));
+    }
+
+    @Test
+    public void test_primaryWinsWithoutHedge() {
+        Hedger hedger = new Hedger(policy(Duration.ofSeconds(5)).build());
+        Calls calls = new Calls();
+        Single<String> result = hedger.hedge(KEY, calls, () -> true);
+        TestObserver<String> observer = result.test();
+        calls.get(0).onSuccess("primary");
+        observer.assertValue("primary");
+        Assert.assertEquals(1, calls.size());
+        // 主请求完成后被 amb 释放订阅，只记录一个样本
+        Assert.assertEquals(1, hedger.window(KEY).size());
+        Assert.assertEquals(0, hedger.stats().getHedgesFired());
+    }
+
+    @Test
+    public void test_hedgeWinsAndCancelsPrimary() throws Exception {
+        Hedger hedger = new Hedger(policy(Duration.ofMillis(10)).build());
+        Calls calls = new Calls();
+        TestObserver<String> observer = hedger.hedge(KEY, calls, () -> true).test();
+        calls.await(2);
+        Thread.sleep(100);
+        calls.get(1).onSuccess("hedge");
+        observer.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        observer.assertValue("hedge");
+        // 败者被取消，已等待的时间作为下限记入窗口
+        Assert.assertFalse(calls.get(0).hasObservers());
+        Assert.assertEquals(1, hedger.window(KEY).size());
+        Assert.assertTrue(hedger.window(KEY).percentile(1, 1) >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals(1, hedger.stats().getHedgesWon());
+
+        // 下一次请求的阈值由该样本决定，不会在初始阈值处对冲
+        Calls next = new Calls();
+        TestObserver<String> second = hedger.hedge(KEY, next, () -> true).test();
+        Thread.sleep(50);
+        Assert.assertEquals(1, next.size());
+        next.get(0).onSuccess("primary");
+        second.assertValue("primary");
+    }
+
+    @Test
+    public void test_hedgeFailureIgnored() throws Exception {
+        Hedger hedger = new Hedger(policy(Duration.ofMillis(10)).build());
+        Calls calls = new Calls();
+        TestObserver<String> observer = hedger.hedge(KEY, calls, () -> true).test();
+        calls.await(2);
+        calls.get(1).onError(new IllegalStateException("hedge failed"));
+        observer.assertNoErrors().assertNoValues();
+        calls.get(0).onSuccess("primary");
+        observer.assertValue("primary");
+    }
+
+    @Test
+    public void test_admissionVeto() throws Exception {
+        Hedger hedger = new Hedger(policy(Duration.ofMillis(10)).build());
+        Calls calls = new Calls();
+        TestObserver<String> observer = hedger.hedge(KEY, calls, () -> false).test();
+        awaitSuppressed(hedger, 1);
+        Assert.assertEquals(1, calls.size());
+        calls.get(0).onSuccess("primary");
+        observer.assertValue("primary");
+        Assert.assertEquals(0, hedger.stats().getHedgesFired());
+    }
+
+    @Test
+    public void test_budgetSuppression() throws Exception {
+        // 比例为 0 时只有最低储备的一次对冲
+        Hedger hedger = new Hedger(policy(Duration.ofMillis(10)).budgetRatio(0).budgetMinHedges(1).build());
+        Calls first = new Calls();
+        TestObserver<String> firstObserver = hedger.hedge(KEY, first, () -> true).test();
+        first.await(2);
+        first.get(0).onSuccess("primary");
+        firstObserver.assertValue("primary");
+        Assert.assertFalse(first.get(1).hasObservers());
+
+        Calls second = new Calls();
+        TestObserver<String> secondObserver = hedger.hedge(KEY, second, () -> true).test();
+        awaitSuppressed(hedger, 1);
+        Assert.assertEquals(1, second.size());
+        second.get(0).onSuccess("primary");
+        secondObserver.assertValue("primary");
+        Assert.assertEquals(1, hedger.stats().getHedgesFired());
+        Assert.assertEquals(2, hedger.stats().getRequests());
+    }
+
+    private static HedgingPolicy.HedgingPolicyBuilder policy(Duration initialDelay) {
+        return HedgingPolicy.builder()
+                .initialDelay(initialDelay)
+                .minDelay(Duration.ZERO)
+                .minSamples(1)
+                .windowSize(16);
+    }
+
+    private static void awaitSuppressed(Hedger hedger, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hedger.stats().getHedgesSuppressed() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(expected, hedger.stats().getHedgesSuppressed());
+    }
+
+    /**
+     * 按调用顺序记录每个请求，由测试决定何时完成。
+     */
+    private static class Calls implements Supplier<Single<String>> {
+
+        private final List<SingleSubject<String>> subjects = new ArrayList<>();
+
+        @Override
+        public synchronized Single<String> get() {
+            SingleSubject<String> subject = SingleSubject.create();
+            subjects.add(subject);
+            notifyAll();
+            return subject;
+        }
+
+        synchronized SingleSubject<String> get(int index) {
+            return subjects.get(index);
+        }
+
+        synchronized int size() {
+            return subjects.size();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (subjects.size() < count && System.currentTimeMillis() < deadline) {
+                wait(deadline - System.currentTimeMillis());
+            }
+            Assert.assertEquals(count, subjects.size());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package top.kangyaocoding.chatgpt.image;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * @Author K·Herbert
+ * @Description b64_json 流式解码测试，覆盖正常写出，以及截断或非法的 base64 输入不会留下写了一半的文件。
+ * @Date 2024-06-28 15:00
+ */
+public class Base64ImageReaderTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("images");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void test_decodesToDirectory() throws Exception {
+        byte[] first = image(1, 200_000);
+        byte[] second = image(2, 10);
+        String json = "{\"created\":1,\"data\":[" + item(first, "a cat") + "," + item(second, null) + "]}";
+        List<ImageAsset> assets = Base64ImageReader.read(stream(json), ImageOutput.directory(directory, "img"), 3, 0);
+
+        Assert.assertEquals(2, assets.size());
+        Assert.assertEquals(3, assets.get(0).getIndex());
+        Assert.assertEquals("a cat", assets.get(0).getRevisedPrompt());
+        Assert.assertEquals(first.length, assets.get(0).getBytes());
+        Assert.assertArrayEquals(first, Files.readAllBytes(directory.resolve("img-3.png")));
+        Assert.assertArrayEquals(second, Files.readAllBytes(directory.resolve("img-4.png")));
+        Assert.assertNull(assets.get(1).getError());
+    }
+
+    @Test
+    public void test_truncatedBase64() throws Exception {
+        byte[] first = image(1, 1000);
+        // 大于输出缓冲，截断前已有部分字节写入文件
+        String encoded = Base64.getEncoder().encodeToString(image(2, 300_000));
+        String json = "{\"data\":[" + item(first, null) + ",{\"b64_json\":\"" + encoded.substring(0, encoded.length() / 2);
+        try {
+            Base64ImageReader.read(stream(json), ImageOutput.directory(directory, "img"), 0, 0);
+            Assert.fail("a truncated response must fail");
+        } catch (IOException e) {
+            // 预期异常
+        }
+        // 已完整写出的图片保留，写了一半的图片被删除
+        Assert.assertArrayEquals(first, Files.readAllBytes(directory.resolve("img-0.png")));
+        Assert.assertFalse(Files.exists(directory.resolve("img-1.png")));
+    }
+
+    @Test
+    public void test_invalidBase64() throws Exception {
+        Path path = directory.resolve("single.png");
+        String encoded = Base64.getEncoder().encodeToString(image(3, 300_000));
+        String json = "{\"data\":[{\"b64_json\":\"" + encoded.substring(0, 200_000) + "!!!!" + encoded.substring(200_000) + "\"}]}";
+        try {
+            Base64ImageReader.read(stream(json), ImageOutput.of(path), 0, 0);
+            Assert.fail("invalid base64 must fail");
+        } catch (IOException e) {
+            // 预期异常
+        }
+        Assert.assertFalse(Files.exists(path));
+    }
+
+    @Test
+    public void test_openFailureKeepsWrittenImage() throws Exception {
+        Path path = directory.resolve("single.png");
+        byte[] first = image(4, 1000);
+        String json = "{\"data\":[" + item(first, null) + "," + item(image(5, 1000), null) + "]}";
+        // 单一目标拒绝第二张图片时不会删除已写入的第一张
+        try {
+            Base64ImageReader.read(stream(json), ImageOutput.of(path), 0, 0);
+            Assert.fail("a single-target output must reject the second image");
+        } catch (IOException e) {
+            // 预期异常
+        }
+        Assert.assertArrayEquals(first, Files.readAllBytes(path));
+    }
+
+    private static byte[] image(long seed, int size) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String item(byte[] image, String revisedPrompt) {
+        return "{" + (revisedPrompt == null ? "" : "\"revised_prompt\":\"" + revisedPrompt + "\",")
+                + "\"b64_json\":\"" + Base64.getEncoder().encodeToString(image) + "\"}";
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,221 @@
+package top.kangyaocoding.chatgpt.interceptor;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.retry.RetryBudget;
+import top.kangyaocoding.chatgpt.retry.RetryPolicy;
+import top.kangyaocoding.chatgpt.retry.RetryStats;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description 重试拦截器测试，覆盖服务端等待时间的解析、重试预算和各类响应的重试决策。
+ * 放在拦截器所在的包中以便直接测试包内可见的解析方法。
+ * @Date 2024-06-16 11:00
+ */
+public class RetryInterceptorTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void test_parseDuration() {
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), RetryInterceptor.parseDuration("1s"));
+        Assert.assertEquals(TimeUnit.MINUTES.toNanos(6), RetryInterceptor.parseDuration("6m0s"));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20), RetryInterceptor.parseDuration("20ms"));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1_500), RetryInterceptor.parseDuration("1.5s"));
+        Assert.assertEquals(TimeUnit.HOURS.toNanos(1) + TimeUnit.MINUTES.toNanos(2) + TimeUnit.SECONDS.toNanos(3),
+                RetryInterceptor.parseDuration("1h2m3s"));
+        Assert.assertEquals(-1, RetryInterceptor.parseDuration("soon"));
+        Assert.assertEquals(-1, RetryInterceptor.parseDuration(null));
+    }
+
+    @Test
+    public void test_serverDelayNanos() {
+        // retry-after-ms 优先于 Retry-After
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1_500), RetryInterceptor.serverDelayNanos(response(429)
+                .header("retry-after-ms", "1.5")
+                .header("Retry-After", "10")
+                .build()));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(2), RetryInterceptor.serverDelayNanos(response(429)
+                .header("retry-after-ms", "abc")
+                .header("Retry-After", "2")
+                .build()));
+        // HTTP 日期格式的 Retry-After 不处理
+        Assert.assertEquals(-1, RetryInterceptor.serverDelayNanos(response(503)
+                .header("Retry-After", "Wed, 21 Oct 2015 07:28:00 GMT")
+                .build()));
+        // 只有已耗尽的维度才按 reset 等待，两个维度都耗尽时取较长的一个
+        Assert.assertEquals(-1, RetryInterceptor.serverDelayNanos(response(429)
+                .header("x-ratelimit-remaining-requests", "5")
+                .header("x-ratelimit-reset-requests", "1s")
+                .build()));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(6), RetryInterceptor.serverDelayNanos(response(429)
+                .header("x-ratelimit-remaining-requests", "0")
+                .header("x-ratelimit-reset-requests", "1s")
+                .header("x-ratelimit-remaining-tokens", "0")
+                .header("x-ratelimit-reset-tokens", "6s")
+                .build()));
+    }
+
+    @Test
+    public void test_retryBudget() {
+        RetryBudget retryBudget = new RetryBudget(0.5, 2);
+        // 初始储备为 budgetMinRetries
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertFalse(retryBudget.tryWithdraw());
+        // 每个请求存入 0.5，两个请求换一次重试
+        retryBudget.deposit();
+        Assert.assertFalse(retryBudget.tryWithdraw());
+        retryBudget.deposit();
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        // 余额不超过上限
+        for (int i = 0; i < 100; i++) {
+            retryBudget.deposit();
+        }
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertFalse(retryBudget.tryWithdraw());
+        // 储备至少为 1
+        Assert.assertTrue(new RetryBudget(0.1, 0).tryWithdraw());
+    }
+
+    @Test
+    public void test_retryOnServerDelay() throws Exception {
+        RetryInterceptor retryInterceptor = new RetryInterceptor(policy(3, Duration.ofSeconds(30)));
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("retry-after-ms", "20"));
+        server.enqueue(new MockResponse().setResponseCode(502).setHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        long start = System.nanoTime();
+        try (Response response = client(retryInterceptor).newCall(post()).execute()) {
+            Assert.assertEquals(200, response.code());
+        }
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertEquals(3, server.getRequestCount());
+        RetryStats stats = retryInterceptor.stats();
+        Assert.assertEquals(1, stats.getRequests());
+        Assert.assertEquals(2, stats.getRetries());
+        Assert.assertEquals(1, stats.getSuccessesAfterRetry());
+    }
+
+    @Test
+    public void test_serverDelayBeyondMaxDelay() throws Exception {
+        RetryInterceptor retryInterceptor = new RetryInterceptor(policy(3, Duration.ofSeconds(1)));
+        server.enqueue(new MockResponse().setResponseCode(429)
+                .setHeader("x-ratelimit-remaining-tokens", "0")
+                .setHeader("x-ratelimit-reset-tokens", "6m0s"));
+        try (Response response = client(retryInterceptor).newCall(post()).execute()) {
+            Assert.assertEquals(429, response.code());
+        }
+        Assert.assertEquals(1, server.getRequestCount());
+        Assert.assertEquals(0, retryInterceptor.stats().getRetries());
+    }
+
+    @Test
+    public void test_nonRetryableResponses() throws Exception {
+        RetryInterceptor retryInterceptor = new RetryInterceptor(policy(3, Duration.ofSeconds(30)));
+        server.enqueue(new MockResponse().setResponseCode(400));
+        try (Response response = client(retryInterceptor).newCall(post()).execute()) {
+            Assert.assertEquals(400, response.code());
+        }
+        // 最后一次尝试的可重试状态码原样返回
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500).setHeader("retry-after-ms", "0"));
+        }
+        try (Response response = client(retryInterceptor).newCall(post()).execute()) {
+            Assert.assertEquals(500, response.code());
+        }
+        Assert.assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void test_postNotRetriedAfterSend() throws Exception {
+        RetryInterceptor retryInterceptor = new RetryInterceptor(policy(3, Duration.ofSeconds(30)));
+        // 请求已发出后连接断开，POST 可能已被处理，不重试
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        try {
+            client(retryInterceptor).newCall(post()).execute().close();
+            Assert.fail("a POST that reached the server must not be retried");
+        } catch (IOException expected) {
+            Assert.assertEquals(1, server.getRequestCount());
+        }
+        // GET 是幂等的，可以重试
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setBody("ok"));
+        Request get = new Request.Builder().url(server.url("/v1/models")).build();
+        try (Response response = client(retryInterceptor).newCall(get).execute()) {
+            Assert.assertEquals("ok", response.body().string());
+        }
+        Assert.assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void test_budgetExhausted() throws Exception {
+        RetryPolicy retryPolicy = RetryPolicy.builder()
+                .maxAttempts(5)
+                .baseDelay(Duration.ZERO)
+                .budgetRatio(0)
+                .budgetMinRetries(1)
+                .build();
+        RetryInterceptor retryInterceptor = new RetryInterceptor(retryPolicy);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+        // 储备只够一次重试，之后直接返回失败响应
+        try (Response response = client(retryInterceptor).newCall(post()).execute()) {
+            Assert.assertEquals(503, response.code());
+        }
+        Assert.assertEquals(2, server.getRequestCount());
+        Assert.assertEquals(1, retryInterceptor.stats().getBudgetExhausted());
+    }
+
+    private OkHttpClient client(RetryInterceptor retryInterceptor) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(retryInterceptor)
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    private Request post() {
+        return new Request.Builder()
+                .url(server.url("/v1/chat/completions"))
+                .post(RequestBody.create("{}", null))
+                .build();
+    }
+
+    private static RetryPolicy policy(int maxAttempts, Duration maxDelay) {
+        return RetryPolicy.builder().maxAttempts(maxAttempts).baseDelay(Duration.ofMillis(1)).maxDelay(maxDelay).build();
+    }
+
+    private static Response.Builder response(int code) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("https://api.openai.com/v1/chat/completions").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("status " + code);
+    }
+}
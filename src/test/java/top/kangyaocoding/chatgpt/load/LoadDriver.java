@@ -0,0 +1,176 @@
+package top.kangyaocoding.chatgpt.load;
+
+import lombok.extern.slf4j.Slf4j;
+import top.kangyaocoding.chatgpt.metrics.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Author K·Herbert
+ * @Description 闭环与开环压测驱动。
+ * 每个请求都有一个计划开始时间：开环模式按目标速率排定，闭环模式在配置 pacing 时按固定节奏排定，否则等于实际开始时间。
+ * 响应时间从计划开始时间计时，请求因前面的慢请求或排队而被推迟的时间也计入其中，
+ * 从而避免只在请求实际发出时才计时导致的协调遗漏，使尾延迟不被低估。
+ * @Date 2024-06-24 14:10
+ */
+@Slf4j
+public class LoadDriver {
+
+    private final LoadOptions options;
+
+    public LoadDriver(LoadOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * 闭环压测：concurrency 个线程各自在上一个请求结束后发起下一个请求。
+     *
+     * @param task 压测操作。
+     * @return 返回压测结果。
+     */
+    public LoadReport closedLoop(LoadTask task) throws InterruptedException {
+        int concurrency = options.getConcurrency();
+        long pacing = options.getPacing() == null ? 0 : options.getPacing().toNanos();
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        long end = measureFrom + options.getDuration().toNanos();
+        Recorder recorder = new Recorder(measureFrom);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, threadFactory("closed"));
+        for (int i = 0; i < concurrency; i++) {
+            // 错开各线程的计划时间，避免所有线程同一时刻发起请求
+            long offset = pacing * i / concurrency;
+            executor.execute(() -> {
+                long next = start + offset;
+                while (!Thread.currentThread().isInterrupted()) {
+                    long intended = pacing > 0 ? next : System.nanoTime();
+                    if (intended >= end) {
+                        return;
+                    }
+                    if (pacing > 0) {
+                        parkUntil(intended);
+                        next += pacing;
+                    }
+                    recorder.execute(task, intended);
+                }
+            });
+        }
+        awaitTermination(executor);
+        return recorder.report("closed", end - measureFrom);
+    }
+
+    /**
+     * 开环压测：按 ratePerSecond 的固定节奏发起请求，不等待前面的请求完成，
+     * 同时执行的请求超过 concurrency 时在队列中等待，等待时间计入响应时间。
+     *
+     * @param task 压测操作。
+     * @return 返回压测结果。
+     */
+    public LoadReport openLoop(LoadTask task) throws InterruptedException {
+        int concurrency = options.getConcurrency();
+        double periodNanos = 1_000_000_000.0 / options.getRatePerSecond();
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        long end = measureFrom + options.getDuration().toNanos();
+        Recorder recorder = new Recorder(measureFrom);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory("open"));
+        try {
+            for (long i = 0; ; i++) {
+                long intended = start + (long) (i * periodNanos);
+                if (intended >= end) {
+                    break;
+                }
+                parkUntil(intended);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                executor.execute(() -> recorder.execute(task, intended));
+            }
+        } finally {
+            awaitTermination(executor);
+        }
+        return recorder.report("open", end - measureFrom);
+    }
+
+    private void awaitTermination(ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(options.getDrainTimeout().toNanos() + options.getDuration().toNanos() + options.getWarmup().toNanos(), TimeUnit.NANOSECONDS)) {
+            int abandoned = executor.shutdownNow().size();
+            log.warn("压测结束时仍有请求未完成，放弃排队中的 {} 个请求", abandoned);
+        }
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String mode) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "load-" + mode + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 记录单次操作的耗时与结果，计划开始时间早于统计起点的操作视为预热。
+     */
+    private static final class Recorder {
+
+        private final long measureFrom;
+        private final Histogram serviceTime = new Histogram();
+        private final Histogram responseTime = new Histogram();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+        private Recorder(long measureFrom) {
+            this.measureFrom = measureFrom;
+        }
+
+        private void execute(LoadTask task, long intended) {
+            long begin = System.nanoTime();
+            Throwable error = null;
+            try {
+                task.run();
+            } catch (Throwable e) {
+                error = e;
+            }
+            long finish = System.nanoTime();
+            if (intended < measureFrom) {
+                return;
+            }
+            serviceTime.record(finish - begin);
+            responseTime.record(finish - intended);
+            if (error == null) {
+                completed.increment();
+            } else {
+                failed.increment();
+                failures.computeIfAbsent(error.getClass().getSimpleName(), key -> new LongAdder()).increment();
+            }
+        }
+
+        private LoadReport report(String mode, long elapsedNanos) {
+            Map<String, Long> failureCounts = new TreeMap<>();
+            failures.forEach((type, count) -> failureCounts.put(type, count.sum()));
+            return new LoadReport(mode, completed.sum(), failed.sum(), elapsedNanos,
+                    serviceTime.snapshot(), responseTime.snapshot(), failureCounts);
+        }
+    }
+}
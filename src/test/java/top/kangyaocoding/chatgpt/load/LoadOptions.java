@@ -0,0 +1,40 @@
+package top.kangyaocoding.chatgpt.load;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * @Author K·Herbert
+ * @Description 压测参数。
+ * 闭环模式下 concurrency 个工作线程各自循环执行，配置 pacing 时每个线程按固定节奏安排计划开始时间；
+ * 开环模式下按 ratePerSecond 的固定节奏安排请求，最多 concurrency 个同时执行，其余排队。
+ * @Date 2024-06-24 14:00
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoadOptions {
+
+    /* 并发数，闭环模式为工作线程数，开环模式为同时执行的上限 */
+    @Builder.Default
+    private int concurrency = 16;
+    /* 计入结果的压测时长 */
+    @Builder.Default
+    private Duration duration = Duration.ofSeconds(30);
+    /* 预热时长，期间的请求不计入结果 */
+    @Builder.Default
+    private Duration warmup = Duration.ZERO;
+    /* 开环模式的目标到达速率（次/秒） */
+    @Builder.Default
+    private double ratePerSecond = 100;
+    /* 闭环模式每个线程的计划间隔，为 null 时不控制节奏，此时无法修正协调遗漏 */
+    private Duration pacing;
+    /* 压测结束后等待在途与排队请求完成的最长时间 */
+    @Builder.Default
+    private Duration drainTimeout = Duration.ofSeconds(60);
+}
@@ -0,0 +1,43 @@
+package top.kangyaocoding.chatgpt.load;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import top.kangyaocoding.chatgpt.metrics.HistogramSnapshot;
+
+import java.util.Map;
+
+/**
+ * @Author K·Herbert
+ * @Description 压测结果。
+ * serviceTime 从实际开始执行计时，反映服务端与客户端的处理耗时；
+ * responseTime 从计划开始时间计时，包含因前一个请求变慢而被推迟的等待，即修正了协调遗漏（coordinated omission）的延迟。
+ * @Date 2024-06-24 14:05
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class LoadReport {
+
+    /* 压测模式，closed 或 open */
+    private final String mode;
+    /* 成功次数 */
+    private final long completed;
+    /* 失败次数 */
+    private final long failed;
+    /* 计入结果的实际时长（纳秒） */
+    private final long elapsedNanos;
+    /* 服务耗时分布（纳秒） */
+    private final HistogramSnapshot serviceTime;
+    /* 修正协调遗漏后的响应时间分布（纳秒） */
+    private final HistogramSnapshot responseTime;
+    /* 按异常类型统计的失败次数 */
+    private final Map<String, Long> failures;
+
+    /**
+     * 成功请求的吞吐量（次/秒）。
+     */
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : completed * 1_000_000_000.0 / elapsedNanos;
+    }
+}
@@ -0,0 +1,12 @@
+package top.kangyaocoding.chatgpt.load;
+
+/**
+ * @Author K·Herbert
+ * @Description 压测中的一次操作，正常返回视为成功，抛出异常视为失败。
+ * @Date 2024-06-24 14:00
+ */
+@FunctionalInterface
+public interface LoadTask {
+
+    void run() throws Exception;
+}
@@ -0,0 +1,108 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @Author K·Herbert
+ * @Description 对数线性直方图测试，覆盖线性区与对数区交界、最大可区分值附近的桶序号与上界，以及分位数的提取。
+ * @Date 2024-06-21 11:00
+ */
+public class HistogramTest {
+
+    @Test
+    public void test_linearToLogBoundary() {
+        // 小于子桶数的值每个值一个桶
+        for (int v = 0; v < Histogram.SUB_BUCKETS; v++) {
+            Assert.assertEquals(v, Histogram.index(v));
+            Assert.assertEquals(v, Histogram.upperBound(v));
+        }
+        // 第一个对数区间 [8, 16) 的桶宽仍为 1
+        Assert.assertEquals(8, Histogram.index(8));
+        Assert.assertEquals(8, Histogram.upperBound(8));
+        Assert.assertEquals(15, Histogram.index(15));
+        Assert.assertEquals(15, Histogram.upperBound(15));
+        // 之后每个区间桶宽翻倍
+        Assert.assertEquals(16, Histogram.index(16));
+        Assert.assertEquals(16, Histogram.index(17));
+        Assert.assertEquals(17, Histogram.upperBound(16));
+        Assert.assertEquals(17, Histogram.index(18));
+        Assert.assertEquals(23, Histogram.index(31));
+        Assert.assertEquals(31, Histogram.upperBound(23));
+        Assert.assertEquals(24, Histogram.index(32));
+        Assert.assertEquals(35, Histogram.upperBound(24));
+    }
+
+    @Test
+    public void test_indexAndUpperBoundAgree() {
+        // 每个桶的上界落在本桶，上界加一落在下一个桶，相对误差不超过 12.5%
+        for (int i = 0; i < Histogram.BUCKET_COUNT - 2; i++) {
+            long upper = Histogram.upperBound(i);
+            Assert.assertEquals(i, Histogram.index(upper));
+            Assert.assertEquals(i + 1, Histogram.index(upper + 1));
+            long lower = i == 0 ? 0 : Histogram.upperBound(i - 1) + 1;
+            Assert.assertTrue("bucket " + i, upper - lower <= lower / Histogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void test_maxTrackableValue() {
+        long maxTrackable = (1L << 40) - 1;
+        int last = Histogram.BUCKET_COUNT - 1;
+        Assert.assertEquals(last - 1, Histogram.index((1L << 40) - (1L << 36) - 1));
+        Assert.assertEquals((1L << 40) - (1L << 36) - 1, Histogram.upperBound(last - 1));
+        Assert.assertEquals(last, Histogram.index((1L << 40) - (1L << 36)));
+        Assert.assertEquals(last, Histogram.index(maxTrackable));
+        // 超出范围的值计入最后一个桶，该桶没有上界
+        Assert.assertEquals(last, Histogram.index(1L << 40));
+        Assert.assertEquals(last, Histogram.index(Long.MAX_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE, Histogram.upperBound(last));
+
+        Histogram histogram = new Histogram();
+        histogram.record(1L << 42);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        // 分位数取记录到的最大值，而不是截断为 2^40 - 1
+        Assert.assertEquals(1L << 42, snapshot.percentile(0.5));
+        Assert.assertEquals(1L << 42, snapshot.getMax());
+    }
+
+    @Test
+    public void test_percentile() {
+        HistogramSnapshot empty = new Histogram().snapshot();
+        Assert.assertEquals(0, empty.percentile(0.99));
+        Assert.assertEquals(0, empty.mean(), 0);
+
+        Histogram histogram = new Histogram();
+        for (int v = 1; v <= 100; v++) {
+            histogram.record(v);
+        }
+        // 负值按 0 记录
+        histogram.record(-5);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(101, snapshot.getCount());
+        Assert.assertEquals(5050, snapshot.getSum());
+        Assert.assertEquals(100, snapshot.getMax());
+        Assert.assertEquals(0, snapshot.percentile(0));
+        // 第 51 个值为 50，所在桶 [48, 51]
+        Assert.assertEquals(51, snapshot.percentile(0.5));
+        // 第 91 个值为 90，所在桶 [88, 95]
+        Assert.assertEquals(95, snapshot.percentile(0.9));
+        // 第 100 个值为 99，所在桶 [96, 103] 的上界不超过最大值
+        Assert.assertEquals(100, snapshot.percentile(0.99));
+        Assert.assertEquals(100, snapshot.percentile(1));
+    }
+
+    @Test
+    public void test_percentileSingleValue() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(1_000_000);
+        }
+        histogram.record(5_000_000);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        long p50 = snapshot.percentile(0.5);
+        Assert.assertTrue(p50 >= 1_000_000 && p50 <= 1_125_000);
+        Assert.assertEquals(p50, snapshot.percentile(0.999));
+        Assert.assertEquals(5_000_000, snapshot.percentile(1));
+    }
+}
@@ -0,0 +1,169 @@
+package top.kangyaocoding.chatgpt.metrics;
+
+import okhttp3.Request;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import okio.Buffer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.stream.ChatCompletionStreamReader;
+import top.kangyaocoding.chatgpt.stream.ChatDelta;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式指标测试，覆盖首个内容增量的识别：只带角色或空内容的首条增量不计为首个令牌。
+ * @Date 2024-06-21 11:00
+ */
+public class StreamMetricsTest {
+
+    private static final String URL = "https://api.openai.com/" + IOpenAiApi.V_1_CHAT_COMPLETIONS;
+    private static final String ROLE_ONLY = "{\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\"},\"finish_reason\":null}]}";
+    private static final String EMPTY_CONTENT = "{\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"},\"finish_reason\":null}]}";
+    private static final String CONTENT = "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"%s\"},\"finish_reason\":null}]}";
+
+    @Test
+    public void test_hasContent() {
+        Assert.assertFalse(StreamMetrics.hasContent(ROLE_ONLY));
+        Assert.assertFalse(StreamMetrics.hasContent(EMPTY_CONTENT));
+        Assert.assertFalse(StreamMetrics.hasContent("{\"choices\":[{\"delta\":{\"content\":null}}]}"));
+        Assert.assertFalse(StreamMetrics.hasContent("{\"choices\":[],\"usage\":{\"total_tokens\":7}}"));
+        Assert.assertTrue(StreamMetrics.hasContent(content("Hi")));
+        Assert.assertTrue(StreamMetrics.hasContent("{\"delta\":{\"content\": \"x\"}}"));
+        // 第一个 content 为空时继续查找后续选项
+        Assert.assertTrue(StreamMetrics.hasContent("{\"choices\":[{\"delta\":{\"content\":\"\"}},{\"delta\":{\"content\":\"y\"}}]}"));
+        // 内容中转义的字段名不会误判
+        Assert.assertFalse(StreamMetrics.hasContent("{\"delta\":{\"role\":\"assistant\",\"refusal\":\"\\\"content\\\":\"}}"));
+    }
+
+    @Test
+    public void test_eventSourceFirstContent() {
+        RecordingRecorder recorder = new RecordingRecorder();
+        FakeFactory delegate = new FakeFactory();
+        StreamMetrics.eventSourceFactory(recorder, delegate).newEventSource(request(), new EventSourceListener() {
+        });
+        EventSourceListener listener = delegate.listeners.get(0);
+        EventSource eventSource = delegate.eventSource;
+
+        // 只带角色与空内容的首条增量不计为首个令牌
+        listener.onEvent(eventSource, null, null, ROLE_ONLY);
+        listener.onEvent(eventSource, null, null, EMPTY_CONTENT);
+        Assert.assertEquals(List.of(), recorder.events);
+        listener.onEvent(eventSource, null, null, content("Hello"));
+        Assert.assertEquals(List.of("ttft v1/chat/completions gpt-4o"), recorder.events);
+        listener.onEvent(eventSource, null, null, content(" world"));
+        listener.onEvent(eventSource, null, null, "[DONE]");
+        // 结束后关闭不会重复记录
+        listener.onClosed(eventSource);
+        Assert.assertEquals(List.of("ttft v1/chat/completions gpt-4o", "gap v1/chat/completions gpt-4o",
+                "stream v1/chat/completions gpt-4o 2"), recorder.events);
+    }
+
+    @Test
+    public void test_eventSourceWithoutContent() {
+        RecordingRecorder recorder = new RecordingRecorder();
+        FakeFactory delegate = new FakeFactory();
+        StreamMetrics.eventSourceFactory(recorder, delegate).newEventSource(request(), new EventSourceListener() {
+        });
+        delegate.listeners.get(0).onEvent(delegate.eventSource, null, null, ROLE_ONLY);
+        delegate.listeners.get(0).onFailure(delegate.eventSource, null, null);
+        Assert.assertEquals(List.of("stream v1/chat/completions gpt-4o 0"), recorder.events);
+    }
+
+    @Test
+    public void test_handlerFirstContent() throws Exception {
+        RecordingRecorder recorder = new RecordingRecorder();
+        List<String> received = new ArrayList<>();
+        ChatDeltaHandler handler = StreamMetrics.handler(recorder, request(), new ChatDeltaHandler() {
+            @Override
+            public void onDelta(ChatDelta delta) {
+                received.add(delta.role() + ":" + delta.content());
+            }
+        });
+        Buffer source = new Buffer().writeUtf8("data: " + ROLE_ONLY + "\n\n"
+                + "data: " + EMPTY_CONTENT + "\n\n"
+                + "data: " + content("a") + "\n\n"
+                + "data: " + content("b") + "\n\n"
+                + "data: [DONE]\n\n");
+        new ChatCompletionStreamReader(source, handler).read();
+        handler.onComplete();
+
+        // 所有增量都转发给调用方，只有带内容的增量计数
+        Assert.assertEquals(List.of("assistant:", "assistant:", "null:a", "null:b"), received);
+        Assert.assertEquals(List.of("ttft v1/chat/completions gpt-4o", "gap v1/chat/completions gpt-4o",
+                "stream v1/chat/completions gpt-4o 2"), recorder.events);
+    }
+
+    private static String content(String content) {
+        return String.format(CONTENT, content);
+    }
+
+    private static Request request() {
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .model(ChatCompletionRequest.Model.GPT_4O.getCode())
+                .stream(true)
+                .messages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content("hi").build()))
+                .build();
+        return new Request.Builder().url(URL).post(OpenAiJson.requestBody(chatCompletionRequest)).build();
+    }
+
+    /**
+     * 记录监听器的事件源工厂，由测试手动推进上游事件。
+     */
+    private static class FakeFactory implements EventSource.Factory {
+
+        private final List<EventSourceListener> listeners = new ArrayList<>();
+        private final EventSource eventSource = new EventSource() {
+            @NotNull
+            @Override
+            public Request request() {
+                return StreamMetricsTest.request();
+            }
+
+            @Override
+            public void cancel() {
+            }
+        };
+
+        @NotNull
+        @Override
+        public EventSource newEventSource(@NotNull Request request, @NotNull EventSourceListener listener) {
+            listeners.add(listener);
+            return eventSource;
+        }
+    }
+
+    /**
+     * 按回调顺序记录的指标记录器。
+     */
+    private static class RecordingRecorder implements MetricsRecorder {
+
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void recordTimeToFirstToken(String endpoint, String model, long nanos) {
+            events.add("ttft " + endpoint + " " + model);
+        }
+
+        @Override
+        public void recordInterTokenGap(String endpoint, String model, long nanos) {
+            events.add("gap " + endpoint + " " + model);
+        }
+
+        @Override
+        public void recordStream(String endpoint, String model, long tokens, long generationNanos) {
+            events.add("stream " + endpoint + " " + model + " " + tokens);
+        }
+    }
+}
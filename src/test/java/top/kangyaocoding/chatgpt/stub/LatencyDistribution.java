@@ -0,0 +1,61 @@
+package top.kangyaocoding.chatgpt.stub;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * @Author K·Herbert
+ * @Description 桩服务器的响应延迟分布，每次请求从中采样一次首字节延迟。
+ * @Date 2024-06-24 10:00
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * 采样一次延迟。
+     *
+     * @param random 桩服务器持有的随机数生成器，固定种子时结果可复现。
+     * @return 返回延迟纳秒数，不小于 0。
+     */
+    long sampleNanos(Random random);
+
+    /**
+     * 无延迟。
+     */
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    /**
+     * 固定延迟。
+     */
+    static LatencyDistribution fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return random -> nanos;
+    }
+
+    /**
+     * 在 [min, max) 内均匀分布。
+     */
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long range = Math.max(1, max.toNanos() - minNanos);
+        return random -> minNanos + (long) (random.nextDouble() * range);
+    }
+
+    /**
+     * 指数分布，适合模拟排队等待。
+     */
+    static LatencyDistribution exponential(Duration mean) {
+        double meanNanos = mean.toNanos();
+        return random -> (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+    }
+
+    /**
+     * 对数正态分布，中位数为 median，sigma 越大尾部越长，接近真实模型推理的延迟形态。
+     */
+    static LatencyDistribution logNormal(Duration median, double sigma) {
+        double mu = Math.log(median.toNanos());
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+}
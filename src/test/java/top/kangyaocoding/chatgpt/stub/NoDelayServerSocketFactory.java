@@ -0,0 +1,49 @@
+package top.kangyaocoding.chatgpt.stub;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * @Author K·Herbert
+ * @Description 为接受的连接关闭 Nagle 的服务端套接字工厂，避免分块响应与延迟确认叠加出约 40ms 的停顿。
+ * @Date 2024-06-24 10:12
+ */
+final class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+    @Override
+    public ServerSocket createServerSocket() throws IOException {
+        return new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                Socket socket = super.accept();
+                socket.setTcpNoDelay(true);
+                return socket;
+            }
+        };
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        ServerSocket serverSocket = createServerSocket();
+        serverSocket.bind(new InetSocketAddress(port));
+        return serverSocket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+        ServerSocket serverSocket = createServerSocket();
+        serverSocket.bind(new InetSocketAddress(port), backlog);
+        return serverSocket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+        ServerSocket serverSocket = createServerSocket();
+        serverSocket.bind(new InetSocketAddress(address, port), backlog);
+        return serverSocket;
+    }
+}
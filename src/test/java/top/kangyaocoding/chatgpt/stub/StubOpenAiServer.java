@@ -0,0 +1,569 @@
+package top.kangyaocoding.chatgpt.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @Author K·Herbert
+ * @Description 本地 OpenAI 兼容桩服务器，基于 MockWebServer 实现 IOpenAiApi 的全部路由，用于不消耗配额的集成与压力测试。
+ * 支持按 token 速率输出的 SSE 聊天流、multipart 图像与音频上传、文件增删查与按 Range 下载、账单接口，
+ * 以及由 StubScenario 描述的延迟分布、带 Retry-After 的 429、5xx 突发和流中途断开。
+ * 图像生成返回的 URL 指向本服务器的 stub/images 路由，可直接下载。脚本可在运行中通过 setScenario 切换。
+ * @Date 2024-06-24 10:20
+ */
+@Slf4j
+public class StubOpenAiServer implements AutoCloseable {
+
+    /* 1x1 透明 PNG */
+    private static final byte[] PNG = Base64.getDecoder().decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==");
+    private static final Pattern FILE_PATH = Pattern.compile("/v1/files/([^/]+)(/content)?");
+    private static final Pattern IMAGE_PATH = Pattern.compile("/stub/images/[^/]+\\.png");
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final Pattern PART_NAME = Pattern.compile("(?<!file)name=\"([^\"]*)\"");
+    private static final Pattern PART_FILENAME = Pattern.compile("filename=\"([^\"]*)\"");
+    private static final ByteString CRLF = ByteString.encodeUtf8("\r\n");
+    private static final ByteString CRLF_CRLF = ByteString.encodeUtf8("\r\n\r\n");
+    private static final ByteString DASH_DASH = ByteString.encodeUtf8("--");
+
+    private final ObjectMapper objectMapper = OpenAiJson.objectMapper();
+    private final MockWebServer server = new MockWebServer();
+    /* 故障采样使用的随机数与突发计数，由 lock 保护 */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Random random;
+    private int burstRemaining;
+    private volatile StubScenario scenario;
+    /* 已上传的文件 */
+    private final ConcurrentMap<String, StoredFile> files = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+
+    public StubOpenAiServer() {
+        this(StubScenario.builder().build());
+    }
+
+    public StubOpenAiServer(StubScenario scenario) {
+        this.scenario = scenario;
+        this.random = new Random(scenario.getSeed());
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                return StubOpenAiServer.this.dispatch(request);
+            }
+        });
+    }
+
+    /**
+     * 启动服务器，监听本地随机端口。
+     *
+     * @return 返回当前实例。
+     */
+    public StubOpenAiServer start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    /**
+     * 获取可直接设置到 Configuration.apiHost 的地址，以 / 结尾。
+     */
+    public String apiHost() {
+        return server.url("/").toString();
+    }
+
+    public StubScenario getScenario() {
+        return scenario;
+    }
+
+    /**
+     * 切换行为脚本，对之后收到的请求生效。
+     */
+    public void setScenario(StubScenario scenario) {
+        this.scenario = scenario;
+    }
+
+    public StubServerStats stats() {
+        return new StubServerStats(requests.sum(), rateLimited.sum(), serverErrors.sum(), disconnects.sum(), notFound.sum());
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private MockResponse dispatch(RecordedRequest request) {
+        requests.increment();
+        StubScenario scenario = this.scenario;
+        HttpUrl url = request.getRequestUrl();
+        String path = url == null ? "" : url.encodedPath();
+        String method = request.getMethod();
+        // 图像下载地址不参与故障注入
+        if ("GET".equals(method) && IMAGE_PATH.matcher(path).matches()) {
+            return new MockResponse().setHeader("Content-Type", "image/png").setBody(new Buffer().write(PNG));
+        }
+        Fault fault;
+        long latencyNanos;
+        lock.lock();
+        try {
+            fault = fault(scenario);
+            latencyNanos = Math.max(0, scenario.getLatency().sampleNanos(random));
+        } finally {
+            lock.unlock();
+        }
+        MockResponse response;
+        try {
+            response = fault == Fault.RATE_LIMITED ? rateLimited(scenario)
+                    : fault == Fault.SERVER_ERROR ? serverError()
+                    : route(method, path, url, request, scenario, fault == Fault.DISCONNECT);
+        } catch (Exception e) {
+            log.warn("桩服务器处理请求失败 {} {}", method, path, e);
+            response = error(400, "invalid_request_error", e.getMessage());
+        }
+        return response.setHeadersDelay(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Fault fault(StubScenario scenario) {
+        if (burstRemaining > 0) {
+            burstRemaining--;
+            return Fault.SERVER_ERROR;
+        }
+        if (scenario.getRateLimitRate() > 0 && random.nextDouble() < scenario.getRateLimitRate()) {
+            return Fault.RATE_LIMITED;
+        }
+        if (scenario.getServerErrorRate() > 0 && random.nextDouble() < scenario.getServerErrorRate()) {
+            burstRemaining = Math.max(0, scenario.getServerErrorBurst() - 1);
+            return Fault.SERVER_ERROR;
+        }
+        if (scenario.getDisconnectRate() > 0 && random.nextDouble() < scenario.getDisconnectRate()) {
+            return Fault.DISCONNECT;
+        }
+        return Fault.NONE;
+    }
+
+    private MockResponse route(String method, String path, HttpUrl url, RecordedRequest request, StubScenario scenario, boolean disconnect) throws IOException {
+        switch (method + " " + path) {
+            case "POST /v1/chat/completions":
+                return chatCompletion(request, scenario, disconnect);
+            case "POST /v1/edits":
+                return edit(request, scenario);
+            case "POST /v1/images/generations":
+                return images(readJson(request), url);
+            case "POST /v1/images/edits":
+                return imageEdit(request, url);
+            case "POST /v1/embeddings":
+                return embeddings(request, scenario);
+            case "GET /v1/files":
+                return listFiles();
+            case "POST /v1/files":
+                return uploadFile(request);
+            case "POST /v1/audio/transcriptions":
+            case "POST /v1/audio/translations":
+                return audio(request);
+            case "GET /v1/dashboard/billing/subscription":
+                return subscription();
+            case "GET /v1/dashboard/billing/usage":
+                return billingUsage(url);
+            default:
+                break;
+        }
+        Matcher matcher = FILE_PATH.matcher(path);
+        if (matcher.matches()) {
+            StoredFile file = files.get(matcher.group(1));
+            if (file == null) {
+                return error(404, "invalid_request_error", "No such File object: " + matcher.group(1));
+            }
+            if (matcher.group(2) != null && "GET".equals(method)) {
+                return fileContent(file, request.getHeader("Range"), disconnect);
+            }
+            if ("GET".equals(method)) {
+                return json(file.metadata);
+            }
+            if ("DELETE".equals(method)) {
+                files.remove(file.id);
+                return json(objectMapper.createObjectNode().put("id", file.id).put("object", "file").put("deleted", true));
+            }
+        }
+        notFound.increment();
+        return error(404, "invalid_request_error", "Unknown request URL: " + method + " " + path);
+    }
+
+    private MockResponse chatCompletion(RecordedRequest request, StubScenario scenario, boolean disconnect) throws IOException {
+        JsonNode body = readJson(request);
+        String model = body.path("model").asText("gpt-3.5-turbo");
+        String id = "chatcmpl-stub-" + ids.incrementAndGet();
+        long created = System.currentTimeMillis() / 1000;
+        int tokens = Math.max(0, scenario.getCompletionTokens());
+        int promptTokens = body.path("messages").toString().length() / 4;
+        if (!body.path("stream").asBoolean(false)) {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < tokens; i++) {
+                content.append(token(i));
+            }
+            ObjectNode response = objectMapper.createObjectNode()
+                    .put("id", id).put("object", "chat.completion").put("created", created).put("model", model);
+            ObjectNode choice = response.putArray("choices").addObject().put("index", 0);
+            choice.putObject("message").put("role", "assistant").put("content", content.toString());
+            choice.put("finish_reason", "stop");
+            usage(response, promptTokens, tokens);
+            return json(response);
+        }
+        Buffer sse = new Buffer();
+        sse.writeUtf8("data: ").writeUtf8(objectMapper.writeValueAsString(chunk(id, created, model, "role", "assistant", null))).writeUtf8("\n\n");
+        for (int i = 0; i < tokens; i++) {
+            sse.writeUtf8("data: ").writeUtf8(objectMapper.writeValueAsString(chunk(id, created, model, "content", token(i), null))).writeUtf8("\n\n");
+        }
+        sse.writeUtf8("data: ").writeUtf8(objectMapper.writeValueAsString(chunk(id, created, model, null, null, "stop"))).writeUtf8("\n\n");
+        sse.writeUtf8("data: [DONE]\n\n");
+        MockResponse response = new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setHeader("Cache-Control", "no-cache");
+        if (scenario.getTokensPerSecond() > 0) {
+            // 按平均数据块大小限速，使数据块大致以 tokensPerSecond 的速率到达
+            long bytesPerChunk = Math.max(1, sse.size() / (tokens + 3));
+            response.throttleBody(bytesPerChunk, (long) (1_000_000_000L / scenario.getTokensPerSecond()), TimeUnit.NANOSECONDS);
+        }
+        response.setBody(sse);
+        if (disconnect) {
+            disconnects.increment();
+            response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        }
+        return response;
+    }
+
+    private ObjectNode chunk(String id, long created, String model, String field, String value, String finishReason) {
+        ObjectNode chunk = objectMapper.createObjectNode()
+                .put("id", id).put("object", "chat.completion.chunk").put("created", created).put("model", model);
+        ObjectNode choice = chunk.putArray("choices").addObject().put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (field != null) {
+            delta.put(field, value);
+        }
+        choice.put("finish_reason", finishReason);
+        return chunk;
+    }
+
+    private MockResponse edit(RecordedRequest request, StubScenario scenario) throws IOException {
+        JsonNode body = readJson(request);
+        ObjectNode response = objectMapper.createObjectNode()
+                .put("id", "edit-stub-" + ids.incrementAndGet()).put("object", "edit")
+                .put("model", body.path("model").asText("text-davinci-edit-001"))
+                .put("created", System.currentTimeMillis() / 1000);
+        response.putArray("choices").addObject().put("index", 0).put("text", body.path("input").asText("") + token(0));
+        usage(response, body.path("input").asText("").length() / 4, Math.max(1, scenario.getCompletionTokens()));
+        return json(response);
+    }
+
+    private MockResponse images(JsonNode body, HttpUrl url) throws IOException {
+        int n = Math.max(1, body.path("n").asInt(1));
+        boolean dallE3 = "dall-e-3".equals(body.path("model").asText());
+        if (dallE3 && n > 1) {
+            return error(400, "invalid_request_error", "You must provide n=1 for this model.");
+        }
+        boolean base64 = "b64_json".equals(body.path("response_format").asText("url"));
+        ObjectNode response = objectMapper.createObjectNode().put("created", System.currentTimeMillis() / 1000);
+        ArrayNode data = response.putArray("data");
+        for (int i = 0; i < n; i++) {
+            ObjectNode item = data.addObject();
+            if (base64) {
+                item.put("b64_json", Base64.getEncoder().encodeToString(PNG));
+            } else {
+                item.put("url", url.resolve("/stub/images/img-" + ids.incrementAndGet() + ".png").toString());
+            }
+            if (dallE3) {
+                item.put("revised_prompt", "A detailed rendering of " + body.path("prompt").asText());
+            }
+        }
+        return json(response);
+    }
+
+    private MockResponse imageEdit(RecordedRequest request, HttpUrl url) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        Map<String, Long> uploads = readMultipart(request, fields, null);
+        if (!uploads.containsKey("image")) {
+            return error(400, "invalid_request_error", "Missing image file part");
+        }
+        ObjectNode body = objectMapper.createObjectNode();
+        fields.forEach(body::put);
+        return images(body, url);
+    }
+
+    private MockResponse embeddings(RecordedRequest request, StubScenario scenario) throws IOException {
+        JsonNode body = readJson(request);
+        JsonNode input = body.path("input");
+        int count = input.isArray() ? input.size() : 1;
+        boolean base64 = "base64".equals(body.path("encoding_format").asText("float"));
+        int dimensions = scenario.getEmbeddingDimensions();
+        ObjectNode response = objectMapper.createObjectNode().put("object", "list");
+        ArrayNode data = response.putArray("data");
+        for (int i = 0; i < count; i++) {
+            ObjectNode item = data.addObject().put("object", "embedding").put("index", i);
+            if (base64) {
+                ByteBuffer vector = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int d = 0; d < dimensions; d++) {
+                    vector.putFloat(component(i, d));
+                }
+                item.put("embedding", Base64.getEncoder().encodeToString(vector.array()));
+            } else {
+                ArrayNode embedding = item.putArray("embedding");
+                for (int d = 0; d < dimensions; d++) {
+                    embedding.add(component(i, d));
+                }
+            }
+        }
+        response.put("model", body.path("model").asText("text-embedding-ada-002"));
+        usage(response, input.toString().length() / 4, 0);
+        return json(response);
+    }
+
+    private MockResponse listFiles() {
+        ObjectNode response = objectMapper.createObjectNode().put("object", "list");
+        ArrayNode data = response.putArray("data");
+        files.values().forEach(file -> data.add(file.metadata));
+        return json(response);
+    }
+
+    private MockResponse uploadFile(RecordedRequest request) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        Buffer content = new Buffer();
+        Map<String, Long> uploads = readMultipart(request, fields, part -> content);
+        if (!uploads.containsKey("file")) {
+            return error(400, "invalid_request_error", "Missing file part");
+        }
+        String id = "file-stub-" + ids.incrementAndGet();
+        ObjectNode metadata = objectMapper.createObjectNode()
+                .put("id", id).put("object", "file").put("bytes", content.size())
+                .put("created_at", System.currentTimeMillis() / 1000)
+                .put("filename", fields.getOrDefault("filename", id))
+                .put("purpose", fields.getOrDefault("purpose", "fine-tune"))
+                .put("status", "uploaded");
+        files.put(id, new StoredFile(id, metadata, content.readByteString()));
+        return json(metadata);
+    }
+
+    private MockResponse fileContent(StoredFile file, String range, boolean disconnect) {
+        ByteString content = file.content;
+        MockResponse response = new MockResponse().setHeader("Content-Type", "application/octet-stream")
+                .setHeader("Accept-Ranges", "bytes");
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        if (matcher != null && matcher.matches()) {
+            long start = Long.parseLong(matcher.group(1));
+            long end = matcher.group(2).isEmpty() ? content.size() - 1 : Math.min(Long.parseLong(matcher.group(2)), content.size() - 1);
+            if (start >= content.size() || start > end) {
+                return new MockResponse().setResponseCode(416).setHeader("Content-Range", "bytes */" + content.size());
+            }
+            response.setResponseCode(206)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.size())
+                    .setBody(new Buffer().write(content.substring((int) start, (int) end + 1)));
+        } else {
+            response.setBody(new Buffer().write(content));
+        }
+        if (disconnect) {
+            disconnects.increment();
+            response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        }
+        return response;
+    }
+
+    private MockResponse audio(RecordedRequest request) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        Buffer audio = new Buffer();
+        Map<String, Long> uploads = readMultipart(request, fields, part -> audio);
+        Long bytes = uploads.get("file");
+        if (bytes == null) {
+            return error(400, "invalid_request_error", "Missing file part");
+        }
+        String text = "stub transcription of " + bytes + " bytes";
+        if (fields.containsKey("prompt")) {
+            text += " after: " + fields.get("prompt");
+        }
+        ObjectNode response = objectMapper.createObjectNode().put("text", text);
+        if ("verbose_json".equals(fields.get("response_format"))) {
+            // 按 WAV 文件头计算时长，返回前后两个分段
+            double duration = 0;
+            if (audio.size() >= 44 && audio.rangeEquals(0, ByteString.encodeUtf8("RIFF"))) {
+                ByteBuffer header = ByteBuffer.wrap(audio.readByteArray(44)).order(ByteOrder.LITTLE_ENDIAN);
+                duration = (double) header.getInt(40) / header.getInt(28);
+            }
+            response.put("task", "transcribe").put("language", "english").put("duration", duration);
+            ArrayNode segments = response.putArray("segments");
+            segments.addObject().put("id", 0).put("start", 0.0).put("end", duration / 2).put("text", text);
+            segments.addObject().put("id", 1).put("start", duration / 2).put("end", duration).put("text", "");
+        }
+        audio.clear();
+        return json(response);
+    }
+
+    private MockResponse subscription() {
+        long accessUntil = LocalDate.now(ZoneOffset.UTC).plusYears(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        ObjectNode response = objectMapper.createObjectNode()
+                .put("object", "billing_subscription").put("has_payment_method", true).put("canceled", false)
+                .put("access_until", accessUntil).put("soft_limit", 66667).put("hard_limit", 100000)
+                .put("system_hard_limit", 100000).put("soft_limit_usd", 80.0).put("hard_limit_usd", 120.0)
+                .put("system_hard_limit_usd", 120.0);
+        response.putObject("plan").put("title", "Pay-as-you-go").put("id", "payg");
+        return json(response);
+    }
+
+    private MockResponse billingUsage(HttpUrl url) {
+        LocalDate start = LocalDate.parse(url.queryParameter("start_date"));
+        LocalDate end = LocalDate.parse(url.queryParameter("end_date"));
+        ObjectNode response = objectMapper.createObjectNode().put("object", "list");
+        ArrayNode dailyCosts = response.putArray("daily_costs");
+        long total = 0;
+        for (LocalDate day = start; day.isBefore(end); day = day.plusDays(1)) {
+            ObjectNode dailyCost = dailyCosts.addObject().put("timestamp", day.atStartOfDay().toEpochSecond(ZoneOffset.UTC));
+            dailyCost.putArray("line_items").addObject().put("name", "GPT-3.5 Turbo").put("cost", 100);
+            total += 100;
+        }
+        response.put("total_usage", total);
+        return json(response);
+    }
+
+    private MockResponse rateLimited(StubScenario scenario) {
+        rateLimited.increment();
+        return error(429, "rate_limit_exceeded", "Rate limit reached for requests")
+                .setHeader("Retry-After", String.valueOf(scenario.getRetryAfterSeconds()));
+    }
+
+    private MockResponse serverError() {
+        serverErrors.increment();
+        return error(503, "server_error", "The server is overloaded or not ready yet.");
+    }
+
+    private MockResponse error(int code, String type, String message) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putObject("error").put("message", message).put("type", type).putNull("param").put("code", type);
+        return json(response).setResponseCode(code);
+    }
+
+    private MockResponse json(JsonNode body) {
+        try {
+            return new MockResponse().setHeader("Content-Type", "application/json")
+                    .setBody(new Buffer().write(objectMapper.writeValueAsBytes(body)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JsonNode readJson(RecordedRequest request) throws IOException {
+        return objectMapper.readTree(request.getBody().readByteArray());
+    }
+
+    /**
+     * 读取 multipart 请求体，文本部分写入 fields，文件部分只统计字节数，需要保留内容时写入 sink 提供的缓冲区。
+     * 请求体已完整缓冲，直接按边界查找各部分，每个部分只扫描一次。
+     *
+     * @return 返回文件部分的字段名与字节数。
+     */
+    private Map<String, Long> readMultipart(RecordedRequest request, Map<String, String> fields, Function<String, Buffer> sink) throws IOException {
+        String contentType = request.getHeader("Content-Type");
+        if (contentType == null || !contentType.startsWith("multipart/")) {
+            throw new IOException("Expected multipart request but was " + contentType);
+        }
+        String boundary = MediaType.get(contentType).parameter("boundary");
+        ByteString delimiter = ByteString.encodeUtf8("\r\n--" + boundary);
+        Buffer body = request.getBody();
+        long first = body.indexOf(delimiter.substring(2));
+        if (first == -1) {
+            throw new IOException("Missing multipart boundary");
+        }
+        body.skip(first + delimiter.size() - 2);
+        Map<String, Long> uploads = new HashMap<>();
+        while (!body.rangeEquals(0, DASH_DASH)) {
+            body.skip(CRLF.size());
+            long headersEnd = body.indexOf(CRLF_CRLF);
+            long partEnd = headersEnd == -1 ? -1 : body.indexOf(delimiter, headersEnd);
+            if (partEnd == -1) {
+                throw new IOException("Truncated multipart body");
+            }
+            String headers = body.readUtf8(headersEnd);
+            body.skip(CRLF_CRLF.size());
+            long length = partEnd - headersEnd - CRLF_CRLF.size();
+            Matcher name = PART_NAME.matcher(headers);
+            Matcher filename = PART_FILENAME.matcher(headers);
+            if (!name.find()) {
+                body.skip(length);
+            } else if (filename.find()) {
+                Buffer target = sink == null ? null : sink.apply(name.group(1));
+                if (target == null) {
+                    body.skip(length);
+                } else {
+                    target.write(body, length);
+                }
+                uploads.put(name.group(1), length);
+                fields.put("filename", filename.group(1));
+            } else {
+                fields.put(name.group(1), body.readUtf8(length));
+            }
+            body.skip(delimiter.size());
+        }
+        return uploads;
+    }
+
+    private void usage(ObjectNode response, int promptTokens, int completionTokens) {
+        response.putObject("usage").put("prompt_tokens", promptTokens).put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private static String token(int i) {
+        return "tok" + i + " ";
+    }
+
+    private static float component(int index, int dimension) {
+        return (float) Math.sin(index * 31 + dimension) * 0.1f;
+    }
+
+    private enum Fault {
+        NONE, RATE_LIMITED, SERVER_ERROR, DISCONNECT
+    }
+
+    private static final class StoredFile {
+        private final String id;
+        private final ObjectNode metadata;
+        private final ByteString content;
+
+        private StoredFile(String id, ObjectNode metadata, ByteString content) {
+            this.id = id;
+            this.metadata = metadata;
+            this.content = content;
+        }
+    }
+}
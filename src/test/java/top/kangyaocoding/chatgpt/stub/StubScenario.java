@@ -0,0 +1,50 @@
+package top.kangyaocoding.chatgpt.stub;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Author K·Herbert
+ * @Description 桩服务器的行为脚本，包括延迟分布、流式输出速率和故障注入比例。
+ * 故障按请求独立采样：先判断是否处于 5xx 突发中，再依次判断 429、新的 5xx 突发和流中断。
+ * @Date 2024-06-24 10:05
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class StubScenario {
+
+    /* 首字节延迟分布 */
+    @Builder.Default
+    private LatencyDistribution latency = LatencyDistribution.none();
+    /* 每次聊天回复生成的 token 数，流式响应中每个 token 对应一个数据块 */
+    @Builder.Default
+    private int completionTokens = 32;
+    /* 流式响应的输出速率（token/秒），0 表示不限速 */
+    @Builder.Default
+    private double tokensPerSecond = 0;
+    /* 嵌入向量维度 */
+    @Builder.Default
+    private int embeddingDimensions = 1536;
+    /* 返回 429 的概率 */
+    @Builder.Default
+    private double rateLimitRate = 0;
+    /* 429 响应 Retry-After 头部的秒数 */
+    @Builder.Default
+    private int retryAfterSeconds = 1;
+    /* 开始一次 5xx 突发的概率 */
+    @Builder.Default
+    private double serverErrorRate = 0;
+    /* 每次 5xx 突发连续失败的请求数 */
+    @Builder.Default
+    private int serverErrorBurst = 1;
+    /* 流式响应在输出途中断开连接的概率 */
+    @Builder.Default
+    private double disconnectRate = 0;
+    /* 随机数种子，相同脚本与请求顺序下故障序列可复现 */
+    @Builder.Default
+    private long seed = 42;
+}
@@ -0,0 +1,27 @@
+package top.kangyaocoding.chatgpt.stub;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @Author K·Herbert
+ * @Description 桩服务器的统计快照。
+ * @Date 2024-06-24 10:10
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class StubServerStats {
+
+    /* 收到的请求总数 */
+    private final long requests;
+    /* 返回 429 的次数 */
+    private final long rateLimited;
+    /* 返回 5xx 的次数 */
+    private final long serverErrors;
+    /* 流式响应中途断开的次数 */
+    private final long disconnects;
+    /* 未匹配任何路由的请求数 */
+    private final long notFound;
+}
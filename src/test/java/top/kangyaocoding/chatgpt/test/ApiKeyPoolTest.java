@@ -0,0 +1,231 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.pool.ApiEndpoint;
+import top.kangyaocoding.chatgpt.pool.ApiKeyPool;
+import top.kangyaocoding.chatgpt.session.Configuration;
+import top.kangyaocoding.chatgpt.session.OpenAiSession;
+import top.kangyaocoding.chatgpt.session.defaults.DefaultOpenAiSessionFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Author K·Herbert
+ * @Description 多密钥连接池测试，覆盖各类错误的摘除与冷却恢复、全部摘除时的兜底选择、按剩余配额加权和 SSE 流的路由。
+ * 加权选择是随机的，断言只检查概率极高的结果。
+ * @Date 2024-06-15 11:00
+ */
+public class ApiKeyPoolTest {
+
+    private static final int SAMPLES = 2_000;
+
+    private final ApiEndpoint first = new ApiEndpoint("https://a.example.com", "sk-first");
+    private final ApiEndpoint second = new ApiEndpoint("https://b.example.com/", "sk-second");
+
+    @Test
+    public void test_authFailureEjects() {
+        ApiKeyPool pool = pool(Duration.ofMinutes(5), Duration.ofMinutes(5), Duration.ofMinutes(5));
+        pool.record(first, response(401));
+        Assert.assertEquals(1, pool.availableCount());
+        for (int i = 0; i < SAMPLES; i++) {
+            Assert.assertSame(second, pool.select());
+        }
+        pool.record(second, response(403));
+        Assert.assertEquals(0, pool.availableCount());
+    }
+
+    @Test
+    public void test_retryAfterCooldown() throws Exception {
+        ApiKeyPool pool = pool(Duration.ofMinutes(5), Duration.ofMinutes(5), Duration.ofMinutes(5));
+        // Retry-After 优先于默认的限流冷却时间
+        pool.record(first, response(429).newBuilder().header("Retry-After", "0.05").build());
+        Assert.assertEquals(1, pool.availableCount());
+        Thread.sleep(100);
+        Assert.assertEquals(2, pool.availableCount());
+    }
+
+    @Test
+    public void test_serverErrorCooldown() throws Exception {
+        ApiKeyPool pool = pool(Duration.ofMinutes(5), Duration.ofMinutes(5), Duration.ofMillis(50));
+        pool.record(first, response(503));
+        pool.recordFailure(second);
+        Assert.assertEquals(0, pool.availableCount());
+        Thread.sleep(100);
+        Assert.assertEquals(2, pool.availableCount());
+        // 成功响应立即解除摘除
+        pool.recordFailure(first);
+        pool.record(first, response(200));
+        Assert.assertEquals(2, pool.availableCount());
+    }
+
+    @Test
+    public void test_allEjectedPicksEarliestRecovery() {
+        ApiKeyPool pool = pool(Duration.ofMinutes(5), Duration.ofSeconds(10), Duration.ofSeconds(5));
+        pool.record(first, response(401));
+        pool.record(second, response(500));
+        Assert.assertEquals(0, pool.availableCount());
+        Assert.assertSame(second, pool.select());
+    }
+
+    @Test
+    public void test_quotaWeighting() {
+        ApiKeyPool pool = pool(Duration.ofMinutes(5), Duration.ofSeconds(10), Duration.ofSeconds(5));
+        // first 的 token 配额几乎耗尽，请求数配额充足时取较紧的一个
+        pool.record(first, response(200).newBuilder()
+                .header("x-ratelimit-remaining-requests", "499")
+                .header("x-ratelimit-limit-requests", "500")
+                .header("x-ratelimit-remaining-tokens", "0")
+                .header("x-ratelimit-limit-tokens", "30000")
+                .build());
+        int firstCount = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (pool.select() == first) {
+                firstCount++;
+            }
+        }
+        // 剩余配额为 0 时只保留最低权重，仍有机会被选中以便恢复
+        Assert.assertTrue(firstCount < SAMPLES / 20);
+    }
+
+    @Test
+    public void test_staticWeight() {
+        ApiEndpoint heavy = new ApiEndpoint("https://a.example.com", "sk-heavy", 3);
+        ApiKeyPool pool = new ApiKeyPool(Arrays.asList(heavy, second));
+        int heavyCount = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (pool.select() == heavy) {
+                heavyCount++;
+            }
+        }
+        // 期望约 75%
+        Assert.assertTrue(heavyCount > SAMPLES * 0.65 && heavyCount < SAMPLES * 0.85);
+    }
+
+    @Test
+    public void test_invalidArguments() {
+        try {
+            new ApiKeyPool(Collections.emptyList());
+            Assert.fail("empty endpoints must be rejected");
+        } catch (IllegalArgumentException expected) {
+            // 预期异常
+        }
+        try {
+            new ApiEndpoint("https://a.example.com", "sk-zero", 0);
+            Assert.fail("non-positive weight must be rejected");
+        } catch (IllegalArgumentException expected) {
+            // 预期异常
+        }
+        Assert.assertEquals("https://a.example.com/", first.getApiHost());
+        Assert.assertEquals("https://a.example.com/ (...irst)", first.toString());
+    }
+
+    @Test
+    public void test_sseStreamUsesPool() throws Exception {
+        MockWebServer defaultServer = new MockWebServer();
+        MockWebServer pooledServer = new MockWebServer();
+        try {
+            defaultServer.start();
+            pooledServer.start();
+            for (int i = 0; i < 2; i++) {
+                defaultServer.enqueue(streamResponse());
+                pooledServer.enqueue(streamResponse());
+            }
+            Configuration configuration = new Configuration();
+            configuration.setApiHost(defaultServer.url("/").toString());
+            configuration.setApiKey("default-key");
+            ApiEndpoint pooled = new ApiEndpoint(pooledServer.url("/").toString(), "sk-pooled");
+            configuration.setApiKeyPool(new ApiKeyPool(Collections.singletonList(pooled)));
+            DefaultOpenAiSessionFactory factory = new DefaultOpenAiSessionFactory(configuration, null);
+            try {
+                OpenAiSession openAiSession = factory.openAiSession();
+                // 未指定密钥的流式请求经连接池改写主机与密钥
+                awaitStream(listener -> openAiSession.chatCompletions(streamRequest(), listener));
+                Assert.assertEquals(0, defaultServer.getRequestCount());
+                Assert.assertEquals(1, pooledServer.getRequestCount());
+                RecordedRequest routed = pooledServer.takeRequest();
+                Assert.assertEquals("Bearer sk-pooled", routed.getHeader("Authorization"));
+                Assert.assertNull(routed.getHeader("apiKey"));
+                // 调用方显式传入的其他密钥保持不变
+                awaitStream(listener -> openAiSession.chatCompletions(Constants.NULL, "sk-user", streamRequest(), listener));
+                Assert.assertEquals(1, defaultServer.getRequestCount());
+                Assert.assertEquals("Bearer sk-user", defaultServer.takeRequest().getHeader("Authorization"));
+            } finally {
+                factory.close();
+            }
+        } finally {
+            defaultServer.shutdown();
+            pooledServer.shutdown();
+        }
+    }
+
+    private ApiKeyPool pool(Duration authCooldown, Duration rateLimitCooldown, Duration serverErrorCooldown) {
+        return new ApiKeyPool(Arrays.asList(first, second), authCooldown, rateLimitCooldown, serverErrorCooldown);
+    }
+
+    private static MockResponse streamResponse() {
+        return new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"hi\"}}]}\n\ndata: [DONE]\n\n");
+    }
+
+    private static ChatCompletionRequest streamRequest() {
+        return ChatCompletionRequest.builder()
+                .stream(true)
+                .messages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content("1+1=").build()))
+                .build();
+    }
+
+    /**
+     * 发起流式请求并等待结束。
+     */
+    private static void awaitStream(StreamCall call) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        call.start(new EventSourceListener() {
+            @Override
+            public void onClosed(@NotNull EventSource eventSource) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+                failure.set(t != null ? t : new IllegalStateException("http status " + (response == null ? -1 : response.code())));
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertNull(failure.get());
+    }
+
+    private interface StreamCall {
+        void start(EventSourceListener listener) throws Exception;
+    }
+
+    private static Response response(int code) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("https://a.example.com/v1/chat/completions").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("status " + code)
+                .build();
+    }
+}
@@ -6,16 +6,26 @@ import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
 import org.junit.Before;
 import org.junit.Test;
+import top.kangyaocoding.chatgpt.batch.EmbeddingBatchOptions;
+import top.kangyaocoding.chatgpt.batch.EmbeddingBatcher;
 import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatChoice;
 import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
 import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
 import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.session.AsyncOpenAiSession;
 import top.kangyaocoding.chatgpt.session.Configuration;
 import top.kangyaocoding.chatgpt.session.OpenAiSession;
 import top.kangyaocoding.chatgpt.session.OpenAiSessionFactory;
 import top.kangyaocoding.chatgpt.session.defaults.DefaultOpenAiSessionFactory;
+import top.kangyaocoding.chatgpt.stream.ChatChoiceIterator;
+import top.kangyaocoding.chatgpt.stream.ChatDelta;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -27,6 +37,7 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class ApiTest {
     private OpenAiSession openAiSession;
+    private AsyncOpenAiSession asyncOpenAiSession;
 
     @Before
     public void test_OpenAiSessionFactory() {
@@ -41,6 +52,7 @@ public class ApiTest {
         configuration.setApiKey(apiKey);
         OpenAiSessionFactory factory = new DefaultOpenAiSessionFactory(configuration, null);
         this.openAiSession = factory.openAiSession();
+        this.asyncOpenAiSession = factory.asyncOpenAiSession();
     }
 
     @Test
@@ -57,6 +69,27 @@ public class ApiTest {
         log.info(String.valueOf(chatCompletionResponse));
     }
 
+    /**
+     * 异步会话测试，并发发起多个请求，等待期间不占用调用线程。
+     */
+    @Test
+    public void test_asyncCompletions() {
+        List<CompletableFuture<ChatCompletionResponse>> futures = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                    .messages(Collections.singletonList(Message.builder()
+                            .role(Constants.Role.USER)
+                            .content(i + "+1=")
+                            .build()))
+                    .model(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode())
+                    .build();
+            futures.add(asyncOpenAiSession.completions(chatCompletionRequest));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        futures.forEach(future -> log.info(String.valueOf(future.join())));
+    }
+
     /**
      * 使用流式 Stream 模型进行聊天完成测试。
      * 该方法构建一个聊天完成请求，发送给OpenAI，并监听事件响应。
@@ -123,4 +156,114 @@ public class ApiTest {
         log.info("完整的测试结果: {}", responseBuilder.toString());
     }
 
+    /**
+     * 以阻塞迭代器的方式消费流式结果，适合在虚拟线程上运行。
+     */
+    @Test
+    public void test_chatCompletionsIterator() throws Exception {
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .messages(Collections.singletonList(Message.builder()
+                        .role(Constants.Role.USER)
+                        .content("写一首关于春天的短诗")
+                        .build()))
+                .model(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode())
+                .stream(true)
+                .build();
+
+        StringBuilder responseBuilder = new StringBuilder();
+        try (ChatChoiceIterator iterator = openAiSession.chatCompletionsIterator(chatCompletionRequest)) {
+            while (iterator.hasNext()) {
+                ChatChoice chatChoice = iterator.next();
+                if (chatChoice.getDelta() != null && chatChoice.getDelta().getContent() != null) {
+                    responseBuilder.append(chatChoice.getDelta().getContent());
+                }
+            }
+        }
+
+        log.info("完整的测试结果: {}", responseBuilder);
+    }
+
+    /**
+     * 以支持背压的 Flowable 消费流式结果，每次只向上游请求一条增量数据。
+     */
+    @Test
+    public void test_chatCompletionsFlowable() throws Exception {
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .messages(Collections.singletonList(Message.builder()
+                        .role(Constants.Role.USER)
+                        .content("写一首关于夏天的短诗")
+                        .build()))
+                .model(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode())
+                .stream(true)
+                .build();
+
+        String content = openAiSession.chatCompletionsFlowable(chatCompletionRequest)
+                .rebatchRequests(1)
+                .filter(response -> response.getChoices() != null && !response.getChoices().isEmpty())
+                .map(response -> response.getChoices().get(0).getDelta())
+                .filter(delta -> delta.getContent() != null)
+                .map(Message::getContent)
+                .reduce(new StringBuilder(), StringBuilder::append)
+                .blockingGet()
+                .toString();
+
+        log.info("完整的测试结果: {}", content);
+    }
+
+    /**
+     * 以低分配的方式消费流式结果，增量内容直接从网络缓冲区解析。
+     */
+    @Test
+    public void test_chatCompletionsDeltas() throws Exception {
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .messages(Collections.singletonList(Message.builder()
+                        .role(Constants.Role.USER)
+                        .content("写一首关于秋天的短诗")
+                        .build()))
+                .model(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode())
+                .stream(true)
+                .build();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        StringBuilder responseBuilder = new StringBuilder();
+        openAiSession.chatCompletionsDeltas(chatCompletionRequest, new ChatDeltaHandler() {
+            @Override
+            public void onDelta(ChatDelta delta) {
+                delta.appendContentTo(responseBuilder);
+            }
+
+            @Override
+            public void onComplete() {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                log.error("流式结果读取失败", throwable);
+                latch.countDown();
+            }
+        });
+
+        if (!latch.await(1, TimeUnit.MINUTES)) {
+            log.warn("等待超时，测试未能在1分钟内完成");
+        }
+        log.info("完整的测试结果: {}", responseBuilder);
+    }
+
+    /**
+     * 测试向量微批处理：多条单输入请求合并为一次调用，重复输入只发送一次
+     */
+    @Test
+    public void test_embeddingBatcher() throws Exception {
+        try (EmbeddingBatcher embeddingBatcher = new EmbeddingBatcher(asyncOpenAiSession, EmbeddingBatchOptions.builder().build())) {
+            List<CompletableFuture<float[]>> futures = new ArrayList<>();
+            for (String input : new String[]{"苹果", "香蕉", "苹果", "橙子"}) {
+                futures.add(embeddingBatcher.embed(input));
+            }
+            for (CompletableFuture<float[]> future : futures) {
+                log.info("向量维度: {}", future.get(1, TimeUnit.MINUTES).length);
+            }
+        }
+    }
+
 }
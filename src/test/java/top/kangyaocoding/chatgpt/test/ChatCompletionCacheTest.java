@@ -0,0 +1,271 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.cache.ChatCompletionCache;
+import top.kangyaocoding.chatgpt.cache.ChatCompletionCacheOptions;
+import top.kangyaocoding.chatgpt.cache.ChatCompletionCacheStore;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatChoice;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author K·Herbert
+ * @Description 聊天响应缓存测试，覆盖缓存键的规范化、内存层与第二层的过期时间以及流式请求的回放与记录。
+ * @Date 2024-06-19 10:30
+ */
+public class ChatCompletionCacheTest {
+
+    private static final HttpUrl HOST = HttpUrl.get("https://api.openai.com/");
+    private static final String API_KEY = "sk-test";
+
+    @Test
+    public void test_keyCanonicalization() {
+        ChatCompletionCache cache = new ChatCompletionCache(ChatCompletionCacheOptions.builder().build());
+        ChatCompletionRequest first = request("1+1=");
+        ChatCompletionRequest second = request("1+1=");
+        // logit_bias 的插入顺序、stream 与 user 不影响缓存键
+        Map<Integer, Integer> bias = new LinkedHashMap<>();
+        bias.put(2, -100);
+        bias.put(1, 5);
+        first.setLogitBias(bias);
+        second.setLogitBias(new HashMap<>(Map.of(1, 5, 2, -100)));
+        second.setStream(true);
+        second.setUser("someone");
+        String key = cache.key(HOST, API_KEY, first);
+        Assert.assertEquals(64, key.length());
+        Assert.assertEquals(key, cache.key(HOST, API_KEY, second));
+        // 路径不参与缓存键，只取主机与端口
+        Assert.assertEquals(key, cache.key(HOST.resolve("/v1/chat/completions"), API_KEY, second));
+
+        // 主机、端口、密钥和影响输出的参数都会改变缓存键
+        Assert.assertNotEquals(key, cache.key(HttpUrl.get("https://proxy.example.com/"), API_KEY, first));
+        Assert.assertNotEquals(key, cache.key(HttpUrl.get("https://api.openai.com:8443/"), API_KEY, first));
+        Assert.assertNotEquals(key, cache.key(HOST, "sk-other", first));
+        Assert.assertNotEquals(key, cache.key(HOST, null, first));
+        second.setMaxTokens(17);
+        Assert.assertNotEquals(key, cache.key(HOST, API_KEY, second));
+
+        // 默认只缓存 temperature 为 0 的请求
+        ChatCompletionRequest sampled = request("1+1=");
+        sampled.setTemperature(0.7);
+        Assert.assertNull(cache.key(HOST, API_KEY, sampled));
+        Assert.assertEquals(1, cache.stats().getBypassCount());
+    }
+
+    @Test
+    public void test_memoryTtl() throws Exception {
+        ChatCompletionCache cache = new ChatCompletionCache(ChatCompletionCacheOptions.builder().ttl(Duration.ofMillis(50)).build());
+        String key = cache.key(HOST, API_KEY, request("ttl"));
+        cache.put(key, response("two", "stop"));
+        ChatCompletionResponse first = cache.get(key);
+        ChatCompletionResponse second = cache.get(key);
+        Assert.assertEquals("two", first.getChoices().get(0).getMessage().getContent());
+        // 每次命中返回新的对象
+        Assert.assertNotSame(first, second);
+        Thread.sleep(100);
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(0, cache.stats().getMemoryEntries());
+        Assert.assertEquals(2, cache.stats().getHitCount());
+        Assert.assertEquals(1, cache.stats().getMissCount());
+
+        // 未正常结束的响应不缓存
+        cache.put(key, response("partial", null));
+        Assert.assertNull(cache.get(key));
+    }
+
+    @Test
+    public void test_secondTierKeepsExpiry() throws Exception {
+        MemoryStore store = new MemoryStore();
+        ChatCompletionCacheOptions options = ChatCompletionCacheOptions.builder().ttl(Duration.ofHours(1)).secondTier(store).build();
+        ChatCompletionCache writer = new ChatCompletionCache(options);
+        String key = writer.key(HOST, API_KEY, request("tier"));
+        writer.put(key, response("two", "stop"));
+        Assert.assertTrue(store.entries.get(key).getExpiresAtMillis() > System.currentTimeMillis());
+
+        // 第二层中的条目即将过期，提升到新实例的内存层后仍按原过期时间失效
+        byte[] value = store.entries.get(key).getValue();
+        store.entries.put(key, new ChatCompletionCacheStore.Entry(value, System.currentTimeMillis() + 50));
+        ChatCompletionCache reader = new ChatCompletionCache(options);
+        Assert.assertNotNull(reader.get(key));
+        Assert.assertEquals(1, reader.stats().getMemoryEntries());
+        Thread.sleep(100);
+        Assert.assertNull(reader.get(key));
+    }
+
+    @Test
+    public void test_streamReplay() {
+        ChatCompletionCache cache = new ChatCompletionCache(ChatCompletionCacheOptions.builder().replayChunkChars(4).build());
+        ChatCompletionRequest chatCompletionRequest = request("count");
+        chatCompletionRequest.setStream(true);
+        Request request = streamRequest(chatCompletionRequest, API_KEY);
+        cache.put(cache.key(request.url(), API_KEY, chatCompletionRequest), response("one two three", "stop"));
+
+        RecordingListener listener = new RecordingListener();
+        EventSource.Factory factory = cache.eventSourceFactory((r, l) -> {
+            throw new AssertionError("a cache hit must not reach the network");
+        }, Runnable::run);
+        factory.newEventSource(request, listener);
+        Assert.assertTrue(listener.opened);
+        Assert.assertTrue(listener.closed);
+        Assert.assertEquals("[DONE]", listener.events.get(listener.events.size() - 1));
+        // "one two three" 按 4 个字符切分为 4 个数据块，另有一个携带结束原因的数据块
+        Assert.assertEquals(6, listener.events.size());
+        Assert.assertEquals("one two three", listener.content());
+        Assert.assertEquals("stop", listener.finishReason);
+        Assert.assertEquals(Constants.Role.ASSISTANT.getCode(), listener.role);
+
+        // 另一个密钥看不到该条目
+        List<Request> forwarded = new ArrayList<>();
+        cache.eventSourceFactory((r, l) -> {
+            forwarded.add(r);
+            return null;
+        }, Runnable::run).newEventSource(streamRequest(chatCompletionRequest, "sk-other"), new RecordingListener());
+        Assert.assertEquals(1, forwarded.size());
+    }
+
+    @Test
+    public void test_streamRecording() {
+        ChatCompletionCache cache = new ChatCompletionCache(ChatCompletionCacheOptions.builder().build());
+        ChatCompletionRequest chatCompletionRequest = request("record");
+        chatCompletionRequest.setStream(true);
+        Request request = streamRequest(chatCompletionRequest, API_KEY);
+        EventSource.Factory factory = cache.eventSourceFactory((r, l) -> {
+            l.onOpen(null, null);
+            l.onEvent(null, null, null, "{\"id\":\"c1\",\"model\":\"gpt-4o\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"he\"}}]}");
+            l.onEvent(null, null, null, "{\"id\":\"c1\",\"model\":\"gpt-4o\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"llo\"}}]}");
+            l.onEvent(null, null, null, "{\"id\":\"c1\",\"model\":\"gpt-4o\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}");
+            l.onEvent(null, null, null, "[DONE]");
+            l.onClosed(null);
+            return null;
+        }, Runnable::run);
+        RecordingListener listener = new RecordingListener();
+        factory.newEventSource(request, listener);
+        Assert.assertEquals("hello", listener.content());
+
+        // 流式结果写入缓存后，非流式请求同样命中
+        ChatCompletionRequest plain = request("record");
+        ChatCompletionResponse cached = cache.get(cache.key(HOST, API_KEY, plain));
+        Assert.assertNotNull(cached);
+        Assert.assertEquals("chat.completion", cached.getObject());
+        Assert.assertEquals("hello", cached.getChoices().get(0).getMessage().getContent());
+        Assert.assertEquals("stop", cached.getChoices().get(0).getFinishReason());
+    }
+
+    private static ChatCompletionRequest request(String content) {
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .model(ChatCompletionRequest.Model.GPT_4O.getCode())
+                .messages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content(content).build()))
+                .build();
+        chatCompletionRequest.setTemperature(0);
+        return chatCompletionRequest;
+    }
+
+    private static Request streamRequest(ChatCompletionRequest chatCompletionRequest, String apiKey) {
+        return new Request.Builder()
+                .url(HOST.resolve("v1/chat/completions"))
+                .addHeader("apiKey", apiKey)
+                .post(OpenAiJson.requestBody(chatCompletionRequest))
+                .build();
+    }
+
+    private static ChatCompletionResponse response(String content, String finishReason) {
+        Message message = new Message();
+        message.setRole(Constants.Role.ASSISTANT.getCode());
+        message.setContent(content);
+        ChatChoice chatChoice = new ChatChoice();
+        chatChoice.setIndex(0);
+        chatChoice.setMessage(message);
+        chatChoice.setFinishReason(finishReason);
+        ChatCompletionResponse chatCompletionResponse = new ChatCompletionResponse();
+        chatCompletionResponse.setId("chatcmpl-test");
+        chatCompletionResponse.setModel(ChatCompletionRequest.Model.GPT_4O.getCode());
+        chatCompletionResponse.setChoices(Collections.singletonList(chatChoice));
+        return chatCompletionResponse;
+    }
+
+    /**
+     * 只保存在内存中的第二层存储，不自行判断过期。
+     */
+    private static final class MemoryStore implements ChatCompletionCacheStore {
+
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+        @Override
+        public Entry get(String key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public void put(String key, byte[] value, long expiresAtMillis) {
+            entries.put(key, new Entry(value, expiresAtMillis));
+        }
+    }
+
+    /**
+     * 记录回调并解析增量数据的监听器。
+     */
+    private static final class RecordingListener extends EventSourceListener {
+
+        private final List<String> events = new ArrayList<>();
+        private final StringBuilder content = new StringBuilder();
+        private boolean opened;
+        private boolean closed;
+        private String role;
+        private String finishReason;
+
+        @Override
+        public void onOpen(@NotNull EventSource eventSource, @NotNull okhttp3.Response response) {
+            opened = true;
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            events.add(data);
+            if ("[DONE]".equals(data)) {
+                return;
+            }
+            try {
+                ChatChoice chatChoice = OpenAiJson.reader(ChatCompletionResponse.class).<ChatCompletionResponse>readValue(data).getChoices().get(0);
+                if (chatChoice.getDelta().getRole() != null) {
+                    role = chatChoice.getDelta().getRole();
+                }
+                if (chatChoice.getDelta().getContent() != null) {
+                    content.append(chatChoice.getDelta().getContent());
+                }
+                if (chatChoice.getFinishReason() != null) {
+                    finishReason = chatChoice.getFinishReason();
+                }
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            closed = true;
+        }
+
+        private String content() {
+            return content.toString();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.domain.common.Usage;
+import top.kangyaocoding.chatgpt.stream.ChatCompletionStreamReader;
+import top.kangyaocoding.chatgpt.stream.ChatDelta;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式聊天 SSE 读取器测试，覆盖 CRLF 换行、多行 data、注释与保活行、[DONE]、
+ * 末尾缺少空行的事件和中途断开的连接。数据源每次只返回少量字节，使行和事件跨越多次读取。
+ * @Date 2024-06-07 11:00
+ */
+public class ChatCompletionStreamReaderTest {
+
+    private static final String CHUNK = "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"%s\"},\"finish_reason\":null}]}";
+
+    @Test
+    public void test_lfAndDone() throws Exception {
+        List<String> received = read(source(3, "data: " + chunk("Hello") + "\n\n"
+                + "data: " + chunk(", world") + "\n\n"
+                + "data: [DONE]\n\n"
+                + "data: " + chunk("ignored") + "\n\n"));
+        Assert.assertEquals(List.of("0:Hello:null", "0:, world:null"), received);
+    }
+
+    @Test
+    public void test_crlfLineEndings() throws Exception {
+        List<String> received = read(source(2, "data: " + chunk("a") + "\r\n\r\n"
+                + "data:" + chunk("b") + "\r\n\r\n"
+                + "data: [DONE]\r\n\r\n"));
+        Assert.assertEquals(List.of("0:a:null", "0:b:null"), received);
+    }
+
+    @Test
+    public void test_multiLineData() throws Exception {
+        // 同一事件的多行 data 以换行连接，对 JSON 而言是空白
+        List<String> received = read(source(4, "data: {\"choices\":[{\"index\":1,\n"
+                + "data: \"delta\":{\"role\":\"assistant\",\"content\":\"x\"},\n"
+                + "data: \"finish_reason\":\"stop\"}]}\n\n"));
+        Assert.assertEquals(List.of("1:x:stop"), received);
+    }
+
+    @Test
+    public void test_commentsAndOtherFields() throws Exception {
+        List<String> received = read(source(1, ": keep-alive\n\n"
+                + ":\n"
+                + "event: message\n"
+                + "id: 7\n"
+                + "retry: 1000\n"
+                + "data: " + chunk("x") + "\n\n"
+                + ": ping\r\n\r\n"
+                + "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":3,\"completion_tokens\":4,\"total_tokens\":7}}\n\n"
+                + "data: [DONE]\n\n"));
+        Assert.assertEquals(List.of("0:x:null", "usage:7"), received);
+    }
+
+    @Test
+    public void test_finalEventWithoutBlankLine() throws Exception {
+        Assert.assertEquals(List.of("0:a:null", "0:b:null"), read(source(5, "data: " + chunk("a") + "\n\n"
+                + "data: " + chunk("b") + "\n")));
+        // 最后一行也没有换行符
+        Assert.assertEquals(List.of("0:c:null"), read(source(5, "data: " + chunk("c"))));
+    }
+
+    @Test
+    public void test_truncatedEvent() {
+        // 数据源在事件中途正常结束，未完成的数据块作为解析错误抛出，不会当作成功
+        List<String> received = new ArrayList<>();
+        try {
+            new ChatCompletionStreamReader(source(3, "data: " + chunk("a") + "\n\ndata: {\"choices\":[{\"index\":0,\"del"), handler(received)).read();
+            Assert.fail("a truncated chunk must fail");
+        } catch (IOException expected) {
+            Assert.assertEquals(List.of("0:a:null"), received);
+        }
+    }
+
+    @Test
+    public void test_connectionReset() {
+        List<String> received = new ArrayList<>();
+        Source failing = new ChunkedSource(3, "data: " + chunk("a") + "\n\ndata: " + chunk("b"), true);
+        try {
+            new ChatCompletionStreamReader(Okio.buffer(failing), handler(received)).read();
+            Assert.fail("a reset connection must fail");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected instanceof SocketException);
+            Assert.assertEquals(List.of("0:a:null"), received);
+        }
+    }
+
+    private static String chunk(String content) {
+        return String.format(CHUNK, content);
+    }
+
+    private static BufferedSource source(int chunkSize, String content) {
+        return Okio.buffer(new ChunkedSource(chunkSize, content, false));
+    }
+
+    private static List<String> read(BufferedSource source) throws IOException {
+        List<String> received = new ArrayList<>();
+        new ChatCompletionStreamReader(source, handler(received)).read();
+        return received;
+    }
+
+    private static ChatDeltaHandler handler(List<String> received) {
+        return new ChatDeltaHandler() {
+            @Override
+            public void onDelta(ChatDelta delta) {
+                received.add(delta.index() + ":" + delta.content() + ":" + delta.finishReason());
+            }
+
+            @Override
+            public void onUsage(Usage usage) {
+                received.add("usage:" + usage.getTotalTokens());
+            }
+        };
+    }
+
+    /**
+     * 每次最多返回 chunkSize 个字节的数据源，内容读完后正常结束或模拟连接被重置。
+     */
+    private static class ChunkedSource implements Source {
+
+        private final Buffer content = new Buffer();
+        private final int chunkSize;
+        private final boolean reset;
+
+        private ChunkedSource(int chunkSize, String content, boolean reset) {
+            this.chunkSize = chunkSize;
+            this.content.writeString(content, StandardCharsets.UTF_8);
+            this.reset = reset;
+        }
+
+        @Override
+        public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+            if (content.size() == 0) {
+                if (reset) {
+                    throw new SocketException("Connection reset");
+                }
+                return -1;
+            }
+            return content.read(sink, Math.min(byteCount, chunkSize));
+        }
+
+        @NotNull
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
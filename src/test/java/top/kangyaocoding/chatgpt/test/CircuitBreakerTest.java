@@ -0,0 +1,306 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreaker;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerOpenException;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerPolicy;
+import top.kangyaocoding.chatgpt.breaker.CircuitBreakerRegistry;
+import top.kangyaocoding.chatgpt.breaker.CircuitState;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.interceptor.CircuitBreakerInterceptor;
+import top.kangyaocoding.chatgpt.interceptor.RateLimitInterceptor;
+import top.kangyaocoding.chatgpt.limiter.RateLimitExceededException;
+import top.kangyaocoding.chatgpt.limiter.RateLimitMode;
+import top.kangyaocoding.chatgpt.limiter.RateLimitOptions;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description 熔断器测试，覆盖失败率与慢调用率触发熔断、半开探测的放行与结果、滑动窗口淘汰、取消的调用和客户端限流。
+ * @Date 2024-06-18 11:00
+ */
+public class CircuitBreakerTest {
+
+    private static final String MODEL = ChatCompletionRequest.Model.GPT_4O.getCode();
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+    /* 监听器收到的状态变化 */
+    private final List<String> transitions = new CopyOnWriteArrayList<>();
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void test_opensOnFailureRate() {
+        CircuitBreaker circuitBreaker = breaker(policy().build());
+        // 未达到最少调用次数时不熔断
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.record(false, FAST);
+        }
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        circuitBreaker.record(true, FAST);
+        // 2/4 达到 0.5 的阈值
+        Assert.assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+        Assert.assertEquals(List.of("test:CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    public void test_opensOnSlowCallRate() {
+        CircuitBreaker circuitBreaker = breaker(policy().build());
+        circuitBreaker.record(true, SLOW);
+        circuitBreaker.record(true, SLOW);
+        circuitBreaker.record(true, SLOW);
+        circuitBreaker.record(true, FAST);
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        // 4/5 达到 0.8 的阈值
+        circuitBreaker.record(true, SLOW);
+        Assert.assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_windowEviction() {
+        CircuitBreaker circuitBreaker = breaker(policy().windowSize(4).build());
+        circuitBreaker.record(false, FAST);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.record(true, FAST);
+        }
+        // 最早的失败被淘汰，窗口内只剩 1 次失败
+        circuitBreaker.record(false, FAST);
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        circuitBreaker.record(false, FAST);
+        Assert.assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_halfOpenProbesClose() throws Exception {
+        CircuitBreaker circuitBreaker = breaker(policy().build());
+        trip(circuitBreaker);
+        Thread.sleep(60);
+        // 半开状态只放行 halfOpenProbes 个探测
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertEquals(CircuitState.HALF_OPEN, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.record(true, FAST);
+        Assert.assertEquals(CircuitState.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.record(true, FAST);
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        Assert.assertEquals(List.of("test:CLOSED->OPEN", "test:OPEN->HALF_OPEN", "test:HALF_OPEN->CLOSED"), transitions);
+        // 关闭后重新开始统计
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.record(false, FAST);
+        }
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_halfOpenProbesReopen() throws Exception {
+        CircuitBreaker circuitBreaker = breaker(policy().build());
+        trip(circuitBreaker);
+        Thread.sleep(60);
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.record(true, FAST);
+        circuitBreaker.record(false, FAST);
+        Assert.assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void test_releaseFreesProbe() throws Exception {
+        CircuitBreaker circuitBreaker = breaker(policy().halfOpenProbes(1).build());
+        // 关闭状态下放弃调用不影响统计
+        circuitBreaker.release();
+        trip(circuitBreaker);
+        Thread.sleep(60);
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.release();
+        circuitBreaker.release();
+        Assert.assertEquals(CircuitState.HALF_OPEN, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void test_interceptorSkipsCancelledCalls() throws Exception {
+        // 首次调用需要加载 OkHttp 的类，熔断持续时间留足余量
+        CircuitBreakerRegistry registry = new CircuitBreakerRegistry(policy().halfOpenProbes(1).openDuration(Duration.ofSeconds(1)).build());
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(new CircuitBreakerInterceptor(registry))
+                .build();
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(server.getHostName() + ':' + server.getPort());
+        trip(circuitBreaker);
+        try {
+            okHttpClient.newCall(request()).execute();
+            Assert.fail("an open breaker must reject the call");
+        } catch (CircuitBreakerOpenException expected) {
+            Assert.assertEquals(0, server.getRequestCount());
+        }
+        Thread.sleep(1_100);
+
+        // 唯一的探测请求被取消：不记为失败，探测名额归还
+        server.enqueue(new MockResponse().setHeadersDelay(5, TimeUnit.SECONDS));
+        Call call = okHttpClient.newCall(request());
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+                // 测试线程不会中断
+            }
+            call.cancel();
+        }).start();
+        try {
+            call.execute();
+            Assert.fail("a cancelled call must fail");
+        } catch (IOException expected) {
+            Assert.assertTrue(call.isCanceled());
+        }
+        Assert.assertEquals(CircuitState.HALF_OPEN, circuitBreaker.getState());
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        okHttpClient.newCall(request()).execute().close();
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_throttlingKeepsBreakerClosed() throws Exception {
+        for (boolean breakerFirst : new boolean[]{false, true}) {
+            CircuitBreakerRegistry registry = new CircuitBreakerRegistry(policy().build());
+            RateLimiter rateLimiter = new RateLimiter(RateLimitOptions.builder().requestsPerMinute(1).mode(RateLimitMode.FAIL_FAST).build());
+            // 会话工厂中限流位于熔断之前；顺序相反时熔断器同样不把限流拒绝记为失败
+            OkHttpClient.Builder builder = new OkHttpClient.Builder();
+            if (breakerFirst) {
+                builder.addInterceptor(new CircuitBreakerInterceptor(registry)).addInterceptor(new RateLimitInterceptor(rateLimiter));
+            } else {
+                builder.addInterceptor(new RateLimitInterceptor(rateLimiter)).addInterceptor(new CircuitBreakerInterceptor(registry));
+            }
+            OkHttpClient okHttpClient = builder.build();
+            server.enqueue(new MockResponse().setBody("ok"));
+            okHttpClient.newCall(authorized(request())).execute().close();
+            for (int i = 0; i < 5; i++) {
+                try {
+                    okHttpClient.newCall(authorized(request())).execute().close();
+                    Assert.fail("the second request in a minute must be throttled");
+                } catch (RateLimitExceededException expected) {
+                    // 预期异常
+                }
+            }
+            Assert.assertEquals(CircuitState.CLOSED, registry.circuitBreaker(server.getHostName() + ':' + server.getPort()).getState());
+        }
+    }
+
+    @Test
+    public void test_rateLimitWaitIsNotSlowCall() throws Exception {
+        CircuitBreakerRegistry registry = new CircuitBreakerRegistry(policy()
+                .minCalls(3)
+                .slowCallRateThreshold(0.6)
+                .slowCallDuration(Duration.ofMillis(100))
+                .build());
+        RateLimiter rateLimiter = new RateLimiter(RateLimitOptions.builder().tokensPerMinute(60_000).build());
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(new RateLimitInterceptor(rateLimiter))
+                .addInterceptor(new CircuitBreakerInterceptor(registry))
+                .build();
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content("1+1=").build()))
+                .maxTokens(200)
+                .build();
+        // 先加载编码表，再耗尽 token 余额，每个请求约需等待 200 毫秒补充；首个请求建立连接可能较慢，阈值留出余量
+        RateLimiter.estimateTokens(chatCompletionRequest);
+        rateLimiter.acquire("sk-test", MODEL, 60_000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+            Request post = authorized(new Request.Builder().url(server.url("/v1/chat/completions"))
+                    .post(OpenAiJson.requestBody(chatCompletionRequest))
+                    .build());
+            okHttpClient.newCall(post).execute().close();
+        }
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(CircuitState.CLOSED, registry.circuitBreaker(server.getHostName() + ':' + server.getPort()).getState());
+    }
+
+    @Test
+    public void test_openBreakerReturnsPermit() throws Exception {
+        CircuitBreakerRegistry registry = new CircuitBreakerRegistry(policy().openDuration(Duration.ofMinutes(1)).build());
+        RateLimiter rateLimiter = new RateLimiter(RateLimitOptions.builder().requestsPerMinute(1).mode(RateLimitMode.FAIL_FAST).build());
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(new RateLimitInterceptor(rateLimiter))
+                .addInterceptor(new CircuitBreakerInterceptor(registry))
+                .build();
+        trip(registry.circuitBreaker(server.getHostName() + ':' + server.getPort()));
+        for (int i = 0; i < 3; i++) {
+            try {
+                okHttpClient.newCall(authorized(request())).execute().close();
+                Assert.fail("an open breaker must reject the call");
+            } catch (CircuitBreakerOpenException expected) {
+                // 预期异常
+            }
+        }
+        // 被熔断拒绝的请求没有占用每分钟唯一的请求配额
+        rateLimiter.acquire("sk-test", RateLimiter.modelOf(null), 0);
+    }
+
+    private CircuitBreaker breaker(CircuitBreakerPolicy policy) {
+        CircuitBreakerRegistry registry = new CircuitBreakerRegistry(policy);
+        registry.addListener((key, from, to) -> transitions.add(key + ':' + from + "->" + to));
+        return registry.circuitBreaker("test");
+    }
+
+    private static CircuitBreakerPolicy.CircuitBreakerPolicyBuilder policy() {
+        return CircuitBreakerPolicy.builder()
+                .windowSize(10)
+                .minCalls(4)
+                .failureRateThreshold(0.5)
+                .slowCallRateThreshold(0.8)
+                .slowCallDuration(Duration.ofSeconds(1))
+                .openDuration(Duration.ofMillis(50))
+                .halfOpenProbes(2);
+    }
+
+    private static void trip(CircuitBreaker circuitBreaker) {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.record(false, FAST);
+        }
+        Assert.assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+    }
+
+    private static Request authorized(Request request) {
+        return request.newBuilder().header("Authorization", "Bearer sk-test").build();
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/v1/models")).build();
+    }
+}
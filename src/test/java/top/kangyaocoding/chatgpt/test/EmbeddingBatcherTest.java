@@ -0,0 +1,151 @@
+package top.kangyaocoding.chatgpt.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.batch.EmbeddingBatchOptions;
+import top.kangyaocoding.chatgpt.batch.EmbeddingBatcher;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+import top.kangyaocoding.chatgpt.domain.embeddings.Item;
+import top.kangyaocoding.chatgpt.session.AsyncOpenAiSession;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量微批处理测试，使用只实现 embeddings 的假会话，向量的唯一分量为输入文本的哈希值。
+ * @Date 2024-06-11 10:30
+ */
+public class EmbeddingBatcherTest {
+
+    /* 假会话收到的请求 */
+    private final List<EmbeddingRequest> requests = new CopyOnWriteArrayList<>();
+    /* 为 true 时假会话按倒序返回且丢弃最后一个输入 */
+    private volatile boolean dropLast;
+
+    @Test
+    public void test_flushBySize() throws Exception {
+        try (EmbeddingBatcher embeddingBatcher = batcher(EmbeddingBatchOptions.builder().maxBatchSize(3).maxLinger(Duration.ofMinutes(1)).build())) {
+            List<CompletableFuture<float[]>> futures = new ArrayList<>();
+            for (String input : new String[]{"a", "b", "c"}) {
+                futures.add(embeddingBatcher.embed(input));
+            }
+            assertEmbeddings(futures, "a", "b", "c");
+            Assert.assertEquals(1, requests.size());
+            Assert.assertEquals(Arrays.asList("a", "b", "c"), requests.get(0).getInput());
+        }
+    }
+
+    @Test
+    public void test_flushByTokens() throws Exception {
+        EmbeddingBatchOptions options = EmbeddingBatchOptions.builder()
+                .maxBatchTokens(10)
+                .tokenEstimator(String::length)
+                .maxLinger(Duration.ofMinutes(1))
+                .build();
+        try (EmbeddingBatcher embeddingBatcher = batcher(options)) {
+            CompletableFuture<float[]> first = embeddingBatcher.embed("123456");
+            // 加入后会超过上限，先发送只含 first 的批次
+            CompletableFuture<float[]> second = embeddingBatcher.embed("12345");
+            assertEmbeddings(Collections.singletonList(first), "123456");
+            Assert.assertEquals(1, requests.size());
+            Assert.assertFalse(second.isDone());
+            // 达到上限后立即发送
+            CompletableFuture<float[]> third = embeddingBatcher.embed("abcde");
+            assertEmbeddings(Arrays.asList(second, third), "12345", "abcde");
+            Assert.assertEquals(2, requests.size());
+        }
+    }
+
+    @Test
+    public void test_flushByLinger() throws Exception {
+        try (EmbeddingBatcher embeddingBatcher = batcher(EmbeddingBatchOptions.builder().maxLinger(Duration.ofMillis(20)).build())) {
+            long start = System.nanoTime();
+            CompletableFuture<float[]> future = embeddingBatcher.embed("linger");
+            assertEmbeddings(Collections.singletonList(future), "linger");
+            Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+            Assert.assertEquals(1, requests.size());
+        }
+    }
+
+    @Test
+    public void test_dedupAndFanOut() throws Exception {
+        try (EmbeddingBatcher embeddingBatcher = batcher(EmbeddingBatchOptions.builder().maxLinger(Duration.ofMinutes(1)).build())) {
+            List<CompletableFuture<float[]>> futures = new ArrayList<>();
+            for (String input : new String[]{"苹果", "香蕉", "苹果", "橙子"}) {
+                futures.add(embeddingBatcher.embed(input));
+            }
+            embeddingBatcher.flush();
+            // 假会话倒序返回 Item，结果仍按 index 分发
+            assertEmbeddings(futures, "苹果", "香蕉", "苹果", "橙子");
+            Assert.assertEquals(Arrays.asList("苹果", "香蕉", "橙子"), requests.get(0).getInput());
+            Assert.assertSame(futures.get(0).get(), futures.get(2).get());
+        }
+    }
+
+    @Test
+    public void test_missingIndex() throws Exception {
+        dropLast = true;
+        try (EmbeddingBatcher embeddingBatcher = batcher(EmbeddingBatchOptions.builder().maxLinger(Duration.ofMinutes(1)).build())) {
+            CompletableFuture<float[]> kept = embeddingBatcher.embed("kept");
+            CompletableFuture<float[]> dropped = embeddingBatcher.embed("dropped");
+            embeddingBatcher.flush();
+            assertEmbeddings(Collections.singletonList(kept), "kept");
+            try {
+                dropped.get(5, TimeUnit.SECONDS);
+                Assert.fail("missing index must fail the waiting future");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_closed() {
+        EmbeddingBatcher embeddingBatcher = batcher(EmbeddingBatchOptions.builder().build());
+        embeddingBatcher.close();
+        embeddingBatcher.embed("late");
+    }
+
+    private EmbeddingBatcher batcher(EmbeddingBatchOptions options) {
+        AsyncOpenAiSession session = (AsyncOpenAiSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{AsyncOpenAiSession.class},
+                (proxy, method, args) -> {
+                    if (!"embeddings".equals(method.getName()) || !(args[0] instanceof EmbeddingRequest)) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    EmbeddingRequest embeddingRequest = (EmbeddingRequest) args[0];
+                    requests.add(embeddingRequest);
+                    return CompletableFuture.supplyAsync(() -> respond(embeddingRequest.getInput()));
+                });
+        return new EmbeddingBatcher(session, options);
+    }
+
+    private EmbeddingResponse respond(List<String> inputs) {
+        List<Item> data = new ArrayList<>();
+        int count = dropLast ? inputs.size() - 1 : inputs.size();
+        for (int i = count - 1; i >= 0; i--) {
+            Item item = new Item();
+            item.setIndex(i);
+            item.setEmbedding(new float[]{inputs.get(i).hashCode()});
+            data.add(item);
+        }
+        EmbeddingResponse embeddingResponse = new EmbeddingResponse();
+        embeddingResponse.setData(data);
+        return embeddingResponse;
+    }
+
+    private static void assertEmbeddings(List<CompletableFuture<float[]>> futures, String... inputs) throws Exception {
+        for (int i = 0; i < inputs.length; i++) {
+            Assert.assertArrayEquals(new float[]{inputs[i].hashCode()}, futures.get(i).get(5, TimeUnit.SECONDS), 0f);
+        }
+    }
+}
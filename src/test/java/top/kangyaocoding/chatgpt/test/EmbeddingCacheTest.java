@@ -0,0 +1,240 @@
+package top.kangyaocoding.chatgpt.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.cache.EmbeddingCache;
+import top.kangyaocoding.chatgpt.cache.EmbeddingCacheOptions;
+import top.kangyaocoding.chatgpt.cache.EmbeddingCacheStats;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.common.Usage;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+import top.kangyaocoding.chatgpt.domain.embeddings.Item;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量缓存测试，覆盖混合批次的拆分与合并、输入规范化、内存层淘汰、内存映射文件的持久化与损坏文件的恢复。
+ * 上游响应由测试构造，向量的唯一分量为输入文本的长度加上 index 的千分之一。
+ * @Date 2024-06-12 10:30
+ */
+public class EmbeddingCacheTest {
+
+    private static final String MODEL = EmbeddingRequest.Model.TEXT_EMBEDDING_3_SMALL.getCode();
+
+    @Test
+    public void test_mixedBatch() throws Exception {
+        try (EmbeddingCache embeddingCache = new EmbeddingCache(EmbeddingCacheOptions.builder().build())) {
+            fill(embeddingCache, "cached");
+            EmbeddingCache.Lookup lookup = embeddingCache.lookup(request("cached", "new", "other", "new"));
+            EmbeddingRequest missRequest = lookup.missRequest();
+            // 命中的输入不再发送，重复的未命中输入只发送一次
+            Assert.assertEquals(Arrays.asList("new", "other"), missRequest.getInput());
+            EmbeddingResponse missResponse = respond(missRequest);
+            missResponse.setUsage(usage(7));
+            EmbeddingResponse merged = lookup.merge(missResponse);
+            Assert.assertEquals(4, merged.getData().size());
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(Integer.valueOf(i), merged.getData().get(i).getIndex());
+            }
+            Assert.assertSame(merged.getData().get(1).getEmbedding(), merged.getData().get(3).getEmbedding());
+            Assert.assertEquals(7, merged.getUsage().getTotalTokens());
+
+            Assert.assertNull(embeddingCache.lookup(request("new", "other", "cached")).missRequest());
+            EmbeddingCacheStats stats = embeddingCache.stats();
+            Assert.assertEquals(4, stats.getHitCount());
+            Assert.assertEquals(4, stats.getMissCount());
+        }
+    }
+
+    @Test
+    public void test_normalization() throws Exception {
+        try (EmbeddingCache embeddingCache = new EmbeddingCache(EmbeddingCacheOptions.builder().build())) {
+            // 组合字符序列与首尾空白规范化后与预组合字符相同
+            fill(embeddingCache, "cafe\u0301");
+            Assert.assertNull(embeddingCache.lookup(request("  café\n")).missRequest());
+            // 模型或维度不同时不共享缓存
+            Assert.assertNotNull(embeddingCache.lookup(EmbeddingRequest.builder().model(EmbeddingRequest.Model.TEXT_EMBEDDING_ADA_002.getCode())
+                    .input(Collections.singletonList("café")).build()).missRequest());
+            Assert.assertNotNull(embeddingCache.lookup(EmbeddingRequest.builder().model(MODEL).dimensions(256)
+                    .input(Collections.singletonList("café")).build()).missRequest());
+        }
+    }
+
+    @Test
+    public void test_memoryEviction() throws Exception {
+        // 每个条目约 200 字节开销加 4 字节向量，容量只够两个条目
+        try (EmbeddingCache embeddingCache = new EmbeddingCache(EmbeddingCacheOptions.builder().maxMemoryBytes(450).build())) {
+            fill(embeddingCache, "a");
+            fill(embeddingCache, "b");
+            // 访问 a 使 b 成为最久未使用的条目
+            Assert.assertNull(embeddingCache.lookup(request("a")).missRequest());
+            fill(embeddingCache, "c");
+            Assert.assertEquals(2, embeddingCache.stats().getMemoryEntries());
+            Assert.assertNull(embeddingCache.lookup(request("a", "c")).missRequest());
+            Assert.assertEquals(Collections.singletonList("b"), embeddingCache.lookup(request("b")).missRequest().getInput());
+        }
+    }
+
+    @Test
+    public void test_persistence() throws Exception {
+        Path file = Files.createTempFile("embedding-cache", ".bin");
+        Files.delete(file);
+        try {
+            EmbeddingCacheOptions options = EmbeddingCacheOptions.builder().persistentFile(file).maxPersistentBytes(64 * 1024).build();
+            float[] expected;
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                fill(embeddingCache, "persisted", "second");
+                expected = embeddingCache.lookup(request("persisted")).merge(null).getData().get(0).getEmbedding();
+            }
+            // 重新打开后从映射文件重建索引，命中后提升到内存层
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                Assert.assertEquals(2, embeddingCache.stats().getPersistentEntries());
+                Assert.assertEquals(0, embeddingCache.stats().getMemoryEntries());
+                EmbeddingCache.Lookup lookup = embeddingCache.lookup(request("persisted", "second"));
+                Assert.assertNull(lookup.missRequest());
+                Assert.assertArrayEquals(expected, lookup.merge(null).getData().get(0).getEmbedding(), 0f);
+                Assert.assertEquals(2, embeddingCache.stats().getMemoryEntries());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void test_persistentFileFull() throws Exception {
+        Path file = Files.createTempFile("embedding-cache", ".bin");
+        Files.delete(file);
+        try {
+            // 文件头 16 字节，每条记录为键长度、约 90 字节的键、维度和 4 字节向量，只能容纳一条
+            EmbeddingCacheOptions options = EmbeddingCacheOptions.builder().persistentFile(file).maxPersistentBytes(160).build();
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                fill(embeddingCache, "first", "second");
+                Assert.assertEquals(1, embeddingCache.stats().getPersistentEntries());
+                Assert.assertEquals(2, embeddingCache.stats().getMemoryEntries());
+            }
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                Assert.assertEquals(Collections.singletonList("second"), embeddingCache.lookup(request("first", "second")).missRequest().getInput());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void test_truncatedFile() throws Exception {
+        Path file = Files.createTempFile("embedding-cache", ".bin");
+        Files.delete(file);
+        try {
+            EmbeddingCacheOptions options = EmbeddingCacheOptions.builder().persistentFile(file).maxPersistentBytes(64 * 1024).build();
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                fill(embeddingCache, "first", "second");
+            }
+            // 文件头中的末尾位置超出截断后的文件大小，重新初始化而不是越界读取
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(100);
+            }
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                Assert.assertEquals(0, embeddingCache.stats().getPersistentEntries());
+                Assert.assertEquals(Arrays.asList("first", "second"), embeddingCache.lookup(request("first", "second")).missRequest().getInput());
+                fill(embeddingCache, "first");
+                Assert.assertEquals(1, embeddingCache.stats().getPersistentEntries());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void test_corruptRecord() throws Exception {
+        Path file = Files.createTempFile("embedding-cache", ".bin");
+        Files.delete(file);
+        try {
+            EmbeddingCacheOptions options = EmbeddingCacheOptions.builder().persistentFile(file).maxPersistentBytes(64 * 1024).build();
+            long second;
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                fill(embeddingCache, "first");
+                second = embeddingCache.stats().getPersistentBytes();
+                fill(embeddingCache, "second");
+            }
+            // 第二条记录的维度被改写为越界的值，只保留第一条
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer keyLength = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(keyLength, second);
+                ByteBuffer dimensions = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 1 << 20);
+                channel.write(dimensions, second + 4 + keyLength.getInt(0));
+            }
+            try (EmbeddingCache embeddingCache = new EmbeddingCache(options)) {
+                Assert.assertEquals(1, embeddingCache.stats().getPersistentEntries());
+                Assert.assertEquals(second, embeddingCache.stats().getPersistentBytes());
+                Assert.assertEquals(Collections.singletonList("second"), embeddingCache.lookup(request("first", "second")).missRequest().getInput());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void test_nullModel() throws Exception {
+        EmbeddingRequest embeddingRequest = OpenAiJson.reader(EmbeddingRequest.class).readValue("{\"model\":null,\"input\":[\"a\"]}");
+        Assert.assertNull(embeddingRequest.getModel());
+        try (EmbeddingCache embeddingCache = new EmbeddingCache(EmbeddingCacheOptions.builder().build())) {
+            // 未指定模型时按请求的默认模型计算缓存键
+            EmbeddingCache.Lookup lookup = embeddingCache.lookup(embeddingRequest);
+            Assert.assertEquals(EmbeddingRequest.Model.TEXT_EMBEDDING_ADA_002.getCode(), lookup.missRequest().getModel());
+            lookup.merge(respond(lookup.missRequest()));
+            EmbeddingRequest explicit = EmbeddingRequest.builder().input(Collections.singletonList("a")).build();
+            Assert.assertNull(embeddingCache.lookup(explicit).missRequest());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_missingIndex() throws Exception {
+        try (EmbeddingCache embeddingCache = new EmbeddingCache(EmbeddingCacheOptions.builder().build())) {
+            EmbeddingCache.Lookup lookup = embeddingCache.lookup(request("a", "b"));
+            EmbeddingResponse missResponse = respond(lookup.missRequest());
+            missResponse.getData().remove(1);
+            lookup.merge(missResponse);
+        }
+    }
+
+    private static void fill(EmbeddingCache embeddingCache, String... inputs) {
+        EmbeddingCache.Lookup lookup = embeddingCache.lookup(request(inputs));
+        lookup.merge(respond(lookup.missRequest()));
+    }
+
+    private static EmbeddingRequest request(String... inputs) {
+        return EmbeddingRequest.builder().model(MODEL).input(Arrays.asList(inputs)).build();
+    }
+
+    private static EmbeddingResponse respond(EmbeddingRequest embeddingRequest) {
+        List<Item> data = new ArrayList<>();
+        List<String> inputs = embeddingRequest.getInput();
+        for (int i = 0; i < inputs.size(); i++) {
+            Item item = new Item();
+            item.setIndex(i);
+            item.setEmbedding(new float[]{inputs.get(i).length() + i / 1000f});
+            data.add(item);
+        }
+        EmbeddingResponse embeddingResponse = new EmbeddingResponse();
+        embeddingResponse.setModel(embeddingRequest.getModel());
+        embeddingResponse.setData(data);
+        return embeddingResponse;
+    }
+
+    private static Usage usage(long totalTokens) {
+        Usage usage = new Usage();
+        usage.setTotalTokens(totalTokens);
+        return usage;
+    }
+}
@@ -0,0 +1,105 @@
+package top.kangyaocoding.chatgpt.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * @Author K·Herbert
+ * @Description 向量反序列化测试，覆盖 base64 小端解码、非法字节长度、数值数组的扩容，以及两种格式解码结果一致。
+ * @Date 2024-06-08 11:00
+ */
+public class EmbeddingDeserializerTest {
+
+    @Test
+    public void test_base64AndFloatRoundTrip() throws Exception {
+        float[] expected = new float[3072];
+        Random random = new Random(7);
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = random.nextFloat() * 2 - 1;
+        }
+        expected[0] = Float.MIN_VALUE;
+        expected[1] = -0.0f;
+        expected[2] = 1e-38f;
+        // 数值数组超过初始容量时扩容
+        float[] fromFloats = embedding(floatArray(expected));
+        float[] fromBase64 = embedding('"' + base64(expected, ByteOrder.LITTLE_ENDIAN) + '"');
+        Assert.assertArrayEquals(expected, fromFloats, 0f);
+        Assert.assertArrayEquals(fromFloats, fromBase64, 0f);
+    }
+
+    @Test
+    public void test_base64IsLittleEndian() throws Exception {
+        float[] values = {1.0f, -2.5f};
+        Assert.assertArrayEquals(values, embedding('"' + base64(values, ByteOrder.LITTLE_ENDIAN) + '"'), 0f);
+        // 0x3F800000 按小端读取时不是 1.0
+        Assert.assertNotEquals(1.0f, embedding('"' + base64(values, ByteOrder.BIG_ENDIAN) + '"')[0], 0f);
+    }
+
+    @Test
+    public void test_emptyAndIntegerArrays() throws Exception {
+        Assert.assertEquals(0, embedding("[]").length);
+        Assert.assertEquals(0, embedding("\"\"").length);
+        Assert.assertArrayEquals(new float[]{1f, -2f, 0.5f}, embedding("[1,-2,0.5]"), 0f);
+    }
+
+    @Test
+    public void test_illegalInput() throws Exception {
+        // 5 个字节不是 float32 的整数倍
+        String odd = Base64.getEncoder().encodeToString(new byte[]{1, 2, 3, 4, 5});
+        assertFails('"' + odd + '"');
+        assertFails("[1,\"a\"]");
+        assertFails("{}");
+    }
+
+    @Test
+    public void test_defaultEncodingFormat() throws Exception {
+        EmbeddingRequest request = EmbeddingRequest.builder().input(Collections.singletonList("hi")).build();
+        Assert.assertTrue(OpenAiJson.writer(EmbeddingRequest.class).writeValueAsString(request).contains("\"encoding_format\":\"base64\""));
+        EmbeddingRequest floats = EmbeddingRequest.builder().input(Collections.singletonList("hi"))
+                .encodingFormat(EmbeddingRequest.EncodingFormat.FLOAT.getCode())
+                .build();
+        Assert.assertTrue(OpenAiJson.writer(EmbeddingRequest.class).writeValueAsString(floats).contains("\"encoding_format\":\"float\""));
+    }
+
+    private static float[] embedding(String json) throws IOException {
+        EmbeddingResponse response = OpenAiJson.reader(EmbeddingResponse.class)
+                .readValue("{\"object\":\"list\",\"data\":[{\"object\":\"embedding\",\"index\":0,\"embedding\":" + json + "}]}");
+        return response.getData().get(0).getEmbedding();
+    }
+
+    private static void assertFails(String json) {
+        try {
+            embedding(json);
+            Assert.fail("illegal embedding " + json + " must be rejected");
+        } catch (IOException expected) {
+            // 预期异常
+        }
+    }
+
+    private static String floatArray(float[] values) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(values[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    private static String base64(float[] values, ByteOrder order) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(order);
+        buffer.asFloatBuffer().put(values);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+}
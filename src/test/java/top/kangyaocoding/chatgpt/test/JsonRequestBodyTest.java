@@ -0,0 +1,94 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okio.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.converter.JsonRequestBody;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式 JSON 请求体测试，覆盖缓冲阈值两侧的内容长度、可重复写入和序列化次数。
+ * @Date 2024-06-10 11:00
+ */
+public class JsonRequestBodyTest {
+
+    @Test
+    public void test_bufferedAtThreshold() throws Exception {
+        Payload payload = new Payload("x".repeat(100));
+        int length = serializedLength(payload);
+        String expected = json(payload);
+        // 恰好等于阈值时仍然缓冲
+        JsonRequestBody body = new JsonRequestBody(OpenAiJson.writer(Payload.class), payload, length);
+        payload.serializations.set(0);
+        Assert.assertEquals(length, body.contentLength());
+        Assert.assertEquals(length, body.contentLength());
+        Assert.assertFalse(body.isOneShot());
+        Assert.assertEquals(expected, write(body));
+        Assert.assertEquals(expected, write(body));
+        // 测量一次，之后的写入复用缓冲的字节
+        Assert.assertEquals(1, payload.serializations.get());
+    }
+
+    @Test
+    public void test_streamedAboveThreshold() throws Exception {
+        Payload payload = new Payload("x".repeat(100));
+        int length = serializedLength(payload);
+        String expected = json(payload);
+        JsonRequestBody body = new JsonRequestBody(OpenAiJson.writer(Payload.class), payload, length - 1);
+        payload.serializations.set(0);
+        Assert.assertEquals(-1, body.contentLength());
+        Assert.assertEquals(-1, body.contentLength());
+        // 超过阈值时仍可重复写入，重试会重新序列化
+        Assert.assertFalse(body.isOneShot());
+        Assert.assertEquals(expected, write(body));
+        Assert.assertEquals(expected, write(body));
+        // 放弃的测量计一次，之后每次写入各序列化一次
+        Assert.assertEquals(3, payload.serializations.get());
+    }
+
+    @Test
+    public void test_largeBodyUsesDefaultThreshold() throws Exception {
+        Payload small = new Payload("x".repeat(1024));
+        Assert.assertEquals(serializedLength(small), OpenAiJson.requestBody(small).contentLength());
+        Payload large = new Payload("x".repeat(JsonRequestBody.DEFAULT_BUFFER_THRESHOLD));
+        JsonRequestBody body = (JsonRequestBody) OpenAiJson.requestBody(large);
+        Assert.assertEquals(-1, body.contentLength());
+        Assert.assertEquals(json(large), write(body));
+        Assert.assertSame(large, body.value());
+    }
+
+    private static int serializedLength(Payload payload) throws Exception {
+        return OpenAiJson.writer(Payload.class).writeValueAsBytes(payload).length;
+    }
+
+    private static String json(Payload payload) throws Exception {
+        return OpenAiJson.writer(Payload.class).writeValueAsString(payload);
+    }
+
+    private static String write(JsonRequestBody body) throws Exception {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+    /**
+     * 记录被序列化次数的请求对象。
+     */
+    public static class Payload {
+
+        private final AtomicInteger serializations = new AtomicInteger();
+        private final String text;
+
+        public Payload(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            serializations.incrementAndGet();
+            return text;
+        }
+    }
+}
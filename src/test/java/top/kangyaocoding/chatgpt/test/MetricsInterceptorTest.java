@@ -0,0 +1,136 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.interceptor.MetricsInterceptor;
+import top.kangyaocoding.chatgpt.metrics.DefaultMetricsRecorder;
+import top.kangyaocoding.chatgpt.metrics.EndpointMetricsSnapshot;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description 指标拦截器测试，按接口与模型分别记录状态码、耗时、字节数和未收到响应的请求。
+ * @Date 2024-06-21 11:00
+ */
+public class MetricsInterceptorTest {
+
+    private static final String MODEL = ChatCompletionRequest.Model.GPT_4O.getCode();
+
+    private final DefaultMetricsRecorder recorder = new DefaultMetricsRecorder();
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .addInterceptor(new MetricsInterceptor(recorder))
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void test_recordsStatusAndLatencyPerRoute() throws Exception {
+        String chatBody = "{\"id\":\"chatcmpl-1\"}";
+        server.enqueue(new MockResponse().setBody(chatBody).setBodyDelay(100, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse().setResponseCode(429).setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("file"));
+
+        Request chat = new Request.Builder().url(server.url("/proxy/v1/chat/completions"))
+                .post(OpenAiJson.requestBody(chatRequest())).build();
+        try (Response response = client.newCall(chat).execute()) {
+            Assert.assertEquals(chatBody, response.body().string());
+        }
+        try (Response response = client.newCall(chat).execute()) {
+            Assert.assertEquals(429, response.code());
+            response.body().string();
+        }
+        // 文件 ID 替换为占位符，非 JSON 请求没有模型
+        for (String path : new String[]{"/v1/files/file-abc", "/v1/files/file-abc/content"}) {
+            try (Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute()) {
+                response.body().string();
+            }
+        }
+
+        Map<String, EndpointMetricsSnapshot> snapshot = recorder.snapshot();
+        Assert.assertEquals(3, snapshot.size());
+        EndpointMetricsSnapshot chatMetrics = snapshot.get("v1/chat/completions " + MODEL);
+        Assert.assertEquals("v1/chat/completions", chatMetrics.getEndpoint());
+        Assert.assertEquals(MODEL, chatMetrics.getModel());
+        Assert.assertEquals(Map.of(200, 1L, 429, 1L), chatMetrics.getStatusCounts());
+        Assert.assertEquals(0, chatMetrics.getFailures());
+        Assert.assertEquals(2, chatMetrics.getLatency().getCount());
+        // 耗时包含响应体的读取
+        Assert.assertTrue(chatMetrics.getLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals(2 * chat.body().contentLength(), chatMetrics.getBytesOut());
+        Assert.assertEquals(chatBody.length() + 2, chatMetrics.getBytesIn());
+
+        Assert.assertEquals(Map.of(200, 1L), snapshot.get("v1/files/{file_id}").getStatusCounts());
+        Assert.assertEquals("", snapshot.get("v1/files/{file_id}").getModel());
+        EndpointMetricsSnapshot contentMetrics = snapshot.get("v1/files/{file_id}/content");
+        Assert.assertEquals(Map.of(200, 1L), contentMetrics.getStatusCounts());
+        Assert.assertEquals(4, contentMetrics.getBytesIn());
+        Assert.assertEquals(1, contentMetrics.getLatency().getCount());
+    }
+
+    @Test
+    public void test_recordsOnCloseWithoutReading() throws Exception {
+        server.enqueue(new MockResponse().setBody("unread"));
+        Request request = new Request.Builder().url(server.url("/v1/embeddings")).build();
+        Response response = client.newCall(request).execute();
+        // 响应体读完或关闭前不提交
+        Assert.assertTrue(recorder.snapshot().isEmpty());
+        response.close();
+        response.close();
+        EndpointMetricsSnapshot metrics = recorder.snapshot().get("v1/embeddings");
+        Assert.assertEquals(Map.of(200, 1L), metrics.getStatusCounts());
+        Assert.assertEquals(1, metrics.getLatency().getCount());
+    }
+
+    @Test
+    public void test_recordsFailure() {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        Request request = new Request.Builder().url(server.url("/v1/chat/completions"))
+                .post(OpenAiJson.requestBody(chatRequest())).build();
+        try {
+            client.newCall(request).execute().close();
+            Assert.fail("a dropped connection must fail");
+        } catch (IOException e) {
+            // 预期异常
+        }
+        EndpointMetricsSnapshot metrics = recorder.snapshot().get("v1/chat/completions " + MODEL);
+        Assert.assertEquals(1, metrics.getFailures());
+        Assert.assertTrue(metrics.getStatusCounts().isEmpty());
+        Assert.assertEquals(1, metrics.getLatency().getCount());
+    }
+
+    private static ChatCompletionRequest chatRequest() {
+        return ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content("hi").build()))
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okhttp3.MediaType;
+import okio.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.upload.MultipartUploadBody;
+import top.kangyaocoding.chatgpt.upload.UploadSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author K·Herbert
+ * @Description 流式 multipart 请求体测试，覆盖声明长度与实际长度不一致、一次性请求体的判断和未知长度。
+ * @Date 2024-06-25 11:00
+ */
+public class MultipartUploadBodyTest {
+
+    private static final byte[] CONTENT = "{\"prompt\":\"hi\"}\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void test_knownLength() throws Exception {
+        List<Long> progress = new ArrayList<>();
+        MultipartUploadBody body = new MultipartUploadBody("file", UploadSource.of(new ByteArrayInputStream(CONTENT), CONTENT.length, "batch.jsonl"),
+                null, Map.of("purpose", "batch"), (filename, bytesWritten, contentLength) -> progress.add(bytesWritten), 4);
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        // 声明的长度与实际写出的字节数一致
+        Assert.assertEquals(buffer.size(), body.contentLength());
+        String written = buffer.readUtf8();
+        Assert.assertTrue(written.contains("name=\"purpose\"\r\n\r\nbatch\r\n"));
+        Assert.assertTrue(written.contains("filename=\"batch.jsonl\"\r\nContent-Type: application/octet-stream\r\n\r\n"
+                + new String(CONTENT, StandardCharsets.UTF_8) + "\r\n"));
+        Assert.assertEquals(Long.valueOf(CONTENT.length), progress.get(progress.size() - 1));
+        Assert.assertEquals((CONTENT.length + 3) / 4, progress.size());
+    }
+
+    @Test
+    public void test_unknownLength() throws Exception {
+        MultipartUploadBody body = new MultipartUploadBody("file", UploadSource.of(new ByteArrayInputStream(CONTENT), -1, "batch.jsonl"),
+                MediaType.get("application/jsonl"), Map.of(), null);
+        // 长度未知时使用分块传输
+        Assert.assertEquals(-1, body.contentLength());
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        Assert.assertTrue(buffer.readUtf8().contains("Content-Type: application/jsonl\r\n\r\n" + new String(CONTENT, StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void test_sourceShorterThanDeclared() throws Exception {
+        MultipartUploadBody body = new MultipartUploadBody("file", UploadSource.of(new ByteArrayInputStream(CONTENT), CONTENT.length + 1, "batch.jsonl"),
+                null, Map.of(), null);
+        try {
+            body.writeTo(new Buffer());
+            Assert.fail("a short source must fail");
+        } catch (ProtocolException e) {
+            // 预期异常
+            Assert.assertTrue(e.getMessage().contains("ended after " + CONTENT.length + " of " + (CONTENT.length + 1)));
+        }
+    }
+
+    @Test
+    public void test_sourceLongerThanDeclared() throws Exception {
+        MultipartUploadBody body = new MultipartUploadBody("file", UploadSource.of(new ByteArrayInputStream(CONTENT), CONTENT.length - 1, "batch.jsonl"),
+                null, Map.of(), null, 4);
+        Buffer buffer = new Buffer();
+        try {
+            body.writeTo(buffer);
+            Assert.fail("a long source must fail");
+        } catch (ProtocolException e) {
+            // 预期异常
+            Assert.assertTrue(e.getMessage().contains("longer than the declared " + (CONTENT.length - 1)));
+        }
+        // 多出的字节不会写出
+        Assert.assertTrue(buffer.size() < body.contentLength());
+    }
+
+    @Test
+    public void test_isOneShot() throws Exception {
+        MultipartUploadBody stream = new MultipartUploadBody("file", UploadSource.of(new ByteArrayInputStream(CONTENT), CONTENT.length, "a.jsonl"),
+                null, Map.of(), null);
+        MultipartUploadBody channel = new MultipartUploadBody("file",
+                UploadSource.of(Channels.newChannel(new ByteArrayInputStream(CONTENT)), CONTENT.length, "b.jsonl"), null, Map.of(), null);
+        Assert.assertTrue(stream.isOneShot());
+        Assert.assertTrue(channel.isOneShot());
+        channel.writeTo(new Buffer());
+        // 一次性数据源不能重复读取
+        try {
+            channel.writeTo(new Buffer());
+            Assert.fail("a channel source must only be read once");
+        } catch (IOException e) {
+            // 预期异常
+        }
+
+        Path path = Files.createTempFile("upload", ".jsonl");
+        try {
+            Files.write(path, CONTENT);
+            MultipartUploadBody file = new MultipartUploadBody("file", UploadSource.of(path), null, Map.of(), null);
+            Assert.assertFalse(file.isOneShot());
+            Buffer first = new Buffer();
+            Buffer second = new Buffer();
+            file.writeTo(first);
+            file.writeTo(second);
+            Assert.assertEquals(first.readByteString(), second.readByteString());
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
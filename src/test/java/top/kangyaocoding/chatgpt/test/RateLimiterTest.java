@@ -0,0 +1,259 @@
+package top.kangyaocoding.chatgpt.test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.domain.embeddings.EmbeddingRequest;
+import top.kangyaocoding.chatgpt.interceptor.RateLimitInterceptor;
+import top.kangyaocoding.chatgpt.limiter.RateLimitExceededException;
+import top.kangyaocoding.chatgpt.limiter.RateLimitMode;
+import top.kangyaocoding.chatgpt.limiter.RateLimitOptions;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+import top.kangyaocoding.chatgpt.token.TokenCounter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author K·Herbert
+ * @Description 客户端限流测试，覆盖令牌桶扣减与补充、许可的预留与领取、按 usage 修正余额。
+ * 每分钟 60000 token 的桶每毫秒只补充 1 个 token，断言都留有足够余量。
+ * @Date 2024-06-14 10:30
+ */
+public class RateLimiterTest {
+
+    private static final String MODEL = ChatCompletionRequest.Model.GPT_4O.getCode();
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void test_requestsPerMinute() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().requestsPerMinute(2).mode(RateLimitMode.FAIL_FAST).build());
+        rateLimiter.acquire("key", MODEL, 0);
+        RateLimiter.Permit second = rateLimiter.acquire("key", MODEL, 0);
+        assertExhausted(rateLimiter, "key", MODEL, 0);
+        // 不同的密钥与模型各自计数
+        rateLimiter.acquire("other", MODEL, 0);
+        rateLimiter.acquire("key", ChatCompletionRequest.Model.GPT_4.getCode(), 0);
+        // 未发送的请求退还配额，重复退还不生效
+        second.release();
+        second.release();
+        rateLimiter.acquire("key", MODEL, 0);
+        assertExhausted(rateLimiter, "key", MODEL, 0);
+    }
+
+    @Test
+    public void test_tokenWait() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().tokensPerMinute(60_000).build());
+        Assert.assertTrue(rateLimiter.acquireAsync("key", MODEL, 60_000).isDone());
+        // 余额不足时排队等待补充，100 个 token 约需 100 毫秒
+        long start = System.nanoTime();
+        CompletableFuture<RateLimiter.Permit> waiting = rateLimiter.acquireAsync("key", MODEL, 100);
+        Assert.assertFalse(waiting.isDone());
+        waiting.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(80));
+
+        // 等待时间超过 maxWait 时直接失败且不扣减
+        RateLimiter bounded = limiter(RateLimitOptions.builder().tokensPerMinute(60_000).maxWait(Duration.ofMillis(50)).build());
+        bounded.acquire("key", MODEL, 59_000);
+        try {
+            bounded.acquireAsync("key", MODEL, 10_000).get();
+            Assert.fail("a wait longer than maxWait must be rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RateLimitExceededException);
+        }
+        bounded.acquire("key", MODEL, 500);
+    }
+
+    @Test
+    public void test_completeCorrectsBalance() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().tokensPerMinute(60_000).mode(RateLimitMode.FAIL_FAST).build());
+        RateLimiter.Permit permit = rateLimiter.acquire("key", MODEL, 50_000);
+        assertExhausted(rateLimiter, "key", MODEL, 20_000);
+        // 实际只消耗 10000，退还 40000；只修正一次
+        permit.complete(10_000);
+        permit.complete(0);
+        rateLimiter.acquire("key", MODEL, 20_000);
+        assertExhausted(rateLimiter, "key", MODEL, 40_000);
+        // 实际消耗多于预估时补扣
+        RateLimiter.Permit small = rateLimiter.acquire("key", MODEL, 100);
+        small.complete(25_000);
+        assertExhausted(rateLimiter, "key", MODEL, 10_000);
+    }
+
+    @Test
+    public void test_tryReserveAndClaim() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().requestsPerMinute(1).build());
+        ChatCompletionRequest first = chatRequest(16);
+        ChatCompletionRequest second = chatRequest(16);
+        Assert.assertTrue(rateLimiter.tryReserveFor("key", first));
+        // 配额不足时不等待也不扣减
+        Assert.assertFalse(rateLimiter.tryReserveFor("key", second));
+        // 许可按对象引用登记，相等的另一个对象领取不到
+        Assert.assertEquals(first, second);
+        Assert.assertNull(rateLimiter.claim(second));
+        RateLimiter.Permit permit = rateLimiter.claim(first);
+        Assert.assertNotNull(permit);
+        Assert.assertNull(rateLimiter.claim(first));
+        Assert.assertNull(rateLimiter.claim(null));
+        permit.release();
+        Assert.assertTrue(rateLimiter.tryReserveFor("key", second));
+    }
+
+    @Test
+    public void test_estimateTokens() {
+        ChatCompletionRequest request = chatRequest(null);
+        int promptTokens = TokenCounter.countMessages(MODEL, request.getMessages());
+        // 未设置输出上限时按模型的最大输出预估
+        Assert.assertEquals(promptTokens + 16_384, RateLimiter.estimateTokens(request));
+        request.setMaxTokens(100);
+        request.setN(2);
+        Assert.assertEquals(promptTokens + 200, RateLimiter.estimateTokens(request));
+        request.setMaxCompletionTokens(300);
+        Assert.assertEquals(promptTokens + 600, RateLimiter.estimateTokens(request));
+
+        // 最大输出不超过剩余上下文
+        ChatCompletionRequest gpt4 = chatRequest(null);
+        gpt4.setModel(ChatCompletionRequest.Model.GPT_4.getCode());
+        Assert.assertEquals(TokenCounter.contextLength(gpt4.getModel()), RateLimiter.estimateTokens(gpt4));
+
+        EmbeddingRequest embeddingRequest = EmbeddingRequest.builder()
+                .model(EmbeddingRequest.Model.TEXT_EMBEDDING_3_SMALL.getCode())
+                .input(Arrays.asList("hello world", "hello"))
+                .build();
+        Assert.assertEquals(3, RateLimiter.estimateTokens(embeddingRequest));
+        Assert.assertEquals(0, RateLimiter.estimateTokens("other"));
+    }
+
+    @Test
+    public void test_correctFromJsonUsage() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().tokensPerMinute(60_000).mode(RateLimitMode.FAIL_FAST).build());
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"id\":\"chatcmpl-1\",\"choices\":[],\"usage\":{\"prompt_tokens\":9,\"completion_tokens\":11,\"total_tokens\":20}}"));
+        try (Response response = send(rateLimiter, chatRequest(null))) {
+            // 响应体未读取前仍按预估值（约 16400）扣减
+            assertExhausted(rateLimiter, "", MODEL, 50_000);
+            response.body().string();
+        }
+        rateLimiter.acquire("", MODEL, 59_000);
+    }
+
+    @Test
+    public void test_correctFromLargeEmbeddingResponse() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().tokensPerMinute(60_000).mode(RateLimitMode.FAIL_FAST).build());
+        // 超过 1 MB 的向量响应，usage 位于 data 之后
+        StringBuilder body = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < 1_000; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":[");
+            for (int j = 0; j < 128; j++) {
+                body.append(j == 0 ? "" : ",").append("0.0123456");
+            }
+            body.append("]}");
+        }
+        body.append("],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":30000,\"total_tokens\":30000}}");
+        Assert.assertTrue(body.length() > 1024 * 1024);
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(body.toString()));
+
+        EmbeddingRequest embeddingRequest = EmbeddingRequest.builder()
+                .model(EmbeddingRequest.Model.TEXT_EMBEDDING_3_SMALL.getCode())
+                .input(Collections.singletonList("hello"))
+                .build();
+        try (Response response = send(rateLimiter, embeddingRequest)) {
+            Assert.assertEquals(body.toString(), response.body().string());
+        }
+        String model = embeddingRequest.getModel();
+        assertExhausted(rateLimiter, "", model, 40_000);
+        rateLimiter.acquire("", model, 20_000);
+    }
+
+    @Test
+    public void test_correctFromStreamUsage() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().tokensPerMinute(60_000).mode(RateLimitMode.FAIL_FAST).build());
+        String events = "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"\\\"total_tokens\\\": 999\"}}],\"usage\":null}\n\n"
+                + "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":9,\"completion_tokens\":11,\"total_tokens\" : 20}}\n\n"
+                + "data: [DONE]\n\n";
+        // 分成小块发送，字段名与数值跨越多次读取
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(events)
+                .throttleBody(7, 1, TimeUnit.MILLISECONDS));
+        ChatCompletionRequest request = chatRequest(null);
+        request.setStream(true);
+        try (Response response = send(rateLimiter, request)) {
+            Assert.assertEquals(events, response.body().string());
+        }
+        rateLimiter.acquire("", MODEL, 59_000);
+    }
+
+    @Test
+    public void test_streamWithoutUsageKeepsEstimate() throws Exception {
+        RateLimiter rateLimiter = limiter(RateLimitOptions.builder().tokensPerMinute(60_000).mode(RateLimitMode.FAIL_FAST).build());
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"hi\"}}]}\n\ndata: [DONE]\n\n"));
+        ChatCompletionRequest request = chatRequest(null);
+        request.setStream(true);
+        try (Response response = send(rateLimiter, request)) {
+            response.body().string();
+        }
+        assertExhausted(rateLimiter, "", MODEL, 50_000);
+    }
+
+    private Response send(RateLimiter rateLimiter, Object value) throws Exception {
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(new RateLimitInterceptor(rateLimiter))
+                .build();
+        Request request = new Request.Builder()
+                .url(server.url("/v1/test"))
+                .post(OpenAiJson.requestBody(value))
+                .build();
+        return okHttpClient.newCall(request).execute();
+    }
+
+    private static RateLimiter limiter(RateLimitOptions options) {
+        return new RateLimiter(options);
+    }
+
+    private static void assertExhausted(RateLimiter rateLimiter, String apiKey, String model, long tokens) throws Exception {
+        try {
+            rateLimiter.acquire(apiKey, model, tokens).release();
+            Assert.fail("quota must be exhausted");
+        } catch (RateLimitExceededException e) {
+            Assert.assertTrue(e.getMessage().contains(model));
+        }
+    }
+
+    private static ChatCompletionRequest chatRequest(Integer maxTokens) {
+        return ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content("1+1=").build()))
+                .maxTokens(maxTokens)
+                .build();
+    }
+}
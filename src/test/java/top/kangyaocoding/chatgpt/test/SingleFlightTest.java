@@ -0,0 +1,284 @@
+package top.kangyaocoding.chatgpt.test;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.IOpenAiApi;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.flight.SingleFlight;
+import top.kangyaocoding.chatgpt.flight.SingleFlightOptions;
+import top.kangyaocoding.chatgpt.limiter.RateLimitOptions;
+import top.kangyaocoding.chatgpt.limiter.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author K·Herbert
+ * @Description 在途请求合并测试，覆盖非流式请求的共享与上限、加入者退还预留许可，以及流式请求后加入者的补发。
+ * 上游由测试手动推进，补发使用调用线程执行，断言不依赖时序。
+ * @Date 2024-06-20 11:00
+ */
+public class SingleFlightTest {
+
+    private static final String URL = "https://api.openai.com/" + IOpenAiApi.V_1_CHAT_COMPLETIONS;
+
+    @Test
+    public void test_coalescesIdenticalRequests() {
+        SingleFlight singleFlight = new SingleFlight(SingleFlightOptions.builder().build());
+        AtomicInteger calls = new AtomicInteger();
+        SingleSubject<String> upstream = SingleSubject.create();
+        TestObserver<String> first = execute(singleFlight, chatRequest("hi"), calls, upstream).test();
+        // 内容相同的不同对象也会合并
+        TestObserver<String> second = execute(singleFlight, chatRequest("hi"), calls, upstream).test();
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, singleFlight.stats().getInFlight());
+
+        upstream.onSuccess("done");
+        first.assertValue("done");
+        second.assertValue("done");
+        Assert.assertEquals(0, singleFlight.stats().getInFlight());
+        Assert.assertEquals(1, singleFlight.stats().getLeaders());
+        Assert.assertEquals(1, singleFlight.stats().getJoined());
+
+        // 请求结束后不缓存结果
+        execute(singleFlight, chatRequest("hi"), calls, SingleSubject.create()).test();
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void test_differentRequestsAndDisabledEndpoints() {
+        SingleFlight singleFlight = new SingleFlight(SingleFlightOptions.builder().build());
+        AtomicInteger calls = new AtomicInteger();
+        execute(singleFlight, chatRequest("hi"), calls, SingleSubject.create()).test();
+        execute(singleFlight, chatRequest("hello"), calls, SingleSubject.create()).test();
+        Assert.assertEquals(2, calls.get());
+        // 未启用的接口直接执行
+        singleFlight.execute("v1/images/generations", chatRequest("hi"), () -> {
+            calls.incrementAndGet();
+            return Single.just("direct");
+        }).test().assertValue("direct");
+        Assert.assertEquals(3, calls.get());
+        Assert.assertEquals(0, singleFlight.stats().getJoined());
+    }
+
+    @Test
+    public void test_maxWaitersOverflow() {
+        SingleFlight singleFlight = new SingleFlight(SingleFlightOptions.builder().maxWaiters(2).build());
+        AtomicInteger calls = new AtomicInteger();
+        SingleSubject<String> upstream = SingleSubject.create();
+        execute(singleFlight, chatRequest("hi"), calls, upstream).test();
+        execute(singleFlight, chatRequest("hi"), calls, upstream).test();
+        Assert.assertEquals(1, calls.get());
+        // 第三个调用方超过上限，单独发起请求
+        execute(singleFlight, chatRequest("hi"), calls, SingleSubject.create()).test();
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(1, singleFlight.stats().getOverflowed());
+    }
+
+    @Test
+    public void test_disposeAllCancelsUpstream() {
+        SingleFlight singleFlight = new SingleFlight(SingleFlightOptions.builder().build());
+        AtomicInteger calls = new AtomicInteger();
+        SingleSubject<String> upstream = SingleSubject.create();
+        TestObserver<String> first = execute(singleFlight, chatRequest("hi"), calls, upstream).test();
+        TestObserver<String> second = execute(singleFlight, chatRequest("hi"), calls, upstream).test();
+        first.dispose();
+        Assert.assertTrue(upstream.hasObservers());
+        second.dispose();
+        Assert.assertFalse(upstream.hasObservers());
+        Assert.assertEquals(0, singleFlight.stats().getInFlight());
+    }
+
+    @Test
+    public void test_joinReleasesReservedPermit() {
+        SingleFlight singleFlight = new SingleFlight(SingleFlightOptions.builder().build());
+        RateLimiter rateLimiter = new RateLimiter(RateLimitOptions.builder().requestsPerMinute(2).build());
+        ChatCompletionRequest leader = chatRequest("hi");
+        ChatCompletionRequest joiner = chatRequest("hi");
+        Assert.assertTrue(rateLimiter.tryReserveFor("key", leader));
+        Assert.assertTrue(rateLimiter.tryReserveFor("key", joiner));
+        Assert.assertFalse(rateLimiter.tryReserveFor("key", chatRequest("other")));
+
+        AtomicInteger calls = new AtomicInteger();
+        SingleSubject<String> upstream = SingleSubject.create();
+        singleFlight.execute(IOpenAiApi.V_1_CHAT_COMPLETIONS, leader, () -> {
+            calls.incrementAndGet();
+            return upstream;
+        }, () -> release(rateLimiter, leader)).test();
+        singleFlight.execute(IOpenAiApi.V_1_CHAT_COMPLETIONS, joiner, () -> {
+            calls.incrementAndGet();
+            return upstream;
+        }, () -> release(rateLimiter, joiner)).test();
+
+        // 加入者不会发送请求，预留的许可立即退还，发起者的许可留给拦截器领取
+        Assert.assertEquals(1, calls.get());
+        Assert.assertNull(rateLimiter.claim(joiner));
+        Assert.assertNotNull(rateLimiter.claim(leader));
+        Assert.assertTrue(rateLimiter.tryReserveFor("key", chatRequest("other")));
+    }
+
+    @Test
+    public void test_streamLateJoinerReplay() {
+        SingleFlight singleFlight = new SingleFlight(SingleFlightOptions.builder().build());
+        FakeFactory delegate = new FakeFactory();
+        EventSource.Factory factory = singleFlight.eventSourceFactory(delegate, Runnable::run);
+
+        RecordingListener first = new RecordingListener();
+        factory.newEventSource(streamRequest("sk-a"), first);
+        Assert.assertEquals(1, delegate.listeners.size());
+        EventSourceListener upstream = delegate.listeners.get(0);
+        upstream.onOpen(delegate.eventSource, openResponse());
+        upstream.onEvent(delegate.eventSource, null, null, "a");
+        upstream.onEvent(delegate.eventSource, null, null, "b");
+
+        // 后加入者先收到已到达的数据，再与发起者同步接收
+        RecordingListener late = new RecordingListener();
+        factory.newEventSource(streamRequest("sk-a"), late);
+        Assert.assertEquals(1, delegate.listeners.size());
+        Assert.assertEquals(List.of("open", "a", "b"), late.received);
+        upstream.onEvent(delegate.eventSource, null, null, "c");
+        upstream.onClosed(delegate.eventSource);
+
+        List<String> expected = List.of("open", "a", "b", "c", "closed");
+        Assert.assertEquals(expected, first.received);
+        Assert.assertEquals(expected, late.received);
+        Assert.assertEquals(0, singleFlight.stats().getInFlight());
+        Assert.assertEquals(1, singleFlight.stats().getJoined());
+
+        // 已结束的请求不再合并
+        factory.newEventSource(streamRequest("sk-a"), new RecordingListener());
+        Assert.assertEquals(2, delegate.listeners.size());
+    }
+
+    @Test
+    public void test_streamScopedByApiKeyAndCancel() {
+        SingleFlight singleFlight = new SingleFlight(SingleFlightOptions.builder().build());
+        FakeFactory delegate = new FakeFactory();
+        EventSource.Factory factory = singleFlight.eventSourceFactory(delegate, Runnable::run);
+
+        EventSource first = factory.newEventSource(streamRequest("sk-a"), new RecordingListener());
+        // 不同用户密钥的请求不合并
+        factory.newEventSource(streamRequest("sk-b"), new RecordingListener());
+        Assert.assertEquals(2, delegate.listeners.size());
+
+        EventSource second = factory.newEventSource(streamRequest("sk-a"), new RecordingListener());
+        first.cancel();
+        Assert.assertEquals(0, delegate.eventSource.cancelled.get());
+        // 最后一个调用方取消后取消上游
+        second.cancel();
+        Assert.assertEquals(1, delegate.eventSource.cancelled.get());
+        Assert.assertEquals(1, singleFlight.stats().getInFlight());
+    }
+
+    private static Single<String> execute(SingleFlight singleFlight, ChatCompletionRequest request, AtomicInteger calls, Single<String> upstream) {
+        return singleFlight.execute(IOpenAiApi.V_1_CHAT_COMPLETIONS, request, () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+    }
+
+    private static void release(RateLimiter rateLimiter, Object request) {
+        RateLimiter.Permit permit = rateLimiter.claim(request);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private static ChatCompletionRequest chatRequest(String content) {
+        return ChatCompletionRequest.builder()
+                .model(ChatCompletionRequest.Model.GPT_4O.getCode())
+                .messages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content(content).build()))
+                .build();
+    }
+
+    private static Request streamRequest(String apiKey) {
+        return new Request.Builder()
+                .url(URL)
+                .header("apiKey", apiKey)
+                .post(RequestBody.create("{\"stream\":true}", MediaType.get("application/json")))
+                .build();
+    }
+
+    private static Response openResponse() {
+        return new Response.Builder()
+                .request(new Request.Builder().url(URL).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .build();
+    }
+
+    /**
+     * 记录监听器创建次数的事件源工厂，由测试手动推进上游事件。
+     */
+    private static class FakeFactory implements EventSource.Factory {
+
+        private final List<EventSourceListener> listeners = new ArrayList<>();
+        private final FakeEventSource eventSource = new FakeEventSource();
+
+        @NotNull
+        @Override
+        public EventSource newEventSource(@NotNull Request request, @NotNull EventSourceListener listener) {
+            listeners.add(listener);
+            return eventSource;
+        }
+    }
+
+    private static class FakeEventSource implements EventSource {
+
+        private final AtomicInteger cancelled = new AtomicInteger();
+
+        @NotNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url(URL).build();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.incrementAndGet();
+        }
+    }
+
+    private static class RecordingListener extends EventSourceListener {
+
+        private final List<String> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+            received.add("open");
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            received.add(data);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            received.add("closed");
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            received.add("failure");
+        }
+    }
+}
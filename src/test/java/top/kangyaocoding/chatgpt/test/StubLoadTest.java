@@ -0,0 +1,357 @@
+package top.kangyaocoding.chatgpt.test;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.audio.AudioSegment;
+import top.kangyaocoding.chatgpt.audio.LongAudioOptions;
+import top.kangyaocoding.chatgpt.audio.PcmAudio;
+import top.kangyaocoding.chatgpt.audio.SegmentTranscription;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionResponse;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.domain.files.UploadFileResponse;
+import top.kangyaocoding.chatgpt.domain.images.ImageEditRequest;
+import top.kangyaocoding.chatgpt.domain.images.ImageEnum;
+import top.kangyaocoding.chatgpt.domain.images.ImageRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.TranscriptionsRequest;
+import top.kangyaocoding.chatgpt.domain.whisper.WhisperResponse;
+import top.kangyaocoding.chatgpt.download.DownloadOptions;
+import top.kangyaocoding.chatgpt.image.ImageAsset;
+import top.kangyaocoding.chatgpt.image.ImageOutput;
+import top.kangyaocoding.chatgpt.image.ImagePipelineOptions;
+import top.kangyaocoding.chatgpt.load.LoadDriver;
+import top.kangyaocoding.chatgpt.load.LoadOptions;
+import top.kangyaocoding.chatgpt.load.LoadReport;
+import top.kangyaocoding.chatgpt.retry.RetryPolicy;
+import top.kangyaocoding.chatgpt.session.Configuration;
+import top.kangyaocoding.chatgpt.session.OpenAiSession;
+import top.kangyaocoding.chatgpt.session.defaults.DefaultOpenAiSessionFactory;
+import top.kangyaocoding.chatgpt.stream.ChatDelta;
+import top.kangyaocoding.chatgpt.stream.ChatDeltaHandler;
+import top.kangyaocoding.chatgpt.stub.LatencyDistribution;
+import top.kangyaocoding.chatgpt.stub.StubOpenAiServer;
+import top.kangyaocoding.chatgpt.stub.StubScenario;
+import top.kangyaocoding.chatgpt.upload.UploadResult;
+import top.kangyaocoding.chatgpt.upload.UploadSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author K·Herbert
+ * @Description 基于本地桩服务器的路由与压测示例，不访问网络也不消耗配额。
+ * @Date 2024-06-24 15:00
+ */
+@Slf4j
+public class StubLoadTest {
+    private StubOpenAiServer server;
+    private DefaultOpenAiSessionFactory factory;
+    private OpenAiSession openAiSession;
+
+    @Before
+    public void test_StubOpenAiServer() throws Exception {
+        server = new StubOpenAiServer(StubScenario.builder()
+                .latency(LatencyDistribution.logNormal(Duration.ofMillis(20), 0.5))
+                .tokensPerSecond(200)
+                .build()).start();
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.apiHost());
+        configuration.setApiKey("sk-stub");
+        configuration.setRetryPolicy(RetryPolicy.builder().baseDelay(Duration.ofMillis(50)).build());
+        configuration.setMaxRequestsPerHost(64);
+        this.factory = new DefaultOpenAiSessionFactory(configuration, null);
+        this.openAiSession = factory.openAiSession();
+    }
+
+    @After
+    public void close() throws Exception {
+        log.info("桩服务器统计：{}", server.stats());
+        factory.close();
+        server.close();
+    }
+
+    /**
+     * 覆盖桩服务器的全部路由。
+     */
+    @Test
+    public void test_routes() throws Exception {
+        ChatCompletionResponse chatCompletionResponse = openAiSession.completions(chatCompletionRequest(false));
+        Assert.assertEquals("stop", chatCompletionResponse.getChoices().get(0).getFinishReason());
+        Assert.assertEquals(1536, openAiSession.embeddings("hello").getData().get(0).getEmbedding().length);
+        Assert.assertEquals(2, openAiSession.genImage(ImageRequest.builder().prompt("cat").n(2).build()).getData().size());
+
+        File png = File.createTempFile("stub", ".png");
+        File wav = File.createTempFile("stub", ".wav");
+        png.deleteOnExit();
+        wav.deleteOnExit();
+        Files.write(png.toPath(), Base64.getDecoder().decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg=="));
+        Files.write(wav.toPath(), new byte[4096]);
+        Assert.assertEquals(1, openAiSession.editImage(png, ImageEditRequest.builder().prompt("hat").build()).getData().size());
+        log.info("转写结果：{}", openAiSession.speed2TextTranscriptions(wav, TranscriptionsRequest.builder().build()).getText());
+
+        UploadFileResponse uploadFileResponse = openAiSession.uploadFile(wav);
+        Assert.assertEquals(Long.valueOf(4096), uploadFileResponse.getBytes());
+        Assert.assertEquals(1, openAiSession.files().getData().size());
+        Assert.assertTrue(openAiSession.deleteFile(uploadFileResponse.getId()).isDeleted());
+
+        log.info("订阅信息：{}", openAiSession.subscription());
+        Assert.assertEquals(7, openAiSession.billingUsage(LocalDate.now().minusDays(7), LocalDate.now()).getDailyCosts().size());
+    }
+
+    /**
+     * 流式上传与有界并发批量上传。
+     */
+    @Test
+    public void test_streamingUploads() throws Exception {
+        long size = 16L << 20;
+        InputStream inputStream = new InputStream() {
+            private long remaining = size;
+
+            @Override
+            public int read() {
+                return remaining-- > 0 ? '\n' : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = (int) Math.min(len, remaining);
+                Arrays.fill(b, off, off + n, (byte) '\n');
+                remaining -= n;
+                return n;
+            }
+        };
+        AtomicLong progress = new AtomicLong();
+        UploadFileResponse uploadFileResponse = openAiSession.uploadFile(UploadSource.of(inputStream, -1, "batch.jsonl"), "batch",
+                (filename, bytesWritten, contentLength) -> progress.set(bytesWritten));
+        Assert.assertEquals(Long.valueOf(size), uploadFileResponse.getBytes());
+        Assert.assertEquals(size, progress.get());
+
+        List<UploadSource> sources = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            byte[] content = ("{\"i\":" + i + "}\n").getBytes(StandardCharsets.UTF_8);
+            sources.add(UploadSource.of(new ByteArrayInputStream(content), content.length, "part-" + i + ".jsonl"));
+        }
+        List<UploadResult> results = openAiSession.uploadFiles(sources, "batch", 3, null);
+        for (UploadResult result : results) {
+            Assert.assertTrue(String.valueOf(result.getError()), result.isSuccess());
+        }
+        log.info("批量上传结果：{}", results);
+    }
+
+    /**
+     * 下载文件内容：注入连接中途断开，验证单连接续传与分段并行下载的结果一致。
+     */
+    @Test
+    public void test_download() throws Exception {
+        byte[] content = new byte[3 << 20];
+        new Random(7).nextBytes(content);
+        String fileId = openAiSession.uploadFile(new ByteArrayInputStream(content), content.length, "model.bin", "assistants").getId();
+        server.setScenario(server.getScenario().toBuilder().disconnectRate(0.3).build());
+
+        java.nio.file.Path dir = Files.createTempDirectory("stub");
+        java.nio.file.Path sequential = dir.resolve("sequential.bin");
+        // 同一目标路径下其他文件遗留的临时文件不会被续传
+        java.nio.file.Path stale = dir.resolve("sequential.bin.file-other.part");
+        Files.write(stale, new byte[1024]);
+        Assert.assertEquals(content.length, openAiSession.downloadFileContent(fileId, sequential, DownloadOptions.builder().maxResumes(20).build()));
+        Assert.assertArrayEquals(content, Files.readAllBytes(sequential));
+
+        java.nio.file.Path parallel = dir.resolve("parallel.bin");
+        Assert.assertEquals(content.length, openAiSession.downloadFileContent(fileId, parallel, DownloadOptions.builder()
+                .parallelism(4).minPartSize(512 * 1024).maxResumes(20).build()));
+        Assert.assertArrayEquals(content, Files.readAllBytes(parallel));
+        Assert.assertTrue(Files.exists(stale));
+        try (java.util.stream.Stream<java.nio.file.Path> files = Files.list(dir)) {
+            Assert.assertEquals(1, files.filter(file -> file.toString().endsWith(".part")).count());
+        }
+
+        server.setScenario(server.getScenario().toBuilder().disconnectRate(0).build());
+        long streamed = openAiSession.fileContentFlowable(fileId).map(ByteBuffer::remaining).reduce(0L, Long::sum).blockingGet();
+        Assert.assertEquals(content.length, streamed);
+        log.info("下载完成，桩服务器统计：{}", server.stats());
+    }
+
+    /**
+     * 图像流水线：dall-e-3 拆分为单图请求并发生成，URL 与 b64_json 两种结果都写入目录。
+     */
+    @Test
+    public void test_imagePipeline() throws Exception {
+        java.nio.file.Path dir = Files.createTempDirectory("images");
+        List<ImageAsset> assets = openAiSession.genImages(ImageRequest.builder()
+                .model(ImageRequest.Model.DALL_E_3.getCode()).prompt("cat").n(8).build(), dir, ImagePipelineOptions.builder().build());
+        Assert.assertEquals(8, assets.size());
+        for (ImageAsset asset : assets) {
+            Assert.assertTrue(String.valueOf(asset.getError()), asset.isSuccess());
+            Assert.assertEquals(asset.getBytes(), Files.size(asset.getPath()));
+            Assert.assertNotNull(asset.getRevisedPrompt());
+        }
+        log.info("图像流水线：{}", assets);
+
+        AtomicLong bytes = new AtomicLong();
+        List<ImageAsset> decoded = openAiSession.genImages(ImageRequest.builder().prompt("dog").n(3)
+                        .responseFormat(ImageEnum.ResponseFormat.B64_JSON.getCode()).build(),
+                (index, contentType, content) -> {
+                    byte[] png = new byte[8];
+                    Assert.assertEquals(8, content.read(png));
+                    Assert.assertEquals('P', png[1]);
+                    bytes.addAndGet(8 + content.skip(Long.MAX_VALUE));
+                }, ImagePipelineOptions.builder().build());
+        Assert.assertEquals(3, decoded.size());
+        Assert.assertEquals(decoded.stream().mapToLong(ImageAsset::getBytes).sum(), bytes.get());
+
+        // b64_json 流式解码：拆分的单图请求写入目录，单张图片写入调用方的输出流
+        List<ImageAsset> streamed = openAiSession.genImages(ImageRequest.builder()
+                .model(ImageRequest.Model.DALL_E_3.getCode()).prompt("fox").n(3).build(), ImageOutput.directory(dir, "b64"), ImagePipelineOptions.builder().build());
+        for (ImageAsset asset : streamed) {
+            Assert.assertTrue(String.valueOf(asset.getError()), asset.isSuccess());
+            Assert.assertArrayEquals(Files.readAllBytes(assets.get(0).getPath()), Files.readAllBytes(asset.getPath()));
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageAsset single = openAiSession.genImages(ImageRequest.builder().prompt("owl").build(), ImageOutput.of(png), ImagePipelineOptions.builder().build()).get(0);
+        Assert.assertEquals(single.getBytes(), png.size());
+    }
+
+    /**
+     * 长音频分段转写：每 8 秒中最后 1 秒为静音，切点应落在静音内，结果按顺序输出且时间戳换算为整段音频的时间。
+     */
+    @Test
+    public void test_longAudio() throws Exception {
+        int sampleRate = 8000;
+        int seconds = 120;
+        ByteBuffer samples = ByteBuffer.allocate(44 + sampleRate * seconds * 2).order(ByteOrder.LITTLE_ENDIAN);
+        samples.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + sampleRate * seconds * 2)
+                .put("WAVEfmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) 1).putShort((short) 1).putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt(sampleRate * seconds * 2);
+        for (int i = 0; i < sampleRate * seconds; i++) {
+            boolean speech = i % (sampleRate * 8) < sampleRate * 7;
+            samples.putShort(speech ? (short) (10000 * Math.sin(2 * Math.PI * 440 * i / sampleRate)) : 0);
+        }
+        java.nio.file.Path wav = Files.createTempFile("long", ".wav");
+        Files.write(wav, samples.array());
+        PcmAudio audio = PcmAudio.wav(wav);
+        LongAudioOptions options = LongAudioOptions.builder()
+                .maxSegmentDuration(Duration.ofSeconds(20))
+                .silenceSearch(Duration.ofSeconds(6))
+                .parallelism(4)
+                .build();
+
+        List<SegmentTranscription> transcriptions = openAiSession.speed2TextTranscriptionsStream(audio,
+                TranscriptionsRequest.builder().prompt("glossary").build(), options).toList().blockingGet();
+        double previousEnd = 0;
+        for (SegmentTranscription transcription : transcriptions) {
+            AudioSegment segment = transcription.getSegment();
+            Assert.assertEquals(previousEnd, segment.getStartSeconds(), 1e-9);
+            Assert.assertTrue(segment.getEndSeconds() - segment.getStartSeconds() <= 20);
+            if (segment.getEndSeconds() < seconds) {
+                Assert.assertTrue(String.valueOf(segment), segment.getEndSeconds() % 8 >= 7);
+            }
+            Assert.assertEquals(segment.getStartSeconds(), transcription.getResponse().getSegments().get(0).getStart(), 1e-3);
+            previousEnd = segment.getEndSeconds();
+        }
+        Assert.assertEquals(seconds, previousEnd, 1e-9);
+        Assert.assertEquals("glossary", transcriptions.get(0).getPrompt());
+
+        WhisperResponse whisperResponse = openAiSession.speed2TextTranscriptions(audio, TranscriptionsRequest.builder().build(), options);
+        Assert.assertEquals(seconds, whisperResponse.getDuration(), 1e-9);
+        Assert.assertEquals(transcriptions.size() * 2, whisperResponse.getSegments().size());
+        Assert.assertEquals(seconds, whisperResponse.getSegments().get(whisperResponse.getSegments().size() - 1).getEnd(), 1e-3);
+        log.info("长音频 {} 个片段：{}", transcriptions.size(), whisperResponse.getText());
+    }
+
+    /**
+     * 闭环压测，注入 429 与 5xx 突发，由重试策略恢复。
+     */
+    @Test
+    public void test_closedLoop() throws Exception {
+        server.setScenario(server.getScenario().toBuilder().rateLimitRate(0.02).retryAfterSeconds(0)
+                .serverErrorRate(0.01).serverErrorBurst(3).build());
+        LoadReport report = new LoadDriver(LoadOptions.builder()
+                .concurrency(16)
+                .warmup(Duration.ofSeconds(1))
+                .duration(Duration.ofSeconds(5))
+                .pacing(Duration.ofMillis(50))
+                .build())
+                .closedLoop(() -> openAiSession.completions(chatCompletionRequest(false)));
+        log.info("闭环压测：{} 吞吐 {} 次/秒", report, (long) report.throughput());
+    }
+
+    /**
+     * 开环压测流式聊天，注入流中途断开。
+     */
+    @Test
+    public void test_openLoop() throws Exception {
+        server.setScenario(server.getScenario().toBuilder().disconnectRate(0.02).build());
+        LoadReport report = new LoadDriver(LoadOptions.builder()
+                .concurrency(64)
+                .ratePerSecond(100)
+                .warmup(Duration.ofSeconds(1))
+                .duration(Duration.ofSeconds(5))
+                .build())
+                .openLoop(this::streamChatCompletion);
+        log.info("开环压测：{} 吞吐 {} 次/秒", report, (long) report.throughput());
+    }
+
+    private void streamChatCompletion() throws Exception {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        AtomicInteger tokens = new AtomicInteger();
+        openAiSession.chatCompletionsDeltas(chatCompletionRequest(true), new ChatDeltaHandler() {
+            @Override
+            public void onDelta(ChatDelta delta) {
+                tokens.incrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(tokens.get());
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        });
+        try {
+            future.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static ChatCompletionRequest chatCompletionRequest(boolean stream) {
+        return ChatCompletionRequest.builder()
+                .stream(stream)
+                .messages(Collections.singletonList(Message.builder()
+                        .role(Constants.Role.USER)
+                        .content("1+1=")
+                        .build()))
+                .model(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode())
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package top.kangyaocoding.chatgpt.test;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.Assert;
+import org.junit.Test;
+import top.kangyaocoding.chatgpt.common.Constants;
+import top.kangyaocoding.chatgpt.converter.OpenAiJson;
+import top.kangyaocoding.chatgpt.domain.chatgpt.ChatCompletionRequest;
+import top.kangyaocoding.chatgpt.domain.chatgpt.Message;
+import top.kangyaocoding.chatgpt.token.TokenCounter;
+
+import java.util.Collections;
+
+/**
+ * @Author K·Herbert
+ * @Description token 计数与 maxTokens 收紧测试。
+ * @Date 2024-06-13 11:00
+ */
+public class TokenCounterTest {
+
+    private static final EncodingRegistry REGISTRY = Encodings.newDefaultEncodingRegistry();
+
+    @Test
+    public void test_countTokens() {
+        String text = "Counting tokens before sending saves a 400 round trip. 统计 token 数。";
+        Assert.assertEquals(2, TokenCounter.countTokens(ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode(), "hello world"));
+        Assert.assertEquals(REGISTRY.getEncoding(EncodingType.CL100K_BASE).countTokensOrdinary(text),
+                TokenCounter.countTokens(ChatCompletionRequest.Model.GPT_4.getCode(), text));
+        // gpt-4o 与 o1 系列使用 o200k_base，带日期后缀的模型名按前缀推断
+        Assert.assertEquals(REGISTRY.getEncoding(EncodingType.O200K_BASE).countTokensOrdinary(text),
+                TokenCounter.countTokens(ChatCompletionRequest.Model.GPT_4O.getCode(), text));
+        Assert.assertEquals(TokenCounter.countTokens(ChatCompletionRequest.Model.GPT_4O.getCode(), text),
+                TokenCounter.countTokens("o1-preview-2024-09-12", text));
+        Assert.assertEquals(0, TokenCounter.countTokens(ChatCompletionRequest.Model.GPT_4O.getCode(), ""));
+    }
+
+    @Test
+    public void test_countMessages() {
+        String model = ChatCompletionRequest.Model.GPT_3_5_TURBO.getCode();
+        // 回复起始 3 + 每条消息 3 + role 1 + content 2
+        Assert.assertEquals(9, TokenCounter.countMessages(model, Collections.singletonList(message("hello world"))));
+        Message named = Message.builder().role(Constants.Role.USER).name("bob").content("hello world").build();
+        Assert.assertEquals(9 + TokenCounter.countTokens(model, "bob") + 1, TokenCounter.countMessages(model, Collections.singletonList(named)));
+        Assert.assertEquals(3, TokenCounter.countMessages(model, null));
+    }
+
+    @Test
+    public void test_clampToMaxOutput() {
+        // builder 不会应用字段初始值，maxTokens 为 null，应收紧到模型的最大输出而不是剩余上下文
+        Assert.assertEquals(Integer.valueOf(4_096), clamp(ChatCompletionRequest.Model.GPT_3_5_TURBO, null).getMaxTokens());
+        Assert.assertEquals(Integer.valueOf(16_384), clamp(ChatCompletionRequest.Model.GPT_4O, null).getMaxTokens());
+        Assert.assertEquals(Integer.valueOf(16_384), clamp(ChatCompletionRequest.Model.GPT_4O_MINI, 100_000).getMaxTokens());
+        Assert.assertEquals(Integer.valueOf(512), clamp(ChatCompletionRequest.Model.GPT_4O, 512).getMaxTokens());
+        Assert.assertEquals(16_384, TokenCounter.maxOutputTokens("gpt-4o-2024-08-06"));
+        Assert.assertEquals(4_096, TokenCounter.maxOutputTokens("my-fine-tuned-model"));
+    }
+
+    @Test
+    public void test_clampToRemainingContext() {
+        String model = ChatCompletionRequest.Model.GPT_4.getCode();
+        ChatCompletionRequest chatCompletionRequest = request(ChatCompletionRequest.Model.GPT_4, null, repeat("word ", 6_000));
+        int promptTokens = TokenCounter.clampMaxTokens(chatCompletionRequest);
+        Assert.assertTrue(promptTokens > 6_000);
+        Assert.assertEquals(Integer.valueOf(TokenCounter.contextLength(model) - promptTokens), chatCompletionRequest.getMaxTokens());
+
+        try {
+            TokenCounter.clampMaxTokens(request(ChatCompletionRequest.Model.GPT_4, null, repeat("word ", 9_000)));
+            Assert.fail("prompt longer than the context must be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(model));
+        }
+    }
+
+    @Test
+    public void test_clampO1UsesMaxCompletionTokens() throws Exception {
+        ChatCompletionRequest chatCompletionRequest = clamp(ChatCompletionRequest.Model.O1_MINI, 2_048);
+        Assert.assertNull(chatCompletionRequest.getMaxTokens());
+        Assert.assertEquals(Integer.valueOf(2_048), chatCompletionRequest.getMaxCompletionTokens());
+        String json = OpenAiJson.objectMapper().writeValueAsString(chatCompletionRequest);
+        Assert.assertTrue(json.contains("\"max_completion_tokens\":2048"));
+        Assert.assertFalse(json.contains("\"max_tokens\""));
+
+        Assert.assertEquals(Integer.valueOf(100_000), clamp(ChatCompletionRequest.Model.O1, null).getMaxCompletionTokens());
+        Assert.assertEquals(Integer.valueOf(65_536), clamp(ChatCompletionRequest.Model.O1_MINI, 1_000_000).getMaxCompletionTokens());
+    }
+
+    @Test
+    public void test_unknownModel() {
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .model("my-fine-tuned-model")
+                .messages(Collections.singletonList(message("hello")))
+                .maxTokens(50_000)
+                .build();
+        TokenCounter.clampMaxTokens(chatCompletionRequest);
+        Assert.assertEquals(Integer.valueOf(50_000), chatCompletionRequest.getMaxTokens());
+    }
+
+    private static ChatCompletionRequest clamp(ChatCompletionRequest.Model model, Integer maxTokens) {
+        ChatCompletionRequest chatCompletionRequest = request(model, maxTokens, "1+1=");
+        TokenCounter.clampMaxTokens(chatCompletionRequest);
+        return chatCompletionRequest;
+    }
+
+    private static ChatCompletionRequest request(ChatCompletionRequest.Model model, Integer maxTokens, String content) {
+        return ChatCompletionRequest.builder()
+                .model(model.getCode())
+                .messages(Collections.singletonList(message(content)))
+                .maxTokens(maxTokens)
+                .build();
+    }
+
+    private static Message message(String content) {
+        return Message.builder().role(Constants.Role.USER).content(content).build();
+    }
+
+    private static String repeat(String text, int times) {
+        return String.join("", Collections.nCopies(times, text));
+    }
+}